@@ -0,0 +1,202 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.microbenchmark;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.batch.measure.Metric;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.internal.DefaultTempFolder;
+import org.sonar.batch.bootstrap.AnalysisProperties;
+import org.sonar.batch.index.Caches;
+import org.sonar.batch.index.CachesManager;
+import org.sonar.batch.issue.IssueCache;
+import org.sonar.batch.scan.measure.MeasureCache;
+import org.sonar.core.issue.DefaultIssue;
+
+/**
+ * Compares the backends of the batch caches (see {@link Caches}) on the workloads of {@link IssueCache} and
+ * {@link MeasureCache}: values are written by component, then read by component and finally all together.
+ * {@link org.sonar.batch.index.BatchComponentCache} is not benchmarked as it's an in-memory map that does not
+ * depend on the backend.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+public class BatchCacheBenchmark {
+
+  private static final int COMPONENTS = 1_000;
+  private static final String[] METRICS = {CoreMetrics.LINES_KEY, CoreMetrics.NCLOC_KEY, CoreMetrics.COMPLEXITY_KEY, CoreMetrics.COMMENT_LINES_KEY,
+    CoreMetrics.FUNCTIONS_KEY, CoreMetrics.CLASSES_KEY, CoreMetrics.STATEMENTS_KEY, CoreMetrics.DUPLICATED_LINES_KEY};
+
+  @Param({"persistit", "striped"})
+  public String backend;
+
+  @Param({"10", "100"})
+  public int valuesPerComponent;
+
+  File dir;
+  CachesManager cachesManager;
+  Caches caches;
+  List<DefaultIssue> issues = new ArrayList<>();
+  List<Resource> components = new ArrayList<>();
+
+  @Setup
+  public void setup() throws Exception {
+    dir = File.createTempFile("caches", "");
+    FileUtils.forceDelete(dir);
+    FileUtils.forceMkdir(dir);
+    cachesManager = new CachesManager(new DefaultTempFolder(dir));
+    for (int i = 0; i < COMPONENTS; i++) {
+      String componentKey = "org.sonar:sonar-batch:src/main/java/Foo" + i + ".java";
+      components.add(org.sonar.api.resources.File.create("src/main/java/Foo" + i + ".java").setEffectiveKey(componentKey));
+      for (int j = 0; j < valuesPerComponent; j++) {
+        issues.add(new DefaultIssue()
+          .setKey(RandomStringUtils.randomAlphanumeric(20))
+          .setComponentKey(componentKey)
+          .setRuleKey(RuleKey.of("squid", "S" + (j % 50)))
+          .setSeverity(Severity.MAJOR)
+          .setMessage(RandomStringUtils.randomAlphanumeric(60))
+          .setLine(j + 1)
+          .setChecksum(RandomStringUtils.randomAlphanumeric(32)));
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    cachesManager.stop();
+    FileUtils.deleteQuietly(dir);
+  }
+
+  @Benchmark
+  public long issues() {
+    Caches caches = newCaches();
+    try {
+      IssueCache cache = new IssueCache(caches);
+      for (DefaultIssue issue : issues) {
+        cache.put(issue);
+      }
+      long lines = 0L;
+      for (Resource component : components) {
+        for (DefaultIssue issue : cache.byComponent(component.getEffectiveKey())) {
+          lines += issue.line();
+        }
+      }
+      for (DefaultIssue issue : cache.all()) {
+        lines += issue.line();
+      }
+      return lines;
+    } finally {
+      caches.stop();
+    }
+  }
+
+  @Benchmark
+  public double measures() {
+    Caches caches = newCaches();
+    try {
+      MeasureCache cache = new MeasureCache(caches, new CoreMetricFinder());
+      for (Resource component : components) {
+        for (int j = 0; j < valuesPerComponent; j++) {
+          Measure measure = new Measure(METRICS[j % METRICS.length]).setValue((double) j);
+          measure.setPersonId(j);
+          cache.put(component, measure);
+        }
+      }
+      double sum = 0d;
+      for (Resource component : components) {
+        for (Measure measure : cache.byMetric(component, CoreMetrics.NCLOC_KEY)) {
+          sum += measure.getValue();
+        }
+      }
+      for (Measure measure : cache.all()) {
+        sum += measure.getValue();
+      }
+      return sum;
+    } finally {
+      caches.stop();
+    }
+  }
+
+  private Caches newCaches() {
+    Caches result = new Caches(cachesManager, new AnalysisProperties(ImmutableMap.of(Caches.BACKEND_PROPERTY, backend), null));
+    result.start();
+    return result;
+  }
+
+  private static class CoreMetricFinder implements MetricFinder {
+    @Override
+    public Metric findByKey(String key) {
+      return CoreMetrics.getMetric(key);
+    }
+
+    @Override
+    public Collection<Metric> findAll(List<String> metricKeys) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<Metric> findAll() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * You can this benchmark with maven command-line (see run.sh) or by executing this method
+   * in IDE
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(BatchCacheBenchmark.class.getSimpleName())
+      .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.microbenchmark;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.FileMetadata;
+
+/**
+ * Computation of file metadata and of line hashes by {@link FileMetadata}, compared to the former implementation
+ * which encoded each line into a String before updating the MD5 digest. Use -prof gc to compare allocations.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+public class FileMetadataBenchmark {
+
+  @Param({"1000", "100000"})
+  public int lines;
+
+  File file;
+  DefaultInputFile inputFile;
+
+  @Setup
+  public void setup() throws Exception {
+    file = File.createTempFile("source", ".java");
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      sb.append("    int variable").append(i).append(" = compute(\"légende\", ").append(i).append("); // comment\r\n");
+    }
+    FileUtils.write(file, sb.toString(), StandardCharsets.UTF_8);
+    inputFile = new DefaultInputFile("foo", file.getName()).setModuleBaseDir(file.getParentFile().toPath()).setCharset(StandardCharsets.UTF_8);
+
+    if (!metadata().equals(formerMetadata()) || lineHashes() != formerLineHashes()) {
+      throw new IllegalStateException("Hashes are different");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public String metadata() {
+    return inputFile.initMetadata(new FileMetadata().readMetadata(file, StandardCharsets.UTF_8)).hash();
+  }
+
+  @Benchmark
+  public String formerMetadata() {
+    FormerLineCounter lineCounter = new FormerLineCounter();
+    FormerFileHashComputer hashComputer = new FormerFileHashComputer();
+    FormerLineOffsetCounter offsetCounter = new FormerLineOffsetCounter();
+    FileMetadata.readFile(file, StandardCharsets.UTF_8, lineCounter, hashComputer, offsetCounter);
+    return hashComputer.getHash();
+  }
+
+  @Benchmark
+  public int lineHashes() {
+    LineHashSum sum = new LineHashSum();
+    FileMetadata.computeLineHashesForIssueTracking(inputFile, sum);
+    return sum.sum;
+  }
+
+  @Benchmark
+  public int formerLineHashes() {
+    LineHashSum sum = new LineHashSum();
+    FileMetadata.readFile(file, StandardCharsets.UTF_8, new FormerLineHashComputer(sum));
+    return sum.sum;
+  }
+
+  private static class LineHashSum implements FileMetadata.LineHashConsumer {
+    int sum = 0;
+
+    @Override
+    public void consume(int lineIdx, byte[] hash) {
+      if (hash != null) {
+        sum += hash[0];
+      }
+    }
+  }
+
+  //
+  // IMPLEMENTATIONS BEFORE SONARQUBE 5.2
+  //
+
+  private static class FormerLineCounter extends FileMetadata.CharHandler {
+    private int lines = 1;
+    private int nonBlankLines = 0;
+    private boolean blankLine = true;
+
+    @Override
+    protected void handleIgnoreEoL(char c) {
+      if (!Character.isWhitespace(c)) {
+        blankLine = false;
+      }
+    }
+
+    @Override
+    protected void newLine() {
+      lines++;
+      if (!blankLine) {
+        nonBlankLines++;
+      }
+      blankLine = true;
+    }
+  }
+
+  private static class FormerLineOffsetCounter extends FileMetadata.CharHandler {
+    private int currentOriginalOffset = 0;
+    private List<Integer> originalLineOffsets = new ArrayList<>();
+
+    FormerLineOffsetCounter() {
+      originalLineOffsets.add(0);
+    }
+
+    @Override
+    protected void handleAll(char c) {
+      currentOriginalOffset++;
+    }
+
+    @Override
+    protected void newLine() {
+      originalLineOffsets.add(currentOriginalOffset);
+    }
+  }
+
+  private static class FormerLineHashComputer extends FileMetadata.CharHandler {
+    private final MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
+    private final StringBuilder sb = new StringBuilder();
+    private final FileMetadata.LineHashConsumer consumer;
+    private int line = 1;
+
+    FormerLineHashComputer(FileMetadata.LineHashConsumer consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override
+    protected void handleIgnoreEoL(char c) {
+      if (!Character.isWhitespace(c)) {
+        sb.append(c);
+      }
+    }
+
+    @Override
+    protected void newLine() {
+      consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
+      sb.setLength(0);
+      line++;
+    }
+
+    @Override
+    protected void eof() {
+      consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
+    }
+  }
+
+  private static class FormerFileHashComputer extends FileMetadata.CharHandler {
+    private MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
+    private StringBuilder sb = new StringBuilder();
+
+    @Override
+    protected void handleIgnoreEoL(char c) {
+      sb.append(c);
+    }
+
+    @Override
+    protected void newLine() {
+      sb.append('\n');
+      globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+      sb.setLength(0);
+    }
+
+    @Override
+    protected void eof() {
+      if (sb.length() > 0) {
+        globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    String getHash() {
+      return Hex.encodeHexString(globalMd5Digest.digest());
+    }
+  }
+
+  /**
+   * You can this benchmark with maven command-line (see run.sh) or by executing this method
+   * in IDE
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(FileMetadataBenchmark.class.getSimpleName())
+      .build();
+    new Runner(opt).run();
+  }
+}
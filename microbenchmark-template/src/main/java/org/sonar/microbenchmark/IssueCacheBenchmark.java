@@ -0,0 +1,150 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.microbenchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.RandomStringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.System2;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.server.computation.issue.DefaultIssueSerializer;
+import org.sonar.server.util.CloseableIterator;
+import org.sonar.server.util.cache.DiskCache;
+
+/**
+ * Compares the formats of the Compute Engine issue cache: standard Java serialization,
+ * compact binary format and compact binary format compressed with LZ4.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+public class IssueCacheBenchmark {
+
+  @Param({"1000", "100000"})
+  public int issuesNumber;
+
+  @Param({"java", "binary", "binary_lz4"})
+  public String format;
+
+  List<DefaultIssue> issues = new ArrayList<>();
+  File file;
+
+  @Setup
+  public void setup() throws Exception {
+    for (int i = 0; i < issuesNumber; i++) {
+      DefaultIssue issue = new DefaultIssue()
+        .setKey(RandomStringUtils.randomAlphanumeric(20))
+        .setComponentUuid(RandomStringUtils.randomAlphanumeric(20))
+        .setComponentKey("org.sonar:sonar-server:src/main/java/Foo" + (i % 100) + ".java")
+        .setProjectUuid("ABCDEFGHIJKLMNOPQRST")
+        .setProjectKey("org.sonar:sonar")
+        .setRuleKey(RuleKey.of("squid", "S" + (i % 50)))
+        .setLanguage("java")
+        .setSeverity(Severity.MAJOR)
+        .setMessage(RandomStringUtils.randomAlphanumeric(60))
+        .setLine(i % 1000 + 1)
+        .setDebt(Duration.create(10L))
+        .setStatus(Issue.STATUS_OPEN)
+        .setChecksum(RandomStringUtils.randomAlphanumeric(32))
+        .setAuthorLogin("charlie")
+        .setCreationDate(new Date(1_500_000_000_000L))
+        .setUpdateDate(new Date(1_500_000_000_000L))
+        .setNew(i % 2 == 0);
+      if (i % 10 == 0) {
+        issue.addChange(new FieldDiffs().setUserLogin("simon").setCreationDate(new Date()).setDiff("severity", Severity.MINOR, Severity.MAJOR));
+      }
+      issues.add(issue);
+    }
+    file = File.createTempFile("issues", ".dat");
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public long write_and_read() throws Exception {
+    // the file is truncated by each new cache
+    DiskCache<DefaultIssue> cache = newCache();
+    DiskCache<DefaultIssue>.DiskAppender appender = cache.newAppender();
+    for (DefaultIssue issue : issues) {
+      appender.append(issue);
+    }
+    appender.close();
+
+    long lines = 0L;
+    try (CloseableIterator<DefaultIssue> it = cache.traverse()) {
+      while (it.hasNext()) {
+        lines += it.next().line();
+      }
+    }
+    return lines;
+  }
+
+  private DiskCache<DefaultIssue> newCache() {
+    switch (format) {
+      case "java":
+        return new DiskCache<>(file, System2.INSTANCE);
+      case "binary":
+        return new DiskCache<>(file, System2.INSTANCE, new DefaultIssueSerializer(), false);
+      default:
+        return new DiskCache<>(file, System2.INSTANCE, new DefaultIssueSerializer(), true);
+    }
+  }
+
+  /**
+   * You can this benchmark with maven command-line (see run.sh) or by executing this method
+   * in IDE
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(IssueCacheBenchmark.class.getSimpleName())
+      .build();
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.microbenchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.tracking.BlockHashSequence;
+import org.sonar.core.issue.tracking.Input;
+import org.sonar.core.issue.tracking.LineHashSequence;
+import org.sonar.core.issue.tracking.Tracker;
+
+/**
+ * Tracking of the issues of a generated file, whose lines are shifted between base and raw analyses.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+public class TrackerBenchmark {
+
+  @Param({"1000", "10000", "50000"})
+  public int issuesNumber;
+
+  Tracker<DefaultIssue, DefaultIssue> tracker = new Tracker<>();
+  SimpleInput rawInput;
+  SimpleInput baseInput;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(1L);
+    int lines = issuesNumber / 2;
+    List<String> baseHashes = new ArrayList<>();
+    for (int i = 0; i < lines; i++) {
+      baseHashes.add("h" + random.nextInt(lines));
+    }
+    // some lines are inserted at the beginning of the file
+    List<String> rawHashes = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      rawHashes.add("new" + i);
+    }
+    rawHashes.addAll(baseHashes);
+
+    List<DefaultIssue> baseIssues = new ArrayList<>();
+    List<DefaultIssue> rawIssues = new ArrayList<>();
+    for (int i = 0; i < issuesNumber; i++) {
+      RuleKey ruleKey = RuleKey.of("squid", "S" + random.nextInt(50));
+      String message = "message " + random.nextInt(20);
+      int baseLine = 1 + random.nextInt(lines);
+      baseIssues.add(new DefaultIssue().setRuleKey(ruleKey).setMessage(message).setLine(baseLine).setChecksum(baseHashes.get(baseLine - 1)));
+      int rawLine = random.nextInt(10) == 0 ? 1 + random.nextInt(rawHashes.size()) : baseLine + 10;
+      rawIssues.add(new DefaultIssue().setRuleKey(ruleKey).setMessage(message).setLine(rawLine).setChecksum(rawHashes.get(rawLine - 1)));
+    }
+    baseInput = new SimpleInput(baseHashes, baseIssues);
+    rawInput = new SimpleInput(rawHashes, rawIssues);
+  }
+
+  @Benchmark
+  public int track() {
+    return tracker.track(rawInput, baseInput).getMatchedRaws().size();
+  }
+
+  private static class SimpleInput implements Input<DefaultIssue> {
+    private final LineHashSequence lineHashSequence;
+    private final BlockHashSequence blockHashSequence;
+    private final List<DefaultIssue> issues;
+
+    SimpleInput(List<String> lineHashes, List<DefaultIssue> issues) {
+      this.lineHashSequence = new LineHashSequence(lineHashes);
+      this.blockHashSequence = BlockHashSequence.create(lineHashSequence);
+      this.issues = issues;
+    }
+
+    @Override
+    public LineHashSequence getLineHashSequence() {
+      return lineHashSequence;
+    }
+
+    @Override
+    public BlockHashSequence getBlockHashSequence() {
+      return blockHashSequence;
+    }
+
+    @Override
+    public Collection<DefaultIssue> getIssues() {
+      return issues;
+    }
+  }
+
+  /**
+   * You can this benchmark with maven command-line (see run.sh) or by executing this method
+   * in IDE
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(TrackerBenchmark.class.getSimpleName())
+      .build();
+    new Runner(opt).run();
+  }
+}
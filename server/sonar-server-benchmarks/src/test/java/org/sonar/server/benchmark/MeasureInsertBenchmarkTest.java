@@ -0,0 +1,107 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.System2;
+import org.sonar.db.BulkInserter;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.measure.MeasureDao;
+import org.sonar.db.measure.MeasureDto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MeasureInsertBenchmarkTest {
+
+  public static final Logger LOGGER = LoggerFactory.getLogger("benchmarkMeasureInsert");
+
+  public static final int NUMBER_OF_MEASURES = 200_000;
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  MeasureDao dao = new MeasureDao();
+
+  @Test
+  public void benchmark() {
+    long mybatisThroughput = insertWithMyBatis();
+    dbTester.truncateTables();
+    long bulkThroughput = insertWithBulkInserter();
+
+    benchmark.expectAround("Throughput to insert measures with MyBatis batch", mybatisThroughput, 40_000, Benchmark.DEFAULT_ERROR_MARGIN_PERCENTS);
+    benchmark.expectAround("Throughput to insert measures with BulkInserter", bulkThroughput, 200_000, Benchmark.DEFAULT_ERROR_MARGIN_PERCENTS);
+  }
+
+  private long insertWithMyBatis() {
+    DbSession session = dbTester.myBatis().openSession(true);
+    try {
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < NUMBER_OF_MEASURES; i++) {
+        dao.insert(session, newMeasure(i));
+      }
+      session.commit();
+      return logThroughput("MyBatis batch", start);
+    } finally {
+      session.close();
+    }
+  }
+
+  private long insertWithBulkInserter() {
+    DbSession session = dbTester.myBatis().openSession(false);
+    try {
+      long start = System.currentTimeMillis();
+      BulkInserter inserter = dao.newBulkInserter(session);
+      for (int i = 0; i < NUMBER_OF_MEASURES; i++) {
+        dao.insert(inserter, newMeasure(i));
+      }
+      inserter.flush();
+      inserter.close();
+      session.commit(true);
+      return logThroughput("BulkInserter", start);
+    } finally {
+      session.close();
+    }
+  }
+
+  private long logThroughput(String label, long start) {
+    long period = System.currentTimeMillis() - start;
+    assertThat(dbTester.countRowsOfTable("project_measures")).isEqualTo(NUMBER_OF_MEASURES);
+    long throughputPerSecond = 1000L * NUMBER_OF_MEASURES / period;
+    LOGGER.info(String.format("%d measures inserted with %s in %d ms (%d rows/second)", NUMBER_OF_MEASURES, label, period, throughputPerSecond));
+    return throughputPerSecond;
+  }
+
+  private static MeasureDto newMeasure(int i) {
+    return new MeasureDto()
+      .setMetricId(1 + i % 50)
+      .setSnapshotId(1L + i / 50)
+      .setComponentId(1L + i / 50)
+      .setValue((double) i)
+      .setVariation(1, 1.0)
+      .setVariation(3, 3.0);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.measure.DenseMeasureRepository;
+import org.sonar.server.computation.measure.Measure;
+import org.sonar.server.computation.measure.MeasureRepository;
+import org.sonar.server.computation.measure.MeasureRepositoryImpl;
+import org.sonar.server.computation.measure.MeasureVariations;
+import org.sonar.server.computation.metric.Metric;
+import org.sonar.server.computation.metric.MetricImpl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Memory footprint of the implementations of {@link MeasureRepository} when storing the raw measures
+ * of a large project
+ */
+public class MeasureRepositoryBenchmarkTest {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger("benchmarkMeasureRepository");
+  private static final int FILES = 30_000;
+  private static final int METRICS = 40;
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  private final List<Component> files = new ArrayList<>();
+  private final List<Metric> metrics = new ArrayList<>();
+
+  @Test
+  public void benchmark() {
+    for (int ref = 1; ref <= FILES; ref++) {
+      files.add(DumbComponent.builder(Component.Type.FILE, ref).setKey("FILE_" + ref).build());
+    }
+    for (int id = 1; id <= METRICS; id++) {
+      Metric.MetricType type = id % 2 == 0 ? Metric.MetricType.INT : Metric.MetricType.FLOAT;
+      metrics.add(new MetricImpl(id, "metric" + id, "Metric " + id, type));
+    }
+
+    long mapBytes = benchmarkFootprint("map", new MeasureRepositoryImpl(null, new BatchReportReaderRule(), null));
+    long denseBytes = benchmarkFootprint("dense", new DenseMeasureRepository(null, new BatchReportReaderRule(), null));
+
+    assertThat(denseBytes).isLessThan(mapBytes);
+    benchmark.expectBetween("Heap used by dense repository (b)", denseBytes, 0L, 40L * FileUtils.ONE_MB);
+  }
+
+  private long benchmarkFootprint(String label, MeasureRepository repository) {
+    long before = usedHeap();
+    long start = System.currentTimeMillis();
+    for (Component file : files) {
+      for (Metric metric : metrics) {
+        repository.add(file, metric, newMeasure(file, metric));
+      }
+    }
+    long end = System.currentTimeMillis();
+    long bytes = usedHeap() - before;
+
+    // read all the measures, which also makes sure that the repository is not garbage collected before measuring heap
+    long count = 0;
+    for (Component file : files) {
+      count += repository.getRawMeasures(file).size();
+    }
+    assertThat(count).isEqualTo((long) FILES * METRICS);
+
+    LOGGER.info(String.format("%s repository: %d measures stored in %d ms, %s of heap", label, count, end - start, FileUtils.byteCountToDisplaySize(bytes)));
+    return bytes;
+  }
+
+  private static Measure newMeasure(Component file, Metric metric) {
+    Measure.NewMeasureBuilder builder = Measure.newMeasureBuilder();
+    if (metric.getId() % 4 == 0) {
+      builder.setVariations(new MeasureVariations((double) file.getRef()));
+    }
+    if (metric.getType() == Metric.MetricType.INT) {
+      return builder.create(file.getRef() + metric.getId());
+    }
+    return builder.create(file.getRef() / 10d);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -30,6 +30,7 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.internal.Uuids;
 import org.sonar.batch.protocol.Constants;
@@ -42,8 +43,10 @@ import org.sonar.server.computation.batch.BatchReportReaderImpl;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
 import org.sonar.server.computation.step.PersistFileSourcesStep;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.source.SourceLinesCache;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -70,27 +73,33 @@ public class PersistFileSourcesStepTest {
   @Test
   public void benchmark() throws Exception {
     File reportDir = prepareReport();
-    persistFileSources(reportDir);
+    long sequentialDuration = persistFileSources(reportDir, 1);
+    dbTester.truncateTables();
+    // duration depends on the number of cores, so it's only logged
+    persistFileSources(reportDir, 4);
+
+    benchmark.expectAround("Duration to persist FILE_SOURCES with 1 thread", sequentialDuration, 105000, Benchmark.DEFAULT_ERROR_MARGIN_PERCENTS);
   }
 
-  private void persistFileSources(File reportDir) {
-    LOGGER.info("Persist file sources");
+  private long persistFileSources(File reportDir, int threads) {
+    LOGGER.info("Persist file sources with {} threads", threads);
     DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new FileSourceDao(dbTester.myBatis()));
 
     long start = System.currentTimeMillis();
 
     BatchReportDirectoryHolderImpl batchReportDirectoryHolder = new BatchReportDirectoryHolderImpl();
     batchReportDirectoryHolder.setDirectory(reportDir);
-    PersistFileSourcesStep step = new PersistFileSourcesStep(dbClient, System2.INSTANCE, treeRootHolder, new BatchReportReaderImpl(batchReportDirectoryHolder));
+    Settings settings = new Settings().setProperty(PersistFileSourcesStep.THREADS_PROPERTY, threads);
+    PersistFileSourcesStep step = new PersistFileSourcesStep(dbClient, System2.INSTANCE, treeRootHolder, new BatchReportReaderImpl(batchReportDirectoryHolder),
+      new CrossProjectDuplicationsRepository(), new SourceLinesCache(settings), settings);
     step.execute();
 
     long end = System.currentTimeMillis();
     long duration = end - start;
 
     assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(NUMBER_OF_FILES);
-    LOGGER.info(String.format("File sources has been persisted in %d ms", duration));
-
-    benchmark.expectAround("Duration to persist FILE_SOURCES", duration, 105000, Benchmark.DEFAULT_ERROR_MARGIN_PERCENTS);
+    LOGGER.info(String.format("File sources has been persisted in %d ms with %d threads", duration, threads));
+    return duration;
   }
 
   private File prepareReport() throws IOException {
@@ -20,15 +20,21 @@
 
 package org.sonar.server.batch;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.CodedOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.search.SearchHit;
 import org.sonar.api.resources.Scopes;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
+import org.sonar.batch.protocol.Constants;
 import org.sonar.batch.protocol.input.BatchInput;
 import org.sonar.core.permission.GlobalPermissions;
 import org.sonar.db.DbClient;
@@ -36,8 +42,9 @@ import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.server.component.ComponentFinder;
-import org.sonar.server.issue.index.IssueDoc;
+import org.sonar.server.es.EsUtils;
 import org.sonar.server.issue.index.IssueIndex;
+import org.sonar.server.issue.index.IssueIndexDefinition;
 import org.sonar.server.plugins.MimeTypes;
 import org.sonar.server.user.UserSession;
 
@@ -85,54 +92,101 @@ public class IssuesAction implements BatchWsAction {
       ComponentDto component = componentFinder.getByKey(session, moduleKey);
       Map<String, String> keysByUUid = keysByUUid(session, component);
 
+      // Hits are written as soon as they are read, without converting their _source to an IssueDoc.
+      // All the messages share the same builder and the same buffered output.
       BatchInput.ServerIssue.Builder issueBuilder = BatchInput.ServerIssue.newBuilder();
-      for (Iterator<IssueDoc> issueDocIterator = issueIndex.selectIssuesForBatch(component); issueDocIterator.hasNext(); ) {
-        handleIssue(issueDocIterator.next(), issueBuilder, keysByUUid, response.stream().output());
+      CodedOutputStream out = CodedOutputStream.newInstance(response.stream().output());
+      for (Iterator<SearchHit> hits = issueIndex.selectIssueHitsForBatch(component); hits.hasNext();) {
+        writeIssue(hits.next().sourceRef(), issueBuilder, keysByUUid, out);
       }
+      out.flush();
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
-  private void handleIssue(IssueDoc issue, BatchInput.ServerIssue.Builder issueBuilder, Map<String, String> keysByUUid, OutputStream out) {
-    issueBuilder.setKey(issue.key());
-    issueBuilder.setModuleKey(keysByUUid.get(issue.moduleUuid()));
-    String path = issue.filePath();
-    if (path != null) {
-      issueBuilder.setPath(path);
-    }
-    issueBuilder.setRuleRepository(issue.ruleKey().repository());
-    issueBuilder.setRuleKey(issue.ruleKey().rule());
-    String checksum = issue.checksum();
-    if (checksum != null) {
-      issueBuilder.setChecksum(checksum);
-    }
-    String assigneeLogin = issue.assignee();
-    if (assigneeLogin != null) {
-      issueBuilder.setAssigneeLogin(assigneeLogin);
-    }
-    Integer line = issue.line();
-    if (line != null) {
-      issueBuilder.setLine(line);
-    }
-    String message = issue.message();
-    if (message != null) {
-      issueBuilder.setMsg(message);
-    }
-    issueBuilder.setSeverity(org.sonar.batch.protocol.Constants.Severity.valueOf(issue.severity()));
-    issueBuilder.setManualSeverity(issue.isManualSeverity());
-    issueBuilder.setStatus(issue.status());
-    String resolution = issue.resolution();
-    if (resolution != null) {
-      issueBuilder.setResolution(resolution);
-    }
-    issueBuilder.setCreationDate(issue.creationDate().getTime());
+  /**
+   * Reads the fields of the issue directly from the JSON source of the hit and writes the
+   * length-delimited message, as {@link BatchInput.ServerIssue#writeDelimitedTo(java.io.OutputStream)} does.
+   */
+  @VisibleForTesting
+  static void writeIssue(BytesReference source, BatchInput.ServerIssue.Builder issueBuilder, Map<String, String> keysByUUid, CodedOutputStream out)
+    throws IOException {
+    issueBuilder.clear();
+    issueBuilder.setManualSeverity(false);
+    XContentParser parser = XContentHelper.createParser(source);
     try {
-      issueBuilder.build().writeDelimitedTo(out);
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to serialize issue", e);
+      // skip the start of the root object
+      parser.nextToken();
+      String fieldName = null;
+      XContentParser.Token token;
+      while ((token = parser.nextToken()) != null && token != XContentParser.Token.END_OBJECT) {
+        if (token == XContentParser.Token.FIELD_NAME) {
+          fieldName = parser.currentName();
+        } else if (token != XContentParser.Token.VALUE_NULL) {
+          readField(fieldName, parser, issueBuilder, keysByUUid);
+        }
+      }
+    } finally {
+      parser.close();
+    }
+    BatchInput.ServerIssue issue = issueBuilder.build();
+    out.writeRawVarint32(issue.getSerializedSize());
+    issue.writeTo(out);
+  }
+
+  private static void readField(String fieldName, XContentParser parser, BatchInput.ServerIssue.Builder issueBuilder, Map<String, String> keysByUUid)
+    throws IOException {
+    switch (fieldName) {
+      case IssueIndexDefinition.FIELD_ISSUE_KEY:
+        issueBuilder.setKey(parser.text());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_MODULE_UUID:
+        issueBuilder.setModuleKey(keysByUUid.get(parser.text()));
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_FILE_PATH:
+        issueBuilder.setPath(parser.text());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_RULE_KEY:
+        String ruleKey = parser.text();
+        int separator = ruleKey.indexOf(':');
+        issueBuilder.setRuleRepository(ruleKey.substring(0, separator));
+        issueBuilder.setRuleKey(ruleKey.substring(separator + 1));
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_CHECKSUM:
+        issueBuilder.setChecksum(parser.text());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_ASSIGNEE:
+        issueBuilder.setAssigneeLogin(parser.text());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_LINE:
+        issueBuilder.setLine(parser.intValue());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_MESSAGE:
+        issueBuilder.setMsg(parser.text());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_SEVERITY:
+        issueBuilder.setSeverity(Constants.Severity.valueOf(parser.text()));
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_MANUAL_SEVERITY:
+        issueBuilder.setManualSeverity(parser.booleanValue());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_STATUS:
+        issueBuilder.setStatus(parser.text());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_RESOLUTION:
+        issueBuilder.setResolution(parser.text());
+        break;
+      case IssueIndexDefinition.FIELD_ISSUE_FUNC_CREATED_AT:
+        if (parser.currentToken() == XContentParser.Token.VALUE_NUMBER) {
+          issueBuilder.setCreationDate(parser.longValue());
+        } else {
+          issueBuilder.setCreationDate(EsUtils.parseDateTime(parser.text()).getTime());
+        }
+        break;
+      default:
+        parser.skipChildren();
     }
-    issueBuilder.clear();
   }
 
   private Map<String, String> keysByUUid(DbSession session, ComponentDto component) {
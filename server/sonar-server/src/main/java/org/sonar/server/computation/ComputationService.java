@@ -20,14 +20,15 @@
 package org.sonar.server.computation;
 
 import com.google.common.base.Throwables;
+import org.sonar.api.config.Settings;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
 import org.sonar.server.computation.activity.ActivityManager;
-import org.sonar.server.computation.step.ComputationStep;
 import org.sonar.server.computation.step.ComputationSteps;
+import org.sonar.server.computation.step.ComputationStepsExecutor;
 
 import static org.sonar.db.compute.AnalysisReportDto.Status.FAILED;
 import static org.sonar.db.compute.AnalysisReportDto.Status.SUCCESS;
@@ -35,18 +36,26 @@ import static org.sonar.db.compute.AnalysisReportDto.Status.SUCCESS;
 @ServerSide
 public class ComputationService {
 
+  /**
+   * Maximum number of independent steps executed concurrently, see {@link org.sonar.server.computation.step.StepDataFlow}
+   */
+  public static final String STEP_PARALLELISM_PROPERTY = "sonar.ce.stepParallelism";
+  public static final int DEFAULT_STEP_PARALLELISM = 1;
+
   private static final Logger LOG = Loggers.get(ComputationService.class);
 
   private final ReportQueue.Item item;
   private final ComputationSteps steps;
   private final ActivityManager activityManager;
   private final System2 system;
+  private final Settings settings;
 
-  public ComputationService(ReportQueue.Item item, ComputationSteps steps, ActivityManager activityManager, System2 system) {
+  public ComputationService(ReportQueue.Item item, ComputationSteps steps, ActivityManager activityManager, System2 system, Settings settings) {
     this.item = item;
     this.steps = steps;
     this.activityManager = activityManager;
     this.system = system;
+    this.settings = settings;
   }
 
   public void process() {
@@ -56,11 +65,7 @@ public class ComputationService {
       );
 
     try {
-      for (ComputationStep step : steps.instances()) {
-        Profiler stepProfiler = Profiler.createIfDebug(LOG).startDebug(step.getDescription());
-        step.execute();
-        stepProfiler.stopDebug();
-      }
+      new ComputationStepsExecutor(stepParallelism()).execute(steps.instances());
       item.dto.setStatus(SUCCESS);
     } catch (Throwable e) {
       item.dto.setStatus(FAILED);
@@ -71,4 +76,8 @@ public class ComputationService {
       profiler.stopInfo();
     }
   }
+
+  private int stepParallelism() {
+    return settings.hasKey(STEP_PARALLELISM_PROPERTY) ? settings.getInt(STEP_PARALLELISM_PROPERTY) : DEFAULT_STEP_PARALLELISM;
+  }
 }
@@ -26,50 +26,72 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.picocontainer.Startable;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
 import org.sonar.api.platform.ServerStartHandler;
 import org.sonar.core.platform.ComponentContainer;
 import org.sonar.server.computation.container.ContainerFactory;
 import org.sonar.server.computation.container.ContainerFactoryImpl;
 
-public class ComputationThreadLauncher implements Startable, ServerStartHandler {
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Starts the workers of the Compute Engine. The number of workers, hence the number of analysis reports
+ * processed concurrently, is defined by the property {@link #WORKER_COUNT_PROPERTY}. Reports of a same project
+ * are never processed concurrently (see {@link ReportQueue#pop()}).
+ * <p/>
+ * Reports added to the queue by this server are dispatched immediately to a worker. The queue is also polled
+ * periodically in order to process the reports that could not be dispatched, for example because all the
+ * workers were busy or because they were inserted by another process.
+ * Once started, a worker processes reports until the queue has no more available reports.
+ */
+public class ComputationThreadLauncher implements Startable, ServerStartHandler, ReportQueueListener {
 
   public static final String THREAD_NAME_PREFIX = "computation-";
+  public static final String WORKER_COUNT_PROPERTY = "sonar.ce.workerCount";
+  public static final int DEFAULT_WORKER_COUNT = 1;
 
   private final ReportQueue queue;
   private final ComponentContainer sqContainer;
   private final ScheduledExecutorService executorService;
   private final ContainerFactory containerFactory;
+  private final int workerCount;
+  private final AtomicInteger pendingDispatches = new AtomicInteger(0);
 
   private final long delayBetweenTasks;
   private final long delayForFirstStart;
   private final TimeUnit timeUnit;
 
-  public ComputationThreadLauncher(ReportQueue queue, ComponentContainer sqContainer) {
-    this.queue = queue;
-    this.sqContainer = sqContainer;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
-    this.containerFactory = new ContainerFactoryImpl();
-
-    this.delayBetweenTasks = 10;
-    this.delayForFirstStart = 0;
-    this.timeUnit = TimeUnit.SECONDS;
+  public ComputationThreadLauncher(ReportQueue queue, ComponentContainer sqContainer, Settings settings) {
+    this(queue, sqContainer, new ContainerFactoryImpl(), workerCount(settings), 0, 60, TimeUnit.SECONDS);
   }
 
   @VisibleForTesting
   ComputationThreadLauncher(ReportQueue queue, ComponentContainer sqContainer, ContainerFactory containerFactory,
-    long delayForFirstStart, long delayBetweenTasks, TimeUnit timeUnit) {
+    int workerCount, long delayForFirstStart, long delayBetweenTasks, TimeUnit timeUnit) {
     this.queue = queue;
     this.sqContainer = sqContainer;
     this.containerFactory = containerFactory;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
+    this.workerCount = workerCount;
+    this.executorService = Executors.newScheduledThreadPool(workerCount, newThreadFactory());
 
     this.delayBetweenTasks = delayBetweenTasks;
     this.delayForFirstStart = delayForFirstStart;
     this.timeUnit = timeUnit;
   }
 
+  private static int workerCount(Settings settings) {
+    int count = settings.hasKey(WORKER_COUNT_PROPERTY) ? settings.getInt(WORKER_COUNT_PROPERTY) : DEFAULT_WORKER_COUNT;
+    checkArgument(count > 0, "Property %s must be strictly positive. Got %s", WORKER_COUNT_PROPERTY, count);
+    return count;
+  }
+
+  public int getWorkerCount() {
+    return workerCount;
+  }
+
   @Override
   public void start() {
     // do nothing because we want to wait for the server to finish startup
@@ -80,13 +102,48 @@ public class ComputationThreadLauncher implements Startable, ServerStartHandler
     executorService.shutdown();
   }
 
+  /**
+   * Asks an idle worker to process the queue. Dispatches are coalesced when all the workers
+   * already have a pending dispatch, as each of them processes the queue until it is empty.
+   */
   public void startAnalysisTaskNow() {
-    executorService.execute(new ComputationThread(queue, sqContainer, containerFactory));
+    if (pendingDispatches.incrementAndGet() <= workerCount) {
+      executorService.execute(new DispatchedWorker());
+    } else {
+      pendingDispatches.decrementAndGet();
+    }
+  }
+
+  @Override
+  public void onReportAdded(ReportQueue.Item item) {
+    startAnalysisTaskNow();
   }
 
   @Override
   public void onServerStart(Server server) {
-    executorService.scheduleAtFixedRate(new ComputationThread(queue, sqContainer, containerFactory), delayForFirstStart, delayBetweenTasks, timeUnit);
+    queue.addListener(this);
+    for (int i = 0; i < workerCount; i++) {
+      executorService.scheduleAtFixedRate(new Worker(), delayForFirstStart, delayBetweenTasks, timeUnit);
+    }
+  }
+
+  private class Worker implements Runnable {
+    private final ComputationThread computationThread = new ComputationThread(queue, sqContainer, containerFactory);
+
+    @Override
+    public void run() {
+      while (!executorService.isShutdown() && computationThread.processNextReport()) {
+        // process reports until the queue has no more available reports
+      }
+    }
+  }
+
+  private class DispatchedWorker extends Worker {
+    @Override
+    public void run() {
+      pendingDispatches.decrementAndGet();
+      super.run();
+    }
   }
 
   private static ThreadFactory newThreadFactory() {
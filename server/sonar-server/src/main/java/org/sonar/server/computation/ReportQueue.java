@@ -24,6 +24,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.annotation.CheckForNull;
 import org.apache.commons.io.FileUtils;
 import org.sonar.api.config.Settings;
@@ -43,28 +44,45 @@ import static org.sonar.db.compute.AnalysisReportDto.Status.PENDING;
 public class ReportQueue {
   private final DbClient dbClient;
   private final Settings settings;
+  private final List<ReportQueueListener> listeners = new CopyOnWriteArrayList<>();
 
   public ReportQueue(DbClient dbClient, Settings settings) {
     this.dbClient = dbClient;
     this.settings = settings;
   }
 
+  public void addListener(ReportQueueListener listener) {
+    listeners.add(listener);
+  }
+
   public Item add(String projectKey, String projectName, InputStream reportData) {
     String uuid = Uuids.create();
     File file = reportFileForUuid(uuid);
 
+    Item item;
     DbSession session = dbClient.openSession(false);
     try {
       saveReportOnDisk(reportData, file);
       AnalysisReportDto dto = saveReportMetadataInDatabase(projectKey, projectName, uuid, session);
-
-      return new Item(dto, file);
+      item = new Item(dto, file);
     } catch (Exception e) {
       FileUtils.deleteQuietly(file);
       throw new IllegalStateException("Fail to store analysis report of project " + projectKey, e);
     } finally {
       MyBatis.closeQuietly(session);
     }
+    notifyListeners(item);
+    return item;
+  }
+
+  private void notifyListeners(Item item) {
+    for (ReportQueueListener listener : listeners) {
+      try {
+        listener.onReportAdded(item);
+      } catch (Exception e) {
+        Loggers.get(getClass()).error(String.format("Failed to notify listener of analysis report %d", item.dto.getId()), e);
+      }
+    }
   }
 
   private AnalysisReportDto saveReportMetadataInDatabase(String projectKey, String projectName, String uuid, DbSession session) {
@@ -97,8 +115,12 @@ public class ReportQueue {
     }
   }
 
+  /**
+   * Synchronized so that the workers of this server never book two reports of the same project
+   * between the selection of the available reports and their booking.
+   */
   @CheckForNull
-  public Item pop() {
+  public synchronized Item pop() {
     DbSession session = dbClient.openSession(false);
     try {
       AnalysisReportDto dto = dao().pop(session);
@@ -159,6 +181,18 @@ public class ReportQueue {
     }
   }
 
+  /**
+   * Number of reports of the queue having the given status
+   */
+  public int count(AnalysisReportDto.Status status) {
+    DbSession session = dbClient.openSession(false);
+    try {
+      return dao().countByStatus(session, status);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
   /**
    * This directory is a flat list of the reports referenced in table ANALYSIS_REPORTS.
    * Never return null but the directory may not exist.
@@ -24,7 +24,8 @@ import org.sonar.server.computation.ReportQueue;
 
 public interface BatchReportDirectoryHolder {
   /**
-   * The File of the directory where the Batch report files for the current {@link ReportQueue.Item} are stored.
+   * The File of the directory where the Batch report files for the current {@link ReportQueue.Item} are stored,
+   * or the report file itself when it's a single indexed file (see {@link org.sonar.batch.protocol.output.IndexedReport}).
    *
    * @throws IllegalStateException if the holder is empty (ie. there is no directory yet)
    */
@@ -19,9 +19,11 @@
  */
 package org.sonar.server.computation.batch;
 
+import java.io.InputStream;
 import java.util.List;
 import javax.annotation.CheckForNull;
 import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.FileStructure;
 import org.sonar.server.util.CloseableIterator;
 
 public interface BatchReportReader {
@@ -50,7 +52,20 @@ public interface BatchReportReader {
    */
   CloseableIterator<String> readFileSource(int fileRef);
 
+  /**
+   * Reads the blocks of copy-paste detection of a file, one block per line. Empty if the scanner
+   * did not ship the blocks, for example when cross-project detection is disabled.
+   */
+  CloseableIterator<String> readCpdTextBlocks(int fileRef);
+
   CloseableIterator<BatchReport.Test> readTests(int testFileRef);
 
   CloseableIterator<BatchReport.CoverageDetail> readCoverageDetails(int testFileRef);
+
+  /**
+   * Raw content of the data of a component, without decoding it. Returns null if the report has
+   * no such data. The stream must be closed by caller.
+   */
+  @CheckForNull
+  InputStream openComponentData(FileStructure.Domain domain, int componentRef);
 }
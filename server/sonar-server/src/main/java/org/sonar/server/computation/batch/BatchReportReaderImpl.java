@@ -22,112 +22,134 @@ package org.sonar.server.computation.batch;
 import com.google.common.base.Throwables;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Parser;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.NoSuchElementException;
 import javax.annotation.CheckForNull;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.FileStructure;
 import org.sonar.server.util.CloseableIterator;
 
 public class BatchReportReaderImpl implements BatchReportReader {
-  private final org.sonar.batch.protocol.output.BatchReportReader delegate;
+  private final BatchReportDirectoryHolder batchReportDirectoryHolder;
+  // created on first use, as the report is located by the first computation step
+  private volatile org.sonar.batch.protocol.output.BatchReportReader delegate;
   // caching of metadata which are read often
-  private BatchReport.Metadata metadata;
+  // volatile as independent steps can be executed concurrently
+  private volatile BatchReport.Metadata metadata;
 
   public BatchReportReaderImpl(BatchReportDirectoryHolder batchReportDirectoryHolder) {
-    this.delegate = new org.sonar.batch.protocol.output.BatchReportReader(batchReportDirectoryHolder.getDirectory());
+    this.batchReportDirectoryHolder = batchReportDirectoryHolder;
+  }
+
+  private org.sonar.batch.protocol.output.BatchReportReader delegate() {
+    org.sonar.batch.protocol.output.BatchReportReader result = delegate;
+    if (result == null) {
+      synchronized (this) {
+        result = delegate;
+        if (result == null) {
+          result = new org.sonar.batch.protocol.output.BatchReportReader(batchReportDirectoryHolder.getDirectory());
+          delegate = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Releases the report file when it's read without being extracted. Called by picocontainer.
+   */
+  public void close() {
+    if (delegate != null) {
+      delegate.close();
+    }
   }
 
   @Override
   public BatchReport.Metadata readMetadata() {
-    if (this.metadata == null) {
-      this.metadata = delegate.readMetadata();
+    BatchReport.Metadata result = metadata;
+    if (result == null) {
+      // metadata are parsed only once, even if steps executed concurrently read them at the same time
+      synchronized (this) {
+        result = metadata;
+        if (result == null) {
+          result = delegate().readMetadata();
+          metadata = result;
+        }
+      }
     }
-    return this.metadata;
+    return result;
   }
 
   @Override
   public List<BatchReport.Measure> readComponentMeasures(int componentRef) {
-    return delegate.readComponentMeasures(componentRef);
+    return delegate().readComponentMeasures(componentRef);
   }
 
   @Override
   @CheckForNull
   public BatchReport.Changesets readChangesets(int componentRef) {
-    return delegate.readChangesets(componentRef);
+    return delegate().readChangesets(componentRef);
   }
 
   @Override
   public BatchReport.Component readComponent(int componentRef) {
-    return delegate.readComponent(componentRef);
+    return delegate().readComponent(componentRef);
   }
 
   @Override
   public List<BatchReport.Issue> readComponentIssues(int componentRef) {
-    return delegate.readComponentIssues(componentRef);
+    return delegate().readComponentIssues(componentRef);
   }
 
   @Override
   public List<BatchReport.Duplication> readComponentDuplications(int componentRef) {
-    return delegate.readComponentDuplications(componentRef);
+    return delegate().readComponentDuplications(componentRef);
   }
 
   @Override
   public List<BatchReport.Symbols.Symbol> readComponentSymbols(int componentRef) {
-    return delegate.readComponentSymbols(componentRef);
+    return delegate().readComponentSymbols(componentRef);
   }
 
   @Override
   @CheckForNull
   public CloseableIterator<BatchReport.SyntaxHighlighting> readComponentSyntaxHighlighting(int fileRef) {
-    File file = delegate.readComponentSyntaxHighlighting(fileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(BatchReport.SyntaxHighlighting.PARSER, FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
+    InputStream input = delegate().openComponentData(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
+    if (input == null) {
       return CloseableIterator.emptyCloseableIterator();
     }
+    return new ParserCloseableIterator<>(BatchReport.SyntaxHighlighting.PARSER, input);
   }
 
   @Override
   public CloseableIterator<BatchReport.Coverage> readComponentCoverage(int fileRef) {
-    File file = delegate.readComponentCoverage(fileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(BatchReport.Coverage.PARSER, FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
+    InputStream input = delegate().openComponentData(FileStructure.Domain.COVERAGES, fileRef);
+    if (input == null) {
       return CloseableIterator.emptyCloseableIterator();
     }
+    return new ParserCloseableIterator<>(BatchReport.Coverage.PARSER, input);
   }
 
   @Override
   public CloseableIterator<String> readFileSource(int fileRef) {
-    File file = delegate.readFileSource(fileRef);
-    if (file == null) {
+    InputStream input = delegate().openComponentData(FileStructure.Domain.SOURCE, fileRef);
+    if (input == null) {
       throw new IllegalStateException("Unable to find source for file #" + fileRef);
     }
+    return new CloseableLineIterator(new LineIterator(new InputStreamReader(input, StandardCharsets.UTF_8)));
+  }
 
-    try {
-      return new CloseableLineIterator(IOUtils.lineIterator(FileUtils.openInputStream(file), StandardCharsets.UTF_8));
-    } catch (IOException e) {
-      throw new IllegalStateException("Fail to traverse file: " + file, e);
+  @Override
+  public CloseableIterator<String> readCpdTextBlocks(int fileRef) {
+    InputStream input = delegate().openComponentData(FileStructure.Domain.CPD_TEXT_BLOCKS, fileRef);
+    if (input == null) {
+      return CloseableIterator.emptyCloseableIterator();
     }
+    return new CloseableLineIterator(new LineIterator(new InputStreamReader(input, StandardCharsets.UTF_8)));
   }
 
   private static class CloseableLineIterator extends CloseableIterator<String> {
@@ -161,49 +183,41 @@ public class BatchReportReaderImpl implements BatchReportReader {
 
   @Override
   public CloseableIterator<BatchReport.Test> readTests(int testFileRef) {
-    File file = delegate.readTests(testFileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(BatchReport.Test.PARSER, FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
+    InputStream input = delegate().openComponentData(FileStructure.Domain.TESTS, testFileRef);
+    if (input == null) {
       return CloseableIterator.emptyCloseableIterator();
     }
+    return new ParserCloseableIterator<>(BatchReport.Test.PARSER, input);
   }
 
   @Override
   public CloseableIterator<BatchReport.CoverageDetail> readCoverageDetails(int testFileRef) {
-    File file = delegate.readCoverageDetails(testFileRef);
-    if (file == null) {
+    InputStream input = delegate().openComponentData(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
+    if (input == null) {
       return CloseableIterator.emptyCloseableIterator();
     }
+    return new ParserCloseableIterator<>(BatchReport.CoverageDetail.PARSER, input);
+  }
 
-    try {
-      return new ParserCloseableIterator<>(BatchReport.CoverageDetail.PARSER, FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
-      return CloseableIterator.emptyCloseableIterator();
-    }
+  @Override
+  @CheckForNull
+  public InputStream openComponentData(FileStructure.Domain domain, int componentRef) {
+    return delegate().openComponentData(domain, componentRef);
   }
 
   private static class ParserCloseableIterator<T> extends CloseableIterator<T> {
     private final Parser<T> parser;
-    private final FileInputStream fileInputStream;
+    private final InputStream inputStream;
 
-    public ParserCloseableIterator(Parser<T> parser, FileInputStream fileInputStream) {
+    public ParserCloseableIterator(Parser<T> parser, InputStream inputStream) {
       this.parser = parser;
-      this.fileInputStream = fileInputStream;
+      this.inputStream = inputStream;
     }
 
     @Override
     protected T doNext() {
       try {
-        return parser.parseDelimitedFrom(fileInputStream);
+        return parser.parseDelimitedFrom(inputStream);
       } catch (InvalidProtocolBufferException e) {
         Throwables.propagate(e);
         // actually never reached
@@ -213,7 +227,7 @@ public class BatchReportReaderImpl implements BatchReportReader {
 
     @Override
     protected void doClose() throws Exception {
-      fileInputStream.close();
+      inputStream.close();
     }
   }
 }
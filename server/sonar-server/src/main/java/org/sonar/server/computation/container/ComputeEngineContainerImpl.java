@@ -42,6 +42,7 @@ import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.ProjectSettingsRepository;
 import org.sonar.server.computation.component.TreeRootHolderImpl;
 import org.sonar.server.computation.debt.DebtModelHolderImpl;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
 import org.sonar.server.computation.event.EventRepositoryImpl;
 import org.sonar.server.computation.formula.CoreFormulaRepositoryImpl;
 import org.sonar.server.computation.issue.BaseIssuesLoader;
@@ -64,7 +65,8 @@ import org.sonar.server.computation.issue.TrackerBaseInputFactory;
 import org.sonar.server.computation.issue.TrackerExecution;
 import org.sonar.server.computation.issue.TrackerRawInputFactory;
 import org.sonar.server.computation.language.LanguageRepositoryImpl;
-import org.sonar.server.computation.measure.MeasureRepositoryImpl;
+import org.sonar.server.computation.measure.BaseMeasureCache;
+import org.sonar.server.computation.measure.MeasureRepositoryProvider;
 import org.sonar.server.computation.measure.newcoverage.NewCoverageMetricKeysModule;
 import org.sonar.server.computation.metric.MetricRepositoryImpl;
 import org.sonar.server.computation.period.PeriodsHolderImpl;
@@ -156,10 +158,12 @@ public class ComputeEngineContainerImpl extends ComponentContainer implements Co
       // repositories
       LanguageRepositoryImpl.class,
       MetricRepositoryImpl.class,
-      MeasureRepositoryImpl.class,
+      BaseMeasureCache.class,
+      new MeasureRepositoryProvider(),
       EventRepositoryImpl.class,
       ProjectSettingsRepository.class,
       DbIdsRepository.class,
+      CrossProjectDuplicationsRepository.class,
       CoreFormulaRepositoryImpl.class,
 
       QualityGateServiceImpl.class,
@@ -0,0 +1,72 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.duplication;
+
+import com.google.common.base.Splitter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.sonar.db.duplication.DuplicationUnitDto;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.util.CloseableIterator;
+
+/**
+ * Reads the blocks of copy-paste detection shipped in the report by the scanner. Each line
+ * of {@link org.sonar.batch.protocol.output.FileStructure.Domain#CPD_TEXT_BLOCKS} is
+ * {@code <hash>,<start line>,<end line>}, the index of the block in the file being the index of the line.
+ */
+public final class CpdTextBlocks {
+
+  private static final Splitter FIELD_SPLITTER = Splitter.on(',');
+
+  private CpdTextBlocks() {
+    // only static methods
+  }
+
+  /**
+   * Snapshot ids of the returned blocks are not set.
+   */
+  public static List<DuplicationUnitDto> read(BatchReportReader reportReader, Component file) {
+    List<DuplicationUnitDto> blocks = new ArrayList<>();
+    CloseableIterator<String> lines = reportReader.readCpdTextBlocks(file.getRef());
+    try {
+      int indexInFile = 0;
+      while (lines.hasNext()) {
+        blocks.add(parse(lines.next(), indexInFile));
+        indexInFile++;
+      }
+    } finally {
+      lines.close();
+    }
+    return blocks;
+  }
+
+  private static DuplicationUnitDto parse(String line, int indexInFile) {
+    Iterator<String> fields = FIELD_SPLITTER.split(line).iterator();
+    DuplicationUnitDto block = new DuplicationUnitDto();
+    block.setHash(fields.next());
+    block.setIndexInFile(indexInFile);
+    block.setStartLine(Integer.parseInt(fields.next()));
+    block.setEndLine(Integer.parseInt(fields.next()));
+    return block;
+  }
+
+}
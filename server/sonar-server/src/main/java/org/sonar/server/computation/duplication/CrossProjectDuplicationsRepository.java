@@ -0,0 +1,68 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.duplication;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.server.computation.component.Component;
+
+/**
+ * Duplications of the files of the report with the files of the other projects, as detected
+ * by {@link org.sonar.server.computation.step.DetectCrossProjectDuplicationsStep}. The duplicates
+ * reference the other files by key.
+ */
+public class CrossProjectDuplicationsRepository {
+
+  private final Map<Integer, List<BatchReport.Duplication>> duplicationsByRef = new HashMap<>();
+
+  public CrossProjectDuplicationsRepository setDuplications(Component file, List<BatchReport.Duplication> duplications) {
+    int ref = file.getRef();
+    if (duplicationsByRef.containsKey(ref)) {
+      throw new IllegalArgumentException(String.format("Component ref '%s' has already cross project duplications", ref));
+    }
+    duplicationsByRef.put(ref, duplications);
+    return this;
+  }
+
+  /**
+   * @return true if no file has cross project duplications, for example because detection is disabled
+   */
+  public boolean isEmpty() {
+    for (List<BatchReport.Duplication> duplications : duplicationsByRef.values()) {
+      if (!duplications.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean hasDuplications(Component file) {
+    return !getDuplications(file).isEmpty();
+  }
+
+  public List<BatchReport.Duplication> getDuplications(Component file) {
+    List<BatchReport.Duplication> duplications = duplicationsByRef.get(file.getRef());
+    return duplications == null ? Collections.<BatchReport.Duplication>emptyList() : duplications;
+  }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.duplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+
+/**
+ * Duplications of a file: the ones detected by the scanner inside the project, followed by the ones
+ * detected by the Compute Engine with the other projects (see {@link CrossProjectDuplicationsRepository}).
+ */
+public final class FileDuplications {
+
+  private FileDuplications() {
+    // only static methods
+  }
+
+  public static List<BatchReport.Duplication> read(BatchReportReader reportReader, CrossProjectDuplicationsRepository crossProjectDuplicationsRepository, Component file) {
+    List<BatchReport.Duplication> duplications = reportReader.readComponentDuplications(file.getRef());
+    List<BatchReport.Duplication> crossProjectDuplications = crossProjectDuplicationsRepository.getDuplications(file);
+    if (crossProjectDuplications.isEmpty()) {
+      return duplications;
+    }
+    List<BatchReport.Duplication> result = new ArrayList<>(duplications.size() + crossProjectDuplications.size());
+    result.addAll(duplications);
+    result.addAll(crossProjectDuplications);
+    return result;
+  }
+}
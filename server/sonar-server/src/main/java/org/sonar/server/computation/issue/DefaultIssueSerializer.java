@@ -0,0 +1,409 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.issue.IssueComment;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.Duration;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.server.util.cache.JavaSerializer;
+import org.sonar.server.util.cache.Serializer;
+
+/**
+ * Compact binary format of {@link DefaultIssue} used by {@link IssueCache}. It is much smaller
+ * and faster than the standard Java serialization, which writes class descriptors and
+ * field names of each object.
+ * <p/>
+ * Values of {@link FieldDiffs} are written natively when they are strings, numbers or dates, and
+ * with Java serialization otherwise.
+ */
+public class DefaultIssueSerializer implements Serializer<DefaultIssue> {
+
+  private static final int NULL_LENGTH = -1;
+
+  private static final byte NULL_VALUE = 0;
+  private static final byte STRING_VALUE = 1;
+  private static final byte LONG_VALUE = 2;
+  private static final byte INTEGER_VALUE = 3;
+  private static final byte DOUBLE_VALUE = 4;
+  private static final byte DATE_VALUE = 5;
+  private static final byte SERIALIZED_VALUE = 6;
+
+  private static final int NO_CURRENT_CHANGE = -2;
+  private static final int CURRENT_CHANGE_NOT_IN_CHANGES = -1;
+
+  private final JavaSerializer<Serializable> javaSerializer = new JavaSerializer<>();
+
+  @Override
+  public void write(DataOutput output, DefaultIssue issue) throws IOException {
+    writeString(output, issue.key());
+    writeString(output, issue.componentUuid());
+    writeString(output, issue.componentKey());
+    writeString(output, issue.moduleUuid());
+    writeString(output, issue.moduleUuidPath());
+    writeString(output, issue.projectUuid());
+    writeString(output, issue.projectKey());
+    RuleKey ruleKey = issue.ruleKey();
+    output.writeBoolean(ruleKey != null);
+    if (ruleKey != null) {
+      writeString(output, ruleKey.repository());
+      writeString(output, ruleKey.rule());
+    }
+    writeString(output, issue.language());
+    writeString(output, issue.severity());
+    output.writeBoolean(issue.manualSeverity());
+    writeString(output, issue.message());
+    writeInteger(output, issue.line());
+    Double effortToFix = issue.effortToFix();
+    output.writeBoolean(effortToFix != null);
+    if (effortToFix != null) {
+      output.writeDouble(effortToFix);
+    }
+    Long debt = issue.debtInMinutes();
+    writeLong(output, debt);
+    writeString(output, issue.status());
+    writeString(output, issue.resolution());
+    writeString(output, issue.reporter());
+    writeString(output, issue.assignee());
+    writeString(output, issue.checksum());
+    writeString(output, issue.authorLogin());
+    writeString(output, issue.actionPlanKey());
+    writeDate(output, issue.creationDate());
+    writeDate(output, issue.updateDate());
+    writeDate(output, issue.closeDate());
+    output.writeBoolean(issue.isNew());
+    output.writeBoolean(issue.isBeingClosed());
+    output.writeBoolean(issue.isOnDisabledRule());
+    output.writeBoolean(issue.isChanged());
+    output.writeBoolean(issue.mustSendNotifications());
+    writeLong(output, issue.selectedAt());
+    writeAttributes(output, issue.attributes());
+    writeTags(output, issue.tags());
+    writeComments(output, issue.comments());
+    writeChanges(output, issue.changes(), issue.currentChange());
+  }
+
+  @Override
+  public DefaultIssue read(DataInput input) throws IOException {
+    DefaultIssue issue = new DefaultIssue();
+    issue.setKey(readString(input));
+    issue.setComponentUuid(readString(input));
+    issue.setComponentKey(readString(input));
+    issue.setModuleUuid(readString(input));
+    issue.setModuleUuidPath(readString(input));
+    issue.setProjectUuid(readString(input));
+    issue.setProjectKey(readString(input));
+    if (input.readBoolean()) {
+      issue.setRuleKey(RuleKey.of(readString(input), readString(input)));
+    }
+    issue.setLanguage(readString(input));
+    issue.setSeverity(readString(input));
+    issue.setManualSeverity(input.readBoolean());
+    issue.setMessage(readString(input));
+    issue.setLine(readInteger(input));
+    if (input.readBoolean()) {
+      issue.setEffortToFix(input.readDouble());
+    }
+    Long debt = readLong(input);
+    issue.setDebt(debt == null ? null : Duration.create(debt));
+    String status = readString(input);
+    if (status != null) {
+      issue.setStatus(status);
+    }
+    issue.setResolution(readString(input));
+    issue.setReporter(readString(input));
+    issue.setAssignee(readString(input));
+    issue.setChecksum(readString(input));
+    issue.setAuthorLogin(readString(input));
+    issue.setActionPlanKey(readString(input));
+    issue.setCreationDate(readDate(input));
+    issue.setUpdateDate(readDate(input));
+    issue.setCloseDate(readDate(input));
+    issue.setNew(input.readBoolean());
+    issue.setBeingClosed(input.readBoolean());
+    issue.setOnDisabledRule(input.readBoolean());
+    issue.setChanged(input.readBoolean());
+    issue.setSendNotifications(input.readBoolean());
+    issue.setSelectedAt(readLong(input));
+    issue.setAttributes(readAttributes(input));
+    readTags(input, issue);
+    readComments(input, issue);
+    readChanges(input, issue);
+    return issue;
+  }
+
+  private static void writeAttributes(DataOutput output, Map<String, String> attributes) throws IOException {
+    output.writeInt(attributes.size());
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      writeString(output, attribute.getKey());
+      writeString(output, attribute.getValue());
+    }
+  }
+
+  @CheckForNull
+  private static Map<String, String> readAttributes(DataInput input) throws IOException {
+    int size = input.readInt();
+    if (size == 0) {
+      return null;
+    }
+    Map<String, String> attributes = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      attributes.put(readString(input), readString(input));
+    }
+    return attributes;
+  }
+
+  private static void writeTags(DataOutput output, Set<String> tags) throws IOException {
+    output.writeInt(tags.size());
+    for (String tag : tags) {
+      writeString(output, tag);
+    }
+  }
+
+  private static void readTags(DataInput input, DefaultIssue issue) throws IOException {
+    int size = input.readInt();
+    if (size > 0) {
+      List<String> tags = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        tags.add(readString(input));
+      }
+      issue.setTags(tags);
+    }
+  }
+
+  private static void writeComments(DataOutput output, List<IssueComment> comments) throws IOException {
+    output.writeInt(comments.size());
+    for (IssueComment comment : comments) {
+      DefaultIssueComment c = (DefaultIssueComment) comment;
+      writeString(output, c.issueKey());
+      writeString(output, c.key());
+      writeString(output, c.userLogin());
+      writeString(output, c.markdownText());
+      writeDate(output, c.createdAt());
+      writeDate(output, c.updatedAt());
+      output.writeBoolean(c.isNew());
+    }
+  }
+
+  private static void readComments(DataInput input, DefaultIssue issue) throws IOException {
+    int size = input.readInt();
+    for (int i = 0; i < size; i++) {
+      DefaultIssueComment comment = new DefaultIssueComment()
+        .setIssueKey(readString(input))
+        .setKey(readString(input))
+        .setUserLogin(readString(input))
+        .setMarkdownText(readString(input))
+        .setCreatedAt(readDate(input))
+        .setUpdatedAt(readDate(input))
+        .setNew(input.readBoolean());
+      issue.addComment(comment);
+    }
+  }
+
+  private void writeChanges(DataOutput output, List<FieldDiffs> changes, @Nullable FieldDiffs currentChange) throws IOException {
+    output.writeInt(changes.size());
+    for (FieldDiffs change : changes) {
+      writeFieldDiffs(output, change);
+    }
+    if (currentChange == null) {
+      output.writeInt(NO_CURRENT_CHANGE);
+    } else {
+      // the current change is usually one of the changes. Its index is written to keep the same instance when reading.
+      int index = indexOfInstance(changes, currentChange);
+      output.writeInt(index);
+      if (index == CURRENT_CHANGE_NOT_IN_CHANGES) {
+        writeFieldDiffs(output, currentChange);
+      }
+    }
+  }
+
+  private static int indexOfInstance(List<FieldDiffs> changes, FieldDiffs change) {
+    for (int i = 0; i < changes.size(); i++) {
+      if (changes.get(i) == change) {
+        return i;
+      }
+    }
+    return CURRENT_CHANGE_NOT_IN_CHANGES;
+  }
+
+  private void readChanges(DataInput input, DefaultIssue issue) throws IOException {
+    int size = input.readInt();
+    List<FieldDiffs> changes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      changes.add(readFieldDiffs(input));
+    }
+    int currentChangeIndex = input.readInt();
+    if (currentChangeIndex == CURRENT_CHANGE_NOT_IN_CHANGES) {
+      issue.setCurrentChange(readFieldDiffs(input));
+    } else if (currentChangeIndex != NO_CURRENT_CHANGE) {
+      issue.setCurrentChange(changes.get(currentChangeIndex));
+    }
+    if (size > 0) {
+      // replaces the list initialized by setCurrentChange()
+      issue.setChanges(changes);
+    }
+  }
+
+  private void writeFieldDiffs(DataOutput output, FieldDiffs diffs) throws IOException {
+    writeString(output, diffs.issueKey());
+    writeString(output, diffs.userLogin());
+    writeDate(output, diffs.creationDate());
+    output.writeInt(diffs.diffs().size());
+    for (Map.Entry<String, FieldDiffs.Diff> diff : diffs.diffs().entrySet()) {
+      writeString(output, diff.getKey());
+      writeValue(output, diff.getValue().oldValue());
+      writeValue(output, diff.getValue().newValue());
+    }
+  }
+
+  private FieldDiffs readFieldDiffs(DataInput input) throws IOException {
+    FieldDiffs diffs = new FieldDiffs()
+      .setIssueKey(readString(input))
+      .setUserLogin(readString(input))
+      .setCreationDate(readDate(input));
+    int size = input.readInt();
+    for (int i = 0; i < size; i++) {
+      String field = readString(input);
+      // do not use setDiff(), which merges values of an existing diff
+      diffs.diffs().put(field, new FieldDiffs.Diff(readValue(input), readValue(input)));
+    }
+    return diffs;
+  }
+
+  private void writeValue(DataOutput output, @Nullable Serializable value) throws IOException {
+    if (value == null) {
+      output.writeByte(NULL_VALUE);
+    } else if (value instanceof String) {
+      output.writeByte(STRING_VALUE);
+      writeString(output, (String) value);
+    } else if (value instanceof Long) {
+      output.writeByte(LONG_VALUE);
+      output.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      output.writeByte(INTEGER_VALUE);
+      output.writeInt((Integer) value);
+    } else if (value instanceof Double) {
+      output.writeByte(DOUBLE_VALUE);
+      output.writeDouble((Double) value);
+    } else if (value.getClass() == Date.class) {
+      output.writeByte(DATE_VALUE);
+      output.writeLong(((Date) value).getTime());
+    } else {
+      output.writeByte(SERIALIZED_VALUE);
+      javaSerializer.write(output, value);
+    }
+  }
+
+  @CheckForNull
+  private Serializable readValue(DataInput input) throws IOException {
+    byte type = input.readByte();
+    switch (type) {
+      case NULL_VALUE:
+        return null;
+      case STRING_VALUE:
+        return readString(input);
+      case LONG_VALUE:
+        return input.readLong();
+      case INTEGER_VALUE:
+        return input.readInt();
+      case DOUBLE_VALUE:
+        return input.readDouble();
+      case DATE_VALUE:
+        return new Date(input.readLong());
+      case SERIALIZED_VALUE:
+        return javaSerializer.read(input);
+      default:
+        throw new IllegalStateException("Unknown type of value: " + type);
+    }
+  }
+
+  /**
+   * {@link DataOutput#writeUTF(String)} is not used as it's limited to 64Kb
+   */
+  private static void writeString(DataOutput output, @Nullable String s) throws IOException {
+    if (s == null) {
+      output.writeInt(NULL_LENGTH);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  @CheckForNull
+  private static String readString(DataInput input) throws IOException {
+    int length = input.readInt();
+    if (length == NULL_LENGTH) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeInteger(DataOutput output, @Nullable Integer i) throws IOException {
+    output.writeBoolean(i != null);
+    if (i != null) {
+      output.writeInt(i);
+    }
+  }
+
+  @CheckForNull
+  private static Integer readInteger(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readInt() : null;
+  }
+
+  private static void writeLong(DataOutput output, @Nullable Long l) throws IOException {
+    output.writeBoolean(l != null);
+    if (l != null) {
+      output.writeLong(l);
+    }
+  }
+
+  @CheckForNull
+  private static Long readLong(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readLong() : null;
+  }
+
+  private static void writeDate(DataOutput output, @Nullable Date date) throws IOException {
+    writeLong(output, date == null ? null : date.getTime());
+  }
+
+  @CheckForNull
+  private static Date readDate(DataInput input) throws IOException {
+    Long time = readLong(input);
+    return time == null ? null : new Date(time);
+  }
+}
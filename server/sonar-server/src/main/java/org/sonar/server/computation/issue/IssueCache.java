@@ -21,6 +21,7 @@ package org.sonar.server.computation.issue;
 
 import java.io.File;
 import java.io.IOException;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TempFolder;
 import org.sonar.core.issue.DefaultIssue;
@@ -29,15 +30,24 @@ import org.sonar.server.util.cache.DiskCache;
 /**
  * Cache of all the issues involved in the analysis. Their state is as it will be
  * persisted in database (after issue tracking, auto-assignment, ...)
+ * <p/>
+ * Issues are stored with {@link DefaultIssueSerializer}. They can be compressed with LZ4
+ * by enabling the property {@link #COMPRESSION_PROPERTY}, which reduces disk usage at the cost of CPU.
  */
 public class IssueCache extends DiskCache<DefaultIssue> {
 
+  public static final String COMPRESSION_PROPERTY = "sonar.ce.issueCache.compression";
+
   // this constructor is used by picocontainer
-  public IssueCache(TempFolder tempFolder, System2 system2) throws IOException {
-    super(tempFolder.newFile("issues", ".dat"), system2);
+  public IssueCache(TempFolder tempFolder, System2 system2, Settings settings) throws IOException {
+    this(tempFolder.newFile("issues", ".dat"), system2, settings.getBoolean(COMPRESSION_PROPERTY));
   }
 
   public IssueCache(File file, System2 system2) {
-    super(file, system2);
+    this(file, system2, false);
+  }
+
+  public IssueCache(File file, System2 system2, boolean compressed) {
+    super(file, system2, new DefaultIssueSerializer(), compressed);
   }
 }
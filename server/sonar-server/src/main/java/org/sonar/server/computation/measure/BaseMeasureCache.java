@@ -0,0 +1,285 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import com.google.common.base.Optional;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.sonar.api.utils.TempFolder;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.log.Profiler;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.measure.MeasureDto;
+import org.sonar.server.computation.component.TreeRootHolder;
+
+/**
+ * Measures of the last analysis of the project (the "base" measures), loaded from database in a single query
+ * on first access.
+ * <p/>
+ * In order to bound memory, the measures are written to a temp file, grouped by component. Only the position of
+ * each component in the file is kept in memory, along with the measures of the {@link #MAX_COMPONENTS_IN_MEMORY} components
+ * accessed most recently.
+ */
+public class BaseMeasureCache {
+
+  private static final Logger LOG = Loggers.get(BaseMeasureCache.class);
+
+  static final int MAX_COMPONENTS_IN_MEMORY = 100;
+  private static final int NO_VALUE = -1;
+
+  private final DbClient dbClient;
+  private final TreeRootHolder treeRootHolder;
+  private final TempFolder tempFolder;
+  private final BaseMeasureCacheStats stats;
+
+  private final Map<String, Map<String, MeasureDto>> componentsInMemory = new LinkedHashMap<String, Map<String, MeasureDto>>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Map<String, MeasureDto>> eldest) {
+      return size() > MAX_COMPONENTS_IN_MEMORY;
+    }
+  };
+  private Map<String, Block> blocksByComponentKey = null;
+  private File file = null;
+  private RandomAccessFile randomAccessFile = null;
+  private long loadedMeasures = 0L;
+  private long hits = 0L;
+  private long misses = 0L;
+
+  public BaseMeasureCache(DbClient dbClient, TreeRootHolder treeRootHolder, TempFolder tempFolder, BaseMeasureCacheStats stats) {
+    this.dbClient = dbClient;
+    this.treeRootHolder = treeRootHolder;
+    this.tempFolder = tempFolder;
+    this.stats = stats;
+  }
+
+  public synchronized Optional<MeasureDto> get(String componentKey, String metricKey) {
+    if (blocksByComponentKey == null) {
+      load();
+    }
+    Map<String, MeasureDto> measuresByMetricKey = componentsInMemory.get(componentKey);
+    if (measuresByMetricKey == null) {
+      measuresByMetricKey = readComponent(componentKey);
+      componentsInMemory.put(componentKey, measuresByMetricKey);
+    }
+    MeasureDto measure = measuresByMetricKey.get(metricKey);
+    if (measure == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return Optional.fromNullable(measure);
+  }
+
+  /**
+   * Number of calls to {@link #get(String, String)} which returned a measure
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Number of calls to {@link #get(String, String)} which did not return any measure
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  private void load() {
+    Profiler profiler = Profiler.createIfDebug(LOG).start();
+    file = tempFolder.newFile("base-measures", ".dat");
+    blocksByComponentKey = new HashMap<>();
+    DbSession dbSession = dbClient.openSession(false);
+    try (CountingOutputStream output = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      MeasureWriter writer = new MeasureWriter(output);
+      dbClient.measureDao().selectLastMeasuresByProjectUuid(dbSession, treeRootHolder.getRoot().getUuid(), writer);
+      writer.closeBlock();
+      output.flush();
+      randomAccessFile = new RandomAccessFile(file, "r");
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write base measures into " + file, e);
+    } finally {
+      dbSession.close();
+    }
+    profiler.stopDebug(String.format("Base measures loaded | measures=%d | components=%d | size=%s",
+      loadedMeasures, blocksByComponentKey.size(), FileUtils.byteCountToDisplaySize(file.length())));
+  }
+
+  private Map<String, MeasureDto> readComponent(String componentKey) {
+    Block block = blocksByComponentKey.get(componentKey);
+    if (block == null) {
+      return new HashMap<>();
+    }
+    try {
+      byte[] bytes = new byte[block.length];
+      randomAccessFile.seek(block.offset);
+      randomAccessFile.readFully(bytes);
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+      Map<String, MeasureDto> measures = new HashMap<>(block.count * 2);
+      for (int i = 0; i < block.count; i++) {
+        MeasureDto measure = readMeasure(input).setComponentKey(componentKey);
+        measures.put(measure.getMetricKey(), measure);
+      }
+      return measures;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read base measures from " + file, e);
+    }
+  }
+
+  /**
+   * Deletes the temp file and adds the hits and misses to {@link BaseMeasureCacheStats}. Called by picocontainer.
+   */
+  public synchronized void close() {
+    if (blocksByComponentKey != null) {
+      stats.add(hits, misses);
+      LOG.debug("Base measures | hits={} | misses={}", hits, misses);
+    }
+    IOUtils.closeQuietly(randomAccessFile);
+    FileUtils.deleteQuietly(file);
+  }
+
+  private class MeasureWriter implements ResultHandler {
+    private final CountingOutputStream countingOutput;
+    private final DataOutputStream output;
+    private Long currentSnapshotId = null;
+    private String currentComponentKey = null;
+    private long blockOffset = 0L;
+    private int blockCount = 0;
+
+    private MeasureWriter(CountingOutputStream countingOutput) {
+      this.countingOutput = countingOutput;
+      this.output = new DataOutputStream(countingOutput);
+    }
+
+    @Override
+    public void handleResult(ResultContext context) {
+      MeasureDto measure = (MeasureDto) context.getResultObject();
+      if (!measure.getSnapshotId().equals(currentSnapshotId)) {
+        closeBlock();
+        currentSnapshotId = measure.getSnapshotId();
+        currentComponentKey = measure.getComponentKey();
+        blockOffset = countingOutput.getByteCount();
+      }
+      try {
+        writeMeasure(output, measure);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to write base measures into " + file, e);
+      }
+      blockCount++;
+      loadedMeasures++;
+    }
+
+    private void closeBlock() {
+      if (currentComponentKey != null && blockCount > 0) {
+        blocksByComponentKey.put(currentComponentKey, new Block(blockOffset, (int) (countingOutput.getByteCount() - blockOffset), blockCount));
+      }
+      blockCount = 0;
+    }
+  }
+
+  private static void writeMeasure(DataOutput output, MeasureDto measure) throws IOException {
+    writeString(output, measure.getMetricKey());
+    writeDouble(output, measure.getValue());
+    writeString(output, measure.getData());
+    writeString(output, measure.getAlertStatus());
+    writeString(output, measure.getAlertText());
+    for (int i = 1; i <= 5; i++) {
+      writeDouble(output, measure.getVariation(i));
+    }
+  }
+
+  private static MeasureDto readMeasure(DataInput input) throws IOException {
+    MeasureDto measure = new MeasureDto()
+      .setMetricKey(readString(input))
+      .setValue(readDouble(input))
+      .setData(readString(input))
+      .setAlertStatus(readString(input))
+      .setAlertText(readString(input));
+    for (int i = 1; i <= 5; i++) {
+      measure.setVariation(i, readDouble(input));
+    }
+    return measure;
+  }
+
+  private static void writeString(DataOutput output, @Nullable String s) throws IOException {
+    if (s == null) {
+      output.writeInt(NO_VALUE);
+    } else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  @CheckForNull
+  private static String readString(DataInput input) throws IOException {
+    int length = input.readInt();
+    if (length == NO_VALUE) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeDouble(DataOutput output, @Nullable Double d) throws IOException {
+    output.writeBoolean(d != null);
+    if (d != null) {
+      output.writeDouble(d);
+    }
+  }
+
+  @CheckForNull
+  private static Double readDouble(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readDouble() : null;
+  }
+
+  private static class Block {
+    private final long offset;
+    private final int length;
+    private final int count;
+
+    private Block(long offset, int length, int count) {
+      this.offset = offset;
+      this.length = length;
+      this.count = count;
+    }
+  }
+}
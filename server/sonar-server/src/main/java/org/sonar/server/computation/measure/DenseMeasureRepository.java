@@ -0,0 +1,450 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.db.measure.MeasureDto;
+import org.sonar.db.rule.RuleDto;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.debt.Characteristic;
+import org.sonar.server.computation.metric.Metric;
+import org.sonar.server.computation.metric.MetricRepository;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Implementation of {@link MeasureRepository} designed to reduce memory usage on large projects.
+ * <p/>
+ * Raw measures are stored in one column per metric, each column being made of arrays indexed by
+ * {@link Component#getRef() component ref}: the value type, the numerical value (as a primitive double, or as a
+ * primitive long for {@link Measure.ValueType#LONG} measures) and, when needed, the data, description, quality gate
+ * status and variations. {@link Measure} objects are only
+ * created when they are read.
+ * <p/>
+ * Measures on rules and characteristics are rare and are kept as {@link Measure} objects in a side table.
+ *
+ * @see MeasureRepositoryImpl
+ */
+public class DenseMeasureRepository implements MeasureRepository {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final BaseMeasureCache baseMeasureCache;
+  private final BatchReportReader reportReader;
+  private final MetricRepository metricRepository;
+  private final BatchMeasureToMeasure batchMeasureToMeasure = new BatchMeasureToMeasure();
+  private final MeasureDtoToMeasure measureDtoToMeasure = new MeasureDtoToMeasure();
+  private final BitSet loadedComponents = new BitSet();
+  // indexed by metric id
+  private MetricColumn[] columns = new MetricColumn[INITIAL_CAPACITY];
+  private final Map<Integer, Map<MeasureKey, Measure>> ruleAndCharacteristicMeasures = new HashMap<>();
+
+  public DenseMeasureRepository(BaseMeasureCache baseMeasureCache, BatchReportReader reportReader, MetricRepository metricRepository) {
+    this.baseMeasureCache = baseMeasureCache;
+    this.reportReader = reportReader;
+    this.metricRepository = metricRepository;
+  }
+
+  @Override
+  public Optional<Measure> getBaseMeasure(Component component, Metric metric) {
+    // fail fast
+    requireNonNull(component);
+    requireNonNull(metric);
+
+    Optional<MeasureDto> measureDto = baseMeasureCache.get(component.getKey(), metric.getKey());
+    return measureDtoToMeasure.toMeasure(measureDto.orNull(), metric);
+  }
+
+  @Override
+  public Optional<Measure> getRawMeasure(Component component, Metric metric) {
+    // fail fast
+    requireNonNull(component);
+    requireNonNull(metric);
+
+    Measure local = findLocal(component, metric);
+    if (local == null) {
+      // look up in batch after loading (if not yet loaded) measures from batch
+      loadBatchMeasuresForComponent(component);
+      local = findLocal(component, metric);
+    }
+    return Optional.fromNullable(local);
+  }
+
+  @Override
+  public Optional<Measure> getRawMeasure(Component component, Metric metric, RuleDto rule) {
+    // fail fast
+    requireNonNull(component);
+    requireNonNull(metric);
+    requireNonNull(rule);
+
+    return Optional.fromNullable(findLocal(component, new MeasureKey(metric.getKey(), rule, null)));
+  }
+
+  @Override
+  public Optional<Measure> getRawMeasure(Component component, Metric metric, Characteristic characteristic) {
+    // fail fast
+    requireNonNull(component);
+    requireNonNull(metric);
+    requireNonNull(characteristic);
+
+    return Optional.fromNullable(findLocal(component, new MeasureKey(metric.getKey(), null, characteristic)));
+  }
+
+  @Override
+  public void add(Component component, Metric metric, Measure measure) {
+    requireNonNull(component);
+    checkValueTypeConsistency(metric, measure);
+
+    if (findLocal(component, metric, measure) != null) {
+      throw new UnsupportedOperationException(
+        format(
+          "a measure can be set only once for a specific Component (key=%s), Metric (key=%s)%s. Use update method",
+          component.getKey(),
+          metric.getKey(),
+          buildRuleOrCharacteristicMsgPart(measure)
+          ));
+    }
+    addLocal(component, metric, measure, true);
+  }
+
+  @Override
+  public void update(Component component, Metric metric, Measure measure) {
+    requireNonNull(component);
+    checkValueTypeConsistency(metric, measure);
+
+    if (findLocal(component, metric, measure) == null) {
+      throw new UnsupportedOperationException(
+        format(
+          "a measure can be updated only if one already exists for a specific Component (key=%s), Metric (key=%s)%s. Use add method",
+          component.getKey(),
+          metric.getKey(),
+          buildRuleOrCharacteristicMsgPart(measure)
+          ));
+    }
+    addLocal(component, metric, measure, true);
+  }
+
+  private static void checkValueTypeConsistency(Metric metric, Measure measure) {
+    checkArgument(
+      measure.getValueType() == Measure.ValueType.NO_VALUE || measure.getValueType() == metric.getType().getValueType(),
+      format(
+        "Measure's ValueType (%s) is not consistent with the Measure's ValueType (%s)",
+        measure.getValueType(), metric.getType().getValueType()));
+  }
+
+  private static String buildRuleOrCharacteristicMsgPart(Measure measure) {
+    if (measure.getRuleId() != null) {
+      return " and rule (id=" + measure.getRuleId() + ")";
+    }
+    if (measure.getCharacteristicId() != null) {
+      return " and Characteristic (id=" + measure.getCharacteristicId() + ")";
+    }
+    return "";
+  }
+
+  @Override
+  public SetMultimap<String, Measure> getRawMeasures(Component component) {
+    loadBatchMeasuresForComponent(component);
+
+    int ref = component.getRef();
+    ImmutableSetMultimap.Builder<String, Measure> builder = ImmutableSetMultimap.builder();
+    for (MetricColumn column : columns) {
+      if (column != null) {
+        Measure measure = column.get(ref);
+        if (measure != null) {
+          builder.put(column.metricKey, measure);
+        }
+      }
+    }
+    Map<MeasureKey, Measure> otherMeasures = ruleAndCharacteristicMeasures.get(ref);
+    if (otherMeasures != null) {
+      for (Map.Entry<MeasureKey, Measure> entry : otherMeasures.entrySet()) {
+        builder.put(entry.getKey().getMetricKey(), entry.getValue());
+      }
+    }
+    return builder.build();
+  }
+
+  private void loadBatchMeasuresForComponent(Component component) {
+    int ref = component.getRef();
+    if (loadedComponents.get(ref)) {
+      return;
+    }
+
+    for (BatchReport.Measure batchMeasure : reportReader.readComponentMeasures(ref)) {
+      Metric metric = metricRepository.getByKey(batchMeasure.getMetricKey());
+      addLocal(component, metric, batchMeasureToMeasure.toMeasure(batchMeasure, metric).get(), false);
+    }
+    loadedComponents.set(ref);
+  }
+
+  @CheckForNull
+  private Measure findLocal(Component component, Metric metric) {
+    int metricId = metric.getId();
+    if (metricId >= columns.length || columns[metricId] == null) {
+      return null;
+    }
+    return columns[metricId].get(component.getRef());
+  }
+
+  @CheckForNull
+  private Measure findLocal(Component component, MeasureKey key) {
+    Map<MeasureKey, Measure> otherMeasures = ruleAndCharacteristicMeasures.get(component.getRef());
+    return otherMeasures == null ? null : otherMeasures.get(key);
+  }
+
+  @CheckForNull
+  private Measure findLocal(Component component, Metric metric, Measure measure) {
+    if (isOnRuleOrCharacteristic(measure)) {
+      return findLocal(component, new MeasureKey(metric.getKey(), measure.getRuleId(), measure.getCharacteristicId()));
+    }
+    return findLocal(component, metric);
+  }
+
+  private void addLocal(Component component, Metric metric, Measure measure, boolean override) {
+    int ref = component.getRef();
+    if (isOnRuleOrCharacteristic(measure)) {
+      Map<MeasureKey, Measure> otherMeasures = ruleAndCharacteristicMeasures.get(ref);
+      if (otherMeasures == null) {
+        otherMeasures = new HashMap<>();
+        ruleAndCharacteristicMeasures.put(ref, otherMeasures);
+      }
+      MeasureKey key = new MeasureKey(metric.getKey(), measure.getRuleId(), measure.getCharacteristicId());
+      if (override || !otherMeasures.containsKey(key)) {
+        otherMeasures.put(key, measure);
+      }
+    } else {
+      MetricColumn column = column(metric);
+      if (override || !column.has(ref)) {
+        column.set(ref, measure);
+      }
+    }
+  }
+
+  private MetricColumn column(Metric metric) {
+    int metricId = metric.getId();
+    if (metricId >= columns.length) {
+      columns = Arrays.copyOf(columns, Math.max(metricId + 1, columns.length * 2));
+    }
+    MetricColumn column = columns[metricId];
+    if (column == null) {
+      column = new MetricColumn(metric.getKey());
+      columns[metricId] = column;
+    }
+    return column;
+  }
+
+  private static boolean isOnRuleOrCharacteristic(Measure measure) {
+    return measure.getRuleId() != null || measure.getCharacteristicId() != null;
+  }
+
+  /**
+   * Measures of a metric, indexed by component ref. Arrays of optional attributes (data, description...)
+   * are allocated only when the first measure having such an attribute is added.
+   */
+  private static final class MetricColumn {
+    private static final Measure.ValueType[] VALUE_TYPES = Measure.ValueType.values();
+    private static final Measure.Level[] LEVELS = Measure.Level.values();
+    private static final byte NO_MEASURE = 0;
+    private static final int VARIATIONS = 5;
+
+    private final String metricKey;
+    // NO_MEASURE or 1 + ordinal of Measure.ValueType
+    private byte[] valueTypes = new byte[INITIAL_CAPACITY];
+    // boolean as 0 or 1, ordinal of levels
+    private double[] values = new double[INITIAL_CAPACITY];
+    // values of LONG measures, which can not be stored as double without loss of precision
+    @CheckForNull
+    private long[] longValues;
+    @CheckForNull
+    private String[] data;
+    @CheckForNull
+    private String[] descriptions;
+    @CheckForNull
+    private QualityGateStatus[] qualityGateStatuses;
+    // bit i is set when variation i+1 exists
+    @CheckForNull
+    private byte[] variationFlags;
+    // VARIATIONS values per component
+    @CheckForNull
+    private double[] variations;
+
+    private MetricColumn(String metricKey) {
+      this.metricKey = metricKey;
+    }
+
+    boolean has(int ref) {
+      return ref < valueTypes.length && valueTypes[ref] != NO_MEASURE;
+    }
+
+    void set(int ref, Measure measure) {
+      ensureCapacity(ref);
+      Measure.ValueType valueType = measure.getValueType();
+      valueTypes[ref] = (byte) (valueType.ordinal() + 1);
+      values[ref] = toDouble(measure);
+      if (valueType == Measure.ValueType.LONG) {
+        if (longValues == null) {
+          longValues = new long[valueTypes.length];
+        }
+        longValues[ref] = measure.getLongValue();
+      }
+      if (measure.getData() != null || data != null) {
+        data = allocate(data);
+        data[ref] = measure.getData();
+      }
+      if (measure.getDescription() != null || descriptions != null) {
+        descriptions = allocate(descriptions);
+        descriptions[ref] = measure.getDescription();
+      }
+      if (measure.hasQualityGateStatus() || qualityGateStatuses != null) {
+        if (qualityGateStatuses == null) {
+          qualityGateStatuses = new QualityGateStatus[valueTypes.length];
+        }
+        qualityGateStatuses[ref] = measure.hasQualityGateStatus() ? measure.getQualityGateStatus() : null;
+      }
+      setVariations(ref, measure);
+    }
+
+    private void setVariations(int ref, Measure measure) {
+      if (!measure.hasVariations()) {
+        if (variationFlags != null) {
+          variationFlags[ref] = 0;
+        }
+        return;
+      }
+      if (variationFlags == null) {
+        variationFlags = new byte[valueTypes.length];
+        variations = new double[valueTypes.length * VARIATIONS];
+      }
+      MeasureVariations measureVariations = measure.getVariations();
+      byte flags = 0;
+      for (int i = 0; i < VARIATIONS; i++) {
+        if (measureVariations.hasVariation(i + 1)) {
+          flags |= 1 << i;
+          variations[ref * VARIATIONS + i] = measureVariations.getVariation(i + 1);
+        }
+      }
+      variationFlags[ref] = flags;
+    }
+
+    @CheckForNull
+    Measure get(int ref) {
+      if (!has(ref)) {
+        return null;
+      }
+      Measure.NewMeasureBuilder builder = Measure.newMeasureBuilder();
+      if (descriptions != null && descriptions[ref] != null) {
+        builder.setDescription(descriptions[ref]);
+      }
+      if (qualityGateStatuses != null && qualityGateStatuses[ref] != null) {
+        builder.setQualityGateStatus(qualityGateStatuses[ref]);
+      }
+      if (variationFlags != null && variationFlags[ref] != 0) {
+        builder.setVariations(getVariations(ref));
+      }
+      String measureData = data == null ? null : data[ref];
+      double value = values[ref];
+      switch (VALUE_TYPES[valueTypes[ref] - 1]) {
+        case BOOLEAN:
+          return builder.create(value == 1.0d, measureData);
+        case INT:
+          return builder.create((int) value, measureData);
+        case LONG:
+          return builder.create(longValues[ref], measureData);
+        case DOUBLE:
+          return builder.create(value, measureData);
+        case STRING:
+          return builder.create(measureData);
+        case LEVEL:
+          return builder.create(LEVELS[(int) value]);
+        case NO_VALUE:
+          return builder.createNoValue();
+        default:
+          throw new IllegalStateException("Unsupported Measure.ValueType " + VALUE_TYPES[valueTypes[ref] - 1]);
+      }
+    }
+
+    private MeasureVariations getVariations(int ref) {
+      Double[] measureVariations = new Double[VARIATIONS];
+      for (int i = 0; i < VARIATIONS; i++) {
+        if ((variationFlags[ref] & (1 << i)) != 0) {
+          measureVariations[i] = variations[ref * VARIATIONS + i];
+        }
+      }
+      return new MeasureVariations(measureVariations);
+    }
+
+    private static double toDouble(Measure measure) {
+      switch (measure.getValueType()) {
+        case BOOLEAN:
+          return measure.getBooleanValue() ? 1.0d : 0.0d;
+        case INT:
+          return measure.getIntValue();
+        case DOUBLE:
+          return measure.getDoubleValue();
+        case LEVEL:
+          return measure.getLevelValue().ordinal();
+        default:
+          return 0.0d;
+      }
+    }
+
+    private String[] allocate(@Nullable String[] array) {
+      return array == null ? new String[valueTypes.length] : array;
+    }
+
+    private void ensureCapacity(int ref) {
+      if (ref < valueTypes.length) {
+        return;
+      }
+      int capacity = Math.max(ref + 1, valueTypes.length + (valueTypes.length >> 1));
+      valueTypes = Arrays.copyOf(valueTypes, capacity);
+      values = Arrays.copyOf(values, capacity);
+      if (longValues != null) {
+        longValues = Arrays.copyOf(longValues, capacity);
+      }
+      if (data != null) {
+        data = Arrays.copyOf(data, capacity);
+      }
+      if (descriptions != null) {
+        descriptions = Arrays.copyOf(descriptions, capacity);
+      }
+      if (qualityGateStatuses != null) {
+        qualityGateStatuses = Arrays.copyOf(qualityGateStatuses, capacity);
+      }
+      if (variationFlags != null) {
+        variationFlags = Arrays.copyOf(variationFlags, capacity);
+        variations = Arrays.copyOf(variations, capacity * VARIATIONS);
+      }
+    }
+  }
+}
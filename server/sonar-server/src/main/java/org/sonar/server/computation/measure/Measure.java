@@ -77,6 +77,8 @@ public final class Measure {
   private final Integer characteristicId;
   @CheckForNull
   private final Double value;
+  // LONG values are kept as is, as a double can not hold all long values
+  private final long longValue;
   @CheckForNull
   private final String data;
   @CheckForNull
@@ -91,10 +93,17 @@ public final class Measure {
   private Measure(ValueType valueType, @Nullable Integer ruleId, @Nullable Integer characteristicId,
     @Nullable Double value, @Nullable String data, @Nullable Level dataLevel,
     @Nullable String description, @Nullable QualityGateStatus qualityGateStatus, @Nullable MeasureVariations variations) {
+    this(valueType, ruleId, characteristicId, value, value == null ? 0L : value.longValue(), data, dataLevel, description, qualityGateStatus, variations);
+  }
+
+  private Measure(ValueType valueType, @Nullable Integer ruleId, @Nullable Integer characteristicId,
+    @Nullable Double value, long longValue, @Nullable String data, @Nullable Level dataLevel,
+    @Nullable String description, @Nullable QualityGateStatus qualityGateStatus, @Nullable MeasureVariations variations) {
     this.valueType = valueType;
     this.ruleId = ruleId;
     this.characteristicId = characteristicId;
     this.value = scale(value);
+    this.longValue = longValue;
     this.data = data;
     this.dataLevel = dataLevel;
     this.description = description;
@@ -196,7 +205,7 @@ public final class Measure {
     }
 
     public Measure create(long value, @Nullable String data) {
-      return new Measure(ValueType.LONG, ruleId, characteristicId, (double) value, data, null, description, qualityGateStatus, variations);
+      return new Measure(ValueType.LONG, ruleId, characteristicId, (double) value, value, data, null, description, qualityGateStatus, variations);
     }
 
     public Measure create(long value) {
@@ -263,7 +272,7 @@ public final class Measure {
 
     public Measure create() {
       return new Measure(source.valueType, source.ruleId, source.characteristicId,
-          source.value, source.data, source.dataLevel,
+          source.value, source.longValue, source.data, source.dataLevel,
           source.description,
           source.qualityGateStatus == null ? qualityGateStatus : source.qualityGateStatus,
           source.variations == null ? variations : source.variations);
@@ -314,7 +323,7 @@ public final class Measure {
    */
   public long getLongValue() {
     checkValueType(ValueType.LONG);
-    return value.longValue();
+    return longValue;
   }
 
   /**
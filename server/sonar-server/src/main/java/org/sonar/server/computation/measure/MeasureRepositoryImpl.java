@@ -28,8 +28,6 @@ import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
 import org.sonar.batch.protocol.output.BatchReport;
-import org.sonar.db.DbClient;
-import org.sonar.db.DbSession;
 import org.sonar.db.measure.MeasureDto;
 import org.sonar.db.rule.RuleDto;
 import org.sonar.server.computation.batch.BatchReportReader;
@@ -43,7 +41,7 @@ import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 public class MeasureRepositoryImpl implements MeasureRepository {
-  private final DbClient dbClient;
+  private final BaseMeasureCache baseMeasureCache;
   private final BatchReportReader reportReader;
   private final BatchMeasureToMeasure batchMeasureToMeasure;
   private final MetricRepository metricRepository;
@@ -51,8 +49,8 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   private final Set<Integer> loadedComponents = new HashSet<>();
   private final Map<Integer, Map<MeasureKey, Measure>> measures = new HashMap<>();
 
-  public MeasureRepositoryImpl(DbClient dbClient, BatchReportReader reportReader, MetricRepository metricRepository) {
-    this.dbClient = dbClient;
+  public MeasureRepositoryImpl(BaseMeasureCache baseMeasureCache, BatchReportReader reportReader, MetricRepository metricRepository) {
+    this.baseMeasureCache = baseMeasureCache;
     this.reportReader = reportReader;
     this.batchMeasureToMeasure = new BatchMeasureToMeasure();
     this.metricRepository = metricRepository;
@@ -64,10 +62,8 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     requireNonNull(component);
     requireNonNull(metric);
 
-    try (DbSession dbSession = dbClient.openSession(false)) {
-      MeasureDto measureDto = dbClient.measureDao().findByComponentKeyAndMetricKey(dbSession, component.getKey(), metric.getKey());
-      return measureDtoToMeasure.toMeasure(measureDto, metric);
-    }
+    Optional<MeasureDto> measureDto = baseMeasureCache.get(component.getKey(), metric.getKey());
+    return measureDtoToMeasure.toMeasure(measureDto.orNull(), metric);
   }
 
   @Override
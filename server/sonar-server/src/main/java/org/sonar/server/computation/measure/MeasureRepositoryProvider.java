@@ -0,0 +1,46 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import org.picocontainer.injectors.ProviderAdapter;
+import org.sonar.api.config.Settings;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.metric.MetricRepository;
+
+/**
+ * Provides the implementation of {@link MeasureRepository} defined by the property {@link #DENSE_PROPERTY}.
+ */
+public class MeasureRepositoryProvider extends ProviderAdapter {
+
+  public static final String DENSE_PROPERTY = "sonar.ce.measureRepository.dense";
+
+  private MeasureRepository measureRepository;
+
+  public MeasureRepository provide(Settings settings, BaseMeasureCache baseMeasureCache, BatchReportReader reportReader, MetricRepository metricRepository) {
+    if (measureRepository == null) {
+      if (settings.getBoolean(DENSE_PROPERTY)) {
+        measureRepository = new DenseMeasureRepository(baseMeasureCache, reportReader, metricRepository);
+      } else {
+        measureRepository = new MeasureRepositoryImpl(baseMeasureCache, reportReader, metricRepository);
+      }
+    }
+    return measureRepository;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation.source;
+
+import com.google.common.primitives.Ints;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.List;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.FileStructure;
+import org.sonar.server.computation.batch.BatchReportReader;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Hash of the raw report data that are used to compute the sources of a file (see {@link ComputeFileSourceData}
+ * and the implementations of {@link LineReader}). Data are hashed without being decoded, so comparing this
+ * hash with the one of the previous analysis is much cheaper than computing and comparing the file source data.
+ * The cross project duplications, which are not part of the report, are hashed too.
+ */
+public class SourceReportHash {
+
+  /**
+   * Must be incremented when the way file sources are computed from report changes, so
+   * that the sources of unchanged files are computed again.
+   */
+  private static final String VERSION = "1";
+
+  private static final FileStructure.Domain[] DOMAINS = {
+    FileStructure.Domain.SOURCE,
+    FileStructure.Domain.COVERAGES,
+    FileStructure.Domain.CHANGESETS,
+    FileStructure.Domain.SYNTAX_HIGHLIGHTINGS,
+    FileStructure.Domain.SYMBOLS,
+    FileStructure.Domain.DUPLICATIONS
+  };
+
+  private SourceReportHash() {
+    // only static methods
+  }
+
+  public static String compute(BatchReportReader reportReader, int fileRef, int numberOfLines, List<BatchReport.Duplication> crossProjectDuplications) {
+    MessageDigest digest = DigestUtils.getMd5Digest();
+    digest.update((VERSION + "|" + numberOfLines).getBytes(UTF_8));
+    byte[] buffer = new byte[8192];
+    for (FileStructure.Domain domain : DOMAINS) {
+      InputStream input = reportReader.openComponentData(domain, fileRef);
+      // distinguishes a missing data from an empty one
+      digest.update((byte) (input == null ? 0 : 1));
+      if (input != null) {
+        try {
+          update(digest, input, buffer);
+        } finally {
+          IOUtils.closeQuietly(input);
+        }
+      }
+    }
+    // nothing is added when there are no cross project duplications, so that hashes of previous analyses are still valid
+    for (BatchReport.Duplication duplication : crossProjectDuplications) {
+      byte[] bytes = duplication.toByteArray();
+      digest.update(Ints.toByteArray(bytes.length));
+      digest.update(bytes);
+    }
+    return Hex.encodeHexString(digest.digest());
+  }
+
+  private static void update(MessageDigest digest, InputStream input, byte[] buffer) {
+    try {
+      int read = input.read(buffer);
+      while (read > -1) {
+        digest.update(buffer, 0, read);
+        read = input.read(buffer);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read report", e);
+    }
+  }
+}
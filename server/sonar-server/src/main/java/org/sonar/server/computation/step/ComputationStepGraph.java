@@ -0,0 +1,105 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Directed acyclic graph of the dependencies between steps, deduced from their {@link StepDataFlow}.
+ * A step depends on a previous step when:
+ * <ul>
+ *   <li>it reads data written by the previous step</li>
+ *   <li>or it writes data read or written by the previous step</li>
+ *   <li>or one of both steps does not declare its data flow</li>
+ * </ul>
+ * Steps are identified by their index in the ordered list given to the constructor.
+ */
+public class ComputationStepGraph {
+
+  private final List<ComputationStep> steps;
+  private final List<List<Integer>> successors;
+  private final int[] predecessorCounts;
+
+  public ComputationStepGraph(List<ComputationStep> orderedSteps) {
+    this.steps = ImmutableList.copyOf(orderedSteps);
+    this.successors = new ArrayList<>(steps.size());
+    this.predecessorCounts = new int[steps.size()];
+
+    List<StepDataFlow> flows = new ArrayList<>(steps.size());
+    for (ComputationStep step : steps) {
+      flows.add(step.getClass().getAnnotation(StepDataFlow.class));
+      successors.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < steps.size(); i++) {
+      for (int j = 0; j < i; j++) {
+        if (dependsOn(flows.get(i), flows.get(j))) {
+          successors.get(j).add(i);
+          predecessorCounts[i]++;
+        }
+      }
+    }
+  }
+
+  private static boolean dependsOn(@CheckForNull StepDataFlow step, @CheckForNull StepDataFlow previousStep) {
+    if (step == null || previousStep == null) {
+      return true;
+    }
+    Set<StepData> previousWrites = toSet(previousStep.writes());
+    Set<StepData> previousReadsAndWrites = EnumSet.copyOf(previousWrites);
+    previousReadsAndWrites.addAll(toSet(previousStep.reads()));
+    return !Collections.disjoint(toSet(step.reads()), previousWrites)
+      || !Collections.disjoint(toSet(step.writes()), previousReadsAndWrites);
+  }
+
+  private static Set<StepData> toSet(StepData[] data) {
+    Set<StepData> set = EnumSet.noneOf(StepData.class);
+    set.addAll(Arrays.asList(data));
+    return set;
+  }
+
+  public int size() {
+    return steps.size();
+  }
+
+  public ComputationStep step(int index) {
+    return steps.get(index);
+  }
+
+  /**
+   * Indexes of the steps that directly depend on the given step, in execution order
+   */
+  public List<Integer> successors(int index) {
+    return Collections.unmodifiableList(successors.get(index));
+  }
+
+  /**
+   * Number of steps the given step directly depends on
+   */
+  public int predecessorCount(int index) {
+    return predecessorCounts[index];
+  }
+}
@@ -32,7 +32,8 @@ public class ComputationSteps {
 
   /**
    * List of all {@link org.sonar.server.computation.step.ComputationStep},
-   * ordered by execution sequence.
+   * ordered by execution sequence. Steps annotated with {@link StepDataFlow} may be
+   * executed concurrently with the steps they do not depend on.
    */
   public List<Class<? extends ComputationStep>> orderedStepClasses() {
     return Arrays.asList(
@@ -52,6 +53,8 @@ public class ComputationSteps {
 
       // data computation
       IntegrateIssuesStep.class,
+      DetectCrossProjectDuplicationsStep.class,
+      DuplicationMeasuresStep.class,
       CustomMeasuresCopyStep.class,
       ComputeFormulaMeasuresStep.class,      
 
@@ -81,6 +84,7 @@ public class ComputationSteps {
       PersistProjectLinksStep.class,
       PersistEventsStep.class,
       PersistDuplicationsStep.class,
+      PersistDuplicationIndexStep.class,
       PersistFileSourcesStep.class,
       PersistTestsStep.class,
 
@@ -0,0 +1,157 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.CheckForNull;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.api.utils.log.Profiler;
+import org.sonar.db.profiling.SqlStatementCounter;
+
+/**
+ * Executes the steps of the Compute Engine. When the parallelism is greater than 1, the steps that are
+ * independent according to {@link ComputationStepGraph} are executed concurrently on a bounded pool of threads.
+ * Otherwise steps are executed sequentially in the current thread.
+ * <p/>
+ * On failure of a step, the steps that are still running are completed, no other step is started, and the
+ * error is rethrown.
+ */
+public class ComputationStepsExecutor {
+
+  private static final Logger LOG = Loggers.get(ComputationStepsExecutor.class);
+  private static final String THREAD_NAME_FORMAT = "computation-step-%d";
+
+  private final int parallelism;
+
+  public ComputationStepsExecutor(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  public void execute(Iterable<ComputationStep> steps) {
+    if (parallelism <= 1) {
+      for (ComputationStep step : steps) {
+        executeStep(step);
+      }
+    } else {
+      executeGraph(new ComputationStepGraph(Lists.newArrayList(steps)));
+    }
+  }
+
+  private void executeGraph(ComputationStepGraph graph) {
+    ExecutorService executorService = Executors.newFixedThreadPool(parallelism,
+      new ThreadFactoryBuilder().setNameFormat(THREAD_NAME_FORMAT).build());
+    try {
+      new GraphExecution(graph, new ExecutorCompletionService<Integer>(executorService)).run();
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static void executeStep(ComputationStep step) {
+    Profiler stepProfiler = Profiler.createIfDebug(LOG).startDebug(step.getDescription());
+    long sqlStatements = SqlStatementCounter.get();
+    step.execute();
+    stepProfiler.addContext("sqlStatements", SqlStatementCounter.get() - sqlStatements);
+    stepProfiler.stopDebug();
+  }
+
+  private static class GraphExecution {
+    private final ComputationStepGraph graph;
+    private final CompletionService<Integer> completionService;
+    private final int[] remainingPredecessors;
+    private int runningSteps = 0;
+    private Throwable failure = null;
+
+    private GraphExecution(ComputationStepGraph graph, CompletionService<Integer> completionService) {
+      this.graph = graph;
+      this.completionService = completionService;
+      this.remainingPredecessors = new int[graph.size()];
+      for (int i = 0; i < graph.size(); i++) {
+        remainingPredecessors[i] = graph.predecessorCount(i);
+      }
+    }
+
+    void run() {
+      for (int i = 0; i < graph.size(); i++) {
+        if (remainingPredecessors[i] == 0) {
+          submit(i);
+        }
+      }
+      while (runningSteps > 0) {
+        Integer doneStep = waitForNextDoneStep();
+        if (doneStep != null && failure == null) {
+          submitReadySuccessors(doneStep);
+        }
+      }
+      if (failure != null) {
+        throw Throwables.propagate(failure);
+      }
+    }
+
+    @CheckForNull
+    private Integer waitForNextDoneStep() {
+      try {
+        Integer doneStep = completionService.take().get();
+        runningSteps--;
+        return doneStep;
+      } catch (ExecutionException e) {
+        runningSteps--;
+        if (failure == null) {
+          failure = e.getCause();
+        }
+        return null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while executing computation steps", e);
+      }
+    }
+
+    private void submitReadySuccessors(int doneStep) {
+      for (Integer successor : graph.successors(doneStep)) {
+        remainingPredecessors[successor]--;
+        if (remainingPredecessors[successor] == 0) {
+          submit(successor);
+        }
+      }
+    }
+
+    private void submit(int index) {
+      final ComputationStep step = graph.step(index);
+      final Integer stepIndex = index;
+      completionService.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          executeStep(step);
+          return stepIndex;
+        }
+      });
+      runningSteps++;
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Table;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.BatchReport.Range;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.MyBatis;
+import org.sonar.db.duplication.DuplicationUnitDto;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
+import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.duplication.CpdTextBlocks;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
+
+import static org.sonar.server.computation.component.Component.Type.FILE;
+import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.CROSS_PROJECT_DUPLICATIONS;
+import static org.sonar.server.computation.step.StepData.DB_DUPLICATIONS_INDEX;
+import static org.sonar.server.computation.step.StepData.REPORT;
+
+/**
+ * Detects the duplications between the files of the report and the files of the other projects, from the
+ * blocks of copy-paste detection shipped in the report. The candidate blocks of the other projects are loaded
+ * from table DUPLICATIONS_INDEX by a single lookup of all the hashes of the report per language.
+ */
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT, DB_DUPLICATIONS_INDEX}, writes = CROSS_PROJECT_DUPLICATIONS)
+public class DetectCrossProjectDuplicationsStep implements ComputationStep {
+
+  /**
+   * Same limit as the scanner for the duplications inside the project
+   */
+  @VisibleForTesting
+  static final int MAX_DUPLICATES_PER_BLOCK = 100;
+
+  private final DbClient dbClient;
+  private final TreeRootHolder treeRootHolder;
+  private final BatchReportReader reportReader;
+  private final CrossProjectDuplicationsRepository duplicationsRepository;
+
+  public DetectCrossProjectDuplicationsStep(DbClient dbClient, TreeRootHolder treeRootHolder, BatchReportReader reportReader,
+    CrossProjectDuplicationsRepository duplicationsRepository) {
+    this.dbClient = dbClient;
+    this.treeRootHolder = treeRootHolder;
+    this.reportReader = reportReader;
+    this.duplicationsRepository = duplicationsRepository;
+  }
+
+  @Override
+  public void execute() {
+    final ListMultimap<String, Component> filesByLanguage = ArrayListMultimap.create();
+    final SetMultimap<String, String> hashesByLanguage = HashMultimap.create();
+    new DepthTraversalTypeAwareVisitor(FILE, PRE_ORDER) {
+      @Override
+      public void visitFile(Component file) {
+        String language = file.getFileAttributes().getLanguageKey();
+        if (language == null) {
+          return;
+        }
+        List<DuplicationUnitDto> blocks = CpdTextBlocks.read(reportReader, file);
+        if (!blocks.isEmpty()) {
+          filesByLanguage.put(language, file);
+          for (DuplicationUnitDto block : blocks) {
+            hashesByLanguage.put(language, block.getHash());
+          }
+        }
+      }
+    }.visit(treeRootHolder.getRoot());
+
+    if (filesByLanguage.isEmpty()) {
+      // cross-project detection is disabled, or no files were analyzed by copy-paste detection
+      return;
+    }
+    String projectUuid = treeRootHolder.getRoot().getUuid();
+    DbSession session = dbClient.openSession(false);
+    try {
+      for (String language : filesByLanguage.keySet()) {
+        List<DuplicationUnitDto> candidates = dbClient.duplicationDao().selectCandidates(session, hashesByLanguage.get(language), language, projectUuid);
+        if (!candidates.isEmpty()) {
+          detectFiles(filesByLanguage.get(language), new CandidateBlocks(candidates));
+        }
+      }
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private void detectFiles(List<Component> files, CandidateBlocks candidates) {
+    for (Component file : files) {
+      // blocks are read again rather than kept in memory for all the files of the project
+      List<BatchReport.Duplication> duplications = detect(CpdTextBlocks.read(reportReader, file), candidates);
+      if (!duplications.isEmpty()) {
+        duplicationsRepository.setDuplications(file, duplications);
+      }
+    }
+  }
+
+  /**
+   * A duplication is a maximal sequence of consecutive blocks of the file that are also consecutive
+   * in a file of another project.
+   */
+  private static List<BatchReport.Duplication> detect(List<DuplicationUnitDto> fileBlocks, CandidateBlocks candidates) {
+    Map<String, BatchReport.Duplication.Builder> duplicationsByOrigin = new LinkedHashMap<>();
+    for (int i = 0; i < fileBlocks.size(); i++) {
+      DuplicationUnitDto block = fileBlocks.get(i);
+      for (DuplicationUnitDto candidate : candidates.getByHash(block.getHash())) {
+        if (i > 0 && candidates.matches(candidate.getResourceKey(), candidate.getIndexInFile() - 1, fileBlocks.get(i - 1))) {
+          // already part of the duplication starting on a previous block
+          continue;
+        }
+        int lastIndex = i;
+        DuplicationUnitDto lastCandidate = candidate;
+        while (lastIndex + 1 < fileBlocks.size() && candidates.matches(candidate.getResourceKey(), lastCandidate.getIndexInFile() + 1, fileBlocks.get(lastIndex + 1))) {
+          lastIndex++;
+          lastCandidate = candidates.get(candidate.getResourceKey(), lastCandidate.getIndexInFile() + 1);
+        }
+        addDuplicate(duplicationsByOrigin, block.getStartLine(), fileBlocks.get(lastIndex).getEndLine(),
+          candidate.getResourceKey(), candidate.getStartLine(), lastCandidate.getEndLine());
+      }
+    }
+
+    List<BatchReport.Duplication> duplications = new ArrayList<>(duplicationsByOrigin.size());
+    for (BatchReport.Duplication.Builder duplication : duplicationsByOrigin.values()) {
+      duplications.add(duplication.build());
+    }
+    return duplications;
+  }
+
+  private static void addDuplicate(Map<String, BatchReport.Duplication.Builder> duplicationsByOrigin, int originStartLine, int originEndLine,
+    String otherFileKey, int startLine, int endLine) {
+    String originKey = originStartLine + "-" + originEndLine;
+    BatchReport.Duplication.Builder duplication = duplicationsByOrigin.get(originKey);
+    if (duplication == null) {
+      duplication = BatchReport.Duplication.newBuilder()
+        .setOriginPosition(Range.newBuilder().setStartLine(originStartLine).setEndLine(originEndLine));
+      duplicationsByOrigin.put(originKey, duplication);
+    }
+    if (duplication.getDuplicateCount() < MAX_DUPLICATES_PER_BLOCK) {
+      duplication.addDuplicate(BatchReport.Duplicate.newBuilder()
+        .setOtherFileKey(otherFileKey)
+        .setRange(Range.newBuilder().setStartLine(startLine).setEndLine(endLine)));
+    }
+  }
+
+  private static class CandidateBlocks {
+    private final ListMultimap<String, DuplicationUnitDto> byHash = ArrayListMultimap.create();
+    private final Table<String, Integer, DuplicationUnitDto> byFileAndIndex = HashBasedTable.create();
+
+    CandidateBlocks(List<DuplicationUnitDto> candidates) {
+      for (DuplicationUnitDto candidate : candidates) {
+        byHash.put(candidate.getHash(), candidate);
+        byFileAndIndex.put(candidate.getResourceKey(), candidate.getIndexInFile(), candidate);
+      }
+    }
+
+    List<DuplicationUnitDto> getByHash(String hash) {
+      return byHash.get(hash);
+    }
+
+    DuplicationUnitDto get(String fileKey, int indexInFile) {
+      return byFileAndIndex.get(fileKey, indexInFile);
+    }
+
+    boolean matches(String fileKey, int indexInFile, DuplicationUnitDto block) {
+      DuplicationUnitDto candidate = byFileAndIndex.get(fileKey, indexInFile);
+      return candidate != null && candidate.getHash().equals(block.getHash());
+    }
+  }
+
+  @Override
+  public String getDescription() {
+    return "Detect cross project duplications";
+  }
+}
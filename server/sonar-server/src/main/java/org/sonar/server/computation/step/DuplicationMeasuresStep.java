@@ -0,0 +1,259 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import com.google.common.base.Optional;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.BatchReport.Range;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.PathAwareVisitor;
+import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
+import org.sonar.server.computation.measure.Measure;
+import org.sonar.server.computation.measure.MeasureRepository;
+import org.sonar.server.computation.metric.Metric;
+import org.sonar.server.computation.metric.MetricRepository;
+
+import static org.sonar.api.measures.CoreMetrics.COMMENT_LINES_KEY;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_BLOCKS_KEY;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_FILES_KEY;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_LINES_DENSITY_KEY;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_LINES_KEY;
+import static org.sonar.api.measures.CoreMetrics.LINES_KEY;
+import static org.sonar.api.measures.CoreMetrics.NCLOC_KEY;
+import static org.sonar.server.computation.component.ComponentVisitor.Order.POST_ORDER;
+import static org.sonar.server.computation.measure.Measure.newMeasureBuilder;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.CROSS_PROJECT_DUPLICATIONS;
+import static org.sonar.server.computation.step.StepData.MEASURES;
+import static org.sonar.server.computation.step.StepData.REPORT;
+
+/**
+ * Computes the measures of duplications of files from the duplications of the report and the cross project
+ * duplications, the latter being unknown to the scanner. Files keep the measures of the scanner when they are
+ * the same, otherwise the differences are added to the measures aggregated by the scanner on the parent components.
+ * <p/>
+ * Only the files having cross project duplications, and their ancestors, can have measures different from the ones
+ * of the scanner. Nothing is done when there are no cross project duplications.
+ */
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT, CROSS_PROJECT_DUPLICATIONS, MEASURES}, writes = MEASURES)
+public class DuplicationMeasuresStep implements ComputationStep {
+
+  private final TreeRootHolder treeRootHolder;
+  private final BatchReportReader reportReader;
+  private final CrossProjectDuplicationsRepository crossProjectDuplicationsRepository;
+  private final MetricRepository metricRepository;
+  private final MeasureRepository measureRepository;
+
+  public DuplicationMeasuresStep(TreeRootHolder treeRootHolder, BatchReportReader reportReader, CrossProjectDuplicationsRepository crossProjectDuplicationsRepository,
+    MetricRepository metricRepository, MeasureRepository measureRepository) {
+    this.treeRootHolder = treeRootHolder;
+    this.reportReader = reportReader;
+    this.crossProjectDuplicationsRepository = crossProjectDuplicationsRepository;
+    this.metricRepository = metricRepository;
+    this.measureRepository = measureRepository;
+  }
+
+  @Override
+  public void execute() {
+    if (crossProjectDuplicationsRepository.isEmpty()) {
+      return;
+    }
+    new DuplicationMeasuresVisitor().visit(treeRootHolder.getRoot());
+  }
+
+  @Override
+  public String getDescription() {
+    return "Compute duplication measures";
+  }
+
+  private class DuplicationMeasuresVisitor extends PathAwareVisitor<Delta> {
+    private final Metric blocksMetric;
+    private final Metric linesMetric;
+    private final Metric filesMetric;
+    private final Metric densityMetric;
+
+    public DuplicationMeasuresVisitor() {
+      super(Component.Type.FILE, POST_ORDER, new SimpleStackElementFactory<Delta>() {
+        @Override
+        public Delta createForAny(Component component) {
+          return new Delta();
+        }
+      });
+      this.blocksMetric = metricRepository.getByKey(DUPLICATED_BLOCKS_KEY);
+      this.linesMetric = metricRepository.getByKey(DUPLICATED_LINES_KEY);
+      this.filesMetric = metricRepository.getByKey(DUPLICATED_FILES_KEY);
+      this.densityMetric = metricRepository.getByKey(DUPLICATED_LINES_DENSITY_KEY);
+    }
+
+    @Override
+    protected void visitProject(Component project, Path<Delta> path) {
+      processNotFile(project, path);
+    }
+
+    @Override
+    protected void visitModule(Component module, Path<Delta> path) {
+      processNotFile(module, path);
+    }
+
+    @Override
+    protected void visitDirectory(Component directory, Path<Delta> path) {
+      processNotFile(directory, path);
+    }
+
+    @Override
+    protected void visitFile(Component file, Path<Delta> path) {
+      if (!crossProjectDuplicationsRepository.hasDuplications(file)) {
+        // measures of the scanner are already up-to-date
+        return;
+      }
+      List<BatchReport.Duplication> duplications = reportReader.readComponentDuplications(file.getRef());
+      List<BatchReport.Duplication> crossProjectDuplications = crossProjectDuplicationsRepository.getDuplications(file);
+
+      // same counts as the scanner, the blocks of the cross project duplications being counted only if they
+      // are not already blocks of the duplications inside the project
+      Set<Range> originBlocks = new HashSet<>();
+      Set<Integer> lines = new HashSet<>();
+      int blocks = 0;
+      for (BatchReport.Duplication duplication : duplications) {
+        originBlocks.add(duplication.getOriginPosition());
+        blocks += countBlocks(duplication, lines);
+      }
+      for (BatchReport.Duplication duplication : crossProjectDuplications) {
+        if (!originBlocks.contains(duplication.getOriginPosition())) {
+          blocks += countBlocks(duplication, lines);
+        }
+      }
+
+      Delta delta = path.current();
+      delta.blocks = set(file, blocksMetric, blocks);
+      delta.lines = set(file, linesMetric, lines.size());
+      delta.files = set(file, filesMetric, lines.isEmpty() ? 0 : 1);
+      if (delta.lines != 0) {
+        updateDensity(file);
+      }
+      aggregateToParent(path);
+    }
+
+    private void processNotFile(Component component, Path<Delta> path) {
+      Delta delta = path.current();
+      add(component, blocksMetric, delta.blocks);
+      add(component, linesMetric, delta.lines);
+      add(component, filesMetric, delta.files);
+      if (delta.lines != 0) {
+        updateDensity(component);
+      }
+      aggregateToParent(path);
+    }
+
+    private void aggregateToParent(Path<Delta> path) {
+      if (!path.isRoot()) {
+        path.parent().add(path.current());
+      }
+    }
+
+    /**
+     * @return the difference with the value computed by the scanner
+     */
+    private int set(Component component, Metric metric, int value) {
+      Optional<Measure> measure = measureRepository.getRawMeasure(component, metric);
+      if (!measure.isPresent()) {
+        if (value != 0) {
+          measureRepository.add(component, metric, newMeasureBuilder().create(value));
+        }
+        return value;
+      }
+      int delta = value - measure.get().getIntValue();
+      if (delta != 0) {
+        measureRepository.update(component, metric, newMeasureBuilder().create(value));
+      }
+      return delta;
+    }
+
+    private void add(Component component, Metric metric, int delta) {
+      if (delta != 0) {
+        Optional<Measure> measure = measureRepository.getRawMeasure(component, metric);
+        set(component, metric, delta + (measure.isPresent() ? measure.get().getIntValue() : 0));
+      }
+    }
+
+    /**
+     * Same computation as the scanner, based on the number of lines, or on the number of non commented lines of code
+     * and comment lines when the number of lines is not known.
+     */
+    private void updateDensity(Component component) {
+      int duplicatedLines = getIntValue(component, DUPLICATED_LINES_KEY);
+      double divisor = getIntValue(component, LINES_KEY);
+      if (!measureRepository.getRawMeasure(component, metricRepository.getByKey(LINES_KEY)).isPresent()) {
+        divisor = getIntValue(component, NCLOC_KEY) + getIntValue(component, COMMENT_LINES_KEY);
+      }
+      if (divisor > 0.0) {
+        Measure density = newMeasureBuilder().create(Math.min(100.0, 100.0 * duplicatedLines / divisor));
+        if (measureRepository.getRawMeasure(component, densityMetric).isPresent()) {
+          measureRepository.update(component, densityMetric, density);
+        } else {
+          measureRepository.add(component, densityMetric, density);
+        }
+      }
+    }
+
+    private int getIntValue(Component component, String metricKey) {
+      Optional<Measure> measure = measureRepository.getRawMeasure(component, metricRepository.getByKey(metricKey));
+      return measure.isPresent() ? measure.get().getIntValue() : 0;
+    }
+  }
+
+  /**
+   * Counts the blocks of the duplication that are in the file, and adds their lines to the given set
+   */
+  private static int countBlocks(BatchReport.Duplication duplication, Set<Integer> lines) {
+    addLines(duplication.getOriginPosition(), lines);
+    int blocks = 1;
+    for (BatchReport.Duplicate duplicate : duplication.getDuplicateList()) {
+      if (!duplicate.hasOtherFileRef() && !duplicate.hasOtherFileKey()) {
+        addLines(duplicate.getRange(), lines);
+        blocks++;
+      }
+    }
+    return blocks;
+  }
+
+  private static void addLines(Range range, Set<Integer> lines) {
+    for (int line = range.getStartLine(); line <= range.getEndLine(); line++) {
+      lines.add(line);
+    }
+  }
+
+  private static class Delta {
+    private int blocks = 0;
+    private int lines = 0;
+    private int files = 0;
+
+    void add(Delta child) {
+      this.blocks += child.blocks;
+      this.lines += child.lines;
+      this.files += child.files;
+    }
+  }
+}
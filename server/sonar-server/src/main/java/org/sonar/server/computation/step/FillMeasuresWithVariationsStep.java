@@ -22,15 +22,21 @@ package org.sonar.server.computation.step;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.measure.PastMeasureDto;
@@ -52,6 +58,8 @@ import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_
  * Set variations on all numeric measures found in the repository.
  * This step MUST be executed after all steps that create some measures
  * <p/>
+ * Past measures of all the periods are loaded in a single query.
+ * <p/>
  * Note that measures on developer are not handle yet.
  */
 public class FillMeasuresWithVariationsStep implements ComputationStep {
@@ -82,41 +90,87 @@ public class FillMeasuresWithVariationsStep implements ComputationStep {
 
   @Override
   public void execute() {
+    List<Period> periods = periodsHolder.getPeriods();
+    if (periods.isEmpty()) {
+      return;
+    }
+    Iterable<Metric> metrics = FluentIterable.from(metricRepository.getAll()).filter(NumericMetric.INSTANCE);
+    ComponentsByUuid components = new ComponentsByUuid();
+    components.visit(treeRootHolder.getRoot());
+
     DbSession dbSession = dbClient.openSession(false);
     try {
-      Iterable<Metric> metrics = FluentIterable.from(metricRepository.getAll()).filter(NumericMetric.INSTANCE);
-      new VariationMeasuresVisitor(dbSession, metrics).visit(treeRootHolder.getRoot());
+      VariationMeasuresHandler handler = new VariationMeasuresHandler(components.componentsByUuid, periods, metrics);
+      dbClient.measureDao().selectPastMeasuresByProjectSnapshotIds(dbSession, handler.periodsBySnapshotId.keySet(), handler);
+      handler.processCurrentComponent();
     } finally {
       dbSession.close();
     }
   }
 
-  private class VariationMeasuresVisitor extends DepthTraversalTypeAwareVisitor {
-
-    private final DbSession session;
-    private final Set<Integer> metricIds;
-    private final Map<String, Metric> metricByKeys;
+  private static class ComponentsByUuid extends DepthTraversalTypeAwareVisitor {
+    private final Map<String, Component> componentsByUuid = new HashMap<>();
 
-    public VariationMeasuresVisitor(DbSession session, Iterable<Metric> metrics) {
+    private ComponentsByUuid() {
       // measures on files are currently purged, so past measures are not available on files
       super(Component.Type.DIRECTORY, PRE_ORDER);
-      this.session = session;
-      this.metricIds = FluentIterable.from(metrics).transform(MetricDtoToMetricId.INSTANCE).toSet();
-      this.metricByKeys = FluentIterable.from(metrics).uniqueIndex(MetricToKey.INSTANCE);
     }
 
     @Override
     public void visitAny(Component component) {
-      MeasuresWithVariationRepository measuresWithVariationRepository = computeMeasuresWithVariations(component);
-      processMeasuresWithVariation(component, measuresWithVariationRepository);
+      componentsByUuid.put(component.getUuid(), component);
+    }
+  }
+
+  /**
+   * Past measures of all the components are streamed in a single query, grouped by component. The past measures
+   * of the component being read are kept in memory until the first measure of the next component is read.
+   */
+  private class VariationMeasuresHandler implements ResultHandler {
+
+    private final Map<String, Component> componentsByUuid;
+    private final Multimap<Long, Period> periodsBySnapshotId = ArrayListMultimap.create();
+    private final Map<Integer, Metric> metricsById;
+    private final Map<String, Metric> metricByKeys;
+
+    private String currentComponentUuid = null;
+    private final List<PastMeasureDto> currentPastMeasures = new ArrayList<>();
+
+    public VariationMeasuresHandler(Map<String, Component> componentsByUuid, List<Period> periods, Iterable<Metric> metrics) {
+      this.componentsByUuid = componentsByUuid;
+      for (Period period : periods) {
+        periodsBySnapshotId.put(period.getSnapshotId(), period);
+      }
+      this.metricsById = FluentIterable.from(metrics).uniqueIndex(MetricDtoToMetricId.INSTANCE);
+      this.metricByKeys = FluentIterable.from(metrics).uniqueIndex(MetricToKey.INSTANCE);
+    }
+
+    @Override
+    public void handleResult(ResultContext context) {
+      PastMeasureDto pastMeasure = (PastMeasureDto) context.getResultObject();
+      if (!pastMeasure.getComponentUuid().equals(currentComponentUuid)) {
+        processCurrentComponent();
+        currentComponentUuid = pastMeasure.getComponentUuid();
+      }
+      if (metricsById.containsKey(pastMeasure.getMetricId())) {
+        currentPastMeasures.add(pastMeasure);
+      }
+    }
+
+    private void processCurrentComponent() {
+      Component component = currentComponentUuid == null ? null : componentsByUuid.get(currentComponentUuid);
+      if (component != null && !currentPastMeasures.isEmpty()) {
+        MeasuresWithVariationRepository measuresWithVariationRepository = computeMeasuresWithVariations(component);
+        processMeasuresWithVariation(component, measuresWithVariationRepository);
+      }
+      currentPastMeasures.clear();
     }
 
     private MeasuresWithVariationRepository computeMeasuresWithVariations(Component component) {
       MeasuresWithVariationRepository measuresWithVariationRepository = new MeasuresWithVariationRepository();
-      for (Period period : periodsHolder.getPeriods()) {
-        List<PastMeasureDto> pastMeasures = dbClient.measureDao().selectByComponentUuidAndProjectSnapshotIdAndMetricIds(session, component.getUuid(), period.getSnapshotId(),
-          metricIds);
-        setVariationMeasures(component, pastMeasures, period.getIndex(), measuresWithVariationRepository);
+      ListMultimap<Long, PastMeasureDto> pastMeasuresBySnapshotId = Multimaps.index(currentPastMeasures, PastMeasureToProjectSnapshotId.INSTANCE);
+      for (Map.Entry<Long, Period> entry : periodsBySnapshotId.entries()) {
+        setVariationMeasures(component, pastMeasuresBySnapshotId.get(entry.getKey()), entry.getValue().getIndex(), measuresWithVariationRepository);
       }
       return measuresWithVariationRepository;
     }
@@ -137,6 +191,9 @@ public class FillMeasuresWithVariationsStep implements ComputationStep {
     }
 
     private void setVariationMeasures(Component component, List<PastMeasureDto> pastMeasures, int period, MeasuresWithVariationRepository measuresWithVariationRepository) {
+      if (pastMeasures.isEmpty()) {
+        return;
+      }
       Map<MeasureKey, PastMeasureDto> pastMeasuresByMeasureKey = FluentIterable.from(pastMeasures).uniqueIndex(pastMeasureToMeasureKey);
       for (Map.Entry<String, Measure> entry : measureRepository.getRawMeasures(component).entries()) {
         String metricKey = entry.getKey();
@@ -222,6 +279,16 @@ public class FillMeasuresWithVariationsStep implements ComputationStep {
     }
   }
 
+  private enum PastMeasureToProjectSnapshotId implements Function<PastMeasureDto, Long> {
+    INSTANCE;
+
+    @Nullable
+    @Override
+    public Long apply(@Nonnull PastMeasureDto input) {
+      return input.getProjectSnapshotId();
+    }
+  }
+
   private enum MetricToKey implements Function<Metric, String> {
     INSTANCE;
 
@@ -22,6 +22,10 @@ package org.sonar.server.computation.step;
 
 import org.sonar.server.issue.index.IssueIndexer;
 
+import static org.sonar.server.computation.step.StepData.DB_ISSUES;
+import static org.sonar.server.computation.step.StepData.ES_ISSUES;
+
+@StepDataFlow(reads = DB_ISSUES, writes = ES_ISSUES)
 public class IndexIssuesStep implements ComputationStep {
 
   private final IssueIndexer indexer;
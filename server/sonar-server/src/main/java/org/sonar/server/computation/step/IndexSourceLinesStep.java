@@ -22,6 +22,11 @@ package org.sonar.server.computation.step;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.source.index.SourceLineIndexer;
 
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_FILE_SOURCES;
+import static org.sonar.server.computation.step.StepData.ES_SOURCE_LINES;
+
+@StepDataFlow(reads = {COMPONENT_TREE, DB_FILE_SOURCES}, writes = ES_SOURCE_LINES)
 public class IndexSourceLinesStep implements ComputationStep {
 
   private final SourceLineIndexer indexer;
@@ -23,6 +23,11 @@ package org.sonar.server.computation.step;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.test.index.TestIndexer;
 
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_TEST_SOURCES;
+import static org.sonar.server.computation.step.StepData.ES_TESTS;
+
+@StepDataFlow(reads = {COMPONENT_TREE, DB_TEST_SOURCES}, writes = ES_TESTS)
 public class IndexTestsStep implements ComputationStep {
 
   private final TestIndexer indexer;
@@ -0,0 +1,91 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import org.sonar.db.BulkInserter;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.MyBatis;
+import org.sonar.db.duplication.DuplicationUnitDto;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DbIdsRepository;
+import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
+import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.duplication.CpdTextBlocks;
+
+import static org.sonar.server.computation.component.Component.Type.FILE;
+import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_DUPLICATIONS_INDEX;
+import static org.sonar.server.computation.step.StepData.DB_IDS;
+import static org.sonar.server.computation.step.StepData.REPORT;
+
+/**
+ * Persists the blocks of copy-paste detection of the report into table DUPLICATIONS_INDEX, so that
+ * the analyses of the other projects detect their duplications with this project. Blocks of the
+ * previous snapshots are ignored by {@link DetectCrossProjectDuplicationsStep} and removed by the purge.
+ */
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT, DB_IDS}, writes = DB_DUPLICATIONS_INDEX)
+public class PersistDuplicationIndexStep implements ComputationStep {
+
+  private final DbClient dbClient;
+  private final DbIdsRepository dbIdsRepository;
+  private final TreeRootHolder treeRootHolder;
+  private final BatchReportReader reportReader;
+
+  public PersistDuplicationIndexStep(DbClient dbClient, DbIdsRepository dbIdsRepository, TreeRootHolder treeRootHolder, BatchReportReader reportReader) {
+    this.dbClient = dbClient;
+    this.dbIdsRepository = dbIdsRepository;
+    this.treeRootHolder = treeRootHolder;
+    this.reportReader = reportReader;
+  }
+
+  @Override
+  public void execute() {
+    DbSession session = dbClient.openSession(true);
+    final BulkInserter inserter = dbClient.duplicationDao().newBulkInserter(session);
+    try {
+      final int projectSnapshotId = (int) dbIdsRepository.getSnapshotId(treeRootHolder.getRoot());
+      new DepthTraversalTypeAwareVisitor(FILE, PRE_ORDER) {
+        @Override
+        public void visitFile(Component file) {
+          int snapshotId = (int) dbIdsRepository.getSnapshotId(file);
+          for (DuplicationUnitDto block : CpdTextBlocks.read(reportReader, file)) {
+            block.setProjectSnapshotId(projectSnapshotId);
+            block.setSnapshotId(snapshotId);
+            dbClient.duplicationDao().insert(inserter, block);
+          }
+        }
+      }.visit(treeRootHolder.getRoot());
+      inserter.flush();
+      session.commit(true);
+    } finally {
+      // releases the JDBC statement before the session is closed. Pending rows are discarded on failure.
+      inserter.close();
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  @Override
+  public String getDescription() {
+    return "Persist duplication index";
+  }
+}
@@ -34,25 +34,36 @@ import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
 import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
+import org.sonar.server.computation.duplication.FileDuplications;
 import org.sonar.server.db.DbClient;
 
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.CROSS_PROJECT_DUPLICATIONS;
+import static org.sonar.server.computation.step.StepData.DB_IDS;
+import static org.sonar.server.computation.step.StepData.DB_MEASURES;
+import static org.sonar.server.computation.step.StepData.REPORT;
 
 /**
  * Persist duplications into
  */
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT, DB_IDS, CROSS_PROJECT_DUPLICATIONS}, writes = DB_MEASURES)
 public class PersistDuplicationsStep implements ComputationStep {
 
   private final DbClient dbClient;
   private final DbIdsRepository dbIdsRepository;
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
+  private final CrossProjectDuplicationsRepository crossProjectDuplicationsRepository;
 
-  public PersistDuplicationsStep(DbClient dbClient, DbIdsRepository dbIdsRepository, TreeRootHolder treeRootHolder, BatchReportReader reportReader) {
+  public PersistDuplicationsStep(DbClient dbClient, DbIdsRepository dbIdsRepository, TreeRootHolder treeRootHolder, BatchReportReader reportReader,
+    CrossProjectDuplicationsRepository crossProjectDuplicationsRepository) {
     this.dbClient = dbClient;
     this.dbIdsRepository = dbIdsRepository;
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
+    this.crossProjectDuplicationsRepository = crossProjectDuplicationsRepository;
   }
 
   @Override
@@ -84,9 +95,9 @@ public class PersistDuplicationsStep implements ComputationStep {
     }
 
     private void visitComponent(Component component) {
-      List<BatchReport.Duplication> duplications = reportReader.readComponentDuplications(component.getRef());
+      List<BatchReport.Duplication> duplications = FileDuplications.read(reportReader, crossProjectDuplicationsRepository, component);
       if (!duplications.isEmpty()) {
-        saveDuplications( component, duplications);
+        saveDuplications(component, duplications);
       }
     }
 
@@ -36,7 +36,13 @@ import org.sonar.server.computation.event.EventRepository;
 import org.sonar.db.DbClient;
 
 import static com.google.common.collect.Iterables.transform;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_EVENTS;
+import static org.sonar.server.computation.step.StepData.DB_IDS;
+import static org.sonar.server.computation.step.StepData.EVENTS;
+import static org.sonar.server.computation.step.StepData.REPORT;
 
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT, DB_IDS, EVENTS}, writes = DB_EVENTS)
 public class PersistEventsStep implements ComputationStep {
 
   private final DbClient dbClient;
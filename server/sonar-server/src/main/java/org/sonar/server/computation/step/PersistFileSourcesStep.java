@@ -17,17 +17,32 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-
 package org.sonar.server.computation.step;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.System2;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.db.DbSession;
@@ -38,40 +53,87 @@ import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DepthTraversalTypeAwareVisitor;
 import org.sonar.server.computation.component.TreeRootHolder;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
+import org.sonar.server.computation.duplication.FileDuplications;
 import org.sonar.server.computation.source.ComputeFileSourceData;
 import org.sonar.server.computation.source.CoverageLineReader;
 import org.sonar.server.computation.source.DuplicationLineReader;
 import org.sonar.server.computation.source.HighlightingLineReader;
 import org.sonar.server.computation.source.LineReader;
 import org.sonar.server.computation.source.ScmLineReader;
+import org.sonar.server.computation.source.SourceReportHash;
 import org.sonar.server.computation.source.SymbolsLineReader;
 import org.sonar.db.DbClient;
+import org.sonar.server.source.SourceLinesCache;
 import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.util.CloseableIterator;
 
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.CROSS_PROJECT_DUPLICATIONS;
+import static org.sonar.server.computation.step.StepData.DB_FILE_SOURCES;
+import static org.sonar.server.computation.step.StepData.REPORT;
 
+/**
+ * Sources of files are computed by a pool of {@link #THREADS_PROPERTY} threads, whereas they are persisted by
+ * the current thread only. The number of files that are computed but not persisted yet is bounded, so that
+ * memory does not depend on the size of project.
+ */
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT, CROSS_PROJECT_DUPLICATIONS}, writes = DB_FILE_SOURCES)
 public class PersistFileSourcesStep implements ComputationStep {
 
+  public static final String THREADS_PROPERTY = "sonar.ce.fileSources.threads";
+
+  private static final String THREAD_NAME_FORMAT = "file-sources-%d";
+  private static final int MAX_DEFAULT_THREADS = 4;
+  private static final int PENDING_FILES_PER_THREAD = 4;
+  private static final int FILES_PER_COMMIT = 100;
+
   private final DbClient dbClient;
   private final System2 system2;
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
+  private final CrossProjectDuplicationsRepository crossProjectDuplicationsRepository;
+  private final SourceLinesCache linesCache;
+  private final int threads;
 
-  public PersistFileSourcesStep(DbClient dbClient, System2 system2, TreeRootHolder treeRootHolder, BatchReportReader reportReader) {
+  public PersistFileSourcesStep(DbClient dbClient, System2 system2, TreeRootHolder treeRootHolder, BatchReportReader reportReader,
+    CrossProjectDuplicationsRepository crossProjectDuplicationsRepository, SourceLinesCache linesCache, Settings settings) {
     this.dbClient = dbClient;
     this.system2 = system2;
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
+    this.crossProjectDuplicationsRepository = crossProjectDuplicationsRepository;
+    this.linesCache = linesCache;
+    this.threads = threads(settings);
+  }
+
+  @VisibleForTesting
+  static int threads(Settings settings) {
+    if (!settings.hasKey(THREADS_PROPERTY)) {
+      return Math.min(MAX_DEFAULT_THREADS, Runtime.getRuntime().availableProcessors());
+    }
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads <= 0) {
+      throw MessageException.of(String.format("Property %s must be strictly positive. Got %d", THREADS_PROPERTY, threads));
+    }
+    return threads;
   }
 
   @Override
   public void execute() {
     // Don't use batch insert for file_sources since keeping all data in memory can produce OOM for big files
     DbSession session = dbClient.openSession(false);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat(THREAD_NAME_FORMAT).setDaemon(true).build());
     try {
-      new FileSourceVisitor(session).visit(treeRootHolder.getRoot());
+      FileSourceVisitor visitor = new FileSourceVisitor(session, executorService);
+      visitor.visit(treeRootHolder.getRoot());
+      visitor.persistPendingFiles(0);
+      session.commit();
+      // decorated lines of the previous version of updated files are not needed anymore
+      linesCache.invalidate(visitor.updatedFileUuids);
     } finally {
+      executorService.shutdownNow();
       MyBatis.closeQuietly(session);
     }
   }
@@ -79,13 +141,20 @@ public class PersistFileSourcesStep implements ComputationStep {
   private class FileSourceVisitor extends DepthTraversalTypeAwareVisitor {
 
     private final DbSession session;
+    private final ExecutorService executorService;
+    // files are persisted in the order of traversal
+    private final Deque<Future<FileSourceDto>> pendingFiles = new ArrayDeque<>();
+    private int uncommittedFiles = 0;
+    private final Set<String> updatedFileUuids = new HashSet<>();
 
-    private Map<String, FileSourceDto> previousFileSourcesByUuid = new HashMap<>();
+    // only read by the computing threads once loaded
+    private final Map<String, FileSourceDto> previousFileSourcesByUuid = new HashMap<>();
     private String projectUuid;
 
-    private FileSourceVisitor(DbSession session) {
+    private FileSourceVisitor(DbSession session, ExecutorService executorService) {
       super(Component.Type.FILE, PRE_ORDER);
       this.session = session;
+      this.executorService = executorService;
     }
 
     @Override
@@ -102,15 +171,61 @@ public class PersistFileSourcesStep implements ComputationStep {
     }
 
     @Override
-    public void visitFile(Component file) {
+    public void visitFile(final Component file) {
+      final FileSourceDto previousDto = previousFileSourcesByUuid.get(file.getUuid());
+      pendingFiles.addLast(executorService.submit(new Callable<FileSourceDto>() {
+        @Override
+        public FileSourceDto call() {
+          return computeSource(file, previousDto);
+        }
+      }));
+      // back-pressure: wait for the oldest files to be persisted before computing new ones
+      persistPendingFiles(threads * PENDING_FILES_PER_THREAD);
+    }
+
+    private void persistPendingFiles(int maxPendingFiles) {
+      while (pendingFiles.size() > maxPendingFiles) {
+        FileSourceDto dto = waitFor(pendingFiles.removeFirst());
+        if (dto != null) {
+          persist(dto);
+        }
+      }
+    }
+
+    private void persist(FileSourceDto dto) {
+      if (dto.getId() == null) {
+        dbClient.fileSourceDao().insert(session, dto);
+      } else {
+        dbClient.fileSourceDao().update(session, dto);
+        updatedFileUuids.add(dto.getFileUuid());
+      }
+      uncommittedFiles++;
+      if (uncommittedFiles >= FILES_PER_COMMIT) {
+        session.commit();
+        uncommittedFiles = 0;
+      }
+    }
+
+    /**
+     * Executed by the pool of threads
+     *
+     * @return the row to be inserted or updated, or null if sources are unchanged
+     */
+    @CheckForNull
+    private FileSourceDto computeSource(Component file, @Nullable FileSourceDto previousDto) {
       int fileRef = file.getRef();
       BatchReport.Component component = reportReader.readComponent(fileRef);
+      String reportHash = SourceReportHash.compute(reportReader, fileRef, component.getLines(), crossProjectDuplicationsRepository.getDuplications(file));
+      if (previousDto != null && reportHash.equals(previousDto.getReportHash())) {
+        // same report data as during previous analysis, so sources are unchanged
+        return null;
+      }
       CloseableIterator<String> linesIterator = reportReader.readFileSource(fileRef);
-      LineReaders lineReaders = new LineReaders(reportReader, fileRef);
+      LineReaders lineReaders = new LineReaders(reportReader, fileRef, FileDuplications.read(reportReader, crossProjectDuplicationsRepository, file));
       try {
         ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(), component.getLines());
         ComputeFileSourceData.Data fileSourceData = computeFileSourceData.compute();
-        persistSource(fileSourceData, file.getUuid());
+        return toDto(fileSourceData, file.getUuid(), reportHash, previousDto);
       } catch (Exception e) {
         throw new IllegalStateException(String.format("Cannot persist sources of %s", file.getKey()), e);
       } finally {
@@ -119,46 +234,58 @@ public class PersistFileSourcesStep implements ComputationStep {
       }
     }
 
-    private void persistSource(ComputeFileSourceData.Data fileSourceData, String componentUuid) {
+    @CheckForNull
+    private FileSourceDto toDto(ComputeFileSourceData.Data fileSourceData, String componentUuid, String reportHash, @Nullable FileSourceDto previousDto) {
       FileSourceDb.Data fileData = fileSourceData.getFileSourceData();
 
       byte[] data = FileSourceDto.encodeSourceData(fileData);
       String dataHash = DigestUtils.md5Hex(data);
       String srcHash = fileSourceData.getSrcHash();
       String lineHashes = fileSourceData.getLineHashes();
-      FileSourceDto previousDto = previousFileSourcesByUuid.get(componentUuid);
 
       if (previousDto == null) {
-        FileSourceDto dto = new FileSourceDto()
+        return new FileSourceDto()
           .setProjectUuid(projectUuid)
           .setFileUuid(componentUuid)
           .setDataType(Type.SOURCE)
           .setBinaryData(data)
           .setSrcHash(srcHash)
           .setDataHash(dataHash)
+          .setReportHash(reportHash)
           .setLineHashes(lineHashes)
           .setCreatedAt(system2.now())
           .setUpdatedAt(system2.now());
-        dbClient.fileSourceDao().insert(session, dto);
-        session.commit();
-      } else {
-        // Update only if data_hash has changed or if src_hash is missing (progressive migration)
-        boolean binaryDataUpdated = !dataHash.equals(previousDto.getDataHash());
-        boolean srcHashUpdated = !srcHash.equals(previousDto.getSrcHash());
-        if (binaryDataUpdated || srcHashUpdated) {
-          previousDto
-            .setBinaryData(data)
-            .setDataHash(dataHash)
-            .setSrcHash(srcHash)
-            .setLineHashes(lineHashes);
-          // Optimization only change updated at when updating binary data to avoid unnecessary indexation by E/S
-          if (binaryDataUpdated) {
-            previousDto.setUpdatedAt(system2.now());
-          }
-          dbClient.fileSourceDao().update(previousDto);
-          session.commit();
+      }
+      // Update only if data_hash has changed or if src_hash or report_hash is missing (progressive migration)
+      boolean binaryDataUpdated = !dataHash.equals(previousDto.getDataHash());
+      boolean srcHashUpdated = !srcHash.equals(previousDto.getSrcHash());
+      boolean reportHashUpdated = !reportHash.equals(previousDto.getReportHash());
+      if (binaryDataUpdated || srcHashUpdated || reportHashUpdated) {
+        previousDto
+          .setBinaryData(data)
+          .setDataHash(dataHash)
+          .setSrcHash(srcHash)
+          .setReportHash(reportHash)
+          .setLineHashes(lineHashes);
+        // Optimization only change updated at when updating binary data to avoid unnecessary indexation by E/S
+        if (binaryDataUpdated) {
+          previousDto.setUpdatedAt(system2.now());
         }
+        return previousDto;
       }
+      return null;
+    }
+  }
+
+  @CheckForNull
+  private static FileSourceDto waitFor(Future<FileSourceDto> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while persisting file sources", e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
     }
   }
 
@@ -166,12 +293,11 @@ public class PersistFileSourcesStep implements ComputationStep {
     private final List<LineReader> readers = new ArrayList<>();
     private final List<CloseableIterator<?>> iterators = new ArrayList<>();
 
-    LineReaders(BatchReportReader reportReader, int componentRef) {
+    LineReaders(BatchReportReader reportReader, int componentRef, List<BatchReport.Duplication> duplications) {
       CloseableIterator<BatchReport.Coverage> coverageReportIterator = reportReader.readComponentCoverage(componentRef);
       BatchReport.Changesets scmReport = reportReader.readChangesets(componentRef);
       CloseableIterator<BatchReport.SyntaxHighlighting> highlightingIterator = reportReader.readComponentSyntaxHighlighting(componentRef);
       List<BatchReport.Symbols.Symbol> symbols = reportReader.readComponentSymbols(componentRef);
-      List<BatchReport.Duplication> duplications = reportReader.readComponentDuplications(componentRef);
 
       if (coverageReportIterator != null) {
         iterators.add(coverageReportIterator);
@@ -25,10 +25,10 @@ import org.sonar.core.issue.DefaultIssue;
 import org.sonar.core.issue.DefaultIssueComment;
 import org.sonar.core.issue.FieldDiffs;
 import org.sonar.db.issue.IssueChangeDto;
-import org.sonar.db.issue.IssueChangeMapper;
 import org.sonar.db.issue.IssueDto;
 import org.sonar.db.issue.IssueMapper;
 import org.sonar.server.computation.issue.UpdateConflictResolver;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 import org.sonar.server.computation.issue.IssueCache;
@@ -36,6 +36,10 @@ import org.sonar.server.computation.issue.RuleRepository;
 import org.sonar.db.DbClient;
 import org.sonar.server.util.CloseableIterator;
 
+import static org.sonar.server.computation.step.StepData.DB_ISSUES;
+import static org.sonar.server.computation.step.StepData.ISSUES;
+
+@StepDataFlow(reads = ISSUES, writes = DB_ISSUES)
 public class PersistIssuesStep implements ComputationStep {
 
   private final DbClient dbClient;
@@ -57,7 +61,8 @@ public class PersistIssuesStep implements ComputationStep {
   public void execute() {
     DbSession session = dbClient.openSession(true);
     IssueMapper mapper = session.getMapper(IssueMapper.class);
-    IssueChangeMapper changeMapper = session.getMapper(IssueChangeMapper.class);
+    BulkInserter issueInserter = dbClient.issueDao().newBulkInserter(session);
+    BulkInserter changeInserter = dbClient.issueChangeDao().newBulkInserter(session);
 
     CloseableIterator<DefaultIssue> issues = issueCache.traverse();
     try {
@@ -67,7 +72,7 @@ public class PersistIssuesStep implements ComputationStep {
         if (issue.isNew()) {
           Integer ruleId = ruleRepository.getByKey(issue.ruleKey()).getId();
           IssueDto dto = IssueDto.toDtoForComputationInsert(issue, ruleId, system2.now());
-          mapper.insert(dto);
+          dbClient.issueDao().insert(issueInserter, dto);
           saved = true;
         } else if (issue.isChanged()) {
           IssueDto dto = IssueDto.toDtoForUpdate(issue, system2.now());
@@ -80,29 +85,33 @@ public class PersistIssuesStep implements ComputationStep {
           saved = true;
         }
         if (saved) {
-          insertChanges(changeMapper, issue);
+          insertChanges(changeInserter, issue);
         }
       }
+      issueInserter.flush();
+      changeInserter.flush();
       session.flushStatements();
-      session.commit();
+      session.commit(true);
     } finally {
+      issueInserter.close();
+      changeInserter.close();
       MyBatis.closeQuietly(session);
       issues.close();
     }
   }
 
-  private static void insertChanges(IssueChangeMapper mapper, DefaultIssue issue) {
+  private void insertChanges(BulkInserter inserter, DefaultIssue issue) {
     for (IssueComment comment : issue.comments()) {
       DefaultIssueComment c = (DefaultIssueComment) comment;
       if (c.isNew()) {
         IssueChangeDto changeDto = IssueChangeDto.of(c);
-        mapper.insert(changeDto);
+        dbClient.issueChangeDao().insert(inserter, changeDto);
       }
     }
     FieldDiffs diffs = issue.currentChange();
     if (!issue.isNew() && diffs != null) {
       IssueChangeDto changeDto = IssueChangeDto.of(issue.key(), diffs);
-      mapper.insert(changeDto);
+      dbClient.issueChangeDao().insert(inserter, changeDto);
     }
   }
 
@@ -30,6 +30,7 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.db.measure.MeasureDto;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.DbSession;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DbIdsRepository;
@@ -45,7 +46,12 @@ import org.sonar.db.DbClient;
 
 import static com.google.common.collect.FluentIterable.from;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_IDS;
+import static org.sonar.server.computation.step.StepData.DB_MEASURES;
+import static org.sonar.server.computation.step.StepData.MEASURES;
 
+@StepDataFlow(reads = {COMPONENT_TREE, DB_IDS, MEASURES}, writes = DB_MEASURES)
 public class PersistMeasuresStep implements ComputationStep {
 
   /**
@@ -83,21 +89,24 @@ public class PersistMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    DbSession dbSession = dbClient.openSession(true);
+    DbSession dbSession = dbClient.openSession(false);
+    BulkInserter inserter = dbClient.measureDao().newBulkInserter(dbSession);
     try {
-      new MeasureVisitor(dbSession).visit(treeRootHolder.getRoot());
-      dbSession.commit();
+      new MeasureVisitor(inserter).visit(treeRootHolder.getRoot());
+      inserter.flush();
+      dbSession.commit(true);
     } finally {
+      inserter.close();
       dbSession.close();
     }
   }
 
   private class MeasureVisitor extends DepthTraversalTypeAwareVisitor {
-    private final DbSession session;
+    private final BulkInserter inserter;
 
-    private MeasureVisitor(DbSession session) {
+    private MeasureVisitor(BulkInserter inserter) {
       super(Component.Type.FILE, PRE_ORDER);
-      this.session = session;
+      this.inserter = inserter;
     }
 
     @Override
@@ -123,7 +132,7 @@ public class PersistMeasuresStep implements ComputationStep {
         Predicate<Measure> notBestValueOptimized = Predicates.not(BestValueOptimization.from(metric, component));
         for (Measure measure : from(measures.getValue()).filter(NonEmptyMeasure.INSTANCE).filter(notBestValueOptimized)) {
           MeasureDto measureDto = MeasureToMeasureDto.INSTANCE.toMeasureDto(measure, metric, componentId, snapshotId);
-          dbClient.measureDao().insert(session, measureDto);
+          dbClient.measureDao().insert(inserter, measureDto);
         }
       }
     }
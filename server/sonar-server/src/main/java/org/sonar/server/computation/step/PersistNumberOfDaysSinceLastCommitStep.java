@@ -40,7 +40,13 @@ import org.sonar.server.source.index.SourceLineIndex;
 
 import static com.google.common.base.Objects.firstNonNull;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_IDS;
+import static org.sonar.server.computation.step.StepData.DB_MEASURES;
+import static org.sonar.server.computation.step.StepData.ES_SOURCE_LINES;
+import static org.sonar.server.computation.step.StepData.REPORT;
 
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT, DB_IDS, ES_SOURCE_LINES}, writes = DB_MEASURES)
 public class PersistNumberOfDaysSinceLastCommitStep implements ComputationStep {
 
   private static final long MILLISECONDS_PER_DAY = 1000 * 60 * 60 * 24L;
@@ -42,10 +42,14 @@ import org.sonar.db.DbClient;
 
 import static com.google.common.collect.Sets.newHashSet;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_PROJECT_LINKS;
+import static org.sonar.server.computation.step.StepData.REPORT;
 
 /**
  * Persist project and module links
  */
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT}, writes = DB_PROJECT_LINKS)
 public class PersistProjectLinksStep implements ComputationStep {
 
   private final DbClient dbClient;
@@ -53,6 +53,11 @@ import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.source.db.FileSourceDb.Test.TestStatus;
 import org.sonar.server.util.CloseableIterator;
 
+import static org.sonar.server.computation.step.StepData.COMPONENT_TREE;
+import static org.sonar.server.computation.step.StepData.DB_TEST_SOURCES;
+import static org.sonar.server.computation.step.StepData.REPORT;
+
+@StepDataFlow(reads = {COMPONENT_TREE, REPORT}, writes = DB_TEST_SOURCES)
 public class PersistTestsStep implements ComputationStep {
 
   private static final Logger LOG = Loggers.get(PersistTestsStep.class);
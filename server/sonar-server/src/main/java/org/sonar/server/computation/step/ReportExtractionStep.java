@@ -27,12 +27,18 @@ import org.sonar.api.utils.ZipUtils;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
+import org.sonar.batch.protocol.output.IndexedReport;
+import org.sonar.batch.protocol.output.ZippedReport;
 import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.computation.batch.MutableBatchReportDirectoryHolder;
 
 /**
  * Extracts the content zip file of the {@link ReportQueue.Item} to a temp directory and adds a {@link File}
  * representing that temp directory to the {@link MutableBatchReportDirectoryHolder}.
+ * <p/>
+ * Reports stored in a single indexed file (see {@link IndexedReport}) and zips of report directory (see {@link ZippedReport})
+ * are not extracted, as their entries are read directly from the stored file. The file itself is added to the holder,
+ * so that metadata and components are available to the next steps without delay.
  */
 public class ReportExtractionStep implements ComputationStep {
   private static final Logger LOG = Loggers.get(ReportExtractionStep.class);
@@ -49,6 +55,11 @@ public class ReportExtractionStep implements ComputationStep {
 
   @Override
   public void execute() {
+    if (IndexedReport.isIndexedReport(item.zipFile) || ZippedReport.isZippedReport(item.zipFile)) {
+      LOG.debug("Report is read without being extracted | project={}", item.dto.getProjectKey());
+      reportDirectoryHolder.setDirectory(item.zipFile);
+      return;
+    }
     File dir = tempFolder.newDir();
     try {
       Profiler profiler = Profiler.createIfDebug(LOG).start();
@@ -0,0 +1,113 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+/**
+ * Data read or written by the steps of the Compute Engine. It is used to deduce which steps
+ * are independent and can be executed concurrently.
+ *
+ * @see StepDataFlow
+ */
+public enum StepData {
+  /**
+   * The analysis report being processed
+   */
+  REPORT,
+
+  /**
+   * {@link org.sonar.server.computation.component.TreeRootHolder}
+   */
+  COMPONENT_TREE,
+
+  /**
+   * {@link org.sonar.server.computation.component.DbIdsRepository}
+   */
+  DB_IDS,
+
+  /**
+   * {@link org.sonar.server.computation.event.EventRepository}
+   */
+  EVENTS,
+
+  /**
+   * {@link org.sonar.server.computation.issue.IssueCache}
+   */
+  ISSUES,
+
+  /**
+   * {@link org.sonar.server.computation.measure.MeasureRepository}
+   */
+  MEASURES,
+
+  /**
+   * {@link org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository}
+   */
+  CROSS_PROJECT_DUPLICATIONS,
+
+  /**
+   * Table EVENTS
+   */
+  DB_EVENTS,
+
+  /**
+   * Tables ISSUES and ISSUE_CHANGES
+   */
+  DB_ISSUES,
+
+  /**
+   * Table PROJECT_MEASURES
+   */
+  DB_MEASURES,
+
+  /**
+   * Table PROJECT_LINKS
+   */
+  DB_PROJECT_LINKS,
+
+  /**
+   * Table DUPLICATIONS_INDEX
+   */
+  DB_DUPLICATIONS_INDEX,
+
+  /**
+   * Rows of table FILE_SOURCES of type SOURCE
+   */
+  DB_FILE_SOURCES,
+
+  /**
+   * Rows of table FILE_SOURCES of type TEST
+   */
+  DB_TEST_SOURCES,
+
+  /**
+   * Elasticsearch index of issues, except authorization
+   */
+  ES_ISSUES,
+
+  /**
+   * Elasticsearch index of source lines
+   */
+  ES_SOURCE_LINES,
+
+  /**
+   * Elasticsearch index of tests
+   */
+  ES_TESTS
+}
@@ -20,12 +20,14 @@
 package org.sonar.server.es;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.picocontainer.Startable;
 import org.sonar.api.server.ServerSide;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -39,6 +41,18 @@ public abstract class BaseIndexer implements Startable {
   private final String dateFieldName;
   protected final EsClient esClient;
   private volatile long lastUpdatedAt = -1L;
+  private final IndexerTask incrementalTask = new IndexerTask() {
+    @Override
+    public long index(long lastUpdatedAt) {
+      return doIndex(lastUpdatedAt);
+    }
+  };
+
+  /**
+   * Request waiting for the executor, if any. Requests received meanwhile are merged into it,
+   * so that concurrent analyses do not trigger one indexing each. Guarded by "this".
+   */
+  private PendingRequest pendingRequest = null;
 
   /**
    * Indexers are disabled during server startup, to avoid too many consecutive refreshes of the same index
@@ -61,24 +75,13 @@ public abstract class BaseIndexer implements Startable {
       threadKeepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
   }
 
-  public void index(final IndexerTask task) {
+  /**
+   * Executes the task and waits for its completion.
+   */
+  public void index(IndexerTask task) {
     if (enabled) {
-      final long requestedAt = System.currentTimeMillis();
-      Future submit = executor.submit(new Runnable() {
-        @Override
-        public void run() {
-          if (lastUpdatedAt == -1L) {
-            lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
-          }
-          if (requestedAt > lastUpdatedAt) {
-            long l = task.index(lastUpdatedAt);
-            // l can be 0 if no documents were indexed
-            lastUpdatedAt = Math.max(l, lastUpdatedAt);
-          }
-        }
-      });
       try {
-        Uninterruptibles.getUninterruptibly(submit);
+        Uninterruptibles.getUninterruptibly(submit(task));
       } catch (ExecutionException e) {
         Throwables.propagate(e);
       }
@@ -86,14 +89,49 @@ public abstract class BaseIndexer implements Startable {
   }
 
   public void index() {
-    index(new IndexerTask() {
-      @Override
-      public long index(long lastUpdatedAt) {
-        return doIndex(lastUpdatedAt);
-      }
-    });
+    index(incrementalTask);
+  }
+
+  /**
+   * Same as {@link #index()} but does not wait for completion. Indexing of the different indices
+   * can then be executed in parallel.
+   */
+  public Future<?> indexAsync() {
+    if (enabled) {
+      return submit(incrementalTask);
+    }
+    return Futures.immediateFuture(null);
+  }
+
+  /**
+   * Tasks are executed sequentially. If a task is already waiting for execution, then the new task
+   * is merged into it and the returned future is shared. Two different tasks are merged into the
+   * incremental indexing of all documents, see {@link #doIndex(long)}.
+   */
+  private synchronized Future<?> submit(IndexerTask task) {
+    if (pendingRequest != null) {
+      pendingRequest.merge(task);
+      return pendingRequest.future;
+    }
+    PendingRequest request = new PendingRequest(task);
+    pendingRequest = request;
+    executor.execute(request.future);
+    return request.future;
   }
 
+  private synchronized IndexerTask startPendingRequest(PendingRequest request) {
+    if (pendingRequest == request) {
+      pendingRequest = null;
+    }
+    return request.task;
+  }
+
+  /**
+   * Indexes the documents updated after the given date. It must cover any {@link IndexerTask} given
+   * to {@link #index(IndexerTask)}, as tasks can be merged.
+   *
+   * @return the most recent date of the indexed documents, 0 if none
+   */
   protected abstract long doIndex(long lastUpdatedAt);
 
   public BaseIndexer setEnabled(boolean b) {
@@ -115,4 +153,37 @@ public abstract class BaseIndexer implements Startable {
     long index(long lastUpdatedAt);
   }
 
+  private class PendingRequest implements Runnable {
+    // date of the most recent merged request
+    private long requestedAt;
+    private final FutureTask<Void> future = new FutureTask<>(this, null);
+    private IndexerTask task;
+
+    PendingRequest(IndexerTask task) {
+      this.task = task;
+      this.requestedAt = System.currentTimeMillis();
+    }
+
+    void merge(IndexerTask other) {
+      requestedAt = System.currentTimeMillis();
+      if (other != task) {
+        task = incrementalTask;
+      }
+    }
+
+    @Override
+    public void run() {
+      IndexerTask taskToRun = startPendingRequest(this);
+      if (lastUpdatedAt == -1L) {
+        lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
+      }
+      if (requestedAt > lastUpdatedAt) {
+        long l = taskToRun.index(lastUpdatedAt);
+        // l can be 0 if no documents were indexed
+        lastUpdatedAt = Math.max(l, lastUpdatedAt);
+        esClient.indexingScheduler().indexed(indexName, lastUpdatedAt);
+      }
+    }
+  }
+
 }
@@ -21,6 +21,8 @@ package org.sonar.server.es;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
@@ -28,6 +30,7 @@ import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
@@ -36,22 +39,28 @@ import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
 import org.picocontainer.Startable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.ProgressLogger;
 
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 /**
  * Helper to bulk requests in an efficient way :
  * <ul>
  *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
  *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
- *   <li>index refresh is optional (enabled by default)</li>
+ *   <li>index refresh is optional (enabled by default). It can be deferred and coalesced with other refreshes,
+ *   see {@link IndexingScheduler}</li>
  * </ul>
  */
 public class BulkIndexer implements Startable {
@@ -60,6 +69,10 @@ public class BulkIndexer implements Startable {
   private static final long FLUSH_BYTE_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB).bytes();
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
   private static final String ALREADY_STARTED_MESSAGE = "Bulk indexing is already started";
+  // number of documents per shard loaded by each scroll request of deletions
+  private static final int DELETION_SCROLL_SIZE = 1000;
+  private static final String ROUTING_FIELD = "_routing";
+  private static final String PARENT_FIELD = "_parent";
 
   private final EsClient client;
   private final String indexName;
@@ -99,7 +112,7 @@ public class BulkIndexer implements Startable {
   }
 
   /**
-   * By default refresh of index is executed in method {@link #stop()}. Set to true
+   * By default refresh of index is requested in method {@link #stop()}. Set to true
    * to disable refresh.
    */
   public BulkIndexer setDisableRefresh(boolean b) {
@@ -141,42 +154,115 @@ public class BulkIndexer implements Startable {
     }
   }
 
+  /**
+   * Deletes all the documents matching the given search request. Pages of search results are loaded
+   * while the deletions of the previous page are being sent.
+   */
   public void addDeletion(SearchRequestBuilder searchRequest) {
+    addDeletion(searchRequest, null);
+  }
+
+  /**
+   * Same as {@link #addDeletion(SearchRequestBuilder)} when all the matching documents are routed by the given
+   * key (usually the project uuid). Search and deletions are sent to the single shard of the routing key.
+   * Without routing, the routing of each document is loaded from its fields {@code _routing} or {@code _parent}.
+   */
+  public void addDeletion(SearchRequestBuilder searchRequest, @Nullable String routing) {
     searchRequest
       .setScroll(TimeValue.timeValueMinutes(5))
       .setSearchType(SearchType.SCAN)
-      .setSize(100)
+      .setSize(DELETION_SCROLL_SIZE)
       // load only doc ids, not _source fields
       .setFetchSource(false);
+    if (routing == null) {
+      searchRequest.addFields(ROUTING_FIELD, PARENT_FIELD);
+    } else {
+      searchRequest.setRouting(routing);
+    }
 
-    // this search is synchronous. An optimization would be to be non-blocking,
-    // but it requires to tracking pending requests in close().
-    // Same semaphore can't be reused because of potential deadlock (requires to acquire
-    // two locks)
+    // scan search returns no hits, only the scroll id
     SearchResponse searchResponse = searchRequest.get();
-
+    Future<SearchResponse> nextPage = loadScrollPage(searchResponse.getScrollId());
     while (true) {
-      searchResponse = client.prepareSearchScroll(searchResponse.getScrollId())
-        .setScroll(TimeValue.timeValueMinutes(5))
-        .get();
+      searchResponse = getScrollPage(nextPage);
       SearchHit[] hits = searchResponse.getHits().getHits();
-      for (SearchHit hit : hits) {
-        add(client.prepareDelete(hit.index(), hit.type(), hit.getId()).request());
-      }
       if (hits.length == 0) {
         break;
       }
+      // Next page is loaded concurrently. It does not acquire the semaphore of bulk requests, so
+      // it can't deadlock with add().
+      nextPage = loadScrollPage(searchResponse.getScrollId());
+      for (SearchHit hit : hits) {
+        add(newDeleteRequest(hit, routing));
+      }
+    }
+  }
+
+  private DeleteRequest newDeleteRequest(SearchHit hit, @Nullable String routing) {
+    DeleteRequest request = client.prepareDelete(hit.index(), hit.type(), hit.getId()).request();
+    String docRouting = routing;
+    if (docRouting == null) {
+      docRouting = fieldValue(hit, ROUTING_FIELD);
+    }
+    if (docRouting == null) {
+      docRouting = fieldValue(hit, PARENT_FIELD);
+    }
+    if (docRouting != null) {
+      // Avoid broadcasting the deletion to all the shards when routing is required
+      request.routing(docRouting);
+    }
+    return request;
+  }
+
+  @CheckForNull
+  private static String fieldValue(SearchHit hit, String fieldName) {
+    SearchHitField field = hit.field(fieldName);
+    return field == null ? null : (String) field.getValue();
+  }
+
+  private Future<SearchResponse> loadScrollPage(String scrollId) {
+    final SettableFuture<SearchResponse> future = SettableFuture.create();
+    client.prepareSearchScroll(scrollId)
+      .setScroll(TimeValue.timeValueMinutes(5))
+      .execute(new ActionListener<SearchResponse>() {
+        @Override
+        public void onResponse(SearchResponse response) {
+          future.set(response);
+        }
+
+        @Override
+        public void onFailure(Throwable e) {
+          future.setException(e);
+        }
+      });
+    return future;
+  }
+
+  private static SearchResponse getScrollPage(Future<SearchResponse> page) {
+    try {
+      return Uninterruptibles.getUninterruptibly(page);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Fail to execute ES search scroll request", e.getCause());
     }
   }
 
   /**
    * Delete all the documents matching the given search request. This method is blocking.
-   * Index is refreshed, so docs are not searchable as soon as method is executed.
+   * Index is refreshed, so docs are not searchable as soon as method is executed, unless refreshes
+   * are deferred by {@link IndexingScheduler}.
    */
   public static void delete(EsClient client, String indexName, SearchRequestBuilder searchRequest) {
+    delete(client, indexName, searchRequest, null);
+  }
+
+  /**
+   * Same as {@link #delete(EsClient, String, SearchRequestBuilder)} when all matching documents are routed by the given key.
+   * See {@link #addDeletion(SearchRequestBuilder, String)}.
+   */
+  public static void delete(EsClient client, String indexName, SearchRequestBuilder searchRequest, @Nullable String routing) {
     BulkIndexer bulk = new BulkIndexer(client, indexName);
     bulk.start();
-    bulk.addDeletion(searchRequest);
+    bulk.addDeletion(searchRequest, routing);
     bulk.stop();
   }
 
@@ -194,16 +280,18 @@ public class BulkIndexer implements Startable {
     }
     progress.stop();
 
-    if (!disableRefresh) {
-      client.prepareRefresh(indexName).get();
-    }
     if (large) {
       // optimize lucene segments and revert index settings
       // Optimization must be done before re-applying replicas:
       // http://www.elasticsearch.org/blog/performance-considerations-elasticsearch-indexing/
+      if (!disableRefresh) {
+        client.prepareRefresh(indexName).get();
+      }
       client.prepareOptimize(indexName).get();
 
       updateSettings(largeInitialSettings);
+    } else if (!disableRefresh) {
+      client.indexingScheduler().refresh(indexName);
     }
     bulkRequest = null;
   }
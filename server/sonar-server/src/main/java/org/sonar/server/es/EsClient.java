@@ -47,6 +47,7 @@ import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
 import org.picocontainer.Startable;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.es.request.ProxyBulkRequestBuilder;
@@ -79,13 +80,20 @@ public class EsClient implements Startable {
 
   public static final Logger LOGGER = Loggers.get("es");
   private final Client client;
+  private final IndexingScheduler indexingScheduler;
 
-  public EsClient(SearchClient deprecatedClient) {
+  public EsClient(SearchClient deprecatedClient, Settings settings) {
     this.client = deprecatedClient;
+    this.indexingScheduler = new IndexingScheduler(this, settings);
   }
 
   EsClient(Client client) {
     this.client = client;
+    this.indexingScheduler = new IndexingScheduler(this, new Settings());
+  }
+
+  public IndexingScheduler indexingScheduler() {
+    return indexingScheduler;
   }
 
   public RefreshRequestBuilder prepareRefresh(String... indices) {
@@ -201,6 +209,7 @@ public class EsClient implements Startable {
 
   @Override
   public void stop() {
+    indexingScheduler.stop();
     // TODO re-enable when SearchClient is dropped
     // client.close();
   }
@@ -94,7 +94,31 @@ public class EsUtils {
   }
 
   public static <D extends BaseDoc> Iterator<D> scroll(final EsClient esClient, final String scrollId, final Function<Map<String, Object>, D> docConverter) {
+    final Iterator<SearchHit> hits = scrollHits(esClient, scrollId);
     return new Iterator<D>() {
+      @Override
+      public boolean hasNext() {
+        return hits.hasNext();
+      }
+
+      @Override
+      public D next() {
+        return docConverter.apply(hits.next().getSource());
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException("Cannot remove item when scrolling");
+      }
+    };
+  }
+
+  /**
+   * Iterates over the raw hits of a scroll, so that callers can read {@link SearchHit#sourceRef()}
+   * without converting each document to a map.
+   */
+  public static Iterator<SearchHit> scrollHits(final EsClient esClient, final String scrollId) {
+    return new Iterator<SearchHit>() {
       private final Queue<SearchHit> hits = new ArrayDeque<>();
 
       @Override
@@ -108,11 +132,11 @@ public class EsUtils {
       }
 
       @Override
-      public D next() {
+      public SearchHit next() {
         if (!hasNext()) {
           throw new NoSuchElementException();
         }
-        return docConverter.apply(hits.poll().getSource());
+        return hits.poll();
       }
 
       @Override
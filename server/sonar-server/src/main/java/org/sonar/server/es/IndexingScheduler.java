@@ -0,0 +1,158 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Coordinates the incremental indexing of Elasticsearch indices:
+ * <ul>
+ *   <li>refreshes requested by {@link BulkIndexer} are coalesced so that an index is refreshed at most once
+ *   per {@link #REFRESH_INTERVAL_PROPERTY} milliseconds. By default the interval is 0 and indices are
+ *   refreshed immediately, so that documents are searchable as soon as they are indexed.</li>
+ *   <li>the most recent date of the documents indexed by {@link BaseIndexer}s is tracked in order
+ *   to compute the indexing lag of each index.</li>
+ * </ul>
+ */
+public class IndexingScheduler {
+
+  public static final String REFRESH_INTERVAL_PROPERTY = "sonar.search.indexing.refreshInterval";
+
+  private static final Logger LOGGER = Loggers.get(IndexingScheduler.class);
+
+  private final EsClient client;
+  private final System2 system2;
+  private final long refreshIntervalMillis;
+  private final Set<String> pendingRefreshes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final ConcurrentMap<String, Long> lastIndexedAtByIndex = new ConcurrentHashMap<>();
+  private ScheduledExecutorService refreshExecutor;
+
+  IndexingScheduler(EsClient client, Settings settings) {
+    this(client, System2.INSTANCE, settings.getLong(REFRESH_INTERVAL_PROPERTY));
+  }
+
+  @VisibleForTesting
+  IndexingScheduler(EsClient client, System2 system2, long refreshIntervalMillis) {
+    this.client = client;
+    this.system2 = system2;
+    this.refreshIntervalMillis = Math.max(0L, refreshIntervalMillis);
+  }
+
+  public long getRefreshIntervalMillis() {
+    return refreshIntervalMillis;
+  }
+
+  /**
+   * Makes the documents recently indexed in the given index searchable. The refresh is executed
+   * immediately if no refresh interval is configured, else it is deferred and merged with the other
+   * requests received during the interval.
+   */
+  public void refresh(String indexName) {
+    if (refreshIntervalMillis == 0L) {
+      client.prepareRefresh(indexName).get();
+    } else if (pendingRefreshes.add(indexName)) {
+      refreshExecutor().schedule(new DeferredRefresh(indexName), refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Number of indices waiting for a deferred refresh
+   */
+  public int getPendingRefreshes() {
+    return pendingRefreshes.size();
+  }
+
+  /**
+   * Called by {@link BaseIndexer} with the most recent date of the documents indexed so far.
+   */
+  public void indexed(String indexName, long lastUpdatedAt) {
+    if (lastUpdatedAt > 0L) {
+      lastIndexedAtByIndex.put(indexName, lastUpdatedAt);
+    }
+  }
+
+  /**
+   * Delay in milliseconds between now and the most recent date of the documents indexed, by index name. Indices
+   * not incrementally indexed since server startup are ignored.
+   */
+  public LinkedHashMap<String, Long> lagByIndex() {
+    long now = system2.now();
+    LinkedHashMap<String, Long> result = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> entry : new TreeMap<>(lastIndexedAtByIndex).entrySet()) {
+      result.put(entry.getKey(), Math.max(0L, now - entry.getValue()));
+    }
+    return result;
+  }
+
+  private synchronized ScheduledExecutorService refreshExecutor() {
+    if (refreshExecutor == null) {
+      refreshExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("es-refresh-%d")
+        .setDaemon(true)
+        .build());
+    }
+    return refreshExecutor;
+  }
+
+  /**
+   * Pending refreshes are dropped. Elasticsearch periodically refreshes indices anyway.
+   */
+  synchronized void stop() {
+    if (refreshExecutor != null) {
+      refreshExecutor.shutdownNow();
+      refreshExecutor = null;
+    }
+    pendingRefreshes.clear();
+  }
+
+  private class DeferredRefresh implements Runnable {
+    private final String indexName;
+
+    DeferredRefresh(String indexName) {
+      this.indexName = indexName;
+    }
+
+    @Override
+    public void run() {
+      // removed before refreshing, so that the documents indexed during the refresh are not missed
+      pendingRefreshes.remove(indexName);
+      try {
+        client.prepareRefresh(indexName).get();
+      } catch (Exception e) {
+        LOGGER.error(String.format("Fail to refresh index %s", indexName), e);
+      }
+    }
+  }
+}
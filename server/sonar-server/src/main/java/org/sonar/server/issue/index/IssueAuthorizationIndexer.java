@@ -86,6 +86,7 @@ public class IssueAuthorizationIndexer extends BaseIndexer {
   public void deleteProject(String uuid, boolean refresh) {
     esClient
       .prepareDelete(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_AUTHORIZATION, uuid)
+      .setRouting(uuid)
       .setRefresh(refresh)
       .get();
   }
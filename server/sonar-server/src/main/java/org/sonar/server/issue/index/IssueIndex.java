@@ -50,6 +50,7 @@ import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.OrFilterBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
@@ -742,6 +743,18 @@ public class IssueIndex extends BaseIndex {
    * Only fields needed for the batch are returned.
    */
   public Iterator<IssueDoc> selectIssuesForBatch(ComponentDto component) {
+    return EsUtils.scroll(getClient(), scrollIssuesForBatch(component), DOC_CONVERTER);
+  }
+
+  /**
+   * Same as {@link #selectIssuesForBatch(ComponentDto)}, but returns the raw hits so that their
+   * _source can be read without being converted to {@link IssueDoc}.
+   */
+  public Iterator<SearchHit> selectIssueHitsForBatch(ComponentDto component) {
+    return EsUtils.scrollHits(getClient(), scrollIssuesForBatch(component));
+  }
+
+  private String scrollIssuesForBatch(ComponentDto component) {
     BoolFilterBuilder filter = FilterBuilders.boolFilter()
       .must(createAuthorizationFilter(true, userSession.getLogin(), userSession.getUserGroups()))
       .mustNot(FilterBuilders.termsFilter(IssueIndexDefinition.FIELD_ISSUE_STATUS, Issue.STATUS_CLOSED));
@@ -773,6 +786,6 @@ public class IssueIndex extends BaseIndex {
       .setQuery(QueryBuilders.filteredQuery(QueryBuilders.matchAllQuery(), filter));
     SearchResponse response = requestBuilder.get();
 
-    return EsUtils.scroll(getClient(), response.getScrollId(), DOC_CONVERTER);
+    return response.getScrollId();
   }
 }
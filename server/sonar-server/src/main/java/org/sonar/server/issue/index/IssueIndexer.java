@@ -87,12 +87,11 @@ public class IssueIndexer extends BaseIndexer {
     bulk.setDisableRefresh(!refresh);
     bulk.start();
     SearchRequestBuilder search = esClient.prepareSearch(IssueIndexDefinition.INDEX)
-      .setRouting(uuid)
       .setQuery(QueryBuilders.filteredQuery(
         QueryBuilders.matchAllQuery(),
         FilterBuilders.boolFilter().must(FilterBuilders.termsFilter(IssueIndexDefinition.FIELD_ISSUE_PROJECT_UUID, uuid))
         ));
-    bulk.addDeletion(search);
+    bulk.addDeletion(search, uuid);
     bulk.stop();
   }
 
@@ -0,0 +1,96 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import java.util.LinkedHashMap;
+import org.sonar.server.computation.ComputationThreadLauncher;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.computation.measure.BaseMeasureCacheStats;
+
+import static org.sonar.db.compute.AnalysisReportDto.Status.PENDING;
+import static org.sonar.db.compute.AnalysisReportDto.Status.WORKING;
+
+/**
+ * Information about the queue of analysis reports and the workers of the Compute Engine
+ */
+public class ComputeEngineMonitor extends BaseMonitorMBean implements ComputeEngineMonitorMBean {
+
+  private final ReportQueue queue;
+  private final ComputationThreadLauncher launcher;
+  private final BaseMeasureCacheStats baseMeasureCacheStats;
+
+  public ComputeEngineMonitor(ReportQueue queue, ComputationThreadLauncher launcher, BaseMeasureCacheStats baseMeasureCacheStats) {
+    this.queue = queue;
+    this.launcher = launcher;
+    this.baseMeasureCacheStats = baseMeasureCacheStats;
+  }
+
+  @Override
+  public String name() {
+    return "ComputeEngine";
+  }
+
+  @Override
+  public int getPendingReports() {
+    return queue.count(PENDING);
+  }
+
+  @Override
+  public int getInProgressReports() {
+    return queue.count(WORKING);
+  }
+
+  @Override
+  public int getWorkerCount() {
+    return launcher.getWorkerCount();
+  }
+
+  @Override
+  public int getWorkerUtilization() {
+    return utilization(getInProgressReports());
+  }
+
+  @Override
+  public long getBaseMeasureCacheHits() {
+    return baseMeasureCacheStats.getHits();
+  }
+
+  @Override
+  public long getBaseMeasureCacheMisses() {
+    return baseMeasureCacheStats.getMisses();
+  }
+
+  private int utilization(int inProgressReports) {
+    return Math.min(100, inProgressReports * 100 / getWorkerCount());
+  }
+
+  @Override
+  public LinkedHashMap<String, Object> attributes() {
+    int inProgressReports = getInProgressReports();
+    LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("Pending Reports", getPendingReports());
+    attributes.put("In Progress Reports", inProgressReports);
+    attributes.put("Workers", getWorkerCount());
+    attributes.put("Worker Utilization (%)", utilization(inProgressReports));
+    attributes.put("Base Measures Cache Hits", getBaseMeasureCacheHits());
+    attributes.put("Base Measures Cache Misses", getBaseMeasureCacheMisses());
+    return attributes;
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+public interface ComputeEngineMonitorMBean {
+
+  /**
+   * Number of analysis reports waiting to be processed
+   */
+  int getPendingReports();
+
+  /**
+   * Number of analysis reports being processed
+   */
+  int getInProgressReports();
+
+  /**
+   * Maximum number of analysis reports that can be processed concurrently
+   */
+  int getWorkerCount();
+
+  /**
+   * Percentage of workers that are processing a report
+   */
+  int getWorkerUtilization();
+
+  /**
+   * Number of base measures found in the cache of the processed reports, since startup
+   */
+  long getBaseMeasureCacheHits();
+
+  /**
+   * Number of base measures requested but not found in the cache of the processed reports, since startup
+   */
+  long getBaseMeasureCacheMisses();
+}
@@ -64,6 +64,15 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
     return clusterStats().getNodesStats().getCounts().getTotal();
   }
 
+  @Override
+  public long getIndexingLag() {
+    long lag = 0L;
+    for (Long indexLag : esClient.indexingScheduler().lagByIndex().values()) {
+      lag = Math.max(lag, indexLag);
+    }
+    return lag;
+  }
+
   @Override
   public LinkedHashMap<String, Object> attributes() {
     LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
@@ -71,12 +80,14 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
     attributes.put("Indices", indexAttributes());
     attributes.put("Number of Nodes", getNumberOfNodes());
     attributes.put("Nodes", nodeAttributes());
+    attributes.put("Pending Refreshes", esClient.indexingScheduler().getPendingRefreshes());
     return attributes;
   }
 
   private LinkedHashMap<String, LinkedHashMap<String, Object>> indexAttributes() {
     LinkedHashMap<String, LinkedHashMap<String, Object>> indices = new LinkedHashMap<>();
     IndicesStatsResponse indicesStats = esClient.prepareStats().all().get();
+    Map<String, Long> lagByIndex = esClient.indexingScheduler().lagByIndex();
 
     for (Map.Entry<String, IndexStats> indexStats : indicesStats.getIndices().entrySet()) {
       LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
@@ -84,6 +95,10 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
       attributes.put("Docs", indexStats.getValue().getPrimaries().getDocs().getCount());
       attributes.put("Shards", indexStats.getValue().getShards().length);
       attributes.put("Store Size", byteCountToDisplaySize(indexStats.getValue().getPrimaries().getStore().getSizeInBytes()));
+      Long lag = lagByIndex.get(indexStats.getKey());
+      if (lag != null) {
+        attributes.put("Indexing Lag (ms)", lag);
+      }
     }
     return indices;
   }
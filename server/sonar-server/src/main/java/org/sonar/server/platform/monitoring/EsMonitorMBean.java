@@ -27,4 +27,9 @@ package org.sonar.server.platform.monitoring;
 public interface EsMonitorMBean {
   String getState();
   int getNumberOfNodes();
+
+  /**
+   * Highest delay, in milliseconds, between now and the most recent document indexed incrementally
+   */
+  long getIndexingLag();
 }
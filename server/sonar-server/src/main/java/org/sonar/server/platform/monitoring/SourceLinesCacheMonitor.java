@@ -0,0 +1,82 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import com.google.common.cache.CacheStats;
+import java.util.LinkedHashMap;
+import org.sonar.server.source.SourceLinesCache;
+
+/**
+ * Efficiency of the cache of source lines decorated as HTML
+ */
+public class SourceLinesCacheMonitor extends BaseMonitorMBean implements SourceLinesCacheMonitorMBean {
+
+  private final SourceLinesCache cache;
+
+  public SourceLinesCacheMonitor(SourceLinesCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public String name() {
+    return "SourceLinesCache";
+  }
+
+  @Override
+  public long getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  @Override
+  public int getHitRate() {
+    return hitRate(cache.stats());
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  private static int hitRate(CacheStats stats) {
+    return (int) Math.round(stats.hitRate() * 100);
+  }
+
+  @Override
+  public LinkedHashMap<String, Object> attributes() {
+    CacheStats stats = cache.stats();
+    LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("Entries", cache.size());
+    attributes.put("Hits", stats.hitCount());
+    attributes.put("Misses", stats.missCount());
+    attributes.put("Hit Rate (%)", hitRate(stats));
+    attributes.put("Evictions", stats.evictionCount());
+    return attributes;
+  }
+}
@@ -67,6 +67,7 @@ import org.sonar.server.component.ws.EventsWs;
 import org.sonar.server.component.ws.ResourcesWs;
 import org.sonar.server.computation.ComputationThreadLauncher;
 import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.computation.measure.BaseMeasureCacheStats;
 import org.sonar.server.computation.ws.ComputationWs;
 import org.sonar.server.computation.ws.HistoryAction;
 import org.sonar.server.computation.ws.IsQueueEmptyWs;
@@ -182,10 +183,12 @@ import org.sonar.server.permission.PermissionFinder;
 import org.sonar.server.permission.ws.PermissionsWs;
 import org.sonar.server.platform.BackendCleanup;
 import org.sonar.server.platform.SettingsChangeNotifier;
+import org.sonar.server.platform.monitoring.ComputeEngineMonitor;
 import org.sonar.server.platform.monitoring.DatabaseMonitor;
 import org.sonar.server.platform.monitoring.EsMonitor;
 import org.sonar.server.platform.monitoring.JvmPropertiesMonitor;
 import org.sonar.server.platform.monitoring.PluginsMonitor;
+import org.sonar.server.platform.monitoring.SourceLinesCacheMonitor;
 import org.sonar.server.platform.monitoring.SonarQubeMonitor;
 import org.sonar.server.platform.monitoring.SystemMonitor;
 import org.sonar.server.platform.ws.InfoAction;
@@ -274,6 +277,7 @@ import org.sonar.server.rule.ws.RuleMapping;
 import org.sonar.server.rule.ws.RulesWs;
 import org.sonar.server.rule.ws.TagsAction;
 import org.sonar.server.source.HtmlSourceDecorator;
+import org.sonar.server.source.SourceLinesCache;
 import org.sonar.server.source.SourceService;
 import org.sonar.server.source.index.SourceLineIndex;
 import org.sonar.server.source.index.SourceLineIndexDefinition;
@@ -663,6 +667,7 @@ public class PlatformLevel4 extends PlatformLevel {
       // source
       HtmlSourceDecorator.class,
       SourceService.class,
+      SourceLinesCache.class,
       SourcesWs.class,
       org.sonar.server.source.ws.ShowAction.class,
       LinesAction.class,
@@ -724,6 +729,8 @@ public class PlatformLevel4 extends PlatformLevel {
       PluginsMonitor.class,
       JvmPropertiesMonitor.class,
       DatabaseMonitor.class,
+      ComputeEngineMonitor.class,
+      SourceLinesCacheMonitor.class,
 
       // Plugins WS
       PluginWSCommons.class,
@@ -741,6 +748,7 @@ public class PlatformLevel4 extends PlatformLevel {
       // Compute engine
       ReportQueue.class,
       ComputationThreadLauncher.class,
+      BaseMeasureCacheStats.class,
       ComputationWs.class,
       IsQueueEmptyWs.class,
       QueueAction.class,
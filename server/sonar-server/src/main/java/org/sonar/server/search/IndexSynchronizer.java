@@ -19,7 +19,13 @@
  */
 package org.sonar.server.search;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -84,24 +90,26 @@ public class IndexSynchronizer {
 
   public void execute() {
     if (!settings.getBoolean("sonar.internal.es.disableIndexes")) {
-      LOG.info("Index activities");
-      activityIndexer.setEnabled(true).index();
+      // indices are independent, except issues that require authorization (parent documents) to be indexed first
+      LOG.info("Index activities, source lines, tests, users and views");
+      List<Future<?>> pendingIndexings = new ArrayList<>();
+      pendingIndexings.add(activityIndexer.setEnabled(true).indexAsync());
+      pendingIndexings.add(sourceLineIndexer.setEnabled(true).indexAsync());
+      pendingIndexings.add(testIndexer.setEnabled(true).indexAsync());
+      pendingIndexings.add(userIndexer.setEnabled(true).indexAsync());
+      pendingIndexings.add(viewIndexer.setEnabled(true).indexAsync());
 
       LOG.info("Index issues");
       issueAuthorizationIndexer.setEnabled(true).index();
       issueIndexer.setEnabled(true).index();
 
-      LOG.info("Index source lines");
-      sourceLineIndexer.setEnabled(true).index();
-
-      LOG.info("Index tests");
-      testIndexer.setEnabled(true).index();
-
-      LOG.info("Index users");
-      userIndexer.setEnabled(true).index();
-
-      LOG.info("Index views");
-      viewIndexer.setEnabled(true).index();
+      for (Future<?> pendingIndexing : pendingIndexings) {
+        try {
+          Uninterruptibles.getUninterruptibly(pendingIndexing);
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e);
+        }
+      }
     }
   }
 
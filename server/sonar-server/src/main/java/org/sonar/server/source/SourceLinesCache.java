@@ -0,0 +1,137 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import org.sonar.api.config.Settings;
+import org.sonar.api.server.ServerSide;
+
+/**
+ * Bounded cache of source lines decorated as HTML. Entries are keyed by the hash of the file source data, so
+ * a new analysis of the file never returns lines decorated for the previous one. {@link #invalidate(Collection)}
+ * releases the stale entries as soon as new data are persisted.
+ */
+@ServerSide
+public class SourceLinesCache {
+
+  /**
+   * Maximum number of characters of the cached lines. Zero disables the cache.
+   */
+  public static final String MAX_SIZE_PROPERTY = "sonar.web.sourceLinesCache.maxChars";
+  private static final long DEFAULT_MAX_SIZE = 10_000_000L;
+
+  private final Cache<Key, List<String>> cache;
+
+  public SourceLinesCache(Settings settings) {
+    this(settings.hasKey(MAX_SIZE_PROPERTY) ? settings.getLong(MAX_SIZE_PROPERTY) : DEFAULT_MAX_SIZE);
+  }
+
+  @VisibleForTesting
+  SourceLinesCache(long maxSize) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxSize)
+      .weigher(new LinesWeigher())
+      .recordStats()
+      .build();
+  }
+
+  @CheckForNull
+  public List<String> get(String fileUuid, String dataHash, int from, int to) {
+    return cache.getIfPresent(new Key(fileUuid, dataHash, from, to));
+  }
+
+  public void put(String fileUuid, String dataHash, int from, int to, List<String> htmlLines) {
+    cache.put(new Key(fileUuid, dataHash, from, to), ImmutableList.copyOf(htmlLines));
+  }
+
+  /**
+   * Removes all the ranges of lines of the given files, whatever their data hash.
+   */
+  public void invalidate(Collection<String> fileUuids) {
+    if (fileUuids.isEmpty()) {
+      return;
+    }
+    for (Iterator<Key> keys = cache.asMap().keySet().iterator(); keys.hasNext();) {
+      if (fileUuids.contains(keys.next().fileUuid)) {
+        keys.remove();
+      }
+    }
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  private static class LinesWeigher implements Weigher<Key, List<String>> {
+    @Override
+    public int weigh(Key key, List<String> lines) {
+      long chars = 0L;
+      for (String line : lines) {
+        chars += line.length();
+      }
+      return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, chars));
+    }
+  }
+
+  private static class Key {
+    private final String fileUuid;
+    private final String dataHash;
+    private final int from;
+    private final int to;
+
+    private Key(String fileUuid, String dataHash, int from, int to) {
+      this.fileUuid = fileUuid;
+      this.dataHash = dataHash;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return from == key.from && to == key.to && fileUuid.equals(key.fileUuid) && dataHash.equals(key.dataHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(fileUuid, dataHash, from, to);
+    }
+  }
+}
@@ -23,22 +23,60 @@ package org.sonar.server.source;
 import org.apache.commons.lang.ObjectUtils;
 import org.elasticsearch.common.collect.Lists;
 import org.sonar.api.server.ServerSide;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.MyBatis;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.db.source.SourceLines;
+import org.sonar.server.source.db.FileSourceDb;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
+import java.util.Collections;
 import java.util.List;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 @ServerSide
 public class SourceService {
 
   private final HtmlSourceDecorator sourceDecorator;
-  private final SourceLineIndex sourceLineIndex;
+  private final DbClient dbClient;
+  private final SourceLinesCache linesCache;
 
-  public SourceService(HtmlSourceDecorator sourceDecorator, SourceLineIndex sourceLineIndex) {
+  public SourceService(HtmlSourceDecorator sourceDecorator, DbClient dbClient, SourceLinesCache linesCache) {
     this.sourceDecorator = sourceDecorator;
-    this.sourceLineIndex = sourceLineIndex;
+    this.dbClient = dbClient;
+    this.linesCache = linesCache;
+  }
+
+  /**
+   * Lines of source file with line numbers between <code>from</code> and <code>to</code> (both inclusive),
+   * as persisted by the Compute Engine. Line numbers start at 1. Only the requested lines are decompressed.
+   *
+   * @return null if the file has no source
+   */
+  @CheckForNull
+  public List<FileSourceDb.Line> getLines(String fileUuid, int from, int to) {
+    SourceLines sourceLines = getSourceLines(fileUuid, from, to);
+    return sourceLines == null ? null : sourceLines.getLines();
+  }
+
+  /**
+   * Same as {@link #getLines(String, int, int)}, with the data hash of the file source.
+   *
+   * @return null if the file has no source
+   */
+  @CheckForNull
+  public SourceLines getSourceLines(String fileUuid, int from, int to) {
+    checkRange(from, to);
+    DbSession session = dbClient.openSession(false);
+    try {
+      return dbClient.fileSourceDao().selectSourceLines(session, fileUuid, from, to);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
   }
 
   /**
@@ -48,22 +86,80 @@ public class SourceService {
     int from = (Integer) ObjectUtils.defaultIfNull(fromParam, 1);
     int to = (Integer) ObjectUtils.defaultIfNull(toParam, Integer.MAX_VALUE);
     List<String> lines = Lists.newArrayList();
-    for (SourceLineDoc lineDoc : sourceLineIndex.getLines(fileUuid, from, to)) {
-      lines.add(lineDoc.source());
+    for (FileSourceDb.Line line : nullToEmpty(getLines(fileUuid, from, to))) {
+      lines.add(line.getSource());
     }
     return lines;
   }
 
   /**
-   * Decorated lines of source file.
+   * Decorated lines of source file. They are cached until the file source data change: on a cache hit, only
+   * the data hash of the file is read from db.
    */
   public List<String> getLinesAsHtml(String fileUuid, @Nullable Integer fromParam, @Nullable Integer toParam) {
     int from = (Integer) ObjectUtils.defaultIfNull(fromParam, 1);
     int to = (Integer) ObjectUtils.defaultIfNull(toParam, Integer.MAX_VALUE);
+    checkRange(from, to);
+    DbSession session = dbClient.openSession(false);
+    try {
+      FileSourceDto hashes = dbClient.fileSourceDao().selectSourceHashes(session, fileUuid);
+      if (hashes == null) {
+        return Collections.emptyList();
+      }
+      if (hashes.getDataHash() != null) {
+        List<String> cachedLines = linesCache.get(fileUuid, hashes.getDataHash(), from, to);
+        if (cachedLines != null) {
+          return cachedLines;
+        }
+      }
+      SourceLines sourceLines = dbClient.fileSourceDao().selectSourceLines(session, fileUuid, from, to);
+      return sourceLines == null ? Collections.<String>emptyList() : decorateLines(fileUuid, from, to, sourceLines);
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  /**
+   * Decorated lines of the given lines, which have been read between <code>from</code> and <code>to</code>.
+   * They are taken from the cache when the file source data did not change.
+   */
+  public List<String> getLinesAsHtml(String fileUuid, int from, int to, SourceLines sourceLines) {
+    String dataHash = sourceLines.getDataHash();
+    if (dataHash != null) {
+      List<String> cachedLines = linesCache.get(fileUuid, dataHash, from, to);
+      if (cachedLines != null) {
+        return cachedLines;
+      }
+    }
+    return decorateLines(fileUuid, from, to, sourceLines);
+  }
+
+  private List<String> decorateLines(String fileUuid, int from, int to, SourceLines sourceLines) {
+    // lines are cached with the hash read by the same statement, so that they are never cached with the hash
+    // of another version of the file
+    String dataHash = sourceLines.getDataHash();
     List<String> lines = Lists.newArrayList();
-    for (SourceLineDoc lineDoc : sourceLineIndex.getLines(fileUuid, from, to)) {
-      lines.add(sourceDecorator.getDecoratedSourceAsHtml(lineDoc.source(), lineDoc.highlighting(), lineDoc.symbols()));
+    for (FileSourceDb.Line line : sourceLines.getLines()) {
+      lines.add(getDecoratedSourceAsHtml(line));
+    }
+    if (dataHash != null && !lines.isEmpty()) {
+      linesCache.put(fileUuid, dataHash, from, to, lines);
     }
     return lines;
   }
+
+  public String getDecoratedSourceAsHtml(FileSourceDb.Line line) {
+    return sourceDecorator.getDecoratedSourceAsHtml(line.getSource(),
+      line.hasHighlighting() ? line.getHighlighting() : null,
+      line.hasSymbols() ? line.getSymbols() : null);
+  }
+
+  private static List<FileSourceDb.Line> nullToEmpty(@Nullable List<FileSourceDb.Line> lines) {
+    return lines == null ? Collections.<FileSourceDb.Line>emptyList() : lines;
+  }
+
+  private static void checkRange(int from, int to) {
+    checkArgument(from > 0, "Minimum value for 'from' is 1");
+    checkArgument(to >= from, "'to' must be larger than or equal to 'from'");
+  }
 }
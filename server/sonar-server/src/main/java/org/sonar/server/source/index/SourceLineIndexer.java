@@ -107,7 +107,6 @@ public class SourceLineIndexer extends BaseIndexer {
     int numberOfLines = fileRow.getUpdateRequests().size();
     SearchRequestBuilder searchRequest = esClient.prepareSearch(SourceLineIndexDefinition.INDEX)
       .setTypes(SourceLineIndexDefinition.TYPE)
-      .setRouting(fileRow.getProjectUuid())
       .setQuery(QueryBuilders.filteredQuery(
         QueryBuilders.matchAllQuery(),
         FilterBuilders.boolFilter()
@@ -115,7 +114,7 @@ public class SourceLineIndexer extends BaseIndexer {
           .must(FilterBuilders.rangeFilter(SourceLineIndexDefinition.FIELD_LINE).gt(numberOfLines).cache(false))
           .cache(false)
         ));
-    bulk.addDeletion(searchRequest);
+    bulk.addDeletion(searchRequest, fileRow.getProjectUuid());
   }
 
   public void deleteByFile(String fileUuid) {
@@ -130,11 +129,10 @@ public class SourceLineIndexer extends BaseIndexer {
 
   public void deleteByProject(String projectUuid) {
     SearchRequestBuilder searchRequest = esClient.prepareSearch(SourceLineIndexDefinition.INDEX)
-      .setRouting(projectUuid)
       .setTypes(SourceLineIndexDefinition.TYPE)
       .setQuery(QueryBuilders.filteredQuery(
         QueryBuilders.matchAllQuery(),
         FilterBuilders.termFilter(FIELD_PROJECT_UUID, projectUuid).cache(false)));
-    BulkIndexer.delete(esClient, SourceLineIndexDefinition.INDEX, searchRequest);
+    BulkIndexer.delete(esClient, SourceLineIndexDefinition.INDEX, searchRequest, projectUuid);
   }
 }
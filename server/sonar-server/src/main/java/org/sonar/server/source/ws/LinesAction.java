@@ -34,10 +34,10 @@ import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 import org.sonar.db.component.ComponentDto;
+import org.sonar.db.source.SourceLines;
 import org.sonar.server.exceptions.NotFoundException;
-import org.sonar.server.source.HtmlSourceDecorator;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
+import org.sonar.server.source.SourceService;
+import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.user.UserSession;
 
 public class LinesAction implements SourcesWsAction {
@@ -45,14 +45,12 @@ public class LinesAction implements SourcesWsAction {
   private static final String PARAM_UUID = "uuid";
   private static final String PARAM_KEY = "key";
 
-  private final SourceLineIndex sourceLineIndex;
-  private final HtmlSourceDecorator htmlSourceDecorator;
+  private final SourceService sourceService;
   private final DbClient dbClient;
   private final UserSession userSession;
 
-  public LinesAction(DbClient dbClient, SourceLineIndex sourceLineIndex, HtmlSourceDecorator htmlSourceDecorator, UserSession userSession) {
-    this.sourceLineIndex = sourceLineIndex;
-    this.htmlSourceDecorator = htmlSourceDecorator;
+  public LinesAction(DbClient dbClient, SourceService sourceService, UserSession userSession) {
+    this.sourceService = sourceService;
     this.dbClient = dbClient;
     this.userSession = userSession;
   }
@@ -110,34 +108,36 @@ public class LinesAction implements SourcesWsAction {
     int from = Math.max(request.mandatoryParamAsInt("from"), 1);
     int to = (Integer) ObjectUtils.defaultIfNull(request.paramAsInt("to"), Integer.MAX_VALUE);
 
-    List<SourceLineDoc> sourceLines = sourceLineIndex.getLines(component.uuid(), from, to);
-    if (sourceLines.isEmpty()) {
+    // lines are read from the persisted file source rather than from the source line index
+    SourceLines sourceLines = sourceService.getSourceLines(component.uuid(), from, to);
+    if (sourceLines == null || sourceLines.getLines().isEmpty()) {
       throw new NotFoundException("File '" + component.key() + "' has no sources");
     }
+    List<String> htmlLines = sourceService.getLinesAsHtml(component.uuid(), from, to, sourceLines);
 
     JsonWriter json = response.newJsonWriter().beginObject();
-    writeSource(sourceLines, json);
+    writeSource(sourceLines.getLines(), htmlLines, json);
 
     json.endObject().close();
   }
 
-  private void writeSource(List<SourceLineDoc> lines, JsonWriter json) {
+  private static void writeSource(List<FileSourceDb.Line> lines, List<String> htmlLines, JsonWriter json) {
     json.name("sources").beginArray();
-    for (SourceLineDoc line : lines) {
+    for (int i = 0; i < lines.size(); i++) {
+      FileSourceDb.Line line = lines.get(i);
       json.beginObject()
-        .prop("line", line.line())
-        .prop("code", htmlSourceDecorator.getDecoratedSourceAsHtml(line.source(), line.highlighting(), line.symbols()))
-        .prop("scmAuthor", line.scmAuthor())
-        .prop("scmRevision", line.scmRevision());
-      Date scmDate = line.scmDate();
-      json.prop("scmDate", scmDate == null ? null : DateUtils.formatDateTime(scmDate));
-      json.prop("utLineHits", line.utLineHits())
-        .prop("utConditions", line.utConditions())
-        .prop("utCoveredConditions", line.utCoveredConditions())
-        .prop("itLineHits", line.itLineHits())
-        .prop("itConditions", line.itConditions())
-        .prop("itCoveredConditions", line.itCoveredConditions());
-      if (!line.duplications().isEmpty()) {
+        .prop("line", line.getLine())
+        .prop("code", htmlLines.get(i))
+        .prop("scmAuthor", line.hasScmAuthor() ? line.getScmAuthor() : null)
+        .prop("scmRevision", line.hasScmRevision() ? line.getScmRevision() : null);
+      json.prop("scmDate", line.hasScmDate() ? DateUtils.formatDateTime(new Date(line.getScmDate())) : null);
+      json.prop("utLineHits", line.hasUtLineHits() ? line.getUtLineHits() : null)
+        .prop("utConditions", line.hasUtConditions() ? line.getUtConditions() : null)
+        .prop("utCoveredConditions", line.hasUtCoveredConditions() ? line.getUtCoveredConditions() : null)
+        .prop("itLineHits", line.hasItLineHits() ? line.getItLineHits() : null)
+        .prop("itConditions", line.hasItConditions() ? line.getItConditions() : null)
+        .prop("itCoveredConditions", line.hasItCoveredConditions() ? line.getItCoveredConditions() : null);
+      if (line.getDuplicationCount() > 0) {
         json.prop("duplicated", true);
       }
       json.endObject();
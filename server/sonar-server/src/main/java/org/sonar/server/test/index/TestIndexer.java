@@ -114,11 +114,10 @@ public class TestIndexer extends BaseIndexer {
 
   public void deleteByProject(String projectUuid) {
     SearchRequestBuilder searchRequest = esClient.prepareSearch(INDEX)
-      .setRouting(projectUuid)
       .setTypes(TYPE)
       .setQuery(QueryBuilders.filteredQuery(
         QueryBuilders.matchAllQuery(),
         FilterBuilders.termFilter(FIELD_PROJECT_UUID, projectUuid).cache(false)));
-    BulkIndexer.delete(esClient, INDEX, searchRequest);
+    BulkIndexer.delete(esClient, INDEX, searchRequest, projectUuid);
   }
 }
@@ -19,35 +19,58 @@
  */
 package org.sonar.server.util.cache;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import javax.annotation.CheckForNull;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.sonar.api.utils.System2;
 import org.sonar.server.util.CloseableIterator;
-import org.sonar.server.util.ObjectInputStreamIterator;
 
 /**
  * Serialize and deserialize objects on disk. No search capabilities, only traversal (full scan).
+ * <p/>
+ * The file is a sequence of segments, one per {@link DiskAppender}. A segment is a sequence of records
+ * ended by a marker. Each segment is optionally compressed with LZ4. Objects are written and read by
+ * the {@link Serializer} given to the constructor, through buffered streams.
  */
 public class DiskCache<O extends Serializable> {
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte RECORD = 1;
+  private static final byte END_OF_SEGMENT = 0;
+
   private final File file;
   private final System2 system2;
+  private final Serializer<O> serializer;
+  private final boolean compressed;
 
+  /**
+   * Objects are serialized with the standard Java serialization, without compression
+   */
   public DiskCache(File file, System2 system2) {
+    this(file, system2, new JavaSerializer<O>(), false);
+  }
+
+  public DiskCache(File file, System2 system2, Serializer<O> serializer, boolean compressed) {
     this.system2 = system2;
     this.file = file;
+    this.serializer = serializer;
+    this.compressed = compressed;
     OutputStream output = null;
     try {
-      // writes the serialization stream header required when calling "traverse()"
-      // on empty stream. Moreover it allows to call multiple times "newAppender()"
-      output = new ObjectOutputStream(new FileOutputStream(file));
-      output.flush();
+      // truncate file, as appenders append segments
+      output = new FileOutputStream(file);
 
       // raise an exception if can't close
       system2.close(output);
@@ -64,23 +87,19 @@ public class DiskCache<O extends Serializable> {
 
   public CloseableIterator<O> traverse() {
     try {
-      return new ObjectInputStreamIterator<>(FileUtils.openInputStream(file));
+      return new DiskCacheIterator(new BufferedInputStream(FileUtils.openInputStream(file), BUFFER_SIZE));
     } catch (IOException e) {
       throw new IllegalStateException("Fail to traverse file: " + file, e);
     }
   }
 
   public class DiskAppender implements AutoCloseable {
-    private final ObjectOutputStream output;
+    private final DataOutputStream output;
 
     private DiskAppender() {
       try {
-        this.output = new ObjectOutputStream(new FileOutputStream(file, true)) {
-          @Override
-          protected void writeStreamHeader() throws IOException {
-            // do not write stream headers as it's already done in constructor of DiskCache
-          }
-        };
+        OutputStream fileOutput = new FileOutputStream(file, true);
+        this.output = new DataOutputStream(compressed ? new LZ4BlockOutputStream(fileOutput) : new BufferedOutputStream(fileOutput, BUFFER_SIZE));
       } catch (IOException e) {
         throw new IllegalStateException("Fail to open file " + file, e);
       }
@@ -88,8 +107,8 @@ public class DiskCache<O extends Serializable> {
 
     public DiskAppender append(O object) {
       try {
-        output.writeObject(object);
-        output.reset();
+        output.writeByte(RECORD);
+        serializer.write(output, object);
         return this;
       } catch (IOException e) {
         throw new IllegalStateException("Fail to write into file " + file, e);
@@ -98,7 +117,63 @@ public class DiskCache<O extends Serializable> {
 
     @Override
     public void close() {
+      try {
+        output.writeByte(END_OF_SEGMENT);
+      } catch (IOException e) {
+        IOUtils.closeQuietly(output);
+        throw new IllegalStateException("Fail to write into file " + file, e);
+      }
       system2.close(output);
     }
   }
+
+  private class DiskCacheIterator extends CloseableIterator<O> {
+    private final InputStream fileInput;
+    private DataInputStream segmentInput = null;
+
+    private DiskCacheIterator(InputStream fileInput) {
+      this.fileInput = fileInput;
+    }
+
+    @Override
+    @CheckForNull
+    protected O doNext() {
+      try {
+        while (true) {
+          if (segmentInput == null && !openNextSegment()) {
+            return null;
+          }
+          if (segmentInput.readByte() == RECORD) {
+            return serializer.read(segmentInput);
+          }
+          closeSegment();
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to read file " + file, e);
+      }
+    }
+
+    private boolean openNextSegment() throws IOException {
+      fileInput.mark(1);
+      if (fileInput.read() < 0) {
+        return false;
+      }
+      fileInput.reset();
+      segmentInput = new DataInputStream(compressed ? new LZ4BlockInputStream(fileInput) : fileInput);
+      return true;
+    }
+
+    private void closeSegment() throws IOException {
+      if (compressed && segmentInput.read() >= 0) {
+        // consume the end mark of LZ4 stream, so that next segment can be read
+        throw new IllegalStateException("Unexpected data at the end of segment in file " + file);
+      }
+      segmentInput = null;
+    }
+
+    @Override
+    protected void doClose() {
+      IOUtils.closeQuietly(fileInput);
+    }
+  }
 }
@@ -19,27 +19,51 @@
  */
 package org.sonar.server.ws;
 
+import com.google.common.annotations.VisibleForTesting;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.api.utils.text.XmlWriter;
 import org.sonar.server.plugins.MimeTypes;
 
+/**
+ * Response of web services. By default the whole response is buffered in memory, then copied by
+ * Ruby on Rails to the HTTP response. In streaming mode, only the first {@link #STREAMING_THRESHOLD} bytes are
+ * buffered. Beyond, status and headers are sent and the output is streamed to the servlet response,
+ * compressed with gzip if accepted by client. Errors raised before the threshold can still be sent
+ * as a clean response.
+ */
 public class ServletResponse implements Response {
 
+  public static final int STREAMING_THRESHOLD = 64 * 1024;
+
   private Map<String, String> headers = new HashMap<String, String>();
 
   public static class ServletStream implements Stream {
     private String mediaType;
     private int httpStatus = 200;
-    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final OutputStream output;
+
+    ServletStream() {
+      this.output = buffer;
+    }
+
+    ServletStream(HttpServletResponse servletResponse, Map<String, String> headers, boolean gzip, int threshold) {
+      this.output = new StreamingOutput(servletResponse, headers, gzip, threshold);
+    }
 
     @CheckForNull
     public String mediaType() {
@@ -67,17 +91,138 @@ public class ServletResponse implements Response {
       return output;
     }
 
+    /**
+     * The bytes that have not been sent to the servlet response
+     */
+    public byte[] bufferedOutput() {
+      return buffer.toByteArray();
+    }
+
     public String outputAsString() {
-      return new String(output.toByteArray(), StandardCharsets.UTF_8);
+      return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Whether status, headers and beginning of output are already sent to the servlet response. If true,
+     * the response can't be changed anymore.
+     */
+    public boolean isCommitted() {
+      return output instanceof StreamingOutput && ((StreamingOutput) output).committed != null;
     }
 
     public ServletStream reset() {
-      output.reset();
+      if (isCommitted()) {
+        throw new IllegalStateException("Response is already committed");
+      }
+      buffer.reset();
       return this;
     }
+
+    /**
+     * Completes the servlet response if it's committed. Does nothing otherwise, as
+     * the buffer is sent by Ruby on Rails.
+     */
+    void finish() throws IOException {
+      if (isCommitted()) {
+        ((StreamingOutput) output).committed.close();
+      }
+    }
+
+    private class StreamingOutput extends OutputStream {
+      private final HttpServletResponse servletResponse;
+      private final Map<String, String> headers;
+      private final boolean gzip;
+      private final int threshold;
+      private OutputStream committed = null;
+
+      StreamingOutput(HttpServletResponse servletResponse, Map<String, String> headers, boolean gzip, int threshold) {
+        this.servletResponse = servletResponse;
+        this.headers = headers;
+        this.gzip = gzip;
+        this.threshold = threshold;
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        if (committed == null) {
+          buffer.write(b);
+          commitIfFull();
+        } else {
+          committed.write(b);
+        }
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (committed == null) {
+          buffer.write(b, off, len);
+          commitIfFull();
+        } else {
+          committed.write(b, off, len);
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        // buffered bytes are kept until threshold is reached
+        if (committed != null) {
+          committed.flush();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+
+      private void commitIfFull() throws IOException {
+        if (buffer.size() >= threshold) {
+          servletResponse.setStatus(httpStatus);
+          if (mediaType != null) {
+            servletResponse.setContentType(mediaType);
+          }
+          for (Map.Entry<String, String> header : headers.entrySet()) {
+            servletResponse.setHeader(header.getKey(), header.getValue());
+          }
+          OutputStream target = servletResponse.getOutputStream();
+          if (gzip) {
+            servletResponse.setHeader("Content-Encoding", "gzip");
+            servletResponse.addHeader("Vary", "Accept-Encoding");
+            target = new GZIPOutputStream(target);
+          }
+          buffer.writeTo(target);
+          buffer.reset();
+          committed = target;
+        }
+      }
+    }
+  }
+
+  private final ServletStream stream;
+
+  /**
+   * Buffered response
+   */
+  public ServletResponse() {
+    this.stream = new ServletStream();
+  }
+
+  /**
+   * Streamed response. Used by Ruby on Rails.
+   */
+  public ServletResponse(HttpServletRequest servletRequest, HttpServletResponse servletResponse) {
+    this(servletResponse, acceptsGzip(servletRequest), STREAMING_THRESHOLD);
   }
 
-  private final ServletStream stream = new ServletStream();
+  @VisibleForTesting
+  ServletResponse(HttpServletResponse servletResponse, boolean gzip, int threshold) {
+    this.stream = new ServletStream(servletResponse, headers, gzip, threshold);
+  }
+
+  private static boolean acceptsGzip(HttpServletRequest servletRequest) {
+    String acceptEncoding = servletRequest.getHeader("Accept-Encoding");
+    return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ENGLISH).contains("gzip");
+  }
 
   @Override
   public JsonWriter newJsonWriter() {
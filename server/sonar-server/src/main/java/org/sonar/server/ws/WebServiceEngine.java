@@ -33,6 +33,7 @@ import org.sonar.server.exceptions.ServerException;
 import org.sonar.server.plugins.MimeTypes;
 import org.sonar.server.user.UserSession;
 
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -95,6 +96,15 @@ public class WebServiceEngine implements Startable {
       Loggers.get(getClass()).error("Fail to process request " + request, e);
       sendErrors(response, 500, new Errors().add(Message.of(e.getMessage())));
     }
+    finish(request, response);
+  }
+
+  private static void finish(ValidatingRequest request, ServletResponse response) {
+    try {
+      response.stream().finish();
+    } catch (IOException e) {
+      Loggers.get(WebServiceEngine.class).warn("Fail to send response of request " + request, e);
+    }
   }
 
   private WebService.Action getAction(String controllerPath, String actionKey) {
@@ -111,6 +121,11 @@ public class WebServiceEngine implements Startable {
 
   private void sendErrors(ServletResponse response, int status, Errors errors) {
     ServletResponse.ServletStream stream = response.stream();
+    if (stream.isCommitted()) {
+      // status and beginning of response are already sent. Error is logged but the response is truncated.
+      Loggers.get(getClass()).error(String.format("Fail to send errors [status=%d], response is already committed", status));
+      return;
+    }
     stream.reset();
     stream.setStatus(status);
     stream.setMediaType(MimeTypes.JSON);
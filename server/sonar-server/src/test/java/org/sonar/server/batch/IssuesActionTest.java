@@ -20,9 +20,13 @@
 
 package org.sonar.server.batch;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.CodedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import javax.annotation.Nullable;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -313,6 +317,46 @@ public class IssuesActionTest {
     assertThat(serverIssue.getModuleKey()).isEqualTo(MODULE_KEY);
   }
 
+  @Test
+  public void write_issue_from_hit_source() throws Exception {
+    String source = "{\"key\":\"EFGH\",\"ruleKey\":\"squid:AvoidCycle\",\"module\":\"BCDE\",\"filePath\":\"src/Action.java\","
+      + "\"severity\":\"MAJOR\",\"manualSeverity\":true,\"resolution\":null,\"status\":\"OPEN\",\"assignee\":\"john\","
+      + "\"line\":12,\"message\":\"Fix it\",\"checksum\":\"123456\",\"issueCreatedAt\":\"2015-01-02T10:00:00.000Z\"}";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    CodedOutputStream out = CodedOutputStream.newInstance(output);
+
+    ServerIssue.Builder builder = ServerIssue.newBuilder();
+    IssuesAction.writeIssue(new BytesArray(source), builder, ImmutableMap.of("BCDE", MODULE_KEY), out);
+    IssuesAction.writeIssue(new BytesArray("{\"key\":\"IJKL\",\"ruleKey\":\"squid:S1\",\"severity\":\"INFO\",\"status\":\"OPEN\","
+      + "\"issueCreatedAt\":1420192800000}"), builder, ImmutableMap.<String, String>of(), out);
+    out.flush();
+
+    ByteArrayInputStream input = new ByteArrayInputStream(output.toByteArray());
+    ServerIssue serverIssue = ServerIssue.parseDelimitedFrom(input);
+    assertThat(serverIssue.getKey()).isEqualTo("EFGH");
+    assertThat(serverIssue.getModuleKey()).isEqualTo(MODULE_KEY);
+    assertThat(serverIssue.getPath()).isEqualTo("src/Action.java");
+    assertThat(serverIssue.getRuleRepository()).isEqualTo("squid");
+    assertThat(serverIssue.getRuleKey()).isEqualTo("AvoidCycle");
+    assertThat(serverIssue.getSeverity()).isEqualTo(Severity.MAJOR);
+    assertThat(serverIssue.getManualSeverity()).isTrue();
+    assertThat(serverIssue.hasResolution()).isFalse();
+    assertThat(serverIssue.getStatus()).isEqualTo("OPEN");
+    assertThat(serverIssue.getAssigneeLogin()).isEqualTo("john");
+    assertThat(serverIssue.getLine()).isEqualTo(12);
+    assertThat(serverIssue.getMsg()).isEqualTo("Fix it");
+    assertThat(serverIssue.getChecksum()).isEqualTo("123456");
+    assertThat(serverIssue.getCreationDate()).isEqualTo(1420192800000L);
+
+    serverIssue = ServerIssue.parseDelimitedFrom(input);
+    assertThat(serverIssue.getKey()).isEqualTo("IJKL");
+    assertThat(serverIssue.hasModuleKey()).isFalse();
+    assertThat(serverIssue.hasPath()).isFalse();
+    assertThat(serverIssue.getManualSeverity()).isFalse();
+    assertThat(serverIssue.getCreationDate()).isEqualTo(1420192800000L);
+    assertThat(ServerIssue.parseDelimitedFrom(input)).isNull();
+  }
+
   @Test(expected = ForbiddenException.class)
   public void fail_without_preview_permission() throws Exception {
     userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PROVISIONING);
@@ -28,6 +28,7 @@ import org.apache.commons.lang.RandomStringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
@@ -41,6 +42,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -54,12 +56,13 @@ public class ComputationServiceTest {
   ComputationSteps steps = mock(ComputationSteps.class);
   ActivityManager activityManager = mock(ActivityManager.class);
   System2 system = mock(System2.class);
+  Settings settings = new Settings();
   AnalysisReportDto dto = AnalysisReportDto.newForTests(1L).setProjectKey("P1").setUuid("U1").setStatus(Status.PENDING);
   ComputationService sut;
 
   @Before
   public void setUp() {
-    sut = new ComputationService(new ReportQueue.Item(dto, new File("Do_not_care")), steps, activityManager, system);
+    sut = new ComputationService(new ReportQueue.Item(dto, new File("Do_not_care")), steps, activityManager, system, settings);
   }
 
   @Test
@@ -125,6 +128,34 @@ public class ComputationServiceTest {
     }
   }
 
+  @Test
+  public void execute_steps_concurrently_when_step_parallelism_is_set() {
+    settings.setProperty(ComputationService.STEP_PARALLELISM_PROPERTY, 2);
+    when(steps.instances()).thenReturn(Arrays.asList(projectStep1, projectStep2));
+
+    sut.process();
+
+    assertThat(dto.getStatus()).isEqualTo(Status.SUCCESS);
+    verify(projectStep1).execute();
+    verify(projectStep2).execute();
+  }
+
+  @Test
+  public void fail_if_step_throws_error_when_step_parallelism_is_set() {
+    settings.setProperty(ComputationService.STEP_PARALLELISM_PROPERTY, 2);
+    when(steps.instances()).thenReturn(Arrays.asList(projectStep1, projectStep2));
+    doThrow(new IllegalStateException("pb")).when(projectStep1).execute();
+
+    try {
+      sut.process();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("pb");
+      assertThat(dto.getStatus()).isEqualTo(Status.FAILED);
+      verify(projectStep2, never()).execute();
+    }
+  }
+
   private ComputationStep mockStep() {
     ComputationStep step = mock(ComputationStep.class);
     when(step.getDescription()).thenReturn(RandomStringUtils.randomAscii(5));
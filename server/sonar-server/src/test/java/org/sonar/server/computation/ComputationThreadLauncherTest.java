@@ -26,18 +26,28 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.DisableOnDebug;
+import org.junit.rules.ExpectedException;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
 import org.sonar.core.platform.ComponentContainer;
+import org.sonar.db.compute.AnalysisReportDto;
+import org.sonar.server.computation.container.ComputeEngineContainer;
 import org.sonar.server.computation.container.ContainerFactory;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ComputationThreadLauncherTest {
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   @Rule
   public TestRule timeout = new DisableOnDebug(Timeout.seconds(60));
 
@@ -55,12 +65,14 @@ public class ComputationThreadLauncherTest {
 
   @After
   public void after() {
-    sut.stop();
+    if (sut != null) {
+      sut.stop();
+    }
   }
 
   @Test
   public void call_findAndBook_when_launching_a_recurrent_task() throws Exception {
-    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 0, 1, TimeUnit.MILLISECONDS);
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 0, 1, TimeUnit.MILLISECONDS);
 
     sut.onServerStart(mock(Server.class));
 
@@ -71,7 +83,7 @@ public class ComputationThreadLauncherTest {
 
   @Test
   public void call_findAndBook_when_executing_task_immediately() throws Exception {
-    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 1, TimeUnit.HOURS);
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 1, 1, TimeUnit.HOURS);
     sut.start();
 
     sut.startAnalysisTaskNow();
@@ -81,10 +93,79 @@ public class ComputationThreadLauncherTest {
     verify(queue, atLeastOnce()).pop();
   }
 
+  @Test
+  public void listen_to_queue_when_server_is_started() throws Exception {
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 1, 1, TimeUnit.HOURS);
+
+    sut.onServerStart(mock(Server.class));
+
+    verify(queue).addListener(sut);
+  }
+
+  @Test
+  public void dispatch_report_as_soon_as_it_is_added_to_queue() throws Exception {
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 1, 1, TimeUnit.HOURS);
+    sut.start();
+
+    sut.onReportAdded(mock(ReportQueue.Item.class));
+
+    sleep();
+
+    verify(queue, atLeastOnce()).pop();
+  }
+
+  @Test
+  public void worker_processes_reports_until_queue_is_empty() throws Exception {
+    ReportQueue.Item item = new ReportQueue.Item(new AnalysisReportDto().setProjectKey("P1"), null);
+    when(queue.pop()).thenReturn(item, item, null);
+    when(containerFactory.create(componentContainer, item)).thenReturn(mock(ComputeEngineContainer.class));
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 1, 1, 1, TimeUnit.HOURS);
+
+    sut.startAnalysisTaskNow();
+
+    sleep();
+
+    verify(queue, times(3)).pop();
+    verify(queue, times(2)).remove(item);
+  }
+
+  @Test
+  public void every_worker_pops_the_queue() throws Exception {
+    sut = new ComputationThreadLauncher(queue, componentContainer, containerFactory, 3, 0, 1, TimeUnit.HOURS);
+
+    sut.onServerStart(mock(Server.class));
+
+    sleep();
+
+    verify(queue, times(3)).pop();
+  }
+
   @Test
   public void test_real_constructor() throws Exception {
-    sut = new ComputationThreadLauncher(queue, componentContainer);
+    sut = new ComputationThreadLauncher(queue, componentContainer, new Settings());
     sut.start();
+
+    assertThat(sut.getWorkerCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void worker_count_is_configurable() throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty(ComputationThreadLauncher.WORKER_COUNT_PROPERTY, 4);
+    sut = new ComputationThreadLauncher(queue, componentContainer, settings);
+
+    assertThat(sut.getWorkerCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void fail_if_worker_count_is_not_strictly_positive() throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty(ComputationThreadLauncher.WORKER_COUNT_PROPERTY, 0);
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Property sonar.ce.workerCount must be strictly positive. Got 0");
+
+    new ComputationThreadLauncher(queue, componentContainer, settings);
   }
 
   private void sleep() throws InterruptedException {
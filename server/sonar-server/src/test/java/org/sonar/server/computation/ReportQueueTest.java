@@ -39,7 +39,10 @@ import org.sonar.process.ProcessProperties;
 import org.sonar.test.DbTests;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.sonar.db.compute.AnalysisReportDto.Status.PENDING;
 import static org.sonar.db.compute.AnalysisReportDto.Status.WORKING;
@@ -102,6 +105,28 @@ public class ReportQueueTest {
     assertThat(FileUtils.listFiles(analysisDir(), new String[]{"zip"}, false)).hasSize(1);
   }
 
+  @Test
+  public void notify_listeners_when_report_is_added() {
+    ReportQueueListener listener = mock(ReportQueueListener.class);
+    sut.addListener(listener);
+
+    ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
+
+    verify(listener).onReportAdded(item);
+  }
+
+  @Test
+  public void failure_of_listener_does_not_fail_addition_of_report() {
+    ReportQueueListener listener = mock(ReportQueueListener.class);
+    doThrow(new IllegalStateException("Unexpected")).when(listener).onReportAdded(any(ReportQueue.Item.class));
+    sut.addListener(listener);
+
+    ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
+
+    assertThat(item).isNotNull();
+    assertThat(sut.all()).hasSize(1);
+  }
+
   @Test
   public void pop_pending_items_in_fifo_order() {
     sut.add("P1", "Project 1", generateData());
@@ -127,6 +152,16 @@ public class ReportQueueTest {
     assertThat(reports).extracting("status").containsOnly(WORKING);
   }
 
+  @Test
+  public void count_reports_by_status() {
+    sut.add("P1", "Project 1", generateData());
+    sut.add("P2", "Project 2", generateData());
+    sut.pop();
+
+    assertThat(sut.count(PENDING)).isEqualTo(1);
+    assertThat(sut.count(WORKING)).isEqualTo(1);
+  }
+
   @Test
   public void remove() {
     ReportQueue.Item item = sut.add("P1", "Project 1", generateData());
@@ -21,11 +21,19 @@ package org.sonar.server.computation.batch;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.sonar.api.utils.ZipUtils;
 import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReportWriter;
@@ -85,6 +93,30 @@ public class BatchReportReaderImplTest {
     assertThat(underTest.readMetadata()).isSameAs(res);
   }
 
+  @Test
+  public void readMetadata_is_parsed_once_when_read_concurrently() throws Exception {
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setRootComponentRef(COMPONENT_REF).build());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Callable<BatchReport.Metadata>> reads = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        reads.add(new Callable<BatchReport.Metadata>() {
+          @Override
+          public BatchReport.Metadata call() {
+            return underTest.readMetadata();
+          }
+        });
+      }
+      List<Future<BatchReport.Metadata>> results = executor.invokeAll(reads);
+
+      for (Future<BatchReport.Metadata> result : results) {
+        assertThat(result.get()).isSameAs(underTest.readMetadata());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   @Test
   public void readComponentMeasures_returns_empty_list_if_there_is_no_measure() {
     assertThat(underTest.readComponentMeasures(COMPONENT_REF)).isEmpty();
@@ -208,6 +240,23 @@ public class BatchReportReaderImplTest {
     assertThat(underTest.readComponentSymbols(COMPONENT_REF)).isNotSameAs(underTest.readComponentSymbols(COMPONENT_REF));
   }
 
+  @Test
+  public void openComponentData_returns_null_when_file_does_not_exist() {
+    assertThat(underTest.openComponentData(FileStructure.Domain.SYMBOLS, COMPONENT_REF)).isNull();
+  }
+
+  @Test
+  public void openComponentData_returns_raw_content_of_file() throws IOException {
+    writer.writeComponentSymbols(COMPONENT_REF, of(SYMBOL));
+
+    InputStream input = underTest.openComponentData(FileStructure.Domain.SYMBOLS, COMPONENT_REF);
+    try {
+      assertThat(IOUtils.toByteArray(input)).isEqualTo(FileUtils.readFileToByteArray(fileStructure.fileFor(FileStructure.Domain.SYMBOLS, COMPONENT_REF)));
+    } finally {
+      input.close();
+    }
+  }
+
   @Test
   public void readComponentSyntaxHighlighting_returns_empty_CloseableIterator_when_file_does_not_exist() {
     assertThat(underTest.readComponentSyntaxHighlighting(COMPONENT_REF)).isEmpty();
@@ -251,6 +300,21 @@ public class BatchReportReaderImplTest {
     res.close();
   }
 
+  @Test
+  public void readCpdTextBlocks_returns_empty_CloseableIterator_when_file_does_not_exist() {
+    assertThat(underTest.readCpdTextBlocks(COMPONENT_REF)).isEmpty();
+  }
+
+  @Test
+  public void verify_readCpdTextBlocks() throws IOException {
+    File file = writer.getCpdTextBlocksFile(COMPONENT_REF);
+    FileUtils.writeLines(file, of("a1,1,5", "b2,2,6"));
+
+    CloseableIterator<String> res = underTest.readCpdTextBlocks(COMPONENT_REF);
+    assertThat(res).containsExactly("a1,1,5", "b2,2,6");
+    res.close();
+  }
+
   @Test
   public void readTests_returns_empty_CloseableIterator_when_file_does_not_exist() {
     assertThat(underTest.readTests(COMPONENT_REF)).isEmpty();
@@ -278,4 +342,21 @@ public class BatchReportReaderImplTest {
     assertThat(res).containsExactly(COVERAGE_DETAIL_1, COVERAGE_DETAIL_2);
     res.close();
   }
+
+  @Test
+  public void read_zipped_report_without_extracting_it() throws IOException {
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setRootComponentRef(COMPONENT_REF).build());
+    writer.writeComponent(COMPONENT);
+    writer.writeTests(COMPONENT_REF, of(TEST_1, TEST_2));
+    File zip = tempFolder.newFile();
+    ZipUtils.zipDir(writer.getFileStructure().metadataFile().getParentFile(), zip);
+
+    BatchReportReaderImpl zipReader = new BatchReportReaderImpl(new ImmutableBatchReportDirectoryHolder(zip));
+    assertThat(zipReader.readMetadata().getRootComponentRef()).isEqualTo(COMPONENT_REF);
+    assertThat(zipReader.readComponent(COMPONENT_REF)).isEqualTo(COMPONENT);
+    try (CloseableIterator<BatchReport.Test> res = zipReader.readTests(COMPONENT_REF)) {
+      assertThat(res).containsExactly(TEST_1, TEST_2);
+    }
+    zipReader.close();
+  }
 }
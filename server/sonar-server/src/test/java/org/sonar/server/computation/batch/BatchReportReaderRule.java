@@ -19,7 +19,13 @@
  */
 package org.sonar.server.computation.batch;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.protobuf.Message;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -31,8 +37,11 @@ import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.FileStructure;
 import org.sonar.server.util.CloseableIterator;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 public class BatchReportReaderRule implements TestRule, BatchReportReader {
   private BatchReport.Metadata metadata;
   private Map<Integer, List<BatchReport.Measure>> measures = new HashMap<>();
@@ -44,6 +53,7 @@ public class BatchReportReaderRule implements TestRule, BatchReportReader {
   private Map<Integer, List<BatchReport.SyntaxHighlighting>> syntaxHighlightings = new HashMap<>();
   private Map<Integer, List<BatchReport.Coverage>> coverages = new HashMap<>();
   private Map<Integer, List<String>> fileSources = new HashMap<>();
+  private Map<Integer, List<String>> cpdTextBlocks = new HashMap<>();
   private Map<Integer, List<BatchReport.Test>> tests = new HashMap<>();
   private Map<Integer, List<BatchReport.CoverageDetail>> coverageDetails = new HashMap<>();
 
@@ -72,6 +82,7 @@ public class BatchReportReaderRule implements TestRule, BatchReportReader {
     this.syntaxHighlightings.clear();
     this.coverages.clear();
     this.fileSources.clear();
+    this.cpdTextBlocks.clear();
     this.tests.clear();
     this.coverageDetails.clear();
   }
@@ -198,6 +209,19 @@ public class BatchReportReaderRule implements TestRule, BatchReportReader {
     this.fileSources.put(fileRef, lines);
   }
 
+  @Override
+  public CloseableIterator<String> readCpdTextBlocks(int fileRef) {
+    List<String> lines = cpdTextBlocks.get(fileRef);
+    if (lines == null) {
+      return CloseableIterator.emptyCloseableIterator();
+    }
+    return CloseableIterator.from(lines.iterator());
+  }
+
+  public void putCpdTextBlocks(int fileRef, String... lines) {
+    this.cpdTextBlocks.put(fileRef, Arrays.asList(lines));
+  }
+
   @Override
   public CloseableIterator<BatchReport.Test> readTests(int testFileRef) {
     List<BatchReport.Test> res = this.tests.get(testFileRef);
@@ -225,4 +249,53 @@ public class BatchReportReaderRule implements TestRule, BatchReportReader {
   public void putCoverageDetails(int testFileRef, List<BatchReport.CoverageDetail> coverageDetails) {
     this.coverageDetails.put(testFileRef, coverageDetails);
   }
+
+  /**
+   * Data are serialized the same way as they are stored in report. Only the domains
+   * related to file sources are supported.
+   */
+  @Override
+  @CheckForNull
+  public InputStream openComponentData(FileStructure.Domain domain, int componentRef) {
+    switch (domain) {
+      case SOURCE:
+        List<String> lines = fileSources.get(componentRef);
+        return lines == null ? null : new ByteArrayInputStream(Joiner.on('\n').join(lines).getBytes(UTF_8));
+      case CHANGESETS:
+        return serialize(changesets.get(componentRef));
+      case DUPLICATIONS:
+        List<BatchReport.Duplication> fileDuplications = duplications.get(componentRef);
+        return fileDuplications == null ? null : serialize(BatchReport.Duplications.newBuilder().setComponentRef(componentRef).addAllDuplication(fileDuplications).build());
+      case SYMBOLS:
+        List<BatchReport.Symbols.Symbol> fileSymbols = symbols.get(componentRef);
+        return fileSymbols == null ? null : serialize(BatchReport.Symbols.newBuilder().setFileRef(componentRef).addAllSymbol(fileSymbols).build());
+      case SYNTAX_HIGHLIGHTINGS:
+        return serializeDelimited(syntaxHighlightings.get(componentRef));
+      case COVERAGES:
+        return serializeDelimited(coverages.get(componentRef));
+      default:
+        throw new UnsupportedOperationException("Raw data of domain " + domain + " is not supported");
+    }
+  }
+
+  @CheckForNull
+  private static InputStream serialize(@Nullable Message message) {
+    return message == null ? null : new ByteArrayInputStream(message.toByteArray());
+  }
+
+  @CheckForNull
+  private static InputStream serializeDelimited(@Nullable List<? extends Message> messages) {
+    if (messages == null) {
+      return null;
+    }
+    try {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      for (Message message : messages) {
+        message.writeDelimitedTo(output);
+      }
+      return new ByteArrayInputStream(output.toByteArray());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 }
@@ -0,0 +1,237 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.System2;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.core.issue.IssueChangeContext;
+import org.sonar.server.util.CloseableIterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class DefaultIssueSerializerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  DefaultIssueSerializer underTest = new DefaultIssueSerializer();
+
+  @Test
+  public void write_and_read_all_fields() throws Exception {
+    DefaultIssue issue = newFullIssue();
+
+    DefaultIssue read = writeAndRead(issue);
+
+    assertThat(read.key()).isEqualTo("ISSUE_KEY");
+    assertThat(read.componentUuid()).isEqualTo("FILE_UUID");
+    assertThat(read.componentKey()).isEqualTo("FILE_KEY");
+    assertThat(read.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(read.moduleUuidPath()).isEqualTo(".MODULE_UUID.");
+    assertThat(read.projectUuid()).isEqualTo("PROJECT_UUID");
+    assertThat(read.projectKey()).isEqualTo("PROJECT_KEY");
+    assertThat(read.ruleKey()).isEqualTo(RuleKey.of("squid", "S001"));
+    assertThat(read.language()).isEqualTo("java");
+    assertThat(read.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(read.manualSeverity()).isTrue();
+    assertThat(read.message()).isEqualTo("the message é");
+    assertThat(read.line()).isEqualTo(12);
+    assertThat(read.effortToFix()).isEqualTo(2.5);
+    assertThat(read.debt()).isEqualTo(Duration.create(30L));
+    assertThat(read.status()).isEqualTo(Issue.STATUS_RESOLVED);
+    assertThat(read.resolution()).isEqualTo(Issue.RESOLUTION_FIXED);
+    assertThat(read.reporter()).isEqualTo("reporter");
+    assertThat(read.assignee()).isEqualTo("assignee");
+    assertThat(read.checksum()).isEqualTo("checksum");
+    assertThat(read.authorLogin()).isEqualTo("author");
+    assertThat(read.actionPlanKey()).isEqualTo("PLAN");
+    assertThat(read.creationDate()).isEqualTo(new Date(1_000_000_000L));
+    assertThat(read.updateDate()).isEqualTo(new Date(1_100_000_000L));
+    assertThat(read.closeDate()).isEqualTo(new Date(1_200_000_000L));
+    assertThat(read.isNew()).isFalse();
+    assertThat(read.isBeingClosed()).isTrue();
+    assertThat(read.isOnDisabledRule()).isTrue();
+    assertThat(read.isChanged()).isTrue();
+    assertThat(read.mustSendNotifications()).isTrue();
+    assertThat(read.selectedAt()).isEqualTo(1_300_000_000L);
+    assertThat(read.attributes()).containsOnly(entry("JIRA", "FOO-123"), entry("other", "bar"));
+    assertThat(read.tags()).containsExactly("tag1", "tag2");
+
+    assertThat(read.comments()).hasSize(1);
+    DefaultIssueComment comment = (DefaultIssueComment) read.comments().get(0);
+    assertThat(comment.issueKey()).isEqualTo("ISSUE_KEY");
+    assertThat(comment.key()).isEqualTo("COMMENT_KEY");
+    assertThat(comment.userLogin()).isEqualTo("john");
+    assertThat(comment.markdownText()).isEqualTo("a comment");
+    assertThat(comment.createdAt()).isEqualTo(new Date(1_400_000_000L));
+    assertThat(comment.updatedAt()).isNull();
+    assertThat(comment.isNew()).isTrue();
+
+    assertThat(read.changes()).hasSize(2);
+    FieldDiffs previousChange = read.changes().get(0);
+    assertThat(previousChange.userLogin()).isEqualTo("simon");
+    assertThat(previousChange.issueKey()).isEqualTo("ISSUE_KEY");
+    assertThat(previousChange.creationDate()).isEqualTo(new Date(1_500_000_000L));
+    assertThat(previousChange.get("technicalDebt").oldValue()).isEqualTo(10L);
+    assertThat(previousChange.get("technicalDebt").newValue()).isEqualTo(30L);
+    assertThat(previousChange.get("line").oldValue()).isEqualTo(2);
+    assertThat(previousChange.get("line").newValue()).isNull();
+    assertThat(previousChange.get("effort").newValue()).isEqualTo(2.5);
+    assertThat(previousChange.get("date").newValue()).isEqualTo(new Date(1_600_000_000L));
+    assertThat(previousChange.get("list").newValue()).isEqualTo(Arrays.asList("a", "b"));
+
+    FieldDiffs currentChange = read.currentChange();
+    assertThat(currentChange).isSameAs(read.changes().get(1));
+    assertThat(currentChange.userLogin()).isEqualTo("john");
+    assertThat(currentChange.get("severity").oldValue()).isEqualTo(Severity.MAJOR);
+    assertThat(currentChange.get("severity").newValue()).isEqualTo(Severity.BLOCKER);
+  }
+
+  @Test
+  public void write_and_read_issue_with_null_fields() throws Exception {
+    DefaultIssue read = writeAndRead(new DefaultIssue());
+
+    assertThat(read.key()).isNull();
+    assertThat(read.ruleKey()).isNull();
+    assertThat(read.severity()).isNull();
+    assertThat(read.line()).isNull();
+    assertThat(read.effortToFix()).isNull();
+    assertThat(read.debt()).isNull();
+    assertThat(read.status()).isNull();
+    assertThat(read.creationDate()).isNull();
+    assertThat(read.selectedAt()).isNull();
+    assertThat(read.isNew()).isTrue();
+    assertThat(read.attributes()).isEmpty();
+    assertThat(read.tags()).isEmpty();
+    assertThat(read.comments()).isEmpty();
+    assertThat(read.changes()).isEmpty();
+    assertThat(read.currentChange()).isNull();
+  }
+
+  @Test
+  public void write_and_read_current_change_which_is_not_in_changes() throws Exception {
+    DefaultIssue issue = new DefaultIssue();
+    issue.setCurrentChange(new FieldDiffs().setDiff("status", "OPEN", "CLOSED"));
+    issue.setChanges(Arrays.asList(new FieldDiffs().setDiff("assignee", null, "john")));
+
+    DefaultIssue read = writeAndRead(issue);
+
+    assertThat(read.changes()).hasSize(1);
+    assertThat(read.changes().get(0).get("assignee").newValue()).isEqualTo("john");
+    assertThat(read.currentChange().get("status").newValue()).isEqualTo("CLOSED");
+  }
+
+  @Test
+  public void store_issues_in_compressed_cache() throws Exception {
+    IssueCache cache = new IssueCache(temp.newFile(), System2.INSTANCE, true);
+    cache.newAppender().append(newFullIssue()).append(new DefaultIssue().setKey("OTHER")).close();
+
+    try (CloseableIterator<DefaultIssue> issues = cache.traverse()) {
+      assertThat(issues.next().key()).isEqualTo("ISSUE_KEY");
+      assertThat(issues.next().key()).isEqualTo("OTHER");
+      assertThat(issues.hasNext()).isFalse();
+    }
+  }
+
+  private DefaultIssue writeAndRead(DefaultIssue issue) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      underTest.write(output, issue);
+    }
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      DefaultIssue read = underTest.read(input);
+      assertThat(input.read()).isEqualTo(-1);
+      return read;
+    }
+  }
+
+  private static DefaultIssue newFullIssue() {
+    DefaultIssue issue = new DefaultIssue()
+      .setKey("ISSUE_KEY")
+      .setComponentUuid("FILE_UUID")
+      .setComponentKey("FILE_KEY")
+      .setModuleUuid("MODULE_UUID")
+      .setModuleUuidPath(".MODULE_UUID.")
+      .setProjectUuid("PROJECT_UUID")
+      .setProjectKey("PROJECT_KEY")
+      .setRuleKey(RuleKey.of("squid", "S001"))
+      .setLanguage("java")
+      .setSeverity(Severity.BLOCKER)
+      .setManualSeverity(true)
+      .setMessage("the message é")
+      .setLine(12)
+      .setEffortToFix(2.5)
+      .setDebt(Duration.create(30L))
+      .setStatus(Issue.STATUS_RESOLVED)
+      .setResolution(Issue.RESOLUTION_FIXED)
+      .setReporter("reporter")
+      .setAssignee("assignee")
+      .setChecksum("checksum")
+      .setAuthorLogin("author")
+      .setActionPlanKey("PLAN")
+      .setCreationDate(new Date(1_000_000_000L))
+      .setUpdateDate(new Date(1_100_000_000L))
+      .setCloseDate(new Date(1_200_000_000L))
+      .setNew(false)
+      .setBeingClosed(true)
+      .setOnDisabledRule(true)
+      .setChanged(true)
+      .setSendNotifications(true)
+      .setSelectedAt(1_300_000_000L)
+      .setAttributes(ImmutableMap.of("JIRA", "FOO-123", "other", "bar"))
+      .setTags(Arrays.asList("tag1", "tag2"))
+      .addComment(new DefaultIssueComment()
+        .setIssueKey("ISSUE_KEY")
+        .setKey("COMMENT_KEY")
+        .setUserLogin("john")
+        .setMarkdownText("a comment")
+        .setCreatedAt(new Date(1_400_000_000L))
+        .setNew(true));
+    issue.addChange(new FieldDiffs()
+      .setIssueKey("ISSUE_KEY")
+      .setUserLogin("simon")
+      .setCreationDate(new Date(1_500_000_000L))
+      .setDiff("technicalDebt", 10L, 30L)
+      .setDiff("line", 2, null)
+      .setDiff("effort", null, 2.5)
+      .setDiff("date", null, new Date(1_600_000_000L))
+      .setDiff("list", null, new ArrayList<>(Arrays.asList("a", "b"))));
+    issue.setFieldChange(IssueChangeContext.createUser(new Date(1_700_000_000L), "john"), "severity", Severity.MAJOR, Severity.BLOCKER);
+    return issue;
+  }
+}
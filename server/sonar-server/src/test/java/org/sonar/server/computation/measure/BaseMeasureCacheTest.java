@@ -0,0 +1,136 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import com.google.common.base.Optional;
+import java.io.File;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.JUnitTempFolder;
+import org.sonar.db.DbTester;
+import org.sonar.db.measure.MeasureDto;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Category(DbTests.class)
+public class BaseMeasureCacheTest {
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+
+  @Rule
+  public JUnitTempFolder tempFolder = new JUnitTempFolder();
+
+  BaseMeasureCacheStats stats = new BaseMeasureCacheStats();
+
+  BaseMeasureCache underTest;
+
+  @Before
+  public void setUp() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    treeRootHolder.setRoot(DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey("PROJECT_KEY").build());
+    underTest = new BaseMeasureCache(dbTester.getDbClient(), treeRootHolder, tempFolder, stats);
+  }
+
+  @Test
+  public void get_measures_of_last_analysis() {
+    MeasureDto ncloc = underTest.get("PROJECT_KEY", "ncloc").get();
+    assertThat(ncloc.getComponentKey()).isEqualTo("PROJECT_KEY");
+    assertThat(ncloc.getMetricKey()).isEqualTo("ncloc");
+    assertThat(ncloc.getValue()).isEqualTo(100d);
+    assertThat(ncloc.getData()).isNull();
+    assertThat(ncloc.getVariation(1)).isEqualTo(10d);
+    assertThat(ncloc.getVariation(2)).isNull();
+    assertThat(ncloc.getVariation(5)).isEqualTo(-5d);
+
+    MeasureDto alertStatus = underTest.get("PROJECT_KEY", "alert_status").get();
+    assertThat(alertStatus.getValue()).isNull();
+    assertThat(alertStatus.getData()).isEqualTo("ERROR");
+    assertThat(alertStatus.getAlertStatus()).isEqualTo("ERROR");
+    assertThat(alertStatus.getAlertText()).isEqualTo("Coverage < 80");
+
+    assertThat(underTest.get("FILE_KEY", "ncloc").get().getValue()).isEqualTo(10d);
+  }
+
+  @Test
+  public void get_returns_absent_if_measure_does_not_exist() {
+    assertThat(underTest.get("FILE_KEY", "alert_status").isPresent()).isFalse();
+    assertThat(underTest.get("UNKNOWN_KEY", "ncloc").isPresent()).isFalse();
+    // measures of other projects are not loaded
+    assertThat(underTest.get("OTHER_PROJECT_KEY", "ncloc").isPresent()).isFalse();
+  }
+
+  @Test
+  public void count_hits_and_misses() {
+    underTest.get("PROJECT_KEY", "ncloc");
+    underTest.get("FILE_KEY", "ncloc");
+    underTest.get("FILE_KEY", "alert_status");
+
+    assertThat(underTest.getHits()).isEqualTo(2);
+    assertThat(underTest.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void add_hits_and_misses_to_stats_on_close() {
+    underTest.get("PROJECT_KEY", "ncloc");
+    underTest.get("FILE_KEY", "alert_status");
+
+    underTest.close();
+
+    assertThat(stats.getHits()).isEqualTo(1);
+    assertThat(stats.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void read_again_components_evicted_from_memory() {
+    assertThat(underTest.get("PROJECT_KEY", "ncloc").get().getValue()).isEqualTo(100d);
+    for (int i = 0; i < BaseMeasureCache.MAX_COMPONENTS_IN_MEMORY; i++) {
+      underTest.get("UNKNOWN_KEY_" + i, "ncloc");
+    }
+
+    assertThat(underTest.get("PROJECT_KEY", "ncloc").get().getValue()).isEqualTo(100d);
+  }
+
+  @Test
+  public void close_deletes_temp_file() {
+    underTest.get("PROJECT_KEY", "ncloc");
+    File dir = tempFolder.newDir();
+    assertThat(dir.getParentFile().listFiles()).hasSize(2);
+
+    underTest.close();
+
+    assertThat(dir.getParentFile().listFiles()).containsOnly(dir);
+  }
+
+  @Test
+  public void close_does_nothing_if_measures_are_not_loaded() {
+    underTest.close();
+  }
+}
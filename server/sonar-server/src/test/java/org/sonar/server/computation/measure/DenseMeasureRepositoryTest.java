@@ -0,0 +1,218 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SetMultimap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.db.measure.MeasureDto;
+import org.sonar.db.rule.RuleDto;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.debt.Characteristic;
+import org.sonar.server.computation.metric.Metric;
+import org.sonar.server.computation.metric.MetricImpl;
+import org.sonar.server.computation.metric.MetricRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.guava.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DenseMeasureRepositoryTest {
+
+  @Rule
+  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+
+  private static final DumbComponent FILE_COMPONENT = DumbComponent.builder(Component.Type.FILE, 1).setKey("file key").build();
+  private static final DumbComponent OTHER_COMPONENT = DumbComponent.builder(Component.Type.FILE, 2).setKey("other key").build();
+  private static final DumbComponent FAR_COMPONENT = DumbComponent.builder(Component.Type.FILE, 100_000).setKey("far key").build();
+  private static final Metric INT_METRIC = new MetricImpl(1, "int", "Int", Metric.MetricType.INT);
+  private static final Metric LONG_METRIC = new MetricImpl(2, "long", "Long", Metric.MetricType.WORK_DUR);
+  private static final Metric DOUBLE_METRIC = new MetricImpl(3, "double", "Double", Metric.MetricType.FLOAT);
+  private static final Metric BOOLEAN_METRIC = new MetricImpl(4, "boolean", "Boolean", Metric.MetricType.BOOL);
+  private static final Metric STRING_METRIC = new MetricImpl(5, "string", "String", Metric.MetricType.STRING);
+  private static final Metric LEVEL_METRIC = new MetricImpl(6, "level", "Level", Metric.MetricType.LEVEL);
+  private static final Metric HIGH_ID_METRIC = new MetricImpl(5_000, "high", "High", Metric.MetricType.INT);
+  private static final RuleDto SOME_RULE = RuleDto.createFor(RuleKey.of("A", "1")).setId(963);
+  private static final Characteristic SOME_CHARACTERISTIC = new Characteristic(741, "key", null);
+
+  private BaseMeasureCache baseMeasureCache = mock(BaseMeasureCache.class);
+  private MetricRepository metricRepository = mock(MetricRepository.class);
+  private DenseMeasureRepository underTest = new DenseMeasureRepository(baseMeasureCache, reportReader, metricRepository);
+
+  @Before
+  public void setUp() {
+    when(metricRepository.getByKey(INT_METRIC.getKey())).thenReturn(INT_METRIC);
+    when(metricRepository.getByKey(STRING_METRIC.getKey())).thenReturn(STRING_METRIC);
+  }
+
+  @Test
+  public void getBaseMeasure_reads_cache() {
+    when(baseMeasureCache.get(FILE_COMPONENT.getKey(), INT_METRIC.getKey())).thenReturn(Optional.of(new MeasureDto().setValue(10d)));
+    when(baseMeasureCache.get(OTHER_COMPONENT.getKey(), INT_METRIC.getKey())).thenReturn(Optional.<MeasureDto>absent());
+
+    assertThat(underTest.getBaseMeasure(FILE_COMPONENT, INT_METRIC).get().getIntValue()).isEqualTo(10);
+    assertThat(underTest.getBaseMeasure(OTHER_COMPONENT, INT_METRIC)).isAbsent();
+  }
+
+  @Test
+  public void store_values_of_all_types() {
+    underTest.add(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().create(12, "int data"));
+    underTest.add(FILE_COMPONENT, LONG_METRIC, Measure.newMeasureBuilder().create(1_234_567_890_123L));
+    underTest.add(FILE_COMPONENT, DOUBLE_METRIC, Measure.newMeasureBuilder().create(45.6d));
+    underTest.add(FILE_COMPONENT, BOOLEAN_METRIC, Measure.newMeasureBuilder().create(true));
+    underTest.add(FILE_COMPONENT, STRING_METRIC, Measure.newMeasureBuilder().create("foo"));
+    underTest.add(FILE_COMPONENT, LEVEL_METRIC, Measure.newMeasureBuilder().create(Measure.Level.WARN));
+    underTest.add(OTHER_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().createNoValue());
+
+    Measure intMeasure = underTest.getRawMeasure(FILE_COMPONENT, INT_METRIC).get();
+    assertThat(intMeasure.getIntValue()).isEqualTo(12);
+    assertThat(intMeasure.getData()).isEqualTo("int data");
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, LONG_METRIC).get().getLongValue()).isEqualTo(1_234_567_890_123L);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, DOUBLE_METRIC).get().getDoubleValue()).isEqualTo(45.6d);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, BOOLEAN_METRIC).get().getBooleanValue()).isTrue();
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, STRING_METRIC).get().getStringValue()).isEqualTo("foo");
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, LEVEL_METRIC).get().getLevelValue()).isEqualTo(Measure.Level.WARN);
+    assertThat(underTest.getRawMeasure(OTHER_COMPONENT, INT_METRIC).get().getValueType()).isEqualTo(Measure.ValueType.NO_VALUE);
+    assertThat(underTest.getRawMeasure(OTHER_COMPONENT, STRING_METRIC)).isAbsent();
+  }
+
+  @Test
+  public void store_long_values_without_loss_of_precision() {
+    long greaterThanDoublePrecision = (1L << 53) + 1;
+    underTest.add(FILE_COMPONENT, LONG_METRIC, Measure.newMeasureBuilder().create(Long.MAX_VALUE));
+    underTest.add(OTHER_COMPONENT, LONG_METRIC, Measure.newMeasureBuilder().create(greaterThanDoublePrecision));
+    underTest.add(FAR_COMPONENT, LONG_METRIC, Measure.newMeasureBuilder().create(Long.MIN_VALUE));
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, LONG_METRIC).get().getLongValue()).isEqualTo(Long.MAX_VALUE);
+    assertThat(underTest.getRawMeasure(OTHER_COMPONENT, LONG_METRIC).get().getLongValue()).isEqualTo(greaterThanDoublePrecision);
+    assertThat(underTest.getRawMeasure(FAR_COMPONENT, LONG_METRIC).get().getLongValue()).isEqualTo(Long.MIN_VALUE);
+  }
+
+  @Test
+  public void store_description_quality_gate_status_and_variations() {
+    QualityGateStatus qualityGateStatus = new QualityGateStatus(Measure.Level.ERROR, "too bad");
+    underTest.add(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder()
+      .setDescription("desc")
+      .setQualityGateStatus(qualityGateStatus)
+      .setVariations(new MeasureVariations(1d, null, 3d, null, -5d))
+      .create(10));
+    underTest.add(OTHER_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().create(20));
+
+    Measure measure = underTest.getRawMeasure(FILE_COMPONENT, INT_METRIC).get();
+    assertThat(measure.getDescription()).isEqualTo("desc");
+    assertThat(measure.getQualityGateStatus()).isSameAs(qualityGateStatus);
+    assertThat(measure.getVariations()).isEqualTo(new MeasureVariations(1d, null, 3d, null, -5d));
+
+    Measure otherMeasure = underTest.getRawMeasure(OTHER_COMPONENT, INT_METRIC).get();
+    assertThat(otherMeasure.getDescription()).isNull();
+    assertThat(otherMeasure.hasQualityGateStatus()).isFalse();
+    assertThat(otherMeasure.hasVariations()).isFalse();
+  }
+
+  @Test
+  public void update_replaces_all_attributes() {
+    underTest.add(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().setDescription("desc").create(10, "data"));
+    underTest.update(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().setVariations(new MeasureVariations(2d)).create(11));
+
+    Measure measure = underTest.getRawMeasure(FILE_COMPONENT, INT_METRIC).get();
+    assertThat(measure.getIntValue()).isEqualTo(11);
+    assertThat(measure.getData()).isNull();
+    assertThat(measure.getDescription()).isNull();
+    assertThat(measure.getVariations().getVariation1()).isEqualTo(2d);
+  }
+
+  @Test
+  public void store_measures_of_high_component_refs_and_metric_ids() {
+    underTest.add(FILE_COMPONENT, HIGH_ID_METRIC, Measure.newMeasureBuilder().setVariations(new MeasureVariations(1d)).create(1));
+    underTest.add(FAR_COMPONENT, HIGH_ID_METRIC, Measure.newMeasureBuilder().setVariations(new MeasureVariations(2d)).create(2));
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, HIGH_ID_METRIC).get().getVariations().getVariation1()).isEqualTo(1d);
+    assertThat(underTest.getRawMeasure(FAR_COMPONENT, HIGH_ID_METRIC).get().getIntValue()).isEqualTo(2);
+    assertThat(underTest.getRawMeasure(FAR_COMPONENT, HIGH_ID_METRIC).get().getVariations().getVariation1()).isEqualTo(2d);
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void add_throws_UOE_if_measure_already_exists() {
+    underTest.add(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().create(1));
+    underTest.add(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().create(2));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void update_throws_UOE_if_measure_does_not_exist() {
+    underTest.update(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().create(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void add_throws_IAE_if_value_type_is_not_consistent_with_metric() {
+    underTest.add(FILE_COMPONENT, INT_METRIC, Measure.newMeasureBuilder().create("foo"));
+  }
+
+  @Test
+  public void store_measures_on_rules_and_characteristics() {
+    Measure ruleMeasure = Measure.newMeasureBuilder().forRule(SOME_RULE.getId()).create(1);
+    Measure characteristicMeasure = Measure.newMeasureBuilder().forCharacteristic(SOME_CHARACTERISTIC.getId()).create(2);
+    underTest.add(FILE_COMPONENT, INT_METRIC, ruleMeasure);
+    underTest.add(FILE_COMPONENT, INT_METRIC, characteristicMeasure);
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, INT_METRIC, SOME_RULE).get()).isSameAs(ruleMeasure);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, INT_METRIC, SOME_CHARACTERISTIC).get()).isSameAs(characteristicMeasure);
+    assertThat(underTest.getRawMeasure(OTHER_COMPONENT, INT_METRIC, SOME_RULE)).isAbsent();
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, INT_METRIC)).isAbsent();
+  }
+
+  @Test
+  public void getRawMeasure_returns_added_measure_over_batch_measure() {
+    reportReader.putMeasures(FILE_COMPONENT.getRef(), ImmutableList.of(
+      BatchReport.Measure.newBuilder().setMetricKey(STRING_METRIC.getKey()).setStringValue("from batch").build(),
+      BatchReport.Measure.newBuilder().setMetricKey(INT_METRIC.getKey()).setIntValue(3).build()
+      ));
+    underTest.add(FILE_COMPONENT, STRING_METRIC, Measure.newMeasureBuilder().create("added"));
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, STRING_METRIC).get().getStringValue()).isEqualTo("added");
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, INT_METRIC).get().getIntValue()).isEqualTo(3);
+  }
+
+  @Test
+  public void getRawMeasures_returns_added_measures_over_batch_measures() {
+    reportReader.putMeasures(FILE_COMPONENT.getRef(), ImmutableList.of(
+      BatchReport.Measure.newBuilder().setMetricKey(STRING_METRIC.getKey()).setStringValue("from batch").build(),
+      BatchReport.Measure.newBuilder().setMetricKey(INT_METRIC.getKey()).setIntValue(3).build()
+      ));
+    underTest.add(FILE_COMPONENT, STRING_METRIC, Measure.newMeasureBuilder().create("added"));
+    Measure ruleMeasure = Measure.newMeasureBuilder().forRule(SOME_RULE.getId()).create(1);
+    underTest.add(FILE_COMPONENT, INT_METRIC, ruleMeasure);
+
+    SetMultimap<String, Measure> rawMeasures = underTest.getRawMeasures(FILE_COMPONENT);
+
+    assertThat(rawMeasures.keySet()).containsOnly(STRING_METRIC.getKey(), INT_METRIC.getKey());
+    assertThat(rawMeasures.get(STRING_METRIC.getKey())).hasSize(1);
+    assertThat(rawMeasures.get(STRING_METRIC.getKey()).iterator().next().getStringValue()).isEqualTo("added");
+    assertThat(rawMeasures.get(INT_METRIC.getKey())).hasSize(2).contains(ruleMeasure);
+    assertThat(underTest.getRawMeasures(OTHER_COMPONENT).isEmpty()).isTrue();
+  }
+}
@@ -37,6 +37,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
@@ -47,6 +48,7 @@ import org.sonar.db.measure.MeasureDto;
 import org.sonar.db.rule.RuleDto;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
 import org.sonar.server.computation.debt.Characteristic;
@@ -72,7 +74,12 @@ public class MeasureRepositoryImplTest {
   public DbTester dbTester = DbTester.create(System2.INSTANCE);
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+  @Rule
+  public JUnitTempFolder tempFolder = new JUnitTempFolder();
 
+  private static final DumbComponent PROJECT = DumbComponent.builder(Component.Type.PROJECT, 100).setUuid("ABCD").setKey("project key").build();
   private static final String FILE_COMPONENT_KEY = "file cpt key";
   private static final DumbComponent FILE_COMPONENT = DumbComponent.builder(Component.Type.FILE, 1).setKey(FILE_COMPONENT_KEY).build();
   private static final DumbComponent OTHER_COMPONENT = DumbComponent.builder(Component.Type.FILE, 2).setKey("some other key").build();
@@ -92,11 +99,11 @@ public class MeasureRepositoryImplTest {
 
   private DbClient dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new MeasureDao(), new SnapshotDao(), new MetricDao(), new ComponentDao());
   private MetricRepository metricRepository = mock(MetricRepository.class);
-  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository);
+  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(new BaseMeasureCache(dbClient, treeRootHolder, tempFolder, new BaseMeasureCacheStats()), reportReader, metricRepository);
 
-  private DbClient mockedDbClient = mock(DbClient.class);
+  private BaseMeasureCache mockedBaseMeasureCache = mock(BaseMeasureCache.class);
   private BatchReportReader mockBatchReportReader = mock(BatchReportReader.class);
-  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedDbClient, mockBatchReportReader, metricRepository);
+  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedBaseMeasureCache, mockBatchReportReader, metricRepository);
 
   @CheckForNull
   private DbSession dbSession;
@@ -111,6 +118,8 @@ public class MeasureRepositoryImplTest {
     // references to metrics are consistent with DB by design
     when(metricRepository.getByKey(METRIC_KEY_1)).thenReturn(metric1);
     when(metricRepository.getByKey(METRIC_KEY_2)).thenReturn(metric2);
+
+    treeRootHolder.setRoot(PROJECT);
   }
 
   @After
@@ -121,22 +130,22 @@ public class MeasureRepositoryImplTest {
   }
 
   @Test
-  public void getBaseMeasure_throws_NPE_and_does_not_open_session_if_component_is_null() {
+  public void getBaseMeasure_throws_NPE_and_does_not_read_cache_if_component_is_null() {
     try {
       underTestWithMock.getBaseMeasure(null, metric1);
       fail("an NPE should have been raised");
     } catch (NullPointerException e) {
-      verifyZeroInteractions(mockedDbClient);
+      verifyZeroInteractions(mockedBaseMeasureCache);
     }
   }
 
   @Test
-  public void getBaseMeasure_throws_NPE_and_does_not_open_session_if_metric_is_null() {
+  public void getBaseMeasure_throws_NPE_and_does_not_read_cache_if_metric_is_null() {
     try {
       underTestWithMock.getBaseMeasure(FILE_COMPONENT, null);
       fail("an NPE should have been raised");
     } catch (NullPointerException e) {
-      verifyZeroInteractions(mockedDbClient);
+      verifyZeroInteractions(mockedBaseMeasureCache);
     }
   }
 
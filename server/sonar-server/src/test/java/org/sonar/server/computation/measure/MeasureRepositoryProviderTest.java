@@ -0,0 +1,53 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.metric.MetricRepository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class MeasureRepositoryProviderTest {
+
+  Settings settings = new Settings();
+  MeasureRepositoryProvider underTest = new MeasureRepositoryProvider();
+
+  @Test
+  public void provide_map_based_repository_by_default() {
+    MeasureRepository repository = provide();
+
+    assertThat(repository).isInstanceOf(MeasureRepositoryImpl.class);
+    assertThat(provide()).isSameAs(repository);
+  }
+
+  @Test
+  public void provide_dense_repository_if_enabled() {
+    settings.setProperty(MeasureRepositoryProvider.DENSE_PROPERTY, true);
+
+    assertThat(provide()).isInstanceOf(DenseMeasureRepository.class);
+  }
+
+  private MeasureRepository provide() {
+    return underTest.provide(settings, mock(BaseMeasureCache.class), mock(BatchReportReader.class), mock(MetricRepository.class));
+  }
+}
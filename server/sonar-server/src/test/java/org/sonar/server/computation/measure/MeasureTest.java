@@ -196,6 +196,16 @@ public class MeasureTest {
     assertThat(LONG_MEASURE.getLongValue()).isEqualTo(1);
   }
 
+  @Test
+  public void getLongValue_does_not_lose_precision_of_large_values() {
+    long greaterThanDoublePrecision = (1L << 53) + 1;
+
+    assertThat(newMeasureBuilder().create(greaterThanDoublePrecision).getLongValue()).isEqualTo(greaterThanDoublePrecision);
+    assertThat(newMeasureBuilder().create(Long.MAX_VALUE).getLongValue()).isEqualTo(Long.MAX_VALUE);
+    Measure updated = Measure.updatedMeasureBuilder(newMeasureBuilder().create(Long.MAX_VALUE)).setVariations(new MeasureVariations(1d)).create();
+    assertThat(updated.getLongValue()).isEqualTo(Long.MAX_VALUE);
+  }
+
   @Test(expected = IllegalStateException.class)
   @UseDataProvider("all_but_DOUBLE_MEASURE")
   public void getDoubleValue_throws_ISE_for_all_value_types_except_DOUBLE(Measure measure) {
@@ -0,0 +1,113 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation.source;
+
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceReportHashTest {
+
+  static final int FILE_REF = 3;
+
+  @Rule
+  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+
+  @Test
+  public void same_hash_for_same_report_data() {
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line2");
+
+    String hash = compute(2);
+
+    assertThat(hash).hasSize(32);
+    assertThat(compute(2)).isEqualTo(hash);
+  }
+
+  @Test
+  public void hash_changes_when_source_changes() {
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line2");
+    String hash = compute(2);
+
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line3");
+
+    assertThat(compute(2)).isNotEqualTo(hash);
+  }
+
+  @Test
+  public void hash_changes_when_number_of_lines_changes() {
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line2");
+
+    assertThat(compute(3)).isNotEqualTo(compute(2));
+  }
+
+  @Test
+  public void hash_changes_when_coverage_changes() {
+    reportReader.putFileSourceLines(FILE_REF, "line1");
+    String hash = compute(1);
+
+    reportReader.putCoverage(FILE_REF, newArrayList(BatchReport.Coverage.newBuilder().setLine(1).setUtHits(true).build()));
+    String hashWithCoverage = compute(1);
+
+    reportReader.putCoverage(FILE_REF, newArrayList(BatchReport.Coverage.newBuilder().setLine(1).setUtHits(false).build()));
+
+    assertThat(hashWithCoverage).isNotEqualTo(hash);
+    assertThat(compute(1)).isNotEqualTo(hashWithCoverage);
+  }
+
+  @Test
+  public void missing_data_is_not_empty_data() {
+    reportReader.putFileSourceLines(FILE_REF, "line1");
+    String hash = compute(1);
+
+    reportReader.putSymbols(FILE_REF, Collections.<BatchReport.Symbols.Symbol>emptyList());
+
+    assertThat(compute(1)).isNotEqualTo(hash);
+  }
+
+  @Test
+  public void hash_changes_when_cross_project_duplications_change() {
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line2");
+    String hash = compute(2);
+
+    String hashWithDuplications = SourceReportHash.compute(reportReader, FILE_REF, 2, newArrayList(crossProjectDuplication(1)));
+
+    assertThat(hashWithDuplications).isNotEqualTo(hash);
+    assertThat(SourceReportHash.compute(reportReader, FILE_REF, 2, newArrayList(crossProjectDuplication(2)))).isNotEqualTo(hashWithDuplications);
+    assertThat(SourceReportHash.compute(reportReader, FILE_REF, 2, newArrayList(crossProjectDuplication(1)))).isEqualTo(hashWithDuplications);
+  }
+
+  private String compute(int numberOfLines) {
+    return SourceReportHash.compute(reportReader, FILE_REF, numberOfLines, Collections.<BatchReport.Duplication>emptyList());
+  }
+
+  private static BatchReport.Duplication crossProjectDuplication(int line) {
+    BatchReport.Range range = BatchReport.Range.newBuilder().setStartLine(line).setEndLine(line).build();
+    return BatchReport.Duplication.newBuilder()
+      .setOriginPosition(range)
+      .addDuplicate(BatchReport.Duplicate.newBuilder().setOtherFileKey("OTHER_PROJECT:src/Foo.java").setRange(range).build())
+      .build();
+  }
+}
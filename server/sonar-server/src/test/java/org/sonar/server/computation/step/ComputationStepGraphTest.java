@@ -0,0 +1,80 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ComputationStepGraphTest {
+
+  @Test
+  public void steps_writing_different_data_are_independent() {
+    ComputationStepGraph graph = new ComputationStepGraph(Arrays.asList(
+      mock(PersistFileSourcesStep.class), mock(PersistTestsStep.class)));
+
+    assertThat(graph.size()).isEqualTo(2);
+    assertThat(graph.predecessorCount(0)).isEqualTo(0);
+    assertThat(graph.predecessorCount(1)).isEqualTo(0);
+    assertThat(graph.successors(0)).isEmpty();
+  }
+
+  @Test
+  public void step_reading_data_written_by_previous_step_depends_on_it() {
+    ComputationStepGraph graph = new ComputationStepGraph(Arrays.asList(
+      mock(PersistFileSourcesStep.class), mock(PersistTestsStep.class), mock(IndexSourceLinesStep.class)));
+
+    assertThat(graph.predecessorCount(2)).isEqualTo(1);
+    assertThat(graph.successors(0)).containsExactly(2);
+    assertThat(graph.successors(1)).isEmpty();
+  }
+
+  @Test
+  public void step_writing_data_read_by_previous_step_depends_on_it() {
+    ComputationStepGraph graph = new ComputationStepGraph(Arrays.asList(
+      mock(IndexSourceLinesStep.class), mock(PersistFileSourcesStep.class)));
+
+    assertThat(graph.successors(0)).containsExactly(1);
+    assertThat(graph.predecessorCount(1)).isEqualTo(1);
+  }
+
+  @Test
+  public void step_writing_data_written_by_previous_step_depends_on_it() {
+    ComputationStepGraph graph = new ComputationStepGraph(Arrays.asList(
+      mock(PersistMeasuresStep.class), mock(PersistDuplicationsStep.class)));
+
+    assertThat(graph.successors(0)).containsExactly(1);
+  }
+
+  @Test
+  public void step_without_data_flow_is_a_barrier() {
+    ComputationStep barrier = mock(ComputationStep.class);
+    ComputationStepGraph graph = new ComputationStepGraph(Arrays.asList(
+      mock(IndexIssuesStep.class), mock(IndexTestsStep.class), barrier, mock(IndexIssuesStep.class), mock(IndexTestsStep.class)));
+
+    assertThat(graph.step(2)).isSameAs(barrier);
+    assertThat(graph.successors(0)).containsExactly(2, 3);
+    assertThat(graph.successors(1)).containsExactly(2, 4);
+    assertThat(graph.successors(2)).containsExactly(3, 4);
+    assertThat(graph.predecessorCount(2)).isEqualTo(2);
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ComputationStepsExecutorTest {
+
+  @Rule
+  public TestRule timeout = new DisableOnDebug(Timeout.seconds(60));
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  List<ComputationStep> executedSteps = new CopyOnWriteArrayList<>();
+
+  ComputationStep barrier1 = record(mock(ComputationStep.class));
+  ComputationStep persistSources = record(mock(PersistFileSourcesStep.class));
+  ComputationStep persistTests = record(mock(PersistTestsStep.class));
+  ComputationStep barrier2 = record(mock(ComputationStep.class));
+
+  @Test
+  public void execute_steps_sequentially() {
+    new ComputationStepsExecutor(1).execute(Arrays.asList(barrier1, persistSources, persistTests, barrier2));
+
+    assertThat(executedSteps).containsExactly(barrier1, persistSources, persistTests, barrier2);
+  }
+
+  @Test
+  public void execute_independent_steps_concurrently() {
+    // each of both steps waits for the other one, so they must be executed concurrently
+    CountDownLatch latch = new CountDownLatch(2);
+    doAnswer(new CountDownAndAwait(latch)).when(persistSources).execute();
+    doAnswer(new CountDownAndAwait(latch)).when(persistTests).execute();
+
+    new ComputationStepsExecutor(2).execute(Arrays.asList(barrier1, persistSources, persistTests, barrier2));
+
+    assertThat(executedSteps).hasSize(4);
+    assertThat(executedSteps.get(0)).isSameAs(barrier1);
+    assertThat(executedSteps.subList(1, 3)).containsOnly(persistSources, persistTests);
+    assertThat(executedSteps.get(3)).isSameAs(barrier2);
+  }
+
+  @Test
+  public void do_not_start_successors_of_failed_step() {
+    doThrow(new IllegalStateException("failure of step")).when(persistSources).execute();
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("failure of step");
+
+    try {
+      new ComputationStepsExecutor(2).execute(Arrays.asList(persistSources, persistTests, barrier2));
+    } finally {
+      verify(persistTests).execute();
+      verify(barrier2, never()).execute();
+    }
+  }
+
+  private ComputationStep record(final ComputationStep step) {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        executedSteps.add(step);
+        return null;
+      }
+    }).when(step).execute();
+    return step;
+  }
+
+  private class CountDownAndAwait implements Answer<Void> {
+    private final CountDownLatch latch;
+
+    private CountDownAndAwait(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override
+    public Void answer(InvocationOnMock invocation) throws InterruptedException {
+      latch.countDown();
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+      executedSteps.add((ComputationStep) invocation.getMock());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.utils.System2;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.db.DbTester;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.component.FileAttributes;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Category(DbTests.class)
+public class DetectCrossProjectDuplicationsStepTest extends BaseStepTest {
+
+  private static final int FILE_REF = 2;
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  @Rule
+  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+
+  CrossProjectDuplicationsRepository duplicationsRepository = new CrossProjectDuplicationsRepository();
+
+  DetectCrossProjectDuplicationsStep underTest;
+
+  @Before
+  public void setUp() {
+    dbTester.truncateTables();
+    underTest = new DetectCrossProjectDuplicationsStep(dbTester.getDbClient(), treeRootHolder, reportReader, duplicationsRepository);
+  }
+
+  @Override
+  protected ComputationStep step() {
+    return underTest;
+  }
+
+  @Test
+  public void detect_duplications_with_other_projects() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    Component file = initTreeWithFile("java");
+    reportReader.putCpdTextBlocks(FILE_REF, "ff,1,3", "aa,10,14", "bb,11,15", "cc,12,16", "ee,20,25");
+
+    underTest.execute();
+
+    List<BatchReport.Duplication> duplications = duplicationsRepository.getDuplications(file);
+    assertThat(duplications).hasSize(1);
+    BatchReport.Duplication duplication = duplications.get(0);
+    assertThat(duplication.getOriginPosition().getStartLine()).isEqualTo(10);
+    assertThat(duplication.getOriginPosition().getEndLine()).isEqualTo(16);
+    // blocks of the previous analysis of the same project are ignored
+    assertThat(duplication.getDuplicateList()).hasSize(1);
+    BatchReport.Duplicate duplicate = duplication.getDuplicate(0);
+    assertThat(duplicate.getOtherFileKey()).isEqualTo("OTHER_KEY:file");
+    assertThat(duplicate.getRange().getStartLine()).isEqualTo(1);
+    assertThat(duplicate.getRange().getEndLine()).isEqualTo(7);
+  }
+
+  @Test
+  public void detect_only_consecutive_blocks() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    Component file = initTreeWithFile("java");
+    reportReader.putCpdTextBlocks(FILE_REF, "aa,1,5", "cc,2,6", "dd,3,8");
+
+    underTest.execute();
+
+    List<BatchReport.Duplication> duplications = duplicationsRepository.getDuplications(file);
+    assertThat(duplications).hasSize(2);
+    assertThat(duplications.get(0).getOriginPosition().getStartLine()).isEqualTo(1);
+    assertThat(duplications.get(0).getOriginPosition().getEndLine()).isEqualTo(5);
+    assertThat(duplications.get(0).getDuplicate(0).getRange().getEndLine()).isEqualTo(5);
+    assertThat(duplications.get(1).getOriginPosition().getStartLine()).isEqualTo(2);
+    assertThat(duplications.get(1).getOriginPosition().getEndLine()).isEqualTo(8);
+    assertThat(duplications.get(1).getDuplicate(0).getRange().getStartLine()).isEqualTo(3);
+    assertThat(duplications.get(1).getDuplicate(0).getRange().getEndLine()).isEqualTo(15);
+  }
+
+  @Test
+  public void ignore_blocks_of_other_languages() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    Component file = initTreeWithFile("js");
+    reportReader.putCpdTextBlocks(FILE_REF, "aa,10,14", "bb,11,15");
+
+    underTest.execute();
+
+    assertThat(duplicationsRepository.getDuplications(file)).isEmpty();
+  }
+
+  @Test
+  public void nothing_to_do_when_report_has_no_blocks() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    Component file = initTreeWithFile("java");
+
+    underTest.execute();
+
+    assertThat(duplicationsRepository.getDuplications(file)).isEmpty();
+  }
+
+  private Component initTreeWithFile(String language) {
+    Component file = DumbComponent.builder(Component.Type.FILE, FILE_REF).setUuid("FILE2").setKey("PROJECT_KEY:file")
+      .setFileAttributes(new FileAttributes(false, language)).build();
+    Component project = DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey("PROJECT_KEY").addChildren(file).build();
+    treeRootHolder.setRoot(project);
+    return file;
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
+import org.sonar.server.computation.measure.MeasureRepositoryRule;
+import org.sonar.server.computation.metric.MetricRepositoryRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_BLOCKS_KEY;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_FILES_KEY;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_LINES_DENSITY_KEY;
+import static org.sonar.api.measures.CoreMetrics.DUPLICATED_LINES_KEY;
+import static org.sonar.api.measures.CoreMetrics.LINES_KEY;
+import static org.sonar.server.computation.component.Component.Type.DIRECTORY;
+import static org.sonar.server.computation.component.Component.Type.FILE;
+import static org.sonar.server.computation.component.Component.Type.PROJECT;
+import static org.sonar.server.computation.measure.Measure.newMeasureBuilder;
+
+public class DuplicationMeasuresStepTest extends BaseStepTest {
+
+  static final int PROJECT_REF = 1;
+  static final int DIRECTORY_REF = 11;
+  static final int FILE_1_REF = 111;
+  static final int FILE_2_REF = 112;
+  static final int FILE_3_REF = 113;
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+
+  @Rule
+  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+
+  @Rule
+  public MetricRepositoryRule metricRepository = new MetricRepositoryRule()
+    .add(CoreMetrics.LINES)
+    .add(CoreMetrics.NCLOC)
+    .add(CoreMetrics.COMMENT_LINES)
+    .add(CoreMetrics.DUPLICATED_BLOCKS)
+    .add(CoreMetrics.DUPLICATED_LINES)
+    .add(CoreMetrics.DUPLICATED_FILES)
+    .add(CoreMetrics.DUPLICATED_LINES_DENSITY);
+
+  @Rule
+  public MeasureRepositoryRule measureRepository = MeasureRepositoryRule.create(treeRootHolder, metricRepository);
+
+  CrossProjectDuplicationsRepository crossProjectDuplicationsRepository = new CrossProjectDuplicationsRepository();
+
+  Component file1 = DumbComponent.builder(FILE, FILE_1_REF).build();
+  Component file2 = DumbComponent.builder(FILE, FILE_2_REF).build();
+  Component file3 = DumbComponent.builder(FILE, FILE_3_REF).build();
+
+  DuplicationMeasuresStep sut;
+
+  @Before
+  public void setUp() {
+    treeRootHolder.setRoot(DumbComponent.builder(PROJECT, PROJECT_REF)
+      .addChildren(DumbComponent.builder(DIRECTORY, DIRECTORY_REF).addChildren(file1, file2, file3).build())
+      .build());
+    sut = new DuplicationMeasuresStep(treeRootHolder, reportReader, crossProjectDuplicationsRepository, metricRepository, measureRepository);
+
+    // measures of the scanner: file 1 has a block duplicated on lines 1 to 10 and 20 to 29
+    addScannerMeasures(FILE_1_REF, 100, 2, 20, 1);
+    addScannerMeasures(FILE_2_REF, 100, 0, 0, 0);
+    // no duplication measures on file 3, for example because it was excluded from copy-paste detection by scanner
+    measureRepository.addRawMeasure(FILE_3_REF, LINES_KEY, newMeasureBuilder().create(20));
+    addScannerMeasures(DIRECTORY_REF, 200, 2, 20, 1);
+    addScannerMeasures(PROJECT_REF, 200, 2, 20, 1);
+  }
+
+  @Override
+  protected ComputationStep step() {
+    return sut;
+  }
+
+  @Test
+  public void keep_measures_of_scanner_when_no_cross_project_duplications() {
+    reportReader.putDuplications(FILE_1_REF, Arrays.asList(duplication(1, 10, duplicateInSameFile(20, 29))));
+
+    sut.execute();
+
+    assertThat(measureRepository.getNewRawMeasures(FILE_1_REF).isEmpty()).isTrue();
+    assertThat(measureRepository.getNewRawMeasures(FILE_2_REF).isEmpty()).isTrue();
+    assertThat(measureRepository.getNewRawMeasures(FILE_3_REF).isEmpty()).isTrue();
+    assertThat(measureRepository.getNewRawMeasures(DIRECTORY_REF).isEmpty()).isTrue();
+    assertThat(measureRepository.getNewRawMeasures(PROJECT_REF).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void do_nothing_when_no_cross_project_duplications() {
+    BatchReportReader batchReportReader = mock(BatchReportReader.class);
+
+    new DuplicationMeasuresStep(treeRootHolder, batchReportReader, crossProjectDuplicationsRepository, metricRepository, measureRepository).execute();
+
+    verifyZeroInteractions(batchReportReader);
+  }
+
+  @Test
+  public void read_duplications_of_files_having_cross_project_duplications_only() {
+    BatchReportReader batchReportReader = mock(BatchReportReader.class);
+    crossProjectDuplicationsRepository.setDuplications(file2, Arrays.asList(duplication(51, 60, duplicateInOtherProject(5, 14))));
+
+    new DuplicationMeasuresStep(treeRootHolder, batchReportReader, crossProjectDuplicationsRepository, metricRepository, measureRepository).execute();
+
+    verify(batchReportReader).readComponentDuplications(FILE_2_REF);
+    verifyNoMoreInteractions(batchReportReader);
+    assertThat(measureRepository.getNewRawMeasures(FILE_1_REF).isEmpty()).isTrue();
+    assertMeasures(FILE_2_REF, 1, 10, 1, 10.0);
+    assertMeasures(DIRECTORY_REF, 3, 30, 2, 15.0);
+  }
+
+  @Test
+  public void add_cross_project_duplications_to_measures() {
+    reportReader.putDuplications(FILE_1_REF, Arrays.asList(duplication(1, 10, duplicateInSameFile(20, 29))));
+    // overlaps lines 25 to 29 of the duplication inside the project
+    crossProjectDuplicationsRepository.setDuplications(file1, Arrays.asList(duplication(25, 34, duplicateInOtherProject(1, 10))));
+    crossProjectDuplicationsRepository.setDuplications(file2, Arrays.asList(duplication(51, 60, duplicateInOtherProject(5, 14))));
+
+    sut.execute();
+
+    assertMeasures(FILE_1_REF, 3, 25, 1, 25.0);
+    assertMeasures(FILE_2_REF, 1, 10, 1, 10.0);
+    assertMeasures(DIRECTORY_REF, 4, 35, 2, 17.5);
+    assertMeasures(PROJECT_REF, 4, 35, 2, 17.5);
+  }
+
+  @Test
+  public void do_not_count_twice_blocks_already_duplicated_inside_project() {
+    reportReader.putDuplications(FILE_1_REF, Arrays.asList(duplication(1, 10, duplicateInSameFile(20, 29))));
+    crossProjectDuplicationsRepository.setDuplications(file1, Arrays.asList(duplication(1, 10, duplicateInOtherProject(1, 10))));
+
+    sut.execute();
+
+    assertThat(measureRepository.getNewRawMeasures(FILE_1_REF).isEmpty()).isTrue();
+    assertThat(measureRepository.getNewRawMeasures(PROJECT_REF).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void add_measures_when_not_computed_by_scanner() {
+    reportReader.putDuplications(FILE_1_REF, Arrays.asList(duplication(1, 10, duplicateInSameFile(20, 29))));
+    crossProjectDuplicationsRepository.setDuplications(file3, Arrays.asList(duplication(1, 10, duplicateInOtherProject(1, 10))));
+
+    sut.execute();
+
+    assertMeasures(FILE_3_REF, 1, 10, 1, 50.0);
+    assertMeasures(DIRECTORY_REF, 3, 30, 2, 15.0);
+  }
+
+  private void addScannerMeasures(int ref, int lines, int blocks, int duplicatedLines, int files) {
+    measureRepository.addRawMeasure(ref, LINES_KEY, newMeasureBuilder().create(lines));
+    measureRepository.addRawMeasure(ref, DUPLICATED_BLOCKS_KEY, newMeasureBuilder().create(blocks));
+    measureRepository.addRawMeasure(ref, DUPLICATED_LINES_KEY, newMeasureBuilder().create(duplicatedLines));
+    measureRepository.addRawMeasure(ref, DUPLICATED_FILES_KEY, newMeasureBuilder().create(files));
+    measureRepository.addRawMeasure(ref, DUPLICATED_LINES_DENSITY_KEY, newMeasureBuilder().create(100.0 * duplicatedLines / lines));
+  }
+
+  private void assertMeasures(int ref, int blocks, int lines, int files, double density) {
+    assertThat(measureRepository.getRawMeasures(ref).get(DUPLICATED_BLOCKS_KEY).iterator().next().getIntValue()).isEqualTo(blocks);
+    assertThat(measureRepository.getRawMeasures(ref).get(DUPLICATED_LINES_KEY).iterator().next().getIntValue()).isEqualTo(lines);
+    assertThat(measureRepository.getRawMeasures(ref).get(DUPLICATED_FILES_KEY).iterator().next().getIntValue()).isEqualTo(files);
+    assertThat(measureRepository.getRawMeasures(ref).get(DUPLICATED_LINES_DENSITY_KEY).iterator().next().getDoubleValue()).isEqualTo(density);
+  }
+
+  private static BatchReport.Duplication duplication(int startLine, int endLine, BatchReport.Duplicate duplicate) {
+    return BatchReport.Duplication.newBuilder()
+      .setOriginPosition(BatchReport.Range.newBuilder().setStartLine(startLine).setEndLine(endLine).build())
+      .addDuplicate(duplicate)
+      .build();
+  }
+
+  private static BatchReport.Duplicate duplicateInSameFile(int startLine, int endLine) {
+    return BatchReport.Duplicate.newBuilder()
+      .setRange(BatchReport.Range.newBuilder().setStartLine(startLine).setEndLine(endLine).build())
+      .build();
+  }
+
+  private static BatchReport.Duplicate duplicateInOtherProject(int startLine, int endLine) {
+    return BatchReport.Duplicate.newBuilder()
+      .setOtherFileKey("OTHER_PROJECT:src/Foo.java")
+      .setRange(BatchReport.Range.newBuilder().setStartLine(startLine).setEndLine(endLine).build())
+      .build();
+  }
+}
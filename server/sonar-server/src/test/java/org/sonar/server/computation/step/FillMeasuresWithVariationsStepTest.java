@@ -27,6 +27,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
@@ -38,6 +39,7 @@ import org.sonar.db.debt.CharacteristicDao;
 import org.sonar.db.measure.MeasureDao;
 import org.sonar.db.measure.MeasureDto;
 import org.sonar.db.metric.MetricDto;
+import org.sonar.db.profiling.SqlStatementCounter;
 import org.sonar.server.component.ComponentTesting;
 import org.sonar.server.computation.batch.BatchReportReaderRule;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
@@ -45,7 +47,10 @@ import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
 import org.sonar.server.computation.measure.Measure;
 import org.sonar.server.computation.measure.MeasureRepository;
+import org.sonar.server.computation.measure.BaseMeasureCache;
+import org.sonar.server.computation.measure.BaseMeasureCacheStats;
 import org.sonar.server.computation.measure.MeasureRepositoryImpl;
+import org.sonar.server.computation.measure.MeasureVariations;
 import org.sonar.server.computation.metric.Metric;
 import org.sonar.server.computation.metric.Metric.MetricType;
 import org.sonar.server.computation.metric.MetricImpl;
@@ -89,6 +94,9 @@ public class FillMeasuresWithVariationsStepTest {
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
+  @Rule
+  public JUnitTempFolder tempFolder = new JUnitTempFolder();
+
   MeasureRepository measureRepository;
 
   MetricRepositoryImpl metricRepository;
@@ -112,7 +120,7 @@ public class FillMeasuresWithVariationsStepTest {
 
     metricRepository = new MetricRepositoryImpl(dbClient);
     metricRepository.start();
-    measureRepository = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository);
+    measureRepository = new MeasureRepositoryImpl(new BaseMeasureCache(dbClient, treeRootHolder, tempFolder, new BaseMeasureCacheStats()), reportReader, metricRepository);
 
     sut = new FillMeasuresWithVariationsStep(dbClient, treeRootHolder, periodsHolder, metricRepository, measureRepository);
   }
@@ -219,6 +227,58 @@ public class FillMeasuresWithVariationsStepTest {
     assertThat(measure.getVariations().getVariation5()).isEqualTo(-20d);
   }
 
+  @Test
+  public void load_past_measures_of_all_components_and_periods_in_a_single_query() {
+    SnapshotDto period1ProjectSnapshot = createForProject(PROJECT_DTO).setLast(false);
+    SnapshotDto period2ProjectSnapshot = createForProject(PROJECT_DTO).setLast(false);
+    dbClient.snapshotDao().insert(session, period1ProjectSnapshot, period2ProjectSnapshot);
+    dbClient.measureDao().insert(session,
+      newMeasureDto(ISSUES_METRIC.getId(), PROJECT_DTO.getId(), period1ProjectSnapshot.getId(), 60d),
+      newMeasureDto(ISSUES_METRIC.getId(), PROJECT_DTO.getId(), period2ProjectSnapshot.getId(), 70d));
+
+    ComponentDto directory1Dto = ComponentTesting.newDirectory(PROJECT_DTO, "dir1");
+    ComponentDto directory2Dto = ComponentTesting.newDirectory(PROJECT_DTO, "dir2");
+    dbClient.componentDao().insert(session, directory1Dto, directory2Dto);
+    SnapshotDto period1Directory1Snapshot = createForComponent(directory1Dto, period1ProjectSnapshot);
+    SnapshotDto period2Directory1Snapshot = createForComponent(directory1Dto, period2ProjectSnapshot);
+    SnapshotDto period1Directory2Snapshot = createForComponent(directory2Dto, period1ProjectSnapshot);
+    dbClient.snapshotDao().insert(session, period1Directory1Snapshot, period2Directory1Snapshot, period1Directory2Snapshot);
+    dbClient.measureDao().insert(session,
+      newMeasureDto(ISSUES_METRIC.getId(), directory1Dto.getId(), period1Directory1Snapshot.getId(), 10d),
+      newMeasureDto(ISSUES_METRIC.getId(), directory1Dto.getId(), period2Directory1Snapshot.getId(), 15d),
+      newMeasureDto(ISSUES_METRIC.getId(), directory2Dto.getId(), period1Directory2Snapshot.getId(), 30d));
+    session.commit();
+
+    // periods 1 and 3 refer to the same snapshot
+    periodsHolder.setPeriods(newPeriod(1, period1ProjectSnapshot), newPeriod(2, period2ProjectSnapshot), newPeriod(3, period1ProjectSnapshot));
+
+    Component directory1 = DumbComponent.builder(Component.Type.DIRECTORY, 2).setUuid(directory1Dto.uuid()).build();
+    Component directory2 = DumbComponent.builder(Component.Type.DIRECTORY, 3).setUuid(directory2Dto.uuid()).build();
+    Component project = DumbComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_DTO.uuid()).addChildren(directory1, directory2).build();
+    treeRootHolder.setRoot(project);
+
+    addRawMeasure(project, ISSUES_METRIC, Measure.newMeasureBuilder().create(80, null));
+    addRawMeasure(directory1, ISSUES_METRIC, Measure.newMeasureBuilder().create(20, null));
+    addRawMeasure(directory2, ISSUES_METRIC, Measure.newMeasureBuilder().create(40, null));
+
+    long sqlStatements = SqlStatementCounter.get();
+    sut.execute();
+    assertThat(SqlStatementCounter.get() - sqlStatements).isEqualTo(1);
+
+    MeasureVariations projectVariations = measureRepository.getRawMeasure(project, toMetric(ISSUES_METRIC)).get().getVariations();
+    assertThat(projectVariations.getVariation1()).isEqualTo(20d);
+    assertThat(projectVariations.getVariation2()).isEqualTo(10d);
+    assertThat(projectVariations.getVariation3()).isEqualTo(20d);
+    MeasureVariations directory1Variations = measureRepository.getRawMeasure(directory1, toMetric(ISSUES_METRIC)).get().getVariations();
+    assertThat(directory1Variations.getVariation1()).isEqualTo(10d);
+    assertThat(directory1Variations.getVariation2()).isEqualTo(5d);
+    assertThat(directory1Variations.getVariation3()).isEqualTo(10d);
+    MeasureVariations directory2Variations = measureRepository.getRawMeasure(directory2, toMetric(ISSUES_METRIC)).get().getVariations();
+    assertThat(directory2Variations.getVariation1()).isEqualTo(10d);
+    assertThat(directory2Variations.hasVariation2()).isFalse();
+    assertThat(directory2Variations.getVariation3()).isEqualTo(10d);
+  }
+
   @Test
   public void set_variation_on_all_numeric_metrics() {
     SnapshotDto period1ProjectSnapshot = createForProject(PROJECT_DTO);
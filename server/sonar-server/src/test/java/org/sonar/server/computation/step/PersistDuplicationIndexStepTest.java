@@ -0,0 +1,95 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.step;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbTester;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.DbIdsRepository;
+import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Category(DbTests.class)
+public class PersistDuplicationIndexStepTest extends BaseStepTest {
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  @Rule
+  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+
+  DbIdsRepository dbIdsRepository = new DbIdsRepository();
+
+  PersistDuplicationIndexStep underTest;
+
+  @Before
+  public void setUp() {
+    dbTester.truncateTables();
+    underTest = new PersistDuplicationIndexStep(dbTester.getDbClient(), dbIdsRepository, treeRootHolder, reportReader);
+
+    Component file1 = DumbComponent.builder(Component.Type.FILE, 2).setUuid("BCDE").setKey("PROJECT_KEY:file1").build();
+    Component file2 = DumbComponent.builder(Component.Type.FILE, 3).setUuid("CDEF").setKey("PROJECT_KEY:file2").build();
+    Component project = DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey("PROJECT_KEY").addChildren(file1, file2).build();
+    treeRootHolder.setRoot(project);
+    dbIdsRepository.setSnapshotId(project, 10);
+    dbIdsRepository.setSnapshotId(file1, 11);
+    dbIdsRepository.setSnapshotId(file2, 12);
+  }
+
+  @Override
+  protected ComputationStep step() {
+    return underTest;
+  }
+
+  @Test
+  public void persist_blocks_of_report() {
+    reportReader.putCpdTextBlocks(2, "aa,1,5", "bb,2,6");
+
+    underTest.execute();
+
+    List<Map<String, Object>> rows = dbTester.select("select snapshot_id as \"snapshotId\", project_snapshot_id as \"projectSnapshotId\", hash as \"hash\", "
+      + "index_in_file as \"indexInFile\", start_line as \"startLine\", end_line as \"endLine\" from duplications_index order by index_in_file");
+    assertThat(rows).hasSize(2);
+    assertThat(rows.get(0)).containsEntry("snapshotId", 11L).containsEntry("projectSnapshotId", 10L).containsEntry("hash", "aa")
+      .containsEntry("indexInFile", 0L).containsEntry("startLine", 1L).containsEntry("endLine", 5L);
+    assertThat(rows.get(1)).containsEntry("snapshotId", 11L).containsEntry("hash", "bb")
+      .containsEntry("indexInFile", 1L).containsEntry("startLine", 2L).containsEntry("endLine", 6L);
+  }
+
+  @Test
+  public void nothing_to_persist_when_report_has_no_blocks() {
+    underTest.execute();
+
+    assertThat(dbTester.countRowsOfTable("duplications_index")).isEqualTo(0);
+  }
+}
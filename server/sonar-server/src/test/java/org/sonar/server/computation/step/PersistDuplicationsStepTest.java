@@ -39,6 +39,7 @@ import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.metric.persistence.MetricDao;
 import org.sonar.test.DbTests;
@@ -62,6 +63,8 @@ public class PersistDuplicationsStepTest extends BaseStepTest {
 
   DbIdsRepository dbIdsRepository = new DbIdsRepository();
 
+  CrossProjectDuplicationsRepository crossProjectDuplicationsRepository = new CrossProjectDuplicationsRepository();
+
   DbSession session;
 
   DbClient dbClient;
@@ -74,7 +77,7 @@ public class PersistDuplicationsStepTest extends BaseStepTest {
     session = dbTester.myBatis().openSession(false);
     dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new MeasureDao(), new MetricDao());
 
-    sut = new PersistDuplicationsStep(dbClient, dbIdsRepository, treeRootHolder, reportReader);
+    sut = new PersistDuplicationsStep(dbClient, dbIdsRepository, treeRootHolder, reportReader, crossProjectDuplicationsRepository);
   }
 
   @Override
@@ -319,6 +322,32 @@ public class PersistDuplicationsStepTest extends BaseStepTest {
     assertThat(dto.get("textValue")).isEqualTo("<duplications><g><b s=\"1\" l=\"5\" r=\"PROJECT_KEY:file\"/><b s=\"6\" l=\"5\" r=\"PROJECT2_KEY:file2\"/></g></duplications>");
   }
 
+  @Test
+  public void persist_duplications_detected_with_other_projects() {
+    saveDuplicationMetric();
+    initReportWithProjectAndFile();
+
+    BatchReport.Duplication duplication = BatchReport.Duplication.newBuilder()
+      .setOriginPosition(Range.newBuilder().setStartLine(1).setEndLine(5).build())
+      .addDuplicate(BatchReport.Duplicate.newBuilder().setOtherFileRef(2).setRange(Range.newBuilder().setStartLine(6).setEndLine(10).build()).build())
+      .build();
+    reportReader.putDuplications(2, newArrayList(duplication));
+    BatchReport.Duplication crossProjectDuplication = BatchReport.Duplication.newBuilder()
+      .setOriginPosition(Range.newBuilder().setStartLine(20).setEndLine(30).build())
+      .addDuplicate(BatchReport.Duplicate.newBuilder().setOtherFileKey("PROJECT2_KEY:file2").setRange(Range.newBuilder().setStartLine(1).setEndLine(11).build()).build())
+      .build();
+    crossProjectDuplicationsRepository.setDuplications(treeRootHolder.getComponentByRef(2), newArrayList(crossProjectDuplication));
+
+    sut.execute();
+
+    Map<String, Object> dto = dbTester.selectFirst("select snapshot_id as \"snapshotId\", text_value as \"textValue\" from project_measures");
+    assertThat(dto.get("snapshotId")).isEqualTo(11L);
+    assertThat(dto.get("textValue")).isEqualTo("<duplications>"
+      + "<g><b s=\"1\" l=\"5\" r=\"PROJECT_KEY:file\"/><b s=\"6\" l=\"5\" r=\"PROJECT_KEY:file\"/></g>"
+      + "<g><b s=\"20\" l=\"11\" r=\"PROJECT_KEY:file\"/><b s=\"1\" l=\"11\" r=\"PROJECT2_KEY:file2\"/></g>"
+      + "</duplications>");
+  }
+
   private void initReportWithProjectAndFile() {
     Component file = DumbComponent.builder(Component.Type.FILE, 2).setUuid("BCDE").setKey("PROJECT_KEY:file").build();
     Component project = DumbComponent.builder(Component.Type.PROJECT, 1).setUuid("ABCD").setKey(PROJECT_KEY).addChildren(file).build();
@@ -21,13 +21,17 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import java.util.Collections;
 import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Language;
+import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.System2;
 import org.sonar.batch.protocol.Constants;
 import org.sonar.batch.protocol.output.BatchReport;
@@ -39,7 +43,10 @@ import org.sonar.server.computation.batch.BatchReportReaderRule;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DumbComponent;
+import org.sonar.server.computation.duplication.CrossProjectDuplicationsRepository;
 import org.sonar.server.computation.language.LanguageRepository;
+import org.sonar.server.computation.source.SourceReportHash;
+import org.sonar.server.source.SourceLinesCache;
 import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.test.DbTests;
 
@@ -47,6 +54,7 @@ import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Category(DbTests.class)
@@ -73,6 +81,8 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
   public TemporaryFolder temp = new TemporaryFolder();
 
   DbClient dbClient = dbTester.getDbClient();
+  SourceLinesCache linesCache = mock(SourceLinesCache.class);
+  CrossProjectDuplicationsRepository crossProjectDuplicationsRepository = new CrossProjectDuplicationsRepository();
   PersistFileSourcesStep sut;
 
   long now = 123456789L;
@@ -81,7 +91,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
   public void setup() {
     dbTester.truncateTables();
     when(system2.now()).thenReturn(now);
-    sut = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader);
+    sut = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader, crossProjectDuplicationsRepository, linesCache, new Settings());
   }
 
   @Override
@@ -296,6 +306,63 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(data.getLines(0).getDuplicationList()).hasSize(1);
   }
 
+  @Test
+  public void persist_cross_project_duplication() {
+    initBasicReport(2);
+    crossProjectDuplicationsRepository.setDuplications(treeRootHolder.getComponentByRef(FILE_REF), newArrayList(
+      BatchReport.Duplication.newBuilder()
+        .setOriginPosition(BatchReport.Range.newBuilder().setStartLine(2).setEndLine(2).build())
+        .addDuplicate(BatchReport.Duplicate.newBuilder()
+          .setOtherFileKey("OTHER_PROJECT:src/Bar.java")
+          .setRange(BatchReport.Range.newBuilder().setStartLine(5).setEndLine(5).build())
+          .build())
+        .build()
+      ));
+
+    sut.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
+    FileSourceDb.Data data = FileSourceDto.decodeSourceData(fileSourceDto.getBinaryData());
+    assertThat(data.getLines(0).getDuplicationList()).isEmpty();
+    assertThat(data.getLines(1).getDuplicationList()).containsExactly(1);
+    assertThat(fileSourceDto.getReportHash()).isEqualTo(SourceReportHash.compute(reportReader, FILE_REF, 2,
+      crossProjectDuplicationsRepository.getDuplications(treeRootHolder.getComponentByRef(FILE_REF))));
+  }
+
+  @Test
+  public void update_sources_when_only_cross_project_duplications_have_changed() {
+    initBasicReport(1);
+    long past = 150000L;
+    dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE_UUID)
+      .setDataType(Type.SOURCE)
+      .setSrcHash("SRC_HASH")
+      .setLineHashes("LINE_HASHES")
+      .setDataHash("DATA_HASH")
+      .setReportHash(SourceReportHash.compute(reportReader, FILE_REF, 1, Collections.<BatchReport.Duplication>emptyList()))
+      .setSourceData(FileSourceDb.Data.newBuilder().build())
+      .setCreatedAt(past)
+      .setUpdatedAt(past));
+    dbTester.getSession().commit();
+    crossProjectDuplicationsRepository.setDuplications(treeRootHolder.getComponentByRef(FILE_REF), newArrayList(
+      BatchReport.Duplication.newBuilder()
+        .setOriginPosition(BatchReport.Range.newBuilder().setStartLine(1).setEndLine(1).build())
+        .addDuplicate(BatchReport.Duplicate.newBuilder()
+          .setOtherFileKey("OTHER_PROJECT:src/Bar.java")
+          .setRange(BatchReport.Range.newBuilder().setStartLine(1).setEndLine(1).build())
+          .build())
+        .build()
+      ));
+
+    sut.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
+    FileSourceDb.Data data = FileSourceDto.decodeSourceData(fileSourceDto.getBinaryData());
+    assertThat(data.getLines(0).getDuplicationList()).containsExactly(1);
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now);
+  }
+
   @Test
   public void not_update_sources_when_nothing_has_changed() {
     // Existing sources
@@ -363,6 +430,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(past);
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now);
+    verify(linesCache).invalidate(ImmutableSet.of(FILE_UUID));
   }
 
   @Test
@@ -398,6 +466,120 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getSrcHash()).isEqualTo("137f72c3708c6bd0de00a0e5a69c699b");
   }
 
+  @Test
+  public void persist_report_hash() {
+    initBasicReport(2);
+
+    sut.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
+    assertThat(fileSourceDto.getReportHash()).isEqualTo(SourceReportHash.compute(reportReader, FILE_REF, 2, Collections.<BatchReport.Duplication>emptyList()));
+  }
+
+  @Test
+  public void not_compute_sources_when_report_hash_has_not_changed() {
+    initBasicReport(1);
+    // Invalid highlighting, which fails if data are decoded
+    reportReader.putSyntaxHighlighting(FILE_REF, newArrayList(BatchReport.SyntaxHighlighting.newBuilder()
+      .setRange(BatchReport.Range.newBuilder().setStartLine(1).setEndLine(1).setStartOffset(4).setEndOffset(2).build())
+      .setType(Constants.HighlightingType.ANNOTATION)
+      .build()));
+
+    long past = 150000L;
+    dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE_UUID)
+      .setDataType(Type.SOURCE)
+      .setSrcHash("SRC_HASH")
+      .setLineHashes("LINE_HASHES")
+      .setDataHash("DATA_HASH")
+      .setReportHash(SourceReportHash.compute(reportReader, FILE_REF, 1, Collections.<BatchReport.Duplication>emptyList()))
+      .setSourceData(FileSourceDb.Data.newBuilder().build())
+      .setCreatedAt(past)
+      .setUpdatedAt(past));
+    dbTester.getSession().commit();
+
+    sut.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
+    assertThat(fileSourceDto.getSrcHash()).isEqualTo("SRC_HASH");
+    assertThat(fileSourceDto.getDataHash()).isEqualTo("DATA_HASH");
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
+  }
+
+  @Test
+  public void update_report_hash_when_missing() {
+    long past = 150000L;
+    dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE_UUID)
+      .setDataType(Type.SOURCE)
+      .setSrcHash("137f72c3708c6bd0de00a0e5a69c699b")
+      .setLineHashes("137f72c3708c6bd0de00a0e5a69c699b")
+      .setDataHash("29f25900140c94db38035128cb6de6a2")
+      .setSourceData(FileSourceDb.Data.newBuilder()
+        .addLines(FileSourceDb.Line.newBuilder()
+          .setLine(1)
+          .setSource("line1")
+          .build())
+        .build())
+      .setCreatedAt(past)
+      .setUpdatedAt(past));
+    dbTester.getSession().commit();
+
+    initBasicReport(1);
+
+    sut.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
+    assertThat(fileSourceDto.getReportHash()).isEqualTo(SourceReportHash.compute(reportReader, FILE_REF, 1, Collections.<BatchReport.Duplication>emptyList()));
+    // Binary data did not change, so file source must not be indexed again
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
+  }
+
+  @Test
+  public void persist_sources_of_many_files_in_parallel() {
+    int numberOfFiles = 50;
+    DumbComponent.Builder project = DumbComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY);
+    for (int i = 0; i < numberOfFiles; i++) {
+      int fileRef = 10 + i;
+      project.addChildren(DumbComponent.builder(Component.Type.FILE, fileRef).setUuid("FILE_" + i).setKey("PROJECT_KEY:file" + i).build());
+      reportReader.putComponent(BatchReport.Component.newBuilder()
+        .setRef(fileRef)
+        .setType(Constants.ComponentType.FILE)
+        .setLines(1)
+        .build());
+      reportReader.putFileSourceLines(fileRef, "line of file " + i);
+    }
+    treeRootHolder.setRoot(project.build());
+
+    Settings settings = new Settings().setProperty(PersistFileSourcesStep.THREADS_PROPERTY, 3);
+    new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader, crossProjectDuplicationsRepository, linesCache, settings).execute();
+
+    assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(numberOfFiles);
+    for (int i = 0; i < numberOfFiles; i++) {
+      FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource("FILE_" + i);
+      FileSourceDb.Data data = FileSourceDto.decodeSourceData(fileSourceDto.getBinaryData());
+      assertThat(data.getLines(0).getSource()).isEqualTo("line of file " + i);
+    }
+  }
+
+  @Test
+  public void number_of_threads_is_configurable() {
+    assertThat(PersistFileSourcesStep.threads(new Settings().setProperty(PersistFileSourcesStep.THREADS_PROPERTY, 3))).isEqualTo(3);
+    assertThat(PersistFileSourcesStep.threads(new Settings())).isGreaterThanOrEqualTo(1);
+  }
+
+  @Test
+  public void fail_if_number_of_threads_is_not_positive() {
+    try {
+      PersistFileSourcesStep.threads(new Settings().setProperty(PersistFileSourcesStep.THREADS_PROPERTY, 0));
+      failBecauseExceptionWasNotThrown(MessageException.class);
+    } catch (MessageException e) {
+      assertThat(e).hasMessage("Property sonar.ce.fileSources.threads must be strictly positive. Got 0");
+    }
+  }
+
   @Test
   public void display_file_path_when_exception_is_generated() {
     initBasicReport(1);
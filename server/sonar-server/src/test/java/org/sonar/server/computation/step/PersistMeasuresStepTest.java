@@ -29,6 +29,7 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.api.utils.internal.Uuids;
 import org.sonar.batch.protocol.Constants.MeasureValueType;
 import org.sonar.batch.protocol.output.BatchReport;
@@ -44,6 +45,8 @@ import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.DbIdsRepository;
 import org.sonar.server.computation.component.DumbComponent;
 import org.sonar.server.computation.measure.MeasureRepository;
+import org.sonar.server.computation.measure.BaseMeasureCache;
+import org.sonar.server.computation.measure.BaseMeasureCacheStats;
 import org.sonar.server.computation.measure.MeasureRepositoryImpl;
 import org.sonar.server.computation.metric.MetricRepositoryRule;
 import org.sonar.server.db.DbClient;
@@ -79,6 +82,9 @@ public class PersistMeasuresStepTest extends BaseStepTest {
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
+  @Rule
+  public JUnitTempFolder tempFolder = new JUnitTempFolder();
+
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
 
@@ -101,7 +107,7 @@ public class PersistMeasuresStepTest extends BaseStepTest {
     dbClient = new DbClient(dbTester.database(), dbTester.myBatis(), new MeasureDao(), new ComponentDao(), new MetricDao(), new RuleDao(System2.INSTANCE));
     session = dbClient.openSession(false);
 
-    MeasureRepository measureRepository = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository);
+    MeasureRepository measureRepository = new MeasureRepositoryImpl(new BaseMeasureCache(dbClient, treeRootHolder, tempFolder, new BaseMeasureCacheStats()), reportReader, metricRepository);
     session.commit();
 
     sut = new PersistMeasuresStep(dbClient, metricRepository, dbIdsRepository, treeRootHolder, measureRepository);
@@ -29,9 +29,13 @@ import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.utils.ZipUtils;
 import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.batch.protocol.output.BatchReport;
+import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.IndexedReportWriter;
 import org.sonar.db.compute.AnalysisReportDto;
 import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.computation.batch.MutableBatchReportDirectoryHolder;
@@ -90,6 +94,32 @@ public class ReportExtractionStepTest {
     verifyFile(subdir3, "6.txt", "6\n");
   }
 
+  @Test
+  public void do_not_extract_indexed_report() throws Exception {
+    File reportDir = tempFolder.newDir();
+    new BatchReportWriter(reportDir).writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("P1").build());
+    File report = tempFolder.newFile();
+    IndexedReportWriter.pack(reportDir, report, true);
+
+    new ReportExtractionStep(new ReportQueue.Item(dto, report), tempFolder, reportDirectoryHolder).execute();
+
+    verify(reportDirectoryHolder).setDirectory(report);
+    verifyNoMoreInteractions(reportDirectoryHolder);
+  }
+
+  @Test
+  public void do_not_extract_zipped_report_directory() throws Exception {
+    File reportDir = tempFolder.newDir();
+    new BatchReportWriter(reportDir).writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("P1").build());
+    File report = tempFolder.newFile();
+    ZipUtils.zipDir(reportDir, report);
+
+    new ReportExtractionStep(new ReportQueue.Item(dto, report), tempFolder, reportDirectoryHolder).execute();
+
+    verify(reportDirectoryHolder).setDirectory(report);
+    verifyNoMoreInteractions(reportDirectoryHolder);
+  }
+
   @Test
   public void verify_show_log_at_DEBUG_level() throws URISyntaxException {
     logTester.setLevel(LoggerLevel.DEBUG);
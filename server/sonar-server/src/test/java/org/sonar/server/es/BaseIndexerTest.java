@@ -0,0 +1,185 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BaseIndexerTest {
+
+  EsClient client = mock(EsClient.class);
+  IndexingScheduler scheduler;
+  FakeIndexer underTest;
+
+  @Before
+  public void setUp() {
+    scheduler = new IndexingScheduler(client, new Settings());
+    when(client.indexingScheduler()).thenReturn(scheduler);
+    when(client.getMaxFieldValue("fakes", "fake", "updatedAt")).thenReturn(0L);
+    underTest = new FakeIndexer(client);
+  }
+
+  @After
+  public void tearDown() {
+    underTest.stop();
+  }
+
+  @Test
+  public void do_nothing_if_disabled() throws Exception {
+    underTest.index();
+    underTest.indexAsync().get();
+
+    assertThat(underTest.calls).isEmpty();
+  }
+
+  @Test
+  public void index_incrementally() {
+    underTest.setEnabled(true);
+
+    underTest.index();
+    underTest.index();
+
+    assertThat(underTest.calls).containsExactly(0L, 1000L);
+    assertThat(scheduler.lagByIndex()).containsKey("fakes");
+  }
+
+  @Test
+  public void merge_requests_waiting_for_execution() throws Exception {
+    underTest.setEnabled(true);
+    underTest.blockNextCall();
+    Future<?> running = underTest.indexAsync();
+    underTest.waitForBlockedCall();
+
+    // both requests are queued while first one is being executed
+    List<Future<?>> waiting = new ArrayList<>();
+    waiting.add(underTest.indexAsync());
+    waiting.add(underTest.indexAsync());
+    assertThat(waiting.get(0)).isSameAs(waiting.get(1));
+
+    underTest.unblock();
+    running.get(5, TimeUnit.SECONDS);
+    waiting.get(0).get(5, TimeUnit.SECONDS);
+
+    assertThat(underTest.calls).hasSize(2);
+  }
+
+  @Test
+  public void merge_different_tasks_into_incremental_indexing() throws Exception {
+    underTest.setEnabled(true);
+    underTest.blockNextCall();
+    Future<?> running = underTest.indexAsync();
+    underTest.waitForBlockedCall();
+
+    final List<String> customCalls = new ArrayList<>();
+    Thread thread1 = indexInThread(new BaseIndexer.IndexerTask() {
+      @Override
+      public long index(long lastUpdatedAt) {
+        customCalls.add("task1");
+        return 0L;
+      }
+    });
+    Thread thread2 = indexInThread(new BaseIndexer.IndexerTask() {
+      @Override
+      public long index(long lastUpdatedAt) {
+        customCalls.add("task2");
+        return 0L;
+      }
+    });
+
+    waitUntilWaiting(thread1);
+    waitUntilWaiting(thread2);
+
+    underTest.unblock();
+    running.get(5, TimeUnit.SECONDS);
+    thread1.join(5000L);
+    thread2.join(5000L);
+
+    assertThat(customCalls).isEmpty();
+    assertThat(underTest.calls).hasSize(2);
+  }
+
+  private Thread indexInThread(final BaseIndexer.IndexerTask task) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        underTest.index(task);
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+  private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+    // thread waits for the completion of its request
+    while (thread.getState() != Thread.State.WAITING) {
+      Thread.sleep(10L);
+    }
+  }
+
+  private static class FakeIndexer extends BaseIndexer {
+    private final List<Long> calls = new ArrayList<>();
+    private volatile CountDownLatch blocked = null;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch unblocked = new CountDownLatch(1);
+
+    FakeIndexer(EsClient client) {
+      super(client, 0L, "fakes", "fake", "updatedAt");
+    }
+
+    void blockNextCall() {
+      blocked = unblocked;
+    }
+
+    void waitForBlockedCall() throws InterruptedException {
+      assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    void unblock() {
+      unblocked.countDown();
+    }
+
+    @Override
+    protected long doIndex(long lastUpdatedAt) {
+      calls.add(lastUpdatedAt);
+      CountDownLatch latch = blocked;
+      if (latch != null) {
+        blocked = null;
+        started.countDown();
+        try {
+          latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return lastUpdatedAt + 1000L;
+    }
+  }
+}
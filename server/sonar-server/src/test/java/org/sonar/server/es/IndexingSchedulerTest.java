@@ -0,0 +1,112 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexingSchedulerTest {
+
+  EsClient client = mock(EsClient.class);
+  RefreshRequestBuilder refreshRequest = mock(RefreshRequestBuilder.class);
+  System2 system2 = mock(System2.class);
+  IndexingScheduler underTest;
+
+  @Before
+  public void setUp() {
+    when(client.prepareRefresh("issues")).thenReturn(refreshRequest);
+  }
+
+  @After
+  public void tearDown() {
+    if (underTest != null) {
+      underTest.stop();
+    }
+  }
+
+  @Test
+  public void refresh_immediately_by_default() {
+    underTest = new IndexingScheduler(client, new Settings());
+    assertThat(underTest.getRefreshIntervalMillis()).isEqualTo(0L);
+
+    underTest.refresh("issues");
+    underTest.refresh("issues");
+
+    verify(refreshRequest, times(2)).get();
+    assertThat(underTest.getPendingRefreshes()).isEqualTo(0);
+  }
+
+  @Test
+  public void coalesce_refreshes_received_during_interval() {
+    underTest = new IndexingScheduler(client, new Settings().setProperty(IndexingScheduler.REFRESH_INTERVAL_PROPERTY, "200"));
+    assertThat(underTest.getRefreshIntervalMillis()).isEqualTo(200L);
+
+    underTest.refresh("issues");
+    underTest.refresh("issues");
+    underTest.refresh("issues");
+    verify(refreshRequest, never()).get();
+
+    verify(refreshRequest, timeout(5000)).get();
+    assertThat(underTest.getPendingRefreshes()).isEqualTo(0);
+
+    // new interval
+    underTest.refresh("issues");
+    verify(refreshRequest, timeout(5000).times(2)).get();
+  }
+
+  @Test
+  public void drop_pending_refreshes_on_stop() {
+    underTest = new IndexingScheduler(client, System2.INSTANCE, 60000L);
+
+    underTest.refresh("issues");
+    assertThat(underTest.getPendingRefreshes()).isEqualTo(1);
+
+    underTest.stop();
+    assertThat(underTest.getPendingRefreshes()).isEqualTo(0);
+    verify(refreshRequest, never()).get();
+  }
+
+  @Test
+  public void compute_lag_of_indexed_documents() {
+    underTest = new IndexingScheduler(client, system2, 0L);
+    assertThat(underTest.lagByIndex()).isEmpty();
+
+    underTest.indexed("issues", 1000L);
+    underTest.indexed("sourcelines", 1500L);
+    // no documents indexed
+    underTest.indexed("tests", 0L);
+    when(system2.now()).thenReturn(2000L);
+
+    assertThat(underTest.lagByIndex()).containsExactly(entry("issues", 1000L), entry("sourcelines", 500L));
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import java.util.LinkedHashMap;
+import org.junit.Test;
+import org.sonar.server.computation.ComputationThreadLauncher;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.computation.measure.BaseMeasureCacheStats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sonar.db.compute.AnalysisReportDto.Status.PENDING;
+import static org.sonar.db.compute.AnalysisReportDto.Status.WORKING;
+
+public class ComputeEngineMonitorTest {
+
+  ReportQueue queue = mock(ReportQueue.class);
+  ComputationThreadLauncher launcher = mock(ComputationThreadLauncher.class);
+  BaseMeasureCacheStats baseMeasureCacheStats = mock(BaseMeasureCacheStats.class);
+  ComputeEngineMonitor sut = new ComputeEngineMonitor(queue, launcher, baseMeasureCacheStats);
+
+  @Test
+  public void name() {
+    assertThat(sut.name()).isEqualTo("ComputeEngine");
+  }
+
+  @Test
+  public void queue_and_workers_info() {
+    when(queue.count(PENDING)).thenReturn(12);
+    when(queue.count(WORKING)).thenReturn(3);
+    when(launcher.getWorkerCount()).thenReturn(4);
+    when(baseMeasureCacheStats.getHits()).thenReturn(150L);
+    when(baseMeasureCacheStats.getMisses()).thenReturn(20L);
+
+    LinkedHashMap<String, Object> attributes = sut.attributes();
+
+    assertThat(attributes).containsExactly(
+      entry("Pending Reports", 12),
+      entry("In Progress Reports", 3),
+      entry("Workers", 4),
+      entry("Worker Utilization (%)", 75),
+      entry("Base Measures Cache Hits", 150L),
+      entry("Base Measures Cache Misses", 20L));
+    assertThat(sut.getWorkerUtilization()).isEqualTo(75);
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.server.source.SourceLinesCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class SourceLinesCacheMonitorTest {
+
+  SourceLinesCache cache = new SourceLinesCache(new Settings());
+  SourceLinesCacheMonitor sut = new SourceLinesCacheMonitor(cache);
+
+  @Test
+  public void name() {
+    assertThat(sut.name()).isEqualTo("SourceLinesCache");
+  }
+
+  @Test
+  public void cache_stats() {
+    cache.put("FILE1", "hash", 1, 10, Arrays.asList("line1"));
+    cache.get("FILE1", "hash", 1, 10);
+    cache.get("FILE1", "hash", 1, 10);
+    cache.get("FILE1", "hash", 1, 10);
+    cache.get("FILE2", "hash", 1, 10);
+
+    LinkedHashMap<String, Object> attributes = sut.attributes();
+
+    assertThat(attributes).containsExactly(
+      entry("Entries", 1L),
+      entry("Hits", 3L),
+      entry("Misses", 1L),
+      entry("Hit Rate (%)", 75),
+      entry("Evictions", 0L));
+    assertThat(sut.getHitRate()).isEqualTo(75);
+    assertThat(sut.getSize()).isEqualTo(1L);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceLinesCacheTest {
+
+  SourceLinesCache cache = new SourceLinesCache(100L);
+
+  @Test
+  public void get_lines_of_same_range_and_data_hash() {
+    cache.put("FILE1", "hash1", 1, 10, Arrays.asList("line1", "line2"));
+
+    assertThat(cache.get("FILE1", "hash1", 1, 10)).containsExactly("line1", "line2");
+    assertThat(cache.get("FILE1", "hash2", 1, 10)).isNull();
+    assertThat(cache.get("FILE1", "hash1", 1, 11)).isNull();
+    assertThat(cache.get("FILE2", "hash1", 1, 10)).isNull();
+    assertThat(cache.stats().hitCount()).isEqualTo(1L);
+    assertThat(cache.stats().missCount()).isEqualTo(3L);
+  }
+
+  @Test
+  public void invalidate_all_ranges_of_files() {
+    cache.put("FILE1", "hash1", 1, 10, Arrays.asList("line1"));
+    cache.put("FILE1", "hash1", 5, 10, Arrays.asList("line5"));
+    cache.put("FILE2", "hash2", 1, 10, Arrays.asList("line1"));
+
+    cache.invalidate(ImmutableSet.of("FILE1"));
+
+    assertThat(cache.size()).isEqualTo(1L);
+    assertThat(cache.get("FILE2", "hash2", 1, 10)).containsExactly("line1");
+
+    cache.invalidate(Collections.<String>emptySet());
+    assertThat(cache.size()).isEqualTo(1L);
+  }
+
+  @Test
+  public void size_is_bounded_by_number_of_characters() {
+    for (int i = 0; i < 50; i++) {
+      cache.put("FILE" + i, "hash", 1, 10, Arrays.asList("0123456789"));
+    }
+
+    assertThat(cache.size()).isLessThanOrEqualTo(10L);
+    assertThat(cache.stats().evictionCount()).isGreaterThanOrEqualTo(40L);
+  }
+
+  @Test
+  public void disable_cache() {
+    cache = new SourceLinesCache(new Settings().setProperty(SourceLinesCache.MAX_SIZE_PROPERTY, 0));
+
+    cache.put("FILE1", "hash1", 1, 10, Arrays.asList("line1"));
+
+    assertThat(cache.get("FILE1", "hash1", 1, 10)).isNull();
+  }
+}
@@ -17,51 +17,53 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-
 package org.sonar.server.source;
 
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.sonar.db.measure.MeasureDao;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
-
-import java.util.Arrays;
-import java.util.List;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.db.source.SourceLines;
+import org.sonar.server.source.db.FileSourceDb;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class SourceServiceTest {
 
-  static final String PROJECT_KEY = "org.sonar.sample";
   static final String COMPONENT_UUID = "abc123";
 
   @Mock
   HtmlSourceDecorator sourceDecorator;
 
-  @Mock
-  MeasureDao measureDao;
+  @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+  DbClient dbClient;
 
-  @Mock
-  SourceLineIndex sourceLineIndex;
+  SourceLinesCache linesCache = new SourceLinesCache(1000L);
 
   SourceService service;
 
   @Before
   public void setUp() {
-    service = new SourceService(sourceDecorator, sourceLineIndex);
+    service = new SourceService(sourceDecorator, dbClient, linesCache);
   }
 
   @Test
   public void get_html_lines() {
-    when(sourceLineIndex.getLines(COMPONENT_UUID, 1, Integer.MAX_VALUE)).thenReturn(
-      Arrays.asList(new SourceLineDoc().setSource("source").setHighlighting("highlight").setSymbols("symbols")));
+    mockLines(1, Integer.MAX_VALUE, FileSourceDb.Line.newBuilder().setLine(1).setSource("source").setHighlighting("highlight").setSymbols("symbols").build());
 
     service.getLinesAsHtml(COMPONENT_UUID, null, null);
 
@@ -70,10 +72,9 @@ public class SourceServiceTest {
 
   @Test
   public void get_block_of_lines() {
-
-    when(sourceLineIndex.getLines(COMPONENT_UUID, 1, Integer.MAX_VALUE)).thenReturn(
-      Arrays.asList(new SourceLineDoc().setSource("source").setHighlighting("highlight").setSymbols("symbols"),
-        new SourceLineDoc().setSource("source2").setHighlighting("highlight2").setSymbols("symbols2")));
+    mockLines(1, Integer.MAX_VALUE,
+      FileSourceDb.Line.newBuilder().setLine(1).setSource("source").setHighlighting("highlight").setSymbols("symbols").build(),
+      FileSourceDb.Line.newBuilder().setLine(2).setSource("source2").setHighlighting("highlight2").setSymbols("symbols2").build());
 
     service.getLinesAsHtml(COMPONENT_UUID, null, null);
 
@@ -83,13 +84,75 @@ public class SourceServiceTest {
 
   @Test
   public void getLinesAsTxt() {
-    when(sourceLineIndex.getLines(COMPONENT_UUID, 1, Integer.MAX_VALUE)).thenReturn(
-      Arrays.asList(
-        new SourceLineDoc().setSource("line1"),
-        new SourceLineDoc().setSource("line2")));
+    mockLines(1, Integer.MAX_VALUE,
+      FileSourceDb.Line.newBuilder().setLine(1).setSource("line1").build(),
+      FileSourceDb.Line.newBuilder().setLine(2).setSource("line2").build());
 
     List<String> result = service.getLinesAsTxt(COMPONENT_UUID, null, null);
     assertThat(result).contains("line1", "line2");
   }
 
+  @Test
+  public void no_lines_when_file_has_no_source() {
+    when(dbClient.fileSourceDao().selectSourceHashes(any(DbSession.class), eq(COMPONENT_UUID))).thenReturn(null);
+    when(dbClient.fileSourceDao().selectSourceLines(any(DbSession.class), eq(COMPONENT_UUID), any(Integer.class), any(Integer.class))).thenReturn(null);
+
+    assertThat(service.getLinesAsTxt(COMPONENT_UUID, null, null)).isEmpty();
+    assertThat(service.getLinesAsHtml(COMPONENT_UUID, null, null)).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_to_get_lines_if_from_is_greater_than_to() {
+    service.getLines(COMPONENT_UUID, 10, 5);
+  }
+
+  @Test
+  public void cache_html_lines_until_data_hash_changes() {
+    mockLines("hash1", 1, 2, FileSourceDb.Line.newBuilder().setLine(1).setSource("source").build());
+    when(sourceDecorator.getDecoratedSourceAsHtml("source", null, null)).thenReturn("<span>source</span>");
+
+    assertThat(service.getLinesAsHtml(COMPONENT_UUID, 1, 2)).containsExactly("<span>source</span>");
+    assertThat(service.getLinesAsHtml(COMPONENT_UUID, 1, 2)).containsExactly("<span>source</span>");
+    verify(sourceDecorator, times(1)).getDecoratedSourceAsHtml("source", null, null);
+    assertThat(linesCache.stats().hitCount()).isEqualTo(1L);
+    // a cache hit does not read the lines
+    verify(dbClient.fileSourceDao(), times(1)).selectSourceLines(any(DbSession.class), eq(COMPONENT_UUID), eq(1), eq(2));
+
+    mockLines("hash2", 1, 2, FileSourceDb.Line.newBuilder().setLine(1).setSource("source").build());
+    service.getLinesAsHtml(COMPONENT_UUID, 1, 2);
+    verify(sourceDecorator, times(2)).getDecoratedSourceAsHtml("source", null, null);
+  }
+
+  @Test
+  public void cache_html_lines_with_data_hash_read_with_lines() {
+    // file source is updated between the read of hashes and the read of lines
+    mockLines("new_hash", 1, 2, FileSourceDb.Line.newBuilder().setLine(1).setSource("source").build());
+    when(dbClient.fileSourceDao().selectSourceHashes(any(DbSession.class), eq(COMPONENT_UUID))).thenReturn(new FileSourceDto().setDataHash("old_hash"));
+    when(sourceDecorator.getDecoratedSourceAsHtml("source", null, null)).thenReturn("<span>source</span>");
+
+    service.getLinesAsHtml(COMPONENT_UUID, 1, 2);
+
+    assertThat(linesCache.get(COMPONENT_UUID, "old_hash", 1, 2)).isNull();
+    assertThat(linesCache.get(COMPONENT_UUID, "new_hash", 1, 2)).hasSize(1);
+  }
+
+  @Test
+  public void do_not_cache_html_lines_without_data_hash() {
+    mockLines(null, 1, 2, FileSourceDb.Line.newBuilder().setLine(1).setSource("source").build());
+
+    service.getLinesAsHtml(COMPONENT_UUID, 1, 2);
+    service.getLinesAsHtml(COMPONENT_UUID, 1, 2);
+
+    verify(sourceDecorator, times(2)).getDecoratedSourceAsHtml("source", null, null);
+    assertThat(linesCache.size()).isZero();
+  }
+
+  private void mockLines(int from, int to, FileSourceDb.Line... lines) {
+    mockLines(null, from, to, lines);
+  }
+
+  private void mockLines(@Nullable String dataHash, int from, int to, FileSourceDb.Line... lines) {
+    when(dbClient.fileSourceDao().selectSourceHashes(any(DbSession.class), eq(COMPONENT_UUID))).thenReturn(new FileSourceDto().setDataHash(dataHash));
+    when(dbClient.fileSourceDao().selectSourceLines(any(DbSession.class), eq(COMPONENT_UUID), eq(from), eq(to))).thenReturn(new SourceLines(dataHash, Arrays.asList(lines)));
+  }
 }
@@ -20,33 +20,35 @@
 
 package org.sonar.server.source.ws;
 
-import com.google.common.collect.ImmutableList;
-import java.util.Date;
 import org.junit.Before;
-import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.sonar.api.config.Settings;
+import org.sonar.api.utils.DateUtils;
 import org.sonar.api.utils.System2;
 import org.sonar.api.web.UserRole;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbTester;
 import org.sonar.db.component.ComponentDao;
 import org.sonar.db.component.ComponentDto;
+import org.sonar.db.source.FileSourceDto;
 import org.sonar.server.component.ComponentTesting;
-import org.sonar.server.es.EsTester;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.exceptions.NotFoundException;
 import org.sonar.server.source.HtmlSourceDecorator;
-import org.sonar.server.source.index.SourceLineDoc;
-import org.sonar.server.source.index.SourceLineIndex;
-import org.sonar.server.source.index.SourceLineIndexDefinition;
+import org.sonar.server.source.SourceLinesCache;
+import org.sonar.server.source.SourceService;
+import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.tester.UserSessionRule;
 import org.sonar.server.ws.WsTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class LinesActionTest {
 
@@ -57,99 +59,70 @@ public class LinesActionTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
-  @ClassRule
-  public static EsTester esTester = new EsTester().addDefinitions(new SourceLineIndexDefinition(new Settings()));
-
   @Rule
   public DbTester dbTester = DbTester.create(System2.INSTANCE);
 
   @Rule
   public UserSessionRule userSessionRule = UserSessionRule.standalone();
 
-  SourceLineIndex sourceLineIndex;
-
-  HtmlSourceDecorator htmlSourceDecorator;
-
   ComponentDao componentDao;
 
+  HtmlSourceDecorator htmlSourceDecorator = spy(new HtmlSourceDecorator());
+
   WsTester wsTester;
 
   @Before
   public void setUp() {
     dbTester.truncateTables();
-    esTester.truncateIndices();
 
-    htmlSourceDecorator = new HtmlSourceDecorator();
-    sourceLineIndex = new SourceLineIndex(esTester.client());
     componentDao = new ComponentDao();
     DbClient dbClient = dbTester.getDbClient();
-    wsTester = new WsTester(new SourcesWs(new LinesAction(dbClient, sourceLineIndex, htmlSourceDecorator, userSessionRule)));
+    SourceService sourceService = new SourceService(htmlSourceDecorator, dbClient, new SourceLinesCache(new Settings()));
+    wsTester = new WsTester(new SourcesWs(new LinesAction(dbClient, sourceService, userSessionRule)));
   }
 
   @Test
   public void show_source() throws Exception {
     newFile();
 
-    Date updatedAt = new Date();
-    String scmDate = "2014-01-01T12:34:56.789Z";
-    SourceLineDoc line1 = new SourceLineDoc()
-      .setProjectUuid(PROJECT_UUID)
-      .setFileUuid(FILE_UUID)
-      .setLine(1)
-      .setScmRevision("cafebabe")
-      .setScmAuthor("polop")
-      .setSource("package org.polop;")
-      .setHighlighting("0,7,k")
-      .setSymbols("8,17,42")
-      .setUtLineHits(3)
-      .setUtConditions(2)
-      .setUtCoveredConditions(1)
-      .setItLineHits(3)
-      .setItConditions(2)
-      .setItCoveredConditions(1)
-      .setDuplications(ImmutableList.<Integer>of())
-      .setUpdateDate(updatedAt);
-    line1.setField(SourceLineIndexDefinition.FIELD_SCM_DATE, scmDate);
-
-    SourceLineDoc line2 = new SourceLineDoc()
-      .setProjectUuid(PROJECT_UUID)
-      .setFileUuid(FILE_UUID)
-      .setLine(2)
-      .setScmRevision("cafebabe")
-      .setScmAuthor("polop")
-      .setSource("abc")
-      .setHighlighting("0,5,c")
-      .setSymbols("")
-      .setUtLineHits(3)
-      .setUtConditions(2)
-      .setUtCoveredConditions(1)
-      .setItLineHits(null)
-      .setItConditions(null)
-      .setItCoveredConditions(null)
-      .setDuplications(ImmutableList.of(1))
-      .setUpdateDate(updatedAt);
-    line2.setField(SourceLineIndexDefinition.FIELD_SCM_DATE, scmDate);
-
-    SourceLineDoc line3 = new SourceLineDoc()
-      .setProjectUuid(PROJECT_UUID)
-      .setFileUuid(FILE_UUID)
-      .setLine(3)
-      .setScmRevision("cafebabe")
-      .setScmAuthor("polop")
-      .setSource("}")
-      .setHighlighting(null)
-      .setSymbols(null)
-      .setUtLineHits(null)
-      .setUtConditions(null)
-      .setUtCoveredConditions(null)
-      .setItLineHits(3)
-      .setItConditions(2)
-      .setItCoveredConditions(1)
-      .setDuplications(ImmutableList.<Integer>of())
-      .setUpdateDate(updatedAt);
-    line3.setField(SourceLineIndexDefinition.FIELD_SCM_DATE, scmDate);
-
-    esTester.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE, line1, line2, line3);
+    long scmDate = DateUtils.parseDateTime("2014-01-01T12:34:56+0100").getTime();
+    insertSource(FileSourceDb.Data.newBuilder()
+      .addLines(FileSourceDb.Line.newBuilder()
+        .setLine(1)
+        .setScmRevision("cafebabe")
+        .setScmAuthor("polop")
+        .setScmDate(scmDate)
+        .setSource("package org.polop;")
+        .setHighlighting("0,7,k")
+        .setSymbols("8,17,42")
+        .setUtLineHits(3)
+        .setUtConditions(2)
+        .setUtCoveredConditions(1)
+        .setItLineHits(3)
+        .setItConditions(2)
+        .setItCoveredConditions(1))
+      .addLines(FileSourceDb.Line.newBuilder()
+        .setLine(2)
+        .setScmRevision("cafebabe")
+        .setScmAuthor("polop")
+        .setScmDate(scmDate)
+        .setSource("abc")
+        .setHighlighting("0,5,c")
+        .setSymbols("")
+        .setUtLineHits(3)
+        .setUtConditions(2)
+        .setUtCoveredConditions(1)
+        .addDuplication(1))
+      .addLines(FileSourceDb.Line.newBuilder()
+        .setLine(3)
+        .setScmRevision("cafebabe")
+        .setScmAuthor("polop")
+        .setScmDate(scmDate)
+        .setSource("}")
+        .setItLineHits(3)
+        .setItConditions(2)
+        .setItCoveredConditions(1))
+      .build());
 
     userSessionRule.login("login").addProjectUuidPermissions(UserRole.CODEVIEWER, PROJECT_UUID);
 
@@ -178,26 +151,7 @@ public class LinesActionTest {
 
     userSessionRule.login("login").addProjectUuidPermissions(UserRole.CODEVIEWER, PROJECT_UUID);
 
-    esTester.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE,
-      new SourceLineDoc()
-        .setProjectUuid(PROJECT_UUID)
-        .setFileUuid(FILE_UUID)
-        .setLine(3)
-        .setScmRevision("cafebabe")
-        .setScmDate(null)
-        .setScmAuthor("polop")
-        .setSource("}")
-        .setHighlighting("")
-        .setSymbols("")
-        .setUtLineHits(null)
-        .setUtConditions(null)
-        .setUtCoveredConditions(null)
-        .setItLineHits(null)
-        .setItConditions(null)
-        .setItCoveredConditions(null)
-        .setDuplications(null)
-        .setUpdateDate(new Date())
-    );
+    insertSource(threeLines());
 
     WsTester.TestRequest request = wsTester
       .newGetRequest("api/sources", "lines")
@@ -207,34 +161,29 @@ public class LinesActionTest {
     request.execute().assertJson(getClass(), "show_source_with_params_from_and_to.json");
   }
 
+  @Test
+  public void decorate_lines_only_once() throws Exception {
+    newFile();
+    insertSource(threeLines());
+    userSessionRule.login("login").addProjectUuidPermissions(UserRole.CODEVIEWER, PROJECT_UUID);
+
+    wsTester.newGetRequest("api/sources", "lines").setParam("uuid", FILE_UUID).execute();
+    String secondResponse = wsTester.newGetRequest("api/sources", "lines").setParam("uuid", FILE_UUID).execute().outputAsString();
+
+    assertThat(secondResponse).contains("\"code\":\"abc\"", "\"code\":\"}\"");
+
+    verify(htmlSourceDecorator, times(3)).getDecoratedSourceAsHtml(anyString(), anyString(), anyString());
+  }
+
   @Test
   public void show_source_by_file_key() throws Exception {
     newFile();
 
-    esTester.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE,
-      new SourceLineDoc()
-        .setProjectUuid(PROJECT_UUID)
-        .setFileUuid(FILE_UUID)
-        .setLine(3)
-        .setScmRevision("cafebabe")
-        .setScmDate(null)
-        .setScmAuthor("polop")
-        .setSource("}")
-        .setHighlighting("")
-        .setSymbols("")
-        .setUtLineHits(null)
-        .setUtConditions(null)
-        .setUtCoveredConditions(null)
-        .setItLineHits(null)
-        .setItConditions(null)
-        .setItCoveredConditions(null)
-        .setDuplications(null)
-        .setUpdateDate(new Date())
-    );
+    insertSource(threeLines());
 
     userSessionRule.login("login").addProjectUuidPermissions(UserRole.CODEVIEWER, PROJECT_UUID);
 
-    WsTester.TestRequest request = wsTester.newGetRequest("api/sources", "lines").setParam("key", FILE_KEY);
+    WsTester.TestRequest request = wsTester.newGetRequest("api/sources", "lines").setParam("key", FILE_KEY).setParam("from", "3");
     request.execute().assertJson(getClass(), "show_source_by_file_key.json");
   }
 
@@ -276,6 +225,34 @@ public class LinesActionTest {
       .execute();
   }
 
+  private static FileSourceDb.Data threeLines() {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int line = 1; line <= 3; line++) {
+      data.addLinesBuilder()
+        .setLine(line)
+        .setScmRevision("cafebabe")
+        .setScmAuthor("polop")
+        .setSource(line == 3 ? "}" : "abc")
+        .setHighlighting("")
+        .setSymbols("");
+    }
+    return data.build();
+  }
+
+  private void insertSource(FileSourceDb.Data data) {
+    dbTester.getDbClient().fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE_UUID)
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setSourceData(data)
+      .setDataHash("DATA_HASH")
+      .setLineHashes("")
+      .setSrcHash("SRC_HASH")
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000000L));
+    dbTester.getSession().commit();
+  }
+
   private void newFile() {
     ComponentDto project = ComponentTesting.newProjectDto(PROJECT_UUID);
     ComponentDto file = ComponentTesting.newFileDto(project, FILE_UUID).setKey(FILE_KEY);
@@ -52,6 +52,33 @@ public class DiskCacheTest {
     }
   }
 
+  @Test
+  public void read_objects_of_multiple_appenders() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE);
+    cache.newAppender().append("foo").close();
+    cache.newAppender().close();
+    cache.newAppender().append("bar").append("baz").close();
+
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "baz");
+    }
+  }
+
+  @Test
+  public void write_and_read_compressed_objects() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE, new JavaSerializer<String>(), true);
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).isEmpty();
+    }
+
+    cache.newAppender().append("foo").append("bar").close();
+    cache.newAppender().close();
+    cache.newAppender().append("baz").close();
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "baz");
+    }
+  }
+
   @Test
   public void fail_if_file_is_not_writable() throws Exception {
     try {
@@ -0,0 +1,170 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.ws;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.api.utils.text.JsonWriter;
+import org.sonar.server.plugins.MimeTypes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ServletResponseTest {
+
+  HttpServletResponse servletResponse = mock(HttpServletResponse.class);
+  FakeServletOutputStream servletOutput = new FakeServletOutputStream();
+
+  @Before
+  public void setUp() throws IOException {
+    when(servletResponse.getOutputStream()).thenReturn(servletOutput);
+  }
+
+  @Test
+  public void buffer_whole_response_by_default() throws Exception {
+    ServletResponse response = new ServletResponse();
+    write(response, 100000);
+
+    assertThat(response.stream().isCommitted()).isFalse();
+    assertThat(response.stream().bufferedOutput()).hasSize(100000);
+  }
+
+  @Test
+  public void buffer_small_streamed_response() throws Exception {
+    ServletResponse response = new ServletResponse(servletResponse, false, 10);
+    write(response, 9);
+    response.stream().finish();
+
+    assertThat(response.stream().isCommitted()).isFalse();
+    assertThat(response.stream().outputAsString()).isEqualTo("aaaaaaaaa");
+    verifyZeroInteractions(servletResponse);
+  }
+
+  @Test
+  public void stream_large_response() throws Exception {
+    ServletResponse response = new ServletResponse(servletResponse, false, 10);
+    response.setHeader("foo", "bar");
+    response.stream().setStatus(201).setMediaType(MimeTypes.TXT);
+    write(response, 15);
+
+    assertThat(response.stream().isCommitted()).isTrue();
+    verify(servletResponse).setStatus(201);
+    verify(servletResponse).setContentType(MimeTypes.TXT);
+    verify(servletResponse).setHeader("foo", "bar");
+    verify(servletResponse, never()).setHeader("Content-Encoding", "gzip");
+    assertThat(response.stream().bufferedOutput()).isEmpty();
+
+    write(response, 5);
+    response.stream().finish();
+    assertThat(servletOutput.toString()).hasSize(20);
+    assertThat(servletOutput.closed).isTrue();
+  }
+
+  @Test
+  public void gzip_streamed_response() throws Exception {
+    ServletResponse response = new ServletResponse(servletResponse, true, 10);
+    write(response, 100);
+    response.stream().finish();
+
+    verify(servletResponse).setHeader("Content-Encoding", "gzip");
+    String uncompressed = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(servletOutput.bytes.toByteArray())), StandardCharsets.UTF_8);
+    assertThat(uncompressed).hasSize(100).matches("a+");
+  }
+
+  @Test
+  public void gzip_only_if_accepted_by_client() throws Exception {
+    HttpServletRequest servletRequest = mock(HttpServletRequest.class);
+    when(servletRequest.getHeader("Accept-Encoding")).thenReturn("deflate, gzip");
+    ServletResponse response = new ServletResponse(servletRequest, servletResponse);
+    write(response, ServletResponse.STREAMING_THRESHOLD);
+    response.stream().finish();
+
+    verify(servletResponse).setHeader("Content-Encoding", "gzip");
+  }
+
+  @Test
+  public void stream_json() throws Exception {
+    ServletResponse response = new ServletResponse(servletResponse, false, 10);
+    JsonWriter json = response.newJsonWriter();
+    json.beginObject().prop("key", "a very long value").endObject().close();
+    response.stream().finish();
+
+    verify(servletResponse).setContentType(MimeTypes.JSON);
+    assertThat(servletOutput.toString()).isEqualTo("{\"key\":\"a very long value\"}");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_to_reset_committed_response() throws Exception {
+    ServletResponse response = new ServletResponse(servletResponse, false, 10);
+    write(response, 15);
+
+    response.stream().reset();
+  }
+
+  private static void write(ServletResponse response, int size) throws IOException {
+    for (int i = 0; i < size; i++) {
+      response.stream().output().write('a');
+    }
+  }
+
+  private static class FakeServletOutputStream extends ServletOutputStream {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private boolean closed = false;
+
+    @Override
+    public void write(int b) {
+      bytes.write(b);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+      return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
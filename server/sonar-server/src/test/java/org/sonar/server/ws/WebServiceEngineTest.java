@@ -25,6 +25,8 @@ import java.io.InputStream;
 import java.util.Locale;
 import java.util.Map;
 import javax.annotation.Nullable;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -44,6 +46,7 @@ import org.sonar.server.tester.UserSessionRule;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class WebServiceEngineTest {
@@ -238,6 +241,22 @@ public class WebServiceEngineTest {
     assertThat(response.stream().mediaType()).isEqualTo(MimeTypes.JSON);
   }
 
+  @Test
+  public void internal_error_after_response_is_committed() throws Exception {
+    ValidatingRequest request = new SimpleRequest("GET");
+    HttpServletResponse servletResponse = mock(HttpServletResponse.class);
+    ServletOutputStream servletOutput = mock(ServletOutputStream.class);
+    when(servletResponse.getOutputStream()).thenReturn(servletOutput);
+    ServletResponse response = new ServletResponse(servletResponse, false, ServletResponse.STREAMING_THRESHOLD);
+    engine.execute(request, response, "api/system", "fail_after_streaming");
+
+    // status and beginning of response are already sent, response is truncated
+    assertThat(response.stream().isCommitted()).isTrue();
+    verify(servletResponse).setStatus(200);
+    verify(servletResponse).setContentType(MimeTypes.TXT);
+    verify(servletOutput).close();
+  }
+
   @Test
   public void bad_request_with_i18n_message() {
     userSessionRule.setLocale(Locale.ENGLISH);
@@ -334,6 +353,15 @@ public class WebServiceEngineTest {
             throw new IllegalStateException("Unexpected");
           }
         });
+      newController.createAction("fail_after_streaming")
+        .setHandler(new RequestHandler() {
+          @Override
+          public void handle(Request request, Response response) throws Exception {
+            response.stream().setMediaType(MimeTypes.TXT);
+            response.stream().output().write(new byte[ServletResponse.STREAMING_THRESHOLD]);
+            throw new IllegalStateException("Unexpected");
+          }
+        });
       newController.createAction("fail_with_i18n_message")
         .setHandler(new RequestHandler() {
           @Override
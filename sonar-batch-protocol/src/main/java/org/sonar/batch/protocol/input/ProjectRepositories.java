@@ -19,6 +19,7 @@
  */
 package org.sonar.batch.protocol.input;
 
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -118,4 +119,12 @@ public class ProjectRepositories {
     return GsonHelper.create().fromJson(json, ProjectRepositories.class);
   }
 
+  /**
+   * Parses JSON from a stream, without loading the whole document in memory.
+   * @since 5.2
+   */
+  public static ProjectRepositories fromJson(Reader json) {
+    return GsonHelper.create().fromJson(json, ProjectRepositories.class);
+  }
+
 }
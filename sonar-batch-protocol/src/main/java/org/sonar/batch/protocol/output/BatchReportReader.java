@@ -19,21 +19,55 @@
  */
 package org.sonar.batch.protocol.output;
 
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
 import javax.annotation.CheckForNull;
+import org.apache.commons.io.IOUtils;
 import org.sonar.batch.protocol.ProtobufUtil;
 
-public class BatchReportReader {
+/**
+ * Reads an analysis report, either extracted in a directory (see {@link BatchReportWriter}), stored
+ * in a single indexed file (see {@link IndexedReportWriter}) or zipped. Reports stored in a single file
+ * are read without being extracted. The reader must then be closed.
+ */
+public class BatchReportReader implements Closeable {
 
+  @CheckForNull
   private final FileStructure fileStructure;
-
-  public BatchReportReader(File dir) {
-    this.fileStructure = new FileStructure(dir);
+  @CheckForNull
+  private final ReportEntries entries;
+
+  /**
+   * @param location directory of the report, indexed report file or zip of report directory
+   */
+  public BatchReportReader(File location) {
+    if (IndexedReport.isIndexedReport(location)) {
+      this.fileStructure = null;
+      this.entries = IndexedReport.open(location);
+    } else if (ZippedReport.isZippedReport(location)) {
+      this.fileStructure = null;
+      this.entries = ZippedReport.open(location);
+    } else {
+      this.fileStructure = new FileStructure(location);
+      this.entries = null;
+    }
   }
 
   public BatchReport.Metadata readMetadata() {
+    if (entries != null) {
+      InputStream input = entries.openMetadata();
+      if (input == null) {
+        throw new IllegalStateException("Metadata file is missing in analysis report: " + entries.getFile());
+      }
+      return parse(input, BatchReport.Metadata.PARSER);
+    }
     File file = fileStructure.metadataFile();
     if (!doesFileExists(file)) {
       throw new IllegalStateException("Metadata file is missing in analysis report: " + file);
@@ -42,10 +76,9 @@ public class BatchReportReader {
   }
 
   public List<BatchReport.Measure> readComponentMeasures(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    if (doesFileExists(file)) {
+    BatchReport.Measures measures = readMessage(FileStructure.Domain.MEASURES, componentRef, BatchReport.Measures.PARSER);
+    if (measures != null) {
       // all the measures are loaded in memory
-      BatchReport.Measures measures = ProtobufUtil.readFile(file, BatchReport.Measures.PARSER);
       return measures.getMeasureList();
     }
     return Collections.emptyList();
@@ -53,100 +86,110 @@ public class BatchReportReader {
 
   @CheckForNull
   public BatchReport.Changesets readChangesets(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, componentRef);
-    if (doesFileExists(file)) {
-      return ProtobufUtil.readFile(file, BatchReport.Changesets.PARSER);
-    }
-    return null;
+    return readMessage(FileStructure.Domain.CHANGESETS, componentRef, BatchReport.Changesets.PARSER);
   }
 
   public BatchReport.Component readComponent(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, componentRef);
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + file);
+    BatchReport.Component component = readMessage(FileStructure.Domain.COMPONENT, componentRef, BatchReport.Component.PARSER);
+    if (component == null) {
+      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". " + missingDataMessage(FileStructure.Domain.COMPONENT, componentRef));
     }
-    return ProtobufUtil.readFile(file, BatchReport.Component.PARSER);
+    return component;
   }
 
   public List<BatchReport.Issue> readComponentIssues(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    if (doesFileExists(file)) {
+    BatchReport.Issues issues = readMessage(FileStructure.Domain.ISSUES, componentRef, BatchReport.Issues.PARSER);
+    if (issues != null) {
       // all the issues are loaded in memory
-      BatchReport.Issues issues = ProtobufUtil.readFile(file, BatchReport.Issues.PARSER);
       return issues.getIssueList();
     }
     return Collections.emptyList();
   }
 
   public List<BatchReport.Duplication> readComponentDuplications(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    if (doesFileExists(file)) {
+    BatchReport.Duplications duplications = readMessage(FileStructure.Domain.DUPLICATIONS, componentRef, BatchReport.Duplications.PARSER);
+    if (duplications != null) {
       // all the duplications are loaded in memory
-      BatchReport.Duplications duplications = ProtobufUtil.readFile(file, BatchReport.Duplications.PARSER);
       return duplications.getDuplicationList();
     }
     return Collections.emptyList();
   }
 
   public List<BatchReport.Symbols.Symbol> readComponentSymbols(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    if (doesFileExists(file)) {
+    BatchReport.Symbols symbols = readMessage(FileStructure.Domain.SYMBOLS, componentRef, BatchReport.Symbols.PARSER);
+    if (symbols != null) {
       // all the symbols are loaded in memory
-      BatchReport.Symbols symbols = ProtobufUtil.readFile(file, BatchReport.Symbols.PARSER);
       return symbols.getSymbolList();
     }
     return Collections.emptyList();
   }
 
   public boolean hasSyntaxHighlighting(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    return file.exists();
+    return hasComponentData(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
   }
 
+  public boolean hasComponentData(FileStructure.Domain domain, int componentRef) {
+    if (entries != null) {
+      return entries.has(domain, componentRef);
+    }
+    return doesFileExists(fileStructure.fileFor(domain, componentRef));
+  }
+
+  /**
+   * Raw content of the data of a component, or null if the report has no such data. The stream
+   * must be closed by caller.
+   */
   @CheckForNull
-  public File readComponentSyntaxHighlighting(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
+  public InputStream openComponentData(FileStructure.Domain domain, int componentRef) {
+    if (entries != null) {
+      return entries.open(domain, componentRef);
+    }
+    File file = fileStructure.fileFor(domain, componentRef);
     if (doesFileExists(file)) {
-      return file;
+      try {
+        return new FileInputStream(file);
+      } catch (IOException e) {
+        throw new IllegalStateException("Failed to read file: " + file, e);
+      }
     }
     return null;
   }
 
   @CheckForNull
-  public File readComponentCoverage(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, fileRef);
+  private <T extends Message> T readMessage(FileStructure.Domain domain, int componentRef, Parser<T> parser) {
+    if (entries != null) {
+      InputStream input = entries.open(domain, componentRef);
+      return input == null ? null : parse(input, parser);
+    }
+    File file = fileStructure.fileFor(domain, componentRef);
     if (doesFileExists(file)) {
-      return file;
+      return ProtobufUtil.readFile(file, parser);
     }
     return null;
   }
 
-  public File readFileSource(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SOURCE, fileRef);
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Unable to find source for file #" + fileRef + ". File does not exist: " + file);
+  private <T extends Message> T parse(InputStream input, Parser<T> parser) {
+    try {
+      return parser.parseFrom(input);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read report: " + entries.getFile(), e);
+    } finally {
+      IOUtils.closeQuietly(input);
     }
-    return file;
   }
 
-  @CheckForNull
-  public File readTests(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef);
-    if (doesFileExists(file)) {
-      return file;
+  private String missingDataMessage(FileStructure.Domain domain, int componentRef) {
+    if (entries != null) {
+      return "Entry does not exist in report: " + entries.getFile();
     }
-
-    return null;
+    return "File does not exist: " + fileStructure.fileFor(domain, componentRef);
   }
 
-  @CheckForNull
-  public File readCoverageDetails(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
-    if (doesFileExists(file)) {
-      return file;
+  @Override
+  public void close() {
+    if (entries != null) {
+      entries.close();
     }
-
-    return null;
   }
 
   private static boolean doesFileExists(File file) {
@@ -126,4 +126,8 @@ public class BatchReportWriter {
     return fileStructure.fileFor(FileStructure.Domain.SOURCE, componentRef);
   }
 
+  public File getCpdTextBlocksFile(int componentRef) {
+    return fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
+  }
+
 }
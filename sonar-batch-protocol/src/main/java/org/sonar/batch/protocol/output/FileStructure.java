@@ -20,38 +20,80 @@
 package org.sonar.batch.protocol.output;
 
 import java.io.File;
+import javax.annotation.CheckForNull;
 
 /**
  * Structure of files in the zipped report
  */
 public class FileStructure {
 
+  /**
+   * Codes identify domains in indexed reports (see {@link IndexedReport}). They must never
+   * be changed nor reused, whatever the order of declaration.
+   */
   public enum Domain {
-    ISSUES("issues-", Domain.PB),
-    ISSUES_ON_DELETED("issues-deleted-", Domain.PB),
-    COMPONENT("component-", Domain.PB),
-    MEASURES("measures-", Domain.PB),
-    DUPLICATIONS("duplications-", Domain.PB),
-    SYNTAX_HIGHLIGHTINGS("syntax-highlightings-", Domain.PB),
-    CHANGESETS("changesets-", Domain.PB),
-    SYMBOLS("symbols-", Domain.PB),
-    COVERAGES("coverages-", Domain.PB),
-    TESTS("tests-", Domain.PB),
-    COVERAGE_DETAILS("coverage-details-", Domain.PB),
-    FILE_DEPENDENCIES("file-dependencies-", Domain.PB),
-    MODULE_DEPENDENCIES("module-dependencies-", Domain.PB),
-    SOURCE("source-", ".txt");
+    ISSUES(0, "issues-", Domain.PB),
+    ISSUES_ON_DELETED(1, "issues-deleted-", Domain.PB),
+    COMPONENT(2, "component-", Domain.PB),
+    MEASURES(3, "measures-", Domain.PB),
+    DUPLICATIONS(4, "duplications-", Domain.PB),
+    SYNTAX_HIGHLIGHTINGS(5, "syntax-highlightings-", Domain.PB),
+    CHANGESETS(6, "changesets-", Domain.PB),
+    SYMBOLS(7, "symbols-", Domain.PB),
+    COVERAGES(8, "coverages-", Domain.PB),
+    TESTS(9, "tests-", Domain.PB),
+    COVERAGE_DETAILS(10, "coverage-details-", Domain.PB),
+    FILE_DEPENDENCIES(11, "file-dependencies-", Domain.PB),
+    MODULE_DEPENDENCIES(12, "module-dependencies-", Domain.PB),
+    SOURCE(13, "source-", ".txt"),
+    /**
+     * Blocks of the copy-paste detection, one line per block in the order of the file:
+     * {@code <hash>,<start line>,<end line>}. Only written when cross-project detection is enabled.
+     */
+    CPD_TEXT_BLOCKS(14, "cpd-text-blocks-", ".txt");
 
     private static final String PB = ".pb";
+    private final byte code;
     private final String filePrefix;
     private final String fileSuffix;
 
-    Domain(String filePrefix, String fileSuffix) {
+    Domain(int code, String filePrefix, String fileSuffix) {
+      this.code = (byte) code;
       this.filePrefix = filePrefix;
       this.fileSuffix = fileSuffix;
     }
+
+    byte code() {
+      return code;
+    }
+
+    String fileName(int componentRef) {
+      return filePrefix + componentRef + fileSuffix;
+    }
+
+    /**
+     * Component reference of the given file name, or null if the file does not relate to this domain
+     */
+    @CheckForNull
+    Integer parseRef(String fileName) {
+      if (!fileName.startsWith(filePrefix) || !fileName.endsWith(fileSuffix)) {
+        return null;
+      }
+      String ref = fileName.substring(filePrefix.length(), fileName.length() - fileSuffix.length());
+      if (ref.isEmpty() || ref.length() > 9) {
+        return null;
+      }
+      for (int i = 0; i < ref.length(); i++) {
+        if (!Character.isDigit(ref.charAt(i))) {
+          return null;
+        }
+      }
+      return Integer.parseInt(ref);
+    }
   }
 
+  static final String METADATA_FILE_NAME = "metadata.pb";
+
   private final File dir;
 
   public FileStructure(File dir) {
@@ -62,11 +104,11 @@ public class FileStructure {
   }
 
   public File metadataFile() {
-    return new File(dir, "metadata.pb");
+    return new File(dir, METADATA_FILE_NAME);
   }
 
   public File fileFor(Domain domain, int componentRef) {
-    return new File(dir, domain.filePrefix + componentRef + domain.fileSuffix);
+    return new File(dir, domain.fileName(componentRef));
   }
 
 }
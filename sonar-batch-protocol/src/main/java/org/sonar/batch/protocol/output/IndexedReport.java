@@ -0,0 +1,325 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.CheckForNull;
+
+/**
+ * Analysis report stored in a single file, as written by {@link IndexedReportWriter}. Entries are
+ * read through memory-mapped buffers, without extracting the report.
+ * <p/>
+ * Layout of the file:
+ * <ul>
+ *   <li>header: magic bytes and version of format</li>
+ *   <li>data segments: content of entries, one after the other, optionally deflated</li>
+ *   <li>index: for each entry, its domain, component ref, offset, length and compression</li>
+ *   <li>trailer: offset of index, version of format and magic bytes</li>
+ * </ul>
+ */
+public class IndexedReport implements ReportEntries {
+
+  static final byte[] MAGIC = {'S', 'Q', 'R', 'I'};
+  static final int VERSION = 2;
+  static final int TRAILER_SIZE = 8 + 4 + MAGIC.length;
+
+  static final byte METADATA_DOMAIN = -1;
+  static final byte STORED = 0;
+  static final byte DEFLATED = 1;
+
+  private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final File file;
+  private final Map<Long, Entry> entries;
+
+  private IndexedReport(File file, Map<Long, Entry> entries) {
+    this.file = file;
+    this.entries = entries;
+  }
+
+  /**
+   * Whether the file starts with the header of indexed reports. Returns false
+   * for any other file, for example a zip of report directory.
+   */
+  public static boolean isIndexedReport(File file) {
+    if (!file.isFile() || file.length() < MAGIC.length + 4 + TRAILER_SIZE) {
+      return false;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      byte[] magic = new byte[MAGIC.length];
+      input.readFully(magic);
+      return Arrays.equals(MAGIC, magic);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read file " + file, e);
+    }
+  }
+
+  public static IndexedReport open(File file) {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = channel.size();
+      checkFormat(file, channel, size);
+
+      // mapped buffers remain valid after the channel is closed
+      MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size - 1) / MAX_REGION_SIZE) + 1];
+      for (int i = 0; i < regions.length; i++) {
+        long position = i * MAX_REGION_SIZE;
+        regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_REGION_SIZE, size - position));
+      }
+      return new IndexedReport(file, readIndex(file, channel, regions, size));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to open indexed report " + file, e);
+    }
+  }
+
+  private static void checkFormat(File file, FileChannel channel, long size) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4);
+    readFully(channel, header, 0L);
+    byte[] magic = new byte[MAGIC.length];
+    header.get(magic);
+    if (!Arrays.equals(MAGIC, magic)) {
+      throw new IllegalStateException("File is not an indexed report: " + file);
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IllegalStateException("Unsupported version of indexed report " + file + ": " + version);
+    }
+    ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+    readFully(channel, trailer, size - TRAILER_SIZE);
+    trailer.position(8);
+    int trailerVersion = trailer.getInt();
+    trailer.get(magic);
+    if (!Arrays.equals(MAGIC, magic)) {
+      throw new IllegalStateException("Indexed report is truncated: " + file);
+    }
+    if (trailerVersion != VERSION) {
+      throw new IllegalStateException("Unsupported version of indexed report " + file + ": " + trailerVersion);
+    }
+  }
+
+  private static Map<Long, Entry> readIndex(File file, FileChannel channel, MappedByteBuffer[] regions, long size) throws IOException {
+    ByteBuffer trailer = ByteBuffer.allocate(8);
+    readFully(channel, trailer, size - TRAILER_SIZE);
+    long indexOffset = trailer.getLong();
+    ByteBuffer index = ByteBuffer.allocate((int) (size - TRAILER_SIZE - indexOffset));
+    readFully(channel, index, indexOffset);
+
+    int count = index.getInt();
+    Map<Long, Entry> entries = new HashMap<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      byte domain = index.get();
+      int ref = index.getInt();
+      long offset = index.getLong();
+      int length = index.getInt();
+      byte compression = index.get();
+      if (offset < 0 || offset + length > indexOffset) {
+        throw new IllegalStateException("Indexed report is corrupted: " + file);
+      }
+      entries.put(key(domain, ref), new Entry(slice(channel, regions, offset, length), compression));
+    }
+    return entries;
+  }
+
+  private static ByteBuffer slice(FileChannel channel, MappedByteBuffer[] regions, long offset, int length) throws IOException {
+    int regionIndex = (int) (offset / MAX_REGION_SIZE);
+    long regionOffset = offset - regionIndex * MAX_REGION_SIZE;
+    ByteBuffer region = regions[regionIndex];
+    if (regionOffset + length <= region.capacity()) {
+      ByteBuffer buffer = region.duplicate();
+      buffer.position((int) regionOffset);
+      buffer.limit((int) regionOffset + length);
+      return buffer.slice();
+    }
+    // entry overlaps two regions
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long pos = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, pos);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      pos += read;
+    }
+    buffer.flip();
+  }
+
+  private static long key(byte domain, int ref) {
+    return ((long) domain << 32) | (ref & 0xFFFFFFFFL);
+  }
+
+  static byte code(FileStructure.Domain domain) {
+    return domain.code();
+  }
+
+  @Override
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  public boolean has(FileStructure.Domain domain, int componentRef) {
+    return entries.containsKey(key(code(domain), componentRef));
+  }
+
+  @Override
+  @CheckForNull
+  public InputStream openMetadata() {
+    return open(METADATA_DOMAIN, 0);
+  }
+
+  /**
+   * Content of the entry, or null if the report has no data of this domain for the component.
+   * Stream does not need to be closed once read until its end, but it's recommended to do so.
+   */
+  @Override
+  @CheckForNull
+  public InputStream open(FileStructure.Domain domain, int componentRef) {
+    return open(code(domain), componentRef);
+  }
+
+  @CheckForNull
+  private InputStream open(byte domain, int componentRef) {
+    Entry entry = entries.get(key(domain, componentRef));
+    if (entry == null) {
+      return null;
+    }
+    InputStream input = new ByteBufferInputStream(entry.buffer.duplicate());
+    if (entry.compression == DEFLATED) {
+      return new EntryInflaterInputStream(input);
+    }
+    return input;
+  }
+
+  /**
+   * Nothing to release, as the file is closed once mapped in memory
+   */
+  @Override
+  public void close() {
+    // nothing to do
+  }
+
+  private static class Entry {
+    private final ByteBuffer buffer;
+    private final byte compression;
+
+    private Entry(ByteBuffer buffer, byte compression) {
+      this.buffer = buffer;
+      this.compression = compression;
+    }
+  }
+
+  /**
+   * Releases the native resources of its inflater as soon as the end of the stream is reached, or when
+   * it's closed, rather than when the inflater is garbage collected.
+   */
+  private static class EntryInflaterInputStream extends InflaterInputStream {
+    private boolean ended = false;
+
+    private EntryInflaterInputStream(InputStream input) {
+      super(input, new Inflater(), BUFFER_SIZE);
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (ended) {
+        return -1;
+      }
+      int count = super.read(bytes, offset, length);
+      if (count == -1) {
+        end();
+      }
+      return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return ended ? 0 : super.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+      end();
+      super.close();
+    }
+
+    private void end() {
+      if (!ended) {
+        inf.end();
+        ended = true;
+      }
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) {
+      int count = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Writes an analysis report in a single file. Entries are appended one after the other and are
+ * indexed by domain and component ref in the footer of the file, so that they can be
+ * read by {@link IndexedReport} without extracting the report.
+ */
+public class IndexedReportWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final File file;
+  private final boolean compressed;
+  private final CountingOutputStream countingOutput;
+  private final DataOutputStream output;
+  private final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+  private final DataOutputStream index = new DataOutputStream(indexBytes);
+  private final Deflater deflater = new Deflater();
+  private int entryCount = 0;
+
+  /**
+   * @param compressed whether entries are deflated
+   */
+  public IndexedReportWriter(File file, boolean compressed) {
+    this.file = file;
+    this.compressed = compressed;
+    try {
+      this.countingOutput = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      this.output = new DataOutputStream(countingOutput);
+      output.write(IndexedReport.MAGIC);
+      output.writeInt(IndexedReport.VERSION);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write indexed report " + file, e);
+    }
+  }
+
+  /**
+   * Packs the files of the report directory written by {@link BatchReportWriter}. Files which
+   * do not relate to the report structure are ignored.
+   */
+  public static void pack(File reportDir, File toFile, boolean compressed) {
+    File[] files = reportDir.listFiles();
+    if (files == null) {
+      throw new IllegalStateException("Directory of analysis report does not exist: " + reportDir);
+    }
+    try (IndexedReportWriter writer = new IndexedReportWriter(toFile, compressed)) {
+      for (File file : files) {
+        writer.addFile(file);
+      }
+    }
+  }
+
+  private void addFile(File file) {
+    String fileName = file.getName();
+    if (FileStructure.METADATA_FILE_NAME.equals(fileName)) {
+      addMetadata(file);
+      return;
+    }
+    for (FileStructure.Domain domain : FileStructure.Domain.values()) {
+      Integer ref = domain.parseRef(fileName);
+      if (ref != null) {
+        add(domain, ref, file);
+        return;
+      }
+    }
+  }
+
+  public IndexedReportWriter addMetadata(File content) {
+    return add(IndexedReport.METADATA_DOMAIN, 0, content);
+  }
+
+  public IndexedReportWriter add(FileStructure.Domain domain, int componentRef, File content) {
+    return add(IndexedReport.code(domain), componentRef, content);
+  }
+
+  private IndexedReportWriter add(byte domain, int componentRef, File content) {
+    try (InputStream input = new FileInputStream(content)) {
+      long offset = countingOutput.getByteCount();
+      if (compressed) {
+        deflater.reset();
+        DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(countingOutput, deflater, BUFFER_SIZE);
+        IOUtils.copyLarge(input, deflaterOutput);
+        // do not close the stream, as it would close the file
+        deflaterOutput.finish();
+      } else {
+        IOUtils.copyLarge(input, countingOutput);
+      }
+      long length = countingOutput.getByteCount() - offset;
+      if (length > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Entry is too large to be indexed: " + content);
+      }
+      index.writeByte(domain);
+      index.writeInt(componentRef);
+      index.writeLong(offset);
+      index.writeInt((int) length);
+      index.writeByte(compressed ? IndexedReport.DEFLATED : IndexedReport.STORED);
+      entryCount++;
+      return this;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write " + content + " into indexed report " + file, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      long indexOffset = countingOutput.getByteCount();
+      output.writeInt(entryCount);
+      indexBytes.writeTo(output);
+      output.writeLong(indexOffset);
+      output.writeInt(IndexedReport.VERSION);
+      output.write(IndexedReport.MAGIC);
+      output.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write indexed report " + file, e);
+    } finally {
+      deflater.end();
+      IOUtils.closeQuietly(output);
+    }
+  }
+}
@@ -17,37 +17,28 @@
  * along with this program; if not, write to the Free Software Foundation,
  * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
  */
-package org.sonar.server.util;
+package org.sonar.batch.protocol.output;
 
-import com.google.common.base.Throwables;
-import org.apache.commons.io.IOUtils;
-
-import java.io.EOFException;
-import java.io.IOException;
+import java.io.Closeable;
+import java.io.File;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
+import javax.annotation.CheckForNull;
+
+/**
+ * Entries of a report stored in a single file, which are read without extracting the report
+ */
+interface ReportEntries extends Closeable {
 
-public class ObjectInputStreamIterator<E> extends CloseableIterator<E> {
+  File getFile();
 
-  private ObjectInputStream stream;
+  @CheckForNull
+  InputStream openMetadata();
 
-  public ObjectInputStreamIterator(InputStream stream) throws IOException {
-    this.stream = new ObjectInputStream(stream);
-  }
+  boolean has(FileStructure.Domain domain, int componentRef);
 
-  @Override
-  protected E doNext() {
-    try {
-      return (E) stream.readObject();
-    } catch (EOFException e) {
-      return null;
-    } catch (Exception e) {
-      throw Throwables.propagate(e);
-    }
-  }
+  @CheckForNull
+  InputStream open(FileStructure.Domain domain, int componentRef);
 
   @Override
-  protected void doClose() {
-    IOUtils.closeQuietly(stream);
-  }
+  void close();
 }
@@ -0,0 +1,127 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.CheckForNull;
+
+/**
+ * Report directory zipped by scanner, read without being extracted. Entries are located
+ * through the central directory of the zip file and are inflated on demand.
+ */
+public class ZippedReport implements ReportEntries {
+
+  private static final int ZIP_LOCAL_FILE_HEADER = 0x504b0304;
+
+  private final File file;
+  private final ZipFile zipFile;
+
+  private ZippedReport(File file, ZipFile zipFile) {
+    this.file = file;
+    this.zipFile = zipFile;
+  }
+
+  /**
+   * Whether the file is a zip containing the report files at its root
+   */
+  public static boolean isZippedReport(File file) {
+    if (!file.isFile() || !startsWithZipHeader(file)) {
+      return false;
+    }
+    try (ZipFile zip = new ZipFile(file)) {
+      return zip.getEntry(FileStructure.METADATA_FILE_NAME) != null;
+    } catch (IOException e) {
+      // corrupted zip
+      return false;
+    }
+  }
+
+  private static boolean startsWithZipHeader(File file) {
+    if (file.length() < 4) {
+      return false;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      return input.readInt() == ZIP_LOCAL_FILE_HEADER;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read file " + file, e);
+    }
+  }
+
+  /**
+   * The zip file is kept open until {@link #close()} is called
+   */
+  public static ZippedReport open(File file) {
+    try {
+      return new ZippedReport(file, new ZipFile(file));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to open zipped report " + file, e);
+    }
+  }
+
+  @Override
+  public File getFile() {
+    return file;
+  }
+
+  @Override
+  @CheckForNull
+  public InputStream openMetadata() {
+    return open(FileStructure.METADATA_FILE_NAME);
+  }
+
+  @Override
+  public boolean has(FileStructure.Domain domain, int componentRef) {
+    return zipFile.getEntry(domain.fileName(componentRef)) != null;
+  }
+
+  @Override
+  @CheckForNull
+  public InputStream open(FileStructure.Domain domain, int componentRef) {
+    return open(domain.fileName(componentRef));
+  }
+
+  @CheckForNull
+  private InputStream open(String entryName) {
+    ZipEntry entry = zipFile.getEntry(entryName);
+    if (entry == null) {
+      return null;
+    }
+    try {
+      return zipFile.getInputStream(entry);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read entry " + entryName + " of zipped report " + file, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      zipFile.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to close zipped report " + file, e);
+    }
+  }
+}
@@ -22,6 +22,7 @@ package org.sonar.batch.protocol.input;
 import org.junit.Test;
 import org.sonar.test.JsonAssert;
 
+import java.io.StringReader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
@@ -92,4 +93,12 @@ public class ProjectRepositoriesTest {
 
     assertThat(ref.lastAnalysisDate().getTime()).isEqualTo(DATE_FORMAT.parse("2014-10-31T00:00:00+0100").getTime());
   }
+
+  @Test
+  public void testFromJsonReader() {
+    ProjectRepositories ref = ProjectRepositories.fromJson(new StringReader("{timestamp:1,settingsByModule:{foo:{prop:value}}}"));
+
+    assertThat(ref.timestamp()).isEqualTo(1);
+    assertThat(ref.settings("foo")).containsEntry("prop", "value");
+  }
 }
@@ -21,6 +21,7 @@ package org.sonar.batch.protocol.output;
 
 import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,6 +30,7 @@ import org.sonar.batch.protocol.Constants;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -190,7 +192,7 @@ public class BatchReportReaderTest {
         .build()
       ));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readComponentSyntaxHighlighting(1))) {
+    try (InputStream inputStream = sut.openComponentData(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, 1)) {
       BatchReport.SyntaxHighlighting syntaxHighlighting = BatchReport.SyntaxHighlighting.PARSER.parseDelimitedFrom(inputStream);
       assertThat(syntaxHighlighting.getRange()).isNotNull();
       assertThat(syntaxHighlighting.getRange().getStartLine()).isEqualTo(1);
@@ -201,7 +203,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void return_null_if_no_highlighting_found() {
-    assertThat(sut.readComponentSyntaxHighlighting(UNKNOWN_COMPONENT_REF)).isNull();
+    assertThat(sut.openComponentData(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, UNKNOWN_COMPONENT_REF)).isNull();
   }
 
   @Test
@@ -270,7 +272,7 @@ public class BatchReportReaderTest {
 
     sut = new BatchReportReader(dir);
 
-    try (InputStream inputStream = FileUtils.openInputStream(new BatchReportReader(dir).readComponentCoverage(1))) {
+    try (InputStream inputStream = new BatchReportReader(dir).openComponentData(FileStructure.Domain.COVERAGES, 1)) {
       BatchReport.Coverage coverage = BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream);
       assertThat(coverage.getLine()).isEqualTo(1);
       assertThat(coverage.getConditions()).isEqualTo(1);
@@ -293,7 +295,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void return_null_if_no_coverage_found() {
-    assertThat(sut.readComponentCoverage(UNKNOWN_COMPONENT_REF)).isNull();
+    assertThat(sut.openComponentData(FileStructure.Domain.COVERAGES, UNKNOWN_COMPONENT_REF)).isNull();
   }
 
   @Test
@@ -302,8 +304,9 @@ public class BatchReportReaderTest {
     File file = writer.getFileStructure().fileFor(FileStructure.Domain.SOURCE, 1);
     FileUtils.writeLines(file, Lists.newArrayList("line1", "line2"));
 
-    File sourceFile = new BatchReportReader(dir).readFileSource(1);
-    assertThat(sourceFile).isEqualTo(file);
+    try (InputStream inputStream = new BatchReportReader(dir).openComponentData(FileStructure.Domain.SOURCE, 1)) {
+      assertThat(IOUtils.readLines(inputStream, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+    }
   }
 
   @Test
@@ -317,7 +320,7 @@ public class BatchReportReaderTest {
         .setStatus(Constants.TestStatus.OK)
         .build()));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readTests(1))) {
+    try (InputStream inputStream = sut.openComponentData(FileStructure.Domain.TESTS, 1)) {
       BatchReport.Test testResult = BatchReport.Test.PARSER.parseDelimitedFrom(inputStream);
       assertThat(testResult.getDurationInMs()).isEqualTo(60_000);
       assertThat(testResult.getStacktrace()).isEqualTo("stacktrace");
@@ -328,7 +331,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void null_if_no_test_found() {
-    assertThat(sut.readTests(UNKNOWN_COMPONENT_REF)).isNull();
+    assertThat(sut.openComponentData(FileStructure.Domain.TESTS, UNKNOWN_COMPONENT_REF)).isNull();
   }
 
   @Test
@@ -344,7 +347,7 @@ public class BatchReportReaderTest {
         .build()
       ));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readCoverageDetails(1))) {
+    try (InputStream inputStream = sut.openComponentData(FileStructure.Domain.COVERAGE_DETAILS, 1)) {
       BatchReport.CoverageDetail coverageDetail = BatchReport.CoverageDetail.PARSER.parseDelimitedFrom(inputStream);
       assertThat(coverageDetail.getTestName()).isEqualTo("test-name");
       assertThat(coverageDetail.getCoveredFile(0).getFileRef()).isEqualTo(2);
@@ -354,7 +357,7 @@ public class BatchReportReaderTest {
 
   @Test
   public void null_if_no_coverage_detail_found() {
-    assertThat(sut.readCoverageDetails(UNKNOWN_COMPONENT_REF)).isNull();
+    assertThat(sut.openComponentData(FileStructure.Domain.COVERAGE_DETAILS, UNKNOWN_COMPONENT_REF)).isNull();
   }
 
 }
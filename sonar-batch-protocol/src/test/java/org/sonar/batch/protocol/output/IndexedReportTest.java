@@ -0,0 +1,200 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class IndexedReportTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = temp.newFolder();
+    BatchReportWriter writer = new BatchReportWriter(dir);
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("PROJECT_A").setRootComponentRef(1).build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).addChildRef(2).build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(2).setPath("src/Foo.java").build());
+    writer.writeComponentIssues(2, Arrays.asList(BatchReport.Issue.newBuilder().setMsg("the message").build()));
+    writer.writeComponentCoverage(2, Arrays.asList(BatchReport.Coverage.newBuilder().setLine(1).setUtHits(true).build()));
+    FileUtils.write(writer.getSourceFile(2), "line1\nline2", StandardCharsets.UTF_8);
+    FileUtils.write(new File(dir, "unknown.txt"), "ignored");
+  }
+
+  @Test
+  public void read_packed_report() throws Exception {
+    verifyPackedReport(false);
+  }
+
+  @Test
+  public void read_packed_and_compressed_report() throws Exception {
+    verifyPackedReport(true);
+  }
+
+  private void verifyPackedReport(boolean compressed) throws Exception {
+    File file = temp.newFile();
+    IndexedReportWriter.pack(dir, file, compressed);
+
+    assertThat(IndexedReport.isIndexedReport(file)).isTrue();
+    BatchReportReader reader = new BatchReportReader(file);
+    assertThat(reader.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+    assertThat(reader.readComponent(1).getChildRefList()).containsExactly(2);
+    assertThat(reader.readComponent(2).getPath()).isEqualTo("src/Foo.java");
+    assertThat(reader.readComponentIssues(2)).hasSize(1);
+    assertThat(reader.readComponentIssues(2).get(0).getMsg()).isEqualTo("the message");
+    assertThat(reader.readComponentIssues(1)).isEmpty();
+    assertThat(reader.readComponentMeasures(2)).isEmpty();
+    assertThat(reader.readChangesets(2)).isNull();
+    assertThat(reader.hasComponentData(FileStructure.Domain.COVERAGES, 2)).isTrue();
+    assertThat(reader.hasComponentData(FileStructure.Domain.COVERAGES, 1)).isFalse();
+    assertThat(reader.openComponentData(FileStructure.Domain.TESTS, 2)).isNull();
+
+    try (InputStream input = reader.openComponentData(FileStructure.Domain.COVERAGES, 2)) {
+      BatchReport.Coverage coverage = BatchReport.Coverage.PARSER.parseDelimitedFrom(input);
+      assertThat(coverage.getLine()).isEqualTo(1);
+      assertThat(BatchReport.Coverage.PARSER.parseDelimitedFrom(input)).isNull();
+    }
+    try (InputStream input = reader.openComponentData(FileStructure.Domain.SOURCE, 2)) {
+      assertThat(IOUtils.readLines(input, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+    }
+  }
+
+  @Test
+  public void compressed_entry_can_be_read_again_once_ended() throws Exception {
+    File file = temp.newFile();
+    IndexedReportWriter.pack(dir, file, true);
+    BatchReportReader reader = new BatchReportReader(file);
+
+    // inflater is released when the end of entry is reached, even if the stream is not closed
+    InputStream input = reader.openComponentData(FileStructure.Domain.SOURCE, 2);
+    assertThat(IOUtils.readLines(input, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+    assertThat(input.read()).isEqualTo(-1);
+    assertThat(input.read(new byte[10], 0, 10)).isEqualTo(-1);
+    assertThat(input.available()).isZero();
+    input.close();
+  }
+
+  @Test
+  public void fail_if_missing_component() throws Exception {
+    File file = temp.newFile();
+    IndexedReportWriter.pack(dir, file, true);
+
+    try {
+      new BatchReportReader(file).readComponent(3);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("Unable to find report for component #3");
+    }
+  }
+
+  @Test
+  public void fail_if_version_of_trailer_is_not_supported() throws Exception {
+    File file = temp.newFile();
+    IndexedReportWriter.pack(dir, file, false);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.seek(file.length() - IndexedReport.TRAILER_SIZE + 8);
+      randomAccessFile.writeInt(IndexedReport.VERSION + 1);
+    }
+
+    try {
+      IndexedReport.open(file);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("Unsupported version of indexed report");
+    }
+  }
+
+  @Test
+  public void codes_of_domains_are_stable() {
+    assertThat(IndexedReport.code(FileStructure.Domain.ISSUES)).isEqualTo((byte) 0);
+    assertThat(IndexedReport.code(FileStructure.Domain.COVERAGES)).isEqualTo((byte) 8);
+    assertThat(IndexedReport.code(FileStructure.Domain.SOURCE)).isEqualTo((byte) 13);
+    assertThat(IndexedReport.code(FileStructure.Domain.CPD_TEXT_BLOCKS)).isEqualTo((byte) 14);
+
+    Set<Byte> codes = new HashSet<>();
+    for (FileStructure.Domain domain : FileStructure.Domain.values()) {
+      assertThat(codes.add(IndexedReport.code(domain))).as("code of " + domain).isTrue();
+      assertThat(IndexedReport.code(domain)).isNotEqualTo(IndexedReport.METADATA_DOMAIN);
+    }
+  }
+
+  @Test
+  public void directory_and_zip_are_not_indexed_reports() throws Exception {
+    File zip = temp.newFile();
+    try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+      output.putNextEntry(new ZipEntry("metadata.pb"));
+      FileUtils.copyFile(new File(dir, "metadata.pb"), output);
+      output.closeEntry();
+    }
+
+    assertThat(IndexedReport.isIndexedReport(dir)).isFalse();
+    assertThat(IndexedReport.isIndexedReport(zip)).isFalse();
+    assertThat(IndexedReport.isIndexedReport(new File(dir, "unknown.txt"))).isFalse();
+  }
+
+  @Test
+  public void fail_if_report_is_truncated() throws Exception {
+    File file = temp.newFile();
+    IndexedReportWriter.pack(dir, file, false);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      randomAccessFile.setLength(file.length() - 2);
+    }
+
+    try {
+      IndexedReport.open(file);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessageContaining("Indexed report is truncated");
+    }
+  }
+
+  @Test
+  public void parse_ref_of_file_names() {
+    assertThat(FileStructure.Domain.ISSUES.parseRef("issues-12.pb")).isEqualTo(12);
+    assertThat(FileStructure.Domain.ISSUES.parseRef("issues-deleted-12.pb")).isNull();
+    assertThat(FileStructure.Domain.ISSUES_ON_DELETED.parseRef("issues-deleted-12.pb")).isEqualTo(12);
+    assertThat(FileStructure.Domain.SOURCE.parseRef("source-3.txt")).isEqualTo(3);
+    assertThat(FileStructure.Domain.SOURCE.parseRef("source-.txt")).isNull();
+    assertThat(FileStructure.Domain.SOURCE.parseRef("source-3.pb")).isNull();
+    assertThat(FileStructure.Domain.CPD_TEXT_BLOCKS.parseRef("cpd-text-blocks-3.txt")).isEqualTo(3);
+    assertThat(FileStructure.Domain.SOURCE.parseRef("cpd-text-blocks-3.txt")).isNull();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ZippedReportTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = temp.newFolder();
+    BatchReportWriter writer = new BatchReportWriter(dir);
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("PROJECT_A").setRootComponentRef(1).build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("src/Foo.java").build());
+    writer.writeComponentIssues(1, Arrays.asList(BatchReport.Issue.newBuilder().setMsg("the message").build()));
+    FileUtils.write(writer.getSourceFile(1), "line1\nline2", StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void read_zipped_report_without_extracting_it() throws Exception {
+    File zip = zip(dir);
+
+    assertThat(ZippedReport.isZippedReport(zip)).isTrue();
+    try (BatchReportReader reader = new BatchReportReader(zip)) {
+      assertThat(reader.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+      assertThat(reader.readComponent(1).getPath()).isEqualTo("src/Foo.java");
+      assertThat(reader.readComponentIssues(1)).hasSize(1);
+      assertThat(reader.readComponentMeasures(1)).isEmpty();
+      assertThat(reader.hasComponentData(FileStructure.Domain.SOURCE, 1)).isTrue();
+      assertThat(reader.hasComponentData(FileStructure.Domain.SOURCE, 2)).isFalse();
+      try (InputStream input = reader.openComponentData(FileStructure.Domain.SOURCE, 1)) {
+        assertThat(IOUtils.readLines(input, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+      }
+    }
+  }
+
+  @Test
+  public void zip_without_metadata_at_root_is_not_a_zipped_report() throws Exception {
+    File zip = temp.newFile();
+    try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+      output.putNextEntry(new ZipEntry("subdir/metadata.pb"));
+      output.closeEntry();
+    }
+
+    assertThat(ZippedReport.isZippedReport(zip)).isFalse();
+    assertThat(ZippedReport.isZippedReport(dir)).isFalse();
+    assertThat(ZippedReport.isZippedReport(new File(dir, "metadata.pb"))).isFalse();
+  }
+
+  @Test
+  public void indexed_report_is_not_a_zipped_report() throws Exception {
+    File file = temp.newFile();
+    IndexedReportWriter.pack(dir, file, true);
+
+    assertThat(ZippedReport.isZippedReport(file)).isFalse();
+  }
+
+  private File zip(File reportDir) throws Exception {
+    File zip = temp.newFile();
+    try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+      for (File file : reportDir.listFiles()) {
+        output.putNextEntry(new ZipEntry(file.getName()));
+        FileUtils.copyFile(file, output);
+        output.closeEntry();
+      }
+    }
+    return zip;
+  }
+}
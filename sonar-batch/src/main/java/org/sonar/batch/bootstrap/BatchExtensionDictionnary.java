@@ -21,15 +21,21 @@ package org.sonar.batch.bootstrap;
 
 import com.google.common.base.Predicates;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.Nullable;
 import org.apache.commons.lang.ClassUtils;
 import org.sonar.api.batch.CheckProject;
@@ -43,6 +49,7 @@ import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.AnnotationUtils;
 import org.sonar.api.utils.dag.DirectAcyclicGraph;
+import org.sonar.api.utils.dag.Node;
 import org.sonar.batch.postjob.PostJobOptimizer;
 import org.sonar.batch.postjob.PostJobWrapper;
 import org.sonar.batch.sensor.DefaultSensorContext;
@@ -137,8 +144,39 @@ public class BatchExtensionDictionnary {
   }
 
   public <T> Collection<T> sort(Collection<T> extensions) {
-    DirectAcyclicGraph dag = new DirectAcyclicGraph();
+    List sortedList = buildGraph(extensions).sort();
 
+    return Collections2.filter(sortedList, Predicates.in(extensions));
+  }
+
+  /**
+   * For each extension, the extensions that must be executed before it, according to {@link DependsUpon},
+   * {@link DependedUpon} and {@link Phase}. Dependencies are transitive.
+   *
+   * @since 5.2
+   */
+  public <T> SetMultimap<T, T> dependencies(Collection<T> extensions) {
+    DirectAcyclicGraph dag = buildGraph(extensions);
+    Set<T> extensionSet = new HashSet<>(extensions);
+    SetMultimap<T, T> result = LinkedHashMultimap.create();
+    for (T extension : extensions) {
+      Set<Node> visited = new HashSet<>();
+      Deque<Node> toVisit = new ArrayDeque<>(dag.add(extension).getDependencies());
+      while (!toVisit.isEmpty()) {
+        Node node = toVisit.pop();
+        if (visited.add(node)) {
+          if (extensionSet.contains(node.getObject())) {
+            result.put(extension, (T) node.getObject());
+          }
+          toVisit.addAll(node.getDependencies());
+        }
+      }
+    }
+    return result;
+  }
+
+  private <T> DirectAcyclicGraph buildGraph(Collection<T> extensions) {
+    DirectAcyclicGraph dag = new DirectAcyclicGraph();
     for (T extension : extensions) {
       dag.add(extension);
       for (Object dependency : getDependencies(extension)) {
@@ -149,9 +187,7 @@ public class BatchExtensionDictionnary {
       }
       completePhaseDependencies(dag, extension);
     }
-    List sortedList = dag.sort();
-
-    return Collections2.filter(sortedList, Predicates.in(extensions));
+    return dag;
   }
 
   /**
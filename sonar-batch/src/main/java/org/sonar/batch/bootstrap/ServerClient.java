@@ -22,6 +22,7 @@ package org.sonar.batch.bootstrap;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.common.io.InputSupplier;
 import com.google.gson.JsonArray;
@@ -39,7 +40,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import javax.annotation.Nullable;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.CoreProperties;
@@ -115,21 +115,50 @@ public class ServerClient {
     }
   }
 
-  public InputSupplier<InputStream> doRequest(String pathStartingWithSlash, String requestMethod, @Nullable Integer timeoutMillis) {
-    final byte[] buf = load(pathStartingWithSlash, requestMethod, false, timeoutMillis);
-
+  /**
+   * Returns a supplier which opens a new request each time {@link InputSupplier#getInput()} is called. The response
+   * is streamed from the connection (gzip-decoded when the server compresses it) and is never fully loaded in memory,
+   * except for GET requests in preview mode which are served from, and stored to, the persistent cache.
+   * The caller is responsible for closing the stream.
+   */
+  public InputSupplier<InputStream> doRequest(final String pathStartingWithSlash, final String requestMethod, @Nullable final Integer timeoutMillis) {
+    Preconditions.checkArgument(pathStartingWithSlash.startsWith("/"), "Path must start with slash /");
     return new InputSupplier<InputStream>() {
       @Override
       public InputStream getInput() throws IOException {
-        return new ByteArrayInputStream(buf);
+        return openStream(pathStartingWithSlash, requestMethod, timeoutMillis);
       }
     };
   }
 
-  private byte[] load(String pathStartingWithSlash, String requestMethod, boolean wrapHttpException, @Nullable Integer timeoutMillis) {
+  /**
+   * Streaming variant of {@link #request(String, String, boolean, Integer)}. HTTP errors are not wrapped, see
+   * {@link #handleHttpException(HttpDownloader.HttpException)}.
+   *
+   * @since 5.2
+   */
+  public InputStream openStream(String pathStartingWithSlash, String requestMethod, @Nullable Integer timeoutMillis) throws IOException {
+    if (GET.equals(requestMethod) && mode.isPreview()) {
+      return new ByteArrayInputStream(load(pathStartingWithSlash, requestMethod, false, timeoutMillis));
+    }
+    return newInputSupplier(toUri(pathStartingWithSlash), requestMethod, timeoutMillis).getInput();
+  }
+
+  private URI toUri(String pathStartingWithSlash) {
     Preconditions.checkArgument(pathStartingWithSlash.startsWith("/"), "Path must start with slash /");
     String path = StringEscapeUtils.escapeHtml(pathStartingWithSlash);
-    URI uri = URI.create(getURL() + path);
+    return URI.create(getURL() + path);
+  }
+
+  private InputSupplier<InputStream> newInputSupplier(URI uri, String requestMethod, @Nullable Integer timeoutMillis) {
+    if (Strings.isNullOrEmpty(getLogin())) {
+      return downloader.newInputSupplier(uri, requestMethod, timeoutMillis);
+    }
+    return downloader.newInputSupplier(uri, requestMethod, getLogin(), getPassword(), timeoutMillis);
+  }
+
+  private byte[] load(String pathStartingWithSlash, String requestMethod, boolean wrapHttpException, @Nullable Integer timeoutMillis) {
+    URI uri = toUri(pathStartingWithSlash);
 
     try {
       if (GET.equals(requestMethod) && mode.isPreview()) {
@@ -157,13 +186,7 @@ public class ServerClient {
 
     @Override
     public byte[] call() throws Exception {
-      InputSupplier<InputStream> inputSupplier;
-      if (Strings.isNullOrEmpty(getLogin())) {
-        inputSupplier = downloader.newInputSupplier(uri, requestMethod, timeoutMillis);
-      } else {
-        inputSupplier = downloader.newInputSupplier(uri, requestMethod, getLogin(), getPassword(), timeoutMillis);
-      }
-      return IOUtils.toByteArray(inputSupplier.getInput());
+      return ByteStreams.toByteArray(newInputSupplier(uri, requestMethod, timeoutMillis));
     }
   }
 
@@ -19,13 +19,54 @@
  */
 package org.sonar.batch.cpd;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.sonar.api.batch.BatchSide;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+import org.sonar.api.utils.SonarException;
+import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.index.CloneGroup;
 
 @BatchSide
 public abstract class CpdEngine {
 
+  /**
+   * Number of threads used to detect duplications. Files are still reported in the order they were indexed.
+   */
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+  public static final int DEFAULT_THREADS = 1;
+
+  /**
+   * Limit of time to analyse one file (in seconds).
+   */
+  private static final int TIMEOUT = 5 * 60;
+
+  /**
+   * Maximum number of files submitted to the pool and not reported yet, per thread. Bounds the
+   * number of clone groups kept in memory.
+   */
+  private static final int PENDING_FILES_PER_THREAD = 4;
+
   abstract boolean isLanguageSupported(String language);
 
   abstract void analyse(String language, SensorContext context);
@@ -42,6 +83,64 @@ public abstract class CpdEngine {
     }
   }
 
+  /**
+   * Detects duplications of each source file against the index and saves them in the order of {@code sourceFiles}.
+   * Detection of a file is abandoned after {@link #TIMEOUT} seconds of waiting for its result.
+   *
+   * @param filter if not null, keeps only the clone groups matching this predicate
+   */
+  protected void detect(SonarDuplicationsIndex index, SensorContext context, List<InputFile> sourceFiles, Settings settings, Logger logger,
+    @Nullable Predicate<CloneGroup> filter) {
+    detect(index, context, sourceFiles, threads(settings), TIMEOUT, logger, filter);
+  }
+
+  @VisibleForTesting
+  static void detect(SonarDuplicationsIndex index, SensorContext context, List<InputFile> sourceFiles, int threads, long timeoutInSeconds, Logger logger,
+    @Nullable Predicate<CloneGroup> filter) {
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("cpd-%d").setDaemon(true).build());
+    Deque<Future<List<CloneGroup>>> pending = new ArrayDeque<>();
+    try {
+      Iterator<InputFile> toSubmit = sourceFiles.iterator();
+      for (InputFile inputFile : sourceFiles) {
+        while (toSubmit.hasNext() && pending.size() < threads * PENDING_FILES_PER_THREAD) {
+          InputFile submitted = toSubmit.next();
+          logger.debug("Detection of duplications for {}", submitted);
+          Collection<Block> fileBlocks = index.getByInputFile(submitted, ((DefaultInputFile) submitted).key());
+          pending.add(executorService.submit(new JavaCpdEngine.Task(index, fileBlocks)));
+        }
+
+        Future<List<CloneGroup>> future = pending.poll();
+        Iterable<CloneGroup> clones;
+        try {
+          List<CloneGroup> duplications = future.get(timeoutInSeconds, TimeUnit.SECONDS);
+          clones = filter == null ? duplications : Iterables.filter(duplications, filter);
+        } catch (TimeoutException e) {
+          future.cancel(true);
+          clones = null;
+          logger.warn("Timeout during detection of duplications for " + inputFile, e);
+        } catch (InterruptedException | ExecutionException e) {
+          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+        }
+
+        JavaCpdEngine.save(context, inputFile, clones);
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @VisibleForTesting
+  static int threads(@Nullable Settings settings) {
+    if (settings == null || !settings.hasKey(THREADS_PROPERTY)) {
+      return DEFAULT_THREADS;
+    }
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads <= 0) {
+      throw MessageException.of(String.format("Property %s must be strictly positive. Got %s", THREADS_PROPERTY, threads));
+    }
+    return threads;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName();
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.ThreadSafeSensor;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
@@ -31,6 +32,7 @@ import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.config.Settings;
 
 @Phase(name = Phase.Name.POST)
+@ThreadSafeSensor
 public class CpdSensor implements Sensor {
 
   private static final Logger LOG = LoggerFactory.getLogger(CpdSensor.class);
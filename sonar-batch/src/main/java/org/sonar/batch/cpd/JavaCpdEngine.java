@@ -63,11 +63,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 public class JavaCpdEngine extends CpdEngine {
 
@@ -75,11 +70,6 @@ public class JavaCpdEngine extends CpdEngine {
 
   private static final int BLOCK_SIZE = 10;
 
-  /**
-   * Limit of time to analyse one file (in seconds).
-   */
-  private static final int TIMEOUT = 5 * 60;
-
   private static final int MAX_CLONE_GROUP_PER_FILE = 100;
   private static final int MAX_CLONE_PART_PER_GROUP = 100;
 
@@ -118,7 +108,7 @@ public class JavaCpdEngine extends CpdEngine {
       return;
     }
     SonarDuplicationsIndex index = createIndex(project, languageKey, sourceFiles);
-    detect(index, context, sourceFiles);
+    detect(index, context, sourceFiles, settings, LOG, null);
   }
 
   private SonarDuplicationsIndex createIndex(@Nullable Project project, String language, Iterable<InputFile> sourceFiles) {
@@ -151,34 +141,6 @@ public class JavaCpdEngine extends CpdEngine {
     return index;
   }
 
-  private void detect(SonarDuplicationsIndex index, org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
-    try {
-      for (InputFile inputFile : sourceFiles) {
-        LOG.debug("Detection of duplications for {}", inputFile);
-        String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
-
-        Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        }
-
-        save(context, inputFile, clones);
-      }
-    } finally {
-      executorService.shutdown();
-    }
-  }
-
   static class Task implements Callable<List<CloneGroup>> {
     private final CloneIndex index;
     private final Collection<Block> fileBlocks;
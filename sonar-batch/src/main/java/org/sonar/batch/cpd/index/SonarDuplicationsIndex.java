@@ -19,8 +19,18 @@
  */
 package org.sonar.batch.cpd.index;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import javax.annotation.Nullable;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.batch.index.BatchComponentCache;
+import org.sonar.batch.report.ReportPublisher;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 import org.sonar.duplications.index.AbstractCloneIndex;
@@ -30,13 +40,46 @@ import org.sonar.duplications.index.PackedMemoryCloneIndex;
 public class SonarDuplicationsIndex extends AbstractCloneIndex {
 
   private final CloneIndex mem = new PackedMemoryCloneIndex();
+  private final ReportPublisher publisher;
+  private final BatchComponentCache batchComponentCache;
+
+  public SonarDuplicationsIndex() {
+    this(null, null);
+  }
+
+  /**
+   * @param publisher if not null, the blocks are also written to the analysis report, so that the server
+   *                  can detect the duplications with the other projects
+   */
+  public SonarDuplicationsIndex(@Nullable ReportPublisher publisher, @Nullable BatchComponentCache batchComponentCache) {
+    this.publisher = publisher;
+    this.batchComponentCache = batchComponentCache;
+  }
 
   public void insert(InputFile inputFile, Collection<Block> blocks) {
+    if (publisher != null && !blocks.isEmpty()) {
+      publishBlocks(inputFile, blocks);
+    }
     for (Block block : blocks) {
       mem.insert(block);
     }
   }
 
+  private void publishBlocks(InputFile inputFile, Collection<Block> blocks) {
+    int ref = batchComponentCache.get(inputFile).batchId();
+    File file = publisher.getWriter().getCpdTextBlocksFile(ref);
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      for (Block block : blocks) {
+        writer.append(block.getBlockHash().toHexString())
+          .append(',').append(String.valueOf(block.getStartLine()))
+          .append(',').append(String.valueOf(block.getEndLine()))
+          .append('\n');
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to store CPD blocks of " + inputFile + " in the report", e);
+    }
+  }
+
   public Collection<Block> getByInputFile(InputFile inputFile, String resourceKey) {
     return mem.getByResourceId(resourceKey);
   }
@@ -19,467 +19,120 @@
  */
 package org.sonar.batch.index;
 
-import com.google.common.collect.Sets;
-import com.persistit.Exchange;
-import com.persistit.Key;
-import com.persistit.KeyFilter;
-import com.persistit.exception.PersistitException;
-import org.apache.commons.lang.builder.ToStringBuilder;
-
-import javax.annotation.CheckForNull;
-
-import java.util.Iterator;
-import java.util.NoSuchElementException;
 import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.apache.commons.lang.builder.ToStringBuilder;
 
 /**
- * <p>
- * This cache is not thread-safe, due to direct usage of {@link com.persistit.Exchange}
- * </p>
+ * Key-value cache created by {@link Caches}. Keys are composed of one or more parts, which define a hierarchy
+ * of groups. Iterations are done in the order of keys.
+ *
+ * @see PersistitCache
+ * @see StripedCache
  */
-public class Cache<V> {
+public interface Cache<V> {
 
-  private final String name;
-  private final Exchange exchange;
+  Cache<V> put(Object key, V value);
 
-  Cache(String name, Exchange exchange) {
-    this.name = name;
-    this.exchange = exchange;
-  }
+  Cache<V> put(Object firstKey, Object secondKey, V value);
 
-  public Cache<V> put(Object key, V value) {
-    resetKey(key);
-    return doPut(value);
-  }
-
-  public Cache<V> put(Object firstKey, Object secondKey, V value) {
-    resetKey(firstKey, secondKey);
-    return doPut(value);
-  }
+  Cache<V> put(Object firstKey, Object secondKey, Object thirdKey, V value);
 
-  public Cache<V> put(Object firstKey, Object secondKey, Object thirdKey, V value) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doPut(value);
-  }
-
-  public Cache<V> put(Object[] key, V value) {
-    resetKey(key);
-    return doPut(value);
-  }
-
-  private Cache<V> doPut(V value) {
-    try {
-      exchange.getValue().put(value);
-      exchange.store();
-      return this;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to put element in the cache " + name, e);
-    }
-  }
+  Cache<V> put(Object[] key, V value);
 
   /**
    * Returns the value object associated with keys, or null if not found.
    */
-  public V get(Object key) {
-    resetKey(key);
-    return doGet();
-  }
+  @CheckForNull
+  V get(Object key);
 
   /**
    * Returns the value object associated with keys, or null if not found.
    */
   @CheckForNull
-  public V get(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doGet();
-  }
+  V get(Object firstKey, Object secondKey);
 
   /**
    * Returns the value object associated with keys, or null if not found.
    */
   @CheckForNull
-  public V get(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doGet();
-  }
+  V get(Object firstKey, Object secondKey, Object thirdKey);
 
   /**
    * Returns the value object associated with keys, or null if not found.
    */
   @CheckForNull
-  public V get(Object[] key) {
-    resetKey(key);
-    return doGet();
-  }
+  V get(Object[] key);
 
-  @SuppressWarnings("unchecked")
-  @CheckForNull
-  private V doGet() {
-    try {
-      exchange.fetch();
-      if (!exchange.getValue().isDefined()) {
-        return null;
-      }
-      return (V) exchange.getValue().get();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to get element from cache " + name, e);
-    }
-  }
+  boolean containsKey(Object key);
 
-  public boolean containsKey(Object key) {
-    resetKey(key);
-    return doContainsKey();
-  }
+  boolean containsKey(Object firstKey, Object secondKey);
 
-  public boolean containsKey(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doContainsKey();
-  }
+  boolean containsKey(Object firstKey, Object secondKey, Object thirdKey);
 
-  public boolean containsKey(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doContainsKey();
-  }
+  boolean containsKey(Object[] key);
 
-  public boolean containsKey(Object[] key) {
-    resetKey(key);
-    return doContainsKey();
-  }
-
-  private boolean doContainsKey() {
-    try {
-      exchange.fetch();
-      return exchange.isValueDefined();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to check if element is in cache " + name, e);
-    }
-  }
-
-  public boolean remove(Object key) {
-    resetKey(key);
-    return doRemove();
-  }
-
-  public boolean remove(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doRemove();
-  }
+  /**
+   * Removes the value associated with keys. Values of sub-keys are kept.
+   */
+  boolean remove(Object key);
 
-  public boolean remove(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doRemove();
-  }
+  boolean remove(Object firstKey, Object secondKey);
 
-  public boolean remove(Object[] key) {
-    resetKey(key);
-    return doRemove();
-  }
+  boolean remove(Object firstKey, Object secondKey, Object thirdKey);
 
-  private boolean doRemove() {
-    try {
-      return exchange.remove();
-    } catch (Exception e) {
-      // TODO add parameters to message
-      throw new IllegalStateException("Fail to get element from cache " + name, e);
-    }
-  }
+  boolean remove(Object[] key);
 
   /**
    * Removes everything in the specified group.
-   *
-   * @param group The group name.
    */
-  public Cache<V> clear(Object key) {
-    resetKey(key);
-    return doClear();
-  }
+  Cache<V> clear(Object key);
 
-  public Cache<V> clear(Object firstKey, Object secondKey) {
-    resetKey(firstKey, secondKey);
-    return doClear();
-  }
+  Cache<V> clear(Object firstKey, Object secondKey);
 
-  public Cache<V> clear(Object firstKey, Object secondKey, Object thirdKey) {
-    resetKey(firstKey, secondKey, thirdKey);
-    return doClear();
-  }
+  Cache<V> clear(Object firstKey, Object secondKey, Object thirdKey);
 
-  public Cache<V> clear(Object[] key) {
-    resetKey(key);
-    return doClear();
-  }
-
-  private Cache<V> doClear() {
-    try {
-      Key to = new Key(exchange.getKey());
-      to.append(Key.AFTER);
-      exchange.removeKeyRange(exchange.getKey(), to);
-      return this;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to clear values from cache " + name, e);
-    }
-  }
+  Cache<V> clear(Object[] key);
 
   /**
    * Clears the default as well as all group caches.
    */
-  public void clear() {
-    try {
-      exchange.clear();
-      exchange.removeAll();
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to clear cache", e);
-    }
-  }
+  void clear();
 
   /**
    * Returns the set of cache keys associated with this group.
-   * TODO implement a lazy-loading equivalent with Iterator/Iterable
-   *
-   * @param group The group.
-   * @return The set of cache keys for this group.
    */
   @SuppressWarnings("rawtypes")
-  public Set keySet(Object key) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(key);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
-  }
+  Set keySet(Object key);
 
   @SuppressWarnings("rawtypes")
-  public Set keySet(Object firstKey, Object secondKey) {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(firstKey);
-      iteratorExchange.append(secondKey);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
-  }
+  Set keySet(Object firstKey, Object secondKey);
 
   /**
    * Returns the set of keys associated with this cache.
-   *
-   * @return The set containing the keys for this cache.
    */
-  public Set<Object> keySet() {
-    try {
-      Set<Object> keys = Sets.newLinkedHashSet();
-      exchange.clear();
-      Exchange iteratorExchange = new Exchange(exchange);
-      iteratorExchange.append(Key.BEFORE);
-      while (iteratorExchange.next(false)) {
-        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
-      }
-      return keys;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to get keys from cache " + name, e);
-    }
-  }
+  Set<Object> keySet();
 
   /**
    * Lazy-loading values for given keys
    */
-  public Iterable<V> values(Object firstKey, Object secondKey) {
-    return new ValueIterable<>(exchange, firstKey, secondKey);
-  }
+  Iterable<V> values(Object firstKey, Object secondKey);
 
   /**
    * Lazy-loading values for a given key
    */
-  public Iterable<V> values(Object firstKey) {
-    return new ValueIterable<>(exchange, firstKey);
-  }
+  Iterable<V> values(Object firstKey);
 
   /**
    * Lazy-loading values
    */
-  public Iterable<V> values() {
-    return new ValueIterable<>(exchange);
-  }
-
-  public Iterable<Entry<V>> entries() {
-    return new EntryIterable<>(exchange);
-  }
-
-  public Iterable<Entry<V>> entries(Object firstKey) {
-    return new EntryIterable<>(exchange, firstKey);
-  }
-
-  private void resetKey(Object key) {
-    exchange.clear();
-    exchange.append(key);
-  }
-
-  private void resetKey(Object first, Object second) {
-    exchange.clear();
-    exchange.append(first).append(second);
-  }
-
-  private void resetKey(Object first, Object second, Object third) {
-    exchange.clear();
-    exchange.append(first).append(second).append(third);
-  }
-
-  private void resetKey(Object[] keys) {
-    exchange.clear();
-    for (Object o : keys) {
-      exchange.append(o);
-    }
-  }
-
-  //
-  // LAZY ITERATORS AND ITERABLES
-  //
-
-  private static class ValueIterable<T> implements Iterable<T> {
-    private final Exchange originExchange;
-    private final Object[] keys;
-
-    private ValueIterable(Exchange originExchange, Object... keys) {
-      this.originExchange = originExchange;
-      this.keys = keys;
-    }
-
-    @Override
-    public Iterator<T> iterator() {
-      originExchange.clear();
-      KeyFilter filter = new KeyFilter();
-      for (Object key : keys) {
-        originExchange.append(key);
-        filter = filter.append(KeyFilter.simpleTerm(key));
-      }
-      originExchange.append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(originExchange);
-      return new ValueIterator<>(iteratorExchange, filter);
-    }
-  }
-
-  private static class ValueIterator<T> implements Iterator<T> {
-    private final Exchange exchange;
-    private final KeyFilter keyFilter;
-
-    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
-      this.exchange = exchange;
-      this.keyFilter = keyFilter;
-    }
-
-    @Override
-    public boolean hasNext() {
-      try {
-        return exchange.hasNext(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-    }
-
-    @SuppressWarnings("unchecked")
-    @Override
-    public T next() {
-      try {
-        exchange.next(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-      if (exchange.getValue().isDefined()) {
-        return (T) exchange.getValue().get();
-      }
-      throw new NoSuchElementException();
-    }
-
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException("Removing an item is not supported");
-    }
-  }
-
-  private static class EntryIterable<T> implements Iterable<Entry<T>> {
-    private final Exchange originExchange;
-    private final Object[] keys;
-
-    private EntryIterable(Exchange originExchange, Object... keys) {
-      this.originExchange = originExchange;
-      this.keys = keys;
-    }
-
-    @Override
-    public Iterator<Entry<T>> iterator() {
-      originExchange.clear();
-      KeyFilter filter = new KeyFilter();
-      for (Object key : keys) {
-        originExchange.append(key);
-        filter = filter.append(KeyFilter.simpleTerm(key));
-      }
-      originExchange.append(Key.BEFORE);
-      Exchange iteratorExchange = new Exchange(originExchange);
-      return new EntryIterator<>(iteratorExchange, filter);
-    }
-  }
-
-  private static class EntryIterator<T> implements Iterator<Entry<T>> {
-    private final Exchange exchange;
-    private final KeyFilter keyFilter;
-
-    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
-      this.exchange = exchange;
-      this.keyFilter = keyFilter;
-    }
-
-    @Override
-    public boolean hasNext() {
-      try {
-        return exchange.hasNext(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-    }
+  Iterable<V> values();
 
-    @SuppressWarnings("unchecked")
-    @Override
-    public Entry<T> next() {
-      try {
-        exchange.next(keyFilter);
-      } catch (PersistitException e) {
-        throw new IllegalStateException(e);
-      }
-      if (exchange.getValue().isDefined()) {
-        T value = (T) exchange.getValue().get();
-        Key key = exchange.getKey();
-        Object[] array = new Object[key.getDepth()];
-        for (int i = 0; i < key.getDepth(); i++) {
-          array[i] = key.indexTo(i - key.getDepth()).decode();
-        }
-        return new Entry<>(array, value);
-      }
-      throw new NoSuchElementException();
-    }
+  Iterable<Entry<V>> entries();
 
-    @Override
-    public void remove() {
-      throw new UnsupportedOperationException("Removing an item is not supported");
-    }
-  }
+  Iterable<Entry<V>> entries(Object firstKey);
 
-  public static class Entry<V> {
+  class Entry<V> {
     private final Object[] key;
     private final V value;
 
@@ -501,5 +154,4 @@ public class Cache<V> {
       return ToStringBuilder.reflectionToString(this);
     }
   }
-
 }
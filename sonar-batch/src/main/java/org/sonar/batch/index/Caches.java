@@ -19,33 +19,81 @@
  */
 package org.sonar.batch.index;
 
-import com.google.common.collect.Maps;
-
-import java.util.Map;
-import java.util.Map.Entry;
-
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.persistit.Exchange;
+import com.persistit.Persistit;
 import com.persistit.Value;
+import com.persistit.Volume;
 import com.persistit.encoding.CoderManager;
-import com.persistit.Persistit;
 import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
-import com.persistit.Volume;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
 import org.sonar.api.batch.BatchSide;
+import org.sonar.batch.bootstrap.AnalysisProperties;
 
+/**
+ * Creates the caches of a project analysis. By default caches are {@link PersistitCache}. When the property
+ * {@link #BACKEND_PROPERTY} is {@link #STRIPED_BACKEND}, caches are {@link StripedCache}, which can be used concurrently
+ * and which keep values in memory up to {@link #MEMORY_PROPERTY} megabytes.
+ */
 @BatchSide
 public class Caches implements Startable {
+
+  public static final String BACKEND_PROPERTY = "sonar.batch.cache.backend";
+  public static final String PERSISTIT_BACKEND = "persistit";
+  public static final String STRIPED_BACKEND = "striped";
+  public static final String MEMORY_PROPERTY = "sonar.batch.cache.memory";
+  public static final int DEFAULT_MEMORY_MB = 64;
+
+  private static final int STRIPES = 16;
+
   private final Map<String, Exchange> cacheMap = Maps.newHashMap();
+  private final Map<String, StripedCache<?>> stripedCaches = Maps.newHashMap();
+  private final boolean striped;
+  private final AtomicLong memoryBudget;
+  private final File tempDir;
+  private File stripedDir;
   private Persistit persistit;
   private Volume volume;
 
   public Caches(CachesManager caches) {
+    this(caches, PERSISTIT_BACKEND, DEFAULT_MEMORY_MB);
+  }
+
+  public Caches(CachesManager caches, AnalysisProperties props) {
+    this(caches, StringUtils.defaultIfBlank(props.property(BACKEND_PROPERTY), PERSISTIT_BACKEND), memoryMb(props.property(MEMORY_PROPERTY)));
+  }
+
+  @VisibleForTesting
+  Caches(CachesManager caches, String backend, int memoryMb) {
+    Preconditions.checkArgument(PERSISTIT_BACKEND.equals(backend) || STRIPED_BACKEND.equals(backend), "Unsupported cache backend: " + backend);
     persistit = caches.persistit();
+    tempDir = caches.tempDir();
+    striped = STRIPED_BACKEND.equals(backend);
+    memoryBudget = new AtomicLong(memoryMb * 1024L * 1024L);
     doStart();
   }
 
+  private static int memoryMb(@Nullable String property) {
+    if (StringUtils.isBlank(property)) {
+      return DEFAULT_MEMORY_MB;
+    }
+    int memoryMb = Integer.parseInt(property.trim());
+    Preconditions.checkArgument(memoryMb >= 0, "Property " + MEMORY_PROPERTY + " must be positive. Got " + memoryMb);
+    return memoryMb;
+  }
+
   @Override
   public void start() {
     // done in constructor
@@ -65,13 +113,16 @@ public class Caches implements Startable {
     cm.registerValueCoder(clazz, coder);
   }
 
-  public <V> Cache<V> createCache(String cacheName) {
+  public synchronized <V> Cache<V> createCache(String cacheName) {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
-    Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: " + cacheName);
+    Preconditions.checkState(!cacheMap.containsKey(cacheName) && !stripedCaches.containsKey(cacheName), "Cache is already created: " + cacheName);
+    if (striped) {
+      return createStripedCache(cacheName);
+    }
     try {
       Exchange exchange = persistit.getExchange(volume, cacheName, true);
       exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<>(cacheName, exchange);
+      Cache<V> cache = new PersistitCache<>(cacheName, exchange);
       cacheMap.put(cacheName, exchange);
       return cache;
     } catch (Exception e) {
@@ -79,6 +130,19 @@ public class Caches implements Startable {
     }
   }
 
+  private <V> Cache<V> createStripedCache(String cacheName) {
+    try {
+      if (stripedDir == null) {
+        stripedDir = Files.createTempDirectory(tempDir.toPath(), "striped").toFile();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to create cache: " + cacheName, e);
+    }
+    StripedCache<V> cache = new StripedCache<>(cacheName, persistit, memoryBudget, stripedDir, STRIPES);
+    stripedCaches.put(cacheName, cache);
+    return cache;
+  }
+
   @Override
   public void stop() {
     for (Entry<String, Exchange> e : cacheMap.entrySet()) {
@@ -87,6 +151,15 @@ public class Caches implements Startable {
 
     cacheMap.clear();
 
+    for (StripedCache<?> cache : stripedCaches.values()) {
+      cache.close();
+    }
+    stripedCaches.clear();
+    if (stripedDir != null) {
+      FileUtils.deleteQuietly(stripedDir);
+      stripedDir = null;
+    }
+
     if (volume != null) {
       try {
         volume.close();
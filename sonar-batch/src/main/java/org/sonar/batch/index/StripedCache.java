@@ -0,0 +1,546 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.UnsignedBytes;
+import com.persistit.Key;
+import com.persistit.Persistit;
+import com.persistit.Value;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * <p>
+ * Cache which can be used concurrently by several threads. Entries are indexed in a {@link ConcurrentSkipListMap},
+ * so readers and writers do not lock each other. Values are kept in memory as long as the memory budget shared by all
+ * the caches of {@link Caches} is not reached, then they are appended to disk files. Each file is locked
+ * independently, the file being selected by the hash of the key.
+ * </p>
+ * <p>
+ * Keys and values are encoded with Persistit, so the order of keys and the codecs registered with
+ * {@link Caches#registerValueCoder(Class, com.persistit.encoding.ValueCoder)} are the same as in {@link PersistitCache}.
+ * Disk space of removed values is not reclaimed before the cache is closed.
+ * </p>
+ *
+ * @since 5.2
+ */
+class StripedCache<V> implements Cache<V> {
+
+  private final String name;
+  private final AtomicLong memoryBudget;
+  private final Stripe[] stripes;
+  private final ConcurrentSkipListMap<byte[], Object> entries = new ConcurrentSkipListMap<>(UnsignedBytes.lexicographicalComparator());
+  private final ThreadLocal<Key> keys;
+  private final ThreadLocal<Value> values;
+
+  StripedCache(String name, final Persistit persistit, AtomicLong memoryBudget, File dir, int stripes) {
+    this.name = name;
+    this.memoryBudget = memoryBudget;
+    this.stripes = new Stripe[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new Stripe(new File(dir, name + "-" + i + ".dat"));
+    }
+    this.keys = new ThreadLocal<Key>() {
+      @Override
+      protected Key initialValue() {
+        return new Key(persistit);
+      }
+    };
+    this.values = new ThreadLocal<Value>() {
+      @Override
+      protected Value initialValue() {
+        Value value = new Value(persistit);
+        value.setMaximumSize(Value.MAXIMUM_SIZE);
+        return value;
+      }
+    };
+  }
+
+  @Override
+  public Cache<V> put(Object key, V value) {
+    return doPut(new Object[] {key}, value);
+  }
+
+  @Override
+  public Cache<V> put(Object firstKey, Object secondKey, V value) {
+    return doPut(new Object[] {firstKey, secondKey}, value);
+  }
+
+  @Override
+  public Cache<V> put(Object firstKey, Object secondKey, Object thirdKey, V value) {
+    return doPut(new Object[] {firstKey, secondKey, thirdKey}, value);
+  }
+
+  @Override
+  public Cache<V> put(Object[] key, V value) {
+    return doPut(key, value);
+  }
+
+  private Cache<V> doPut(Object[] key, V value) {
+    try {
+      byte[] encodedKey = encodeKey(key);
+      byte[] encodedValue = encodeValue(value);
+      Object stored;
+      if (reserveMemory(encodedValue.length)) {
+        stored = encodedValue;
+      } else {
+        stored = stripe(encodedKey).append(encodedValue);
+      }
+      release(entries.put(encodedKey, stored));
+      return this;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name, e);
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public V get(Object key) {
+    return doGet(new Object[] {key});
+  }
+
+  @Override
+  @CheckForNull
+  public V get(Object firstKey, Object secondKey) {
+    return doGet(new Object[] {firstKey, secondKey});
+  }
+
+  @Override
+  @CheckForNull
+  public V get(Object firstKey, Object secondKey, Object thirdKey) {
+    return doGet(new Object[] {firstKey, secondKey, thirdKey});
+  }
+
+  @Override
+  @CheckForNull
+  public V get(Object[] key) {
+    return doGet(key);
+  }
+
+  @CheckForNull
+  private V doGet(Object[] key) {
+    try {
+      Object stored = entries.get(encodeKey(key));
+      return stored == null ? null : decodeValue(stored);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return entries.containsKey(encodeKey(new Object[] {key}));
+  }
+
+  @Override
+  public boolean containsKey(Object firstKey, Object secondKey) {
+    return entries.containsKey(encodeKey(new Object[] {firstKey, secondKey}));
+  }
+
+  @Override
+  public boolean containsKey(Object firstKey, Object secondKey, Object thirdKey) {
+    return entries.containsKey(encodeKey(new Object[] {firstKey, secondKey, thirdKey}));
+  }
+
+  @Override
+  public boolean containsKey(Object[] key) {
+    return entries.containsKey(encodeKey(key));
+  }
+
+  @Override
+  public boolean remove(Object key) {
+    return doRemove(new Object[] {key});
+  }
+
+  @Override
+  public boolean remove(Object firstKey, Object secondKey) {
+    return doRemove(new Object[] {firstKey, secondKey});
+  }
+
+  @Override
+  public boolean remove(Object firstKey, Object secondKey, Object thirdKey) {
+    return doRemove(new Object[] {firstKey, secondKey, thirdKey});
+  }
+
+  @Override
+  public boolean remove(Object[] key) {
+    return doRemove(key);
+  }
+
+  private boolean doRemove(Object[] key) {
+    Object removed = entries.remove(encodeKey(key));
+    release(removed);
+    return removed != null;
+  }
+
+  @Override
+  public Cache<V> clear(Object key) {
+    return doClear(new Object[] {key});
+  }
+
+  @Override
+  public Cache<V> clear(Object firstKey, Object secondKey) {
+    return doClear(new Object[] {firstKey, secondKey});
+  }
+
+  @Override
+  public Cache<V> clear(Object firstKey, Object secondKey, Object thirdKey) {
+    return doClear(new Object[] {firstKey, secondKey, thirdKey});
+  }
+
+  @Override
+  public Cache<V> clear(Object[] key) {
+    return doClear(key);
+  }
+
+  private Cache<V> doClear(Object[] key) {
+    byte[] prefix = encodeKey(key);
+    Iterator<Map.Entry<byte[], Object>> it = group(prefix, true).entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<byte[], Object> entry = it.next();
+      if (entries.remove(entry.getKey(), entry.getValue())) {
+        release(entry.getValue());
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public void clear() {
+    doClear(new Object[0]);
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Set keySet(Object key) {
+    return doKeySet(new Object[] {key});
+  }
+
+  @Override
+  @SuppressWarnings("rawtypes")
+  public Set keySet(Object firstKey, Object secondKey) {
+    return doKeySet(new Object[] {firstKey, secondKey});
+  }
+
+  @Override
+  public Set<Object> keySet() {
+    return doKeySet(new Object[0]);
+  }
+
+  /**
+   * Keys of the direct children of the group. Descendants of a child are skipped by looking for the first
+   * key after the child group.
+   */
+  private Set<Object> doKeySet(Object[] group) {
+    Set<Object> result = Sets.newLinkedHashSet();
+    byte[] prefix = encodeKey(group);
+    Object[] childGroup = Arrays.copyOf(group, group.length + 2);
+    childGroup[group.length + 1] = Key.AFTER;
+    byte[] key = entries.higherKey(prefix);
+    while (key != null && startsWith(key, prefix)) {
+      Object child = decodeKeyPart(key, group.length);
+      result.add(child);
+      childGroup[group.length] = child;
+      key = entries.higherKey(encodeKey(childGroup));
+    }
+    return result;
+  }
+
+  @Override
+  public Iterable<V> values(Object firstKey, Object secondKey) {
+    return new ValueIterable(encodeKey(new Object[] {firstKey, secondKey}));
+  }
+
+  @Override
+  public Iterable<V> values(Object firstKey) {
+    return new ValueIterable(encodeKey(new Object[] {firstKey}));
+  }
+
+  @Override
+  public Iterable<V> values() {
+    return new ValueIterable(encodeKey(new Object[0]));
+  }
+
+  @Override
+  public Iterable<Entry<V>> entries() {
+    return new EntryIterable(encodeKey(new Object[0]));
+  }
+
+  @Override
+  public Iterable<Entry<V>> entries(Object firstKey) {
+    return new EntryIterable(encodeKey(new Object[] {firstKey}));
+  }
+
+  /**
+   * Releases the disk files. The cache must not be used anymore.
+   */
+  void close() {
+    entries.clear();
+    for (Stripe stripe : stripes) {
+      stripe.close();
+    }
+  }
+
+  /**
+   * Entries of the group, sorted by key. The key of the group itself is included only if {@code inclusive}
+   * is true. Changes are visible during iteration.
+   */
+  private Map<byte[], Object> group(final byte[] prefix, boolean inclusive) {
+    ConcurrentNavigableMap<byte[], Object> tail = entries.tailMap(prefix, inclusive);
+    byte[] next = nextPrefix(prefix);
+    return next == null ? tail : tail.headMap(next, false);
+  }
+
+  /**
+   * Smallest array which is greater than all arrays starting with the given prefix, or null if all bytes are 0xFF.
+   */
+  @CheckForNull
+  private static byte[] nextPrefix(byte[] prefix) {
+    for (int i = prefix.length - 1; i >= 0; i--) {
+      if (prefix[i] != (byte) 0xFF) {
+        byte[] next = Arrays.copyOf(prefix, i + 1);
+        next[i]++;
+        return next;
+      }
+    }
+    return null;
+  }
+
+  private static boolean startsWith(byte[] bytes, byte[] prefix) {
+    if (bytes.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean reserveMemory(int size) {
+    long available = memoryBudget.get();
+    while (available >= size) {
+      if (memoryBudget.compareAndSet(available, available - size)) {
+        return true;
+      }
+      available = memoryBudget.get();
+    }
+    return false;
+  }
+
+  private void release(@CheckForNull Object stored) {
+    if (stored instanceof byte[]) {
+      memoryBudget.addAndGet(((byte[]) stored).length);
+    }
+  }
+
+  private Stripe stripe(byte[] encodedKey) {
+    return stripes[(Arrays.hashCode(encodedKey) & Integer.MAX_VALUE) % stripes.length];
+  }
+
+  private byte[] encodeKey(Object[] key) {
+    Key encoder = keys.get();
+    encoder.clear();
+    for (Object part : key) {
+      encoder.append(part);
+    }
+    return Arrays.copyOf(encoder.getEncodedBytes(), encoder.getEncodedSize());
+  }
+
+  private Object[] decodeKey(byte[] encodedKey) {
+    Key decoder = toKey(encodedKey);
+    Object[] key = new Object[decoder.getDepth()];
+    decoder.indexTo(0);
+    for (int i = 0; i < key.length; i++) {
+      key[i] = decoder.decode();
+    }
+    return key;
+  }
+
+  private Object decodeKeyPart(byte[] encodedKey, int index) {
+    return toKey(encodedKey).indexTo(index).decode();
+  }
+
+  private Key toKey(byte[] encodedKey) {
+    Key key = keys.get();
+    System.arraycopy(encodedKey, 0, key.getEncodedBytes(), 0, encodedKey.length);
+    key.setEncodedSize(encodedKey.length);
+    return key;
+  }
+
+  private byte[] encodeValue(V value) {
+    Value encoder = values.get();
+    encoder.clear();
+    encoder.put(value);
+    return Arrays.copyOf(encoder.getEncodedBytes(), encoder.getEncodedSize());
+  }
+
+  @SuppressWarnings("unchecked")
+  private V decodeValue(Object stored) throws IOException {
+    byte[] bytes = stored instanceof byte[] ? (byte[]) stored : ((StripeValue) stored).read();
+    Value decoder = values.get();
+    decoder.putEncodedBytes(bytes, 0, bytes.length);
+    return (V) decoder.get();
+  }
+
+  //
+  // LAZY ITERATORS AND ITERABLES
+  //
+
+  private abstract class GroupIterator<T> extends AbstractIterator<T> {
+    private final Iterator<Map.Entry<byte[], Object>> entryIterator;
+
+    GroupIterator(byte[] prefix) {
+      this.entryIterator = group(prefix, false).entrySet().iterator();
+    }
+
+    @Override
+    protected T computeNext() {
+      if (!entryIterator.hasNext()) {
+        return endOfData();
+      }
+      Map.Entry<byte[], Object> entry = entryIterator.next();
+      try {
+        return convert(entry.getKey(), decodeValue(entry.getValue()));
+      } catch (Exception e) {
+        throw new IllegalStateException("Fail to get element from cache " + name, e);
+      }
+    }
+
+    abstract T convert(byte[] key, V value);
+  }
+
+  private class ValueIterable implements Iterable<V> {
+    private final byte[] prefix;
+
+    private ValueIterable(byte[] prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      return new GroupIterator<V>(prefix) {
+        @Override
+        V convert(byte[] key, V value) {
+          return value;
+        }
+      };
+    }
+  }
+
+  private class EntryIterable implements Iterable<Entry<V>> {
+    private final byte[] prefix;
+
+    private EntryIterable(byte[] prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Iterator<Entry<V>> iterator() {
+      return new GroupIterator<Entry<V>>(prefix) {
+        @Override
+        Entry<V> convert(byte[] key, V value) {
+          return new Entry<>(decodeKey(key), value);
+        }
+      };
+    }
+  }
+
+  //
+  // DISK STORAGE
+  //
+
+  private static class Stripe {
+    private final File file;
+    private RandomAccessFile randomAccessFile;
+    private volatile FileChannel channel;
+    private long size = 0L;
+
+    Stripe(File file) {
+      this.file = file;
+    }
+
+    synchronized StripeValue append(byte[] bytes) throws IOException {
+      if (channel == null) {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+      }
+      long position = size;
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+      size += bytes.length;
+      return new StripeValue(this, position, bytes.length);
+    }
+
+    /**
+     * Positional reads do not change the state of the channel, so they do not need the lock
+     */
+    byte[] read(long position, int length) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(length);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of file " + file);
+        }
+      }
+      return buffer.array();
+    }
+
+    synchronized void close() {
+      IOUtils.closeQuietly(randomAccessFile);
+      channel = null;
+      randomAccessFile = null;
+      size = 0L;
+      file.delete();
+    }
+  }
+
+  private static class StripeValue {
+    private final Stripe stripe;
+    private final long position;
+    private final int length;
+
+    StripeValue(Stripe stripe, long position, int length) {
+      this.stripe = stripe;
+      this.position = position;
+      this.length = length;
+    }
+
+    byte[] read() throws IOException {
+      return stripe.read(position, length);
+    }
+  }
+}
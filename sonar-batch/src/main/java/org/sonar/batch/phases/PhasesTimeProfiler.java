@@ -39,7 +39,8 @@ public class PhasesTimeProfiler implements SensorExecutionHandler, DecoratorExec
 
   private static final Logger LOG = Loggers.get(PhasesTimeProfiler.class);
 
-  private Profiler profiler = Profiler.create(LOG);
+  // sensors can be executed concurrently, see SensorsExecutor
+  private final Map<Object, Profiler> sensorProfilers = new IdentityHashMap<>();
   private DecoratorsProfiler decoratorsProfiler = new DecoratorsProfiler();
 
   @Override
@@ -52,9 +53,12 @@ public class PhasesTimeProfiler implements SensorExecutionHandler, DecoratorExec
   @Override
   public void onSensorExecution(SensorExecutionEvent event) {
     if (event.isStart()) {
-      profiler.startInfo("Sensor " + event.getSensor());
+      sensorProfilers.put(event.getSensor(), Profiler.create(LOG).startInfo("Sensor " + event.getSensor()));
     } else {
-      profiler.stopInfo();
+      Profiler profiler = sensorProfilers.remove(event.getSensor());
+      if (profiler != null) {
+        profiler.stopInfo();
+      }
     }
   }
 
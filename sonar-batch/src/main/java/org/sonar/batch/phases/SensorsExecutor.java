@@ -19,43 +19,191 @@
  */
 package org.sonar.batch.phases;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.sonar.api.batch.BatchSide;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.ThreadSafeSensor;
+import org.sonar.api.batch.sensor.internal.SensorStorage;
+import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.AnnotationUtils;
+import org.sonar.api.utils.MessageException;
 import org.sonar.batch.bootstrap.BatchExtensionDictionnary;
 import org.sonar.batch.events.EventBus;
+import org.sonar.batch.sensor.SensorWrapper;
 
-import java.util.Collection;
-
+/**
+ * Executes sensors in the order defined by {@link BatchExtensionDictionnary}. When the property {@link #THREADS_PROPERTY}
+ * is greater than 1, the sensors annotated with {@link ThreadSafeSensor} are executed on a pool of threads, as soon as
+ * the sensors they depend upon are executed. The other sensors are still executed alone in the current thread.
+ * <p/>
+ * Measures, issues and other data saved by concurrent sensors are serialized by {@link SensorStorage}, which
+ * is also used as lock for the deprecated {@link SensorContext}.
+ */
 @BatchSide
 public class SensorsExecutor {
 
-  private EventBus eventBus;
-  private Project module;
-  private BatchExtensionDictionnary selector;
+  public static final String THREADS_PROPERTY = "sonar.sensors.threads";
+  public static final int DEFAULT_THREADS = 1;
+
+  private static final String THREAD_NAME_FORMAT = "sensor-%d";
 
-  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, EventBus eventBus) {
+  private final EventBus eventBus;
+  private final Project module;
+  private final BatchExtensionDictionnary selector;
+  private final SensorStorage storage;
+  private final int threads;
+
+  public SensorsExecutor(BatchExtensionDictionnary selector, Project project, EventBus eventBus, SensorStorage storage, Settings settings) {
     this.selector = selector;
     this.eventBus = eventBus;
     this.module = project;
+    this.storage = storage;
+    this.threads = threads(settings);
+  }
+
+  @VisibleForTesting
+  static int threads(Settings settings) {
+    if (!settings.hasKey(THREADS_PROPERTY)) {
+      return DEFAULT_THREADS;
+    }
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads <= 0) {
+      throw MessageException.of(String.format("Property %s must be strictly positive. Got %d", THREADS_PROPERTY, threads));
+    }
+    return threads;
   }
 
   public void execute(SensorContext context) {
     Collection<Sensor> sensors = selector.select(Sensor.class, module, true, null);
     eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), true));
 
-    for (Sensor sensor : sensors) {
-      executeSensor(context, sensor);
+    if (threads > 1) {
+      executeConcurrently(context, sensors);
+    } else {
+      for (Sensor sensor : sensors) {
+        executeSensor(context, sensor);
+      }
     }
 
     eventBus.fireEvent(new SensorsPhaseEvent(Lists.newArrayList(sensors), false));
   }
 
+  private void executeConcurrently(SensorContext context, Collection<Sensor> sensors) {
+    SetMultimap<Sensor, Sensor> dependencies = selector.dependencies(sensors);
+    SensorContext synchronizedContext = synchronizedContext(context, storage);
+    // running sensors, in order of submission, so that the failure of the first submitted sensor is reported
+    Map<Sensor, Future<?>> running = new LinkedHashMap<>();
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat(THREAD_NAME_FORMAT).setDaemon(true).build());
+    try {
+      for (Sensor sensor : sensors) {
+        if (isThreadSafe(sensor)) {
+          waitFor(running, dependencies.get(sensor));
+          running.put(sensor, executorService.submit(new SensorExecution(synchronizedContext, sensor)));
+        } else {
+          waitFor(running, running.keySet());
+          executeSensor(context, sensor);
+        }
+      }
+      waitFor(running, running.keySet());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the completion of the running sensors that belong to the given collection
+   */
+  private static void waitFor(Map<Sensor, Future<?>> running, Collection<Sensor> sensors) {
+    Iterator<Map.Entry<Sensor, Future<?>>> it = running.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Sensor, Future<?>> entry = it.next();
+      if (sensors.contains(entry.getKey())) {
+        waitFor(entry.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  private static void waitFor(Future<?> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while executing sensors", e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  @VisibleForTesting
+  static boolean isThreadSafe(Sensor sensor) {
+    Object annotated = sensor instanceof SensorWrapper ? ((SensorWrapper) sensor).wrappedSensor() : sensor;
+    return AnnotationUtils.getAnnotation(annotated, ThreadSafeSensor.class) != null;
+  }
+
+  /**
+   * The calls to the deprecated {@link SensorContext} are executed with the lock of {@link SensorStorage}.
+   * Sensors that use the new API are not impacted, as they save data through {@link SensorStorage}.
+   */
+  @VisibleForTesting
+  static SensorContext synchronizedContext(final SensorContext context, final Object lock) {
+    return (SensorContext) Proxy.newProxyInstance(SensorContext.class.getClassLoader(), new Class[] {SensorContext.class}, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        synchronized (lock) {
+          try {
+            return method.invoke(context, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+        }
+      }
+    });
+  }
+
   private void executeSensor(SensorContext context, Sensor sensor) {
-    eventBus.fireEvent(new SensorExecutionEvent(sensor, true));
+    fireSensorExecutionEvent(sensor, true);
     sensor.analyse(module, context);
-    eventBus.fireEvent(new SensorExecutionEvent(sensor, false));
+    fireSensorExecutionEvent(sensor, false);
+  }
+
+  // events are fired by concurrent sensors, but handlers are not thread-safe
+  private synchronized void fireSensorExecutionEvent(Sensor sensor, boolean start) {
+    eventBus.fireEvent(new SensorExecutionEvent(sensor, start));
+  }
+
+  private class SensorExecution implements Callable<Void> {
+    private final SensorContext context;
+    private final Sensor sensor;
+
+    private SensorExecution(SensorContext context, Sensor sensor) {
+      this.context = context;
+      this.sensor = sensor;
+    }
+
+    @Override
+    public Void call() {
+      executeSensor(context, sensor);
+      return null;
+    }
   }
 }
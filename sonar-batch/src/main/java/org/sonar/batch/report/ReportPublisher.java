@@ -38,10 +38,10 @@ import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
 import org.sonar.api.utils.TempFolder;
-import org.sonar.api.utils.ZipUtils;
 import org.sonar.batch.bootstrap.DefaultAnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.IndexedReportWriter;
 import org.sonar.batch.scan.ImmutableProjectReactor;
 
 import static java.lang.String.format;
@@ -111,23 +111,20 @@ public class ReportPublisher implements Startable {
   }
 
   private File prepareReport() {
-    try {
-      long startTime = System.currentTimeMillis();
-      for (ReportPublisherStep publisher : publishers) {
-        publisher.publish(writer);
-      }
-      long stopTime = System.currentTimeMillis();
-      LOG.info("Analysis reports generated in " + (stopTime - startTime) + "ms, dir size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
-
-      startTime = System.currentTimeMillis();
-      File reportZip = temp.newFile("batch-report", ".zip");
-      ZipUtils.zipDir(reportDir, reportZip);
-      stopTime = System.currentTimeMillis();
-      LOG.info("Analysis reports compressed in " + (stopTime - startTime) + "ms, zip size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(reportZip)));
-      return reportZip;
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to prepare batch report", e);
+    long startTime = System.currentTimeMillis();
+    for (ReportPublisherStep publisher : publishers) {
+      publisher.publish(writer);
     }
+    long stopTime = System.currentTimeMillis();
+    LOG.info("Analysis reports generated in " + (stopTime - startTime) + "ms, dir size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
+
+    startTime = System.currentTimeMillis();
+    // single file with an index of entries, so that server reads it without extracting it
+    File reportFile = temp.newFile("batch-report", ".dat");
+    IndexedReportWriter.pack(reportDir, reportFile, true);
+    stopTime = System.currentTimeMillis();
+    LOG.info("Analysis reports compressed in " + (stopTime - startTime) + "ms, file size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(reportFile)));
+    return reportFile;
   }
 
   @VisibleForTesting
@@ -190,7 +187,7 @@ public class ReportPublisher implements Startable {
       return;
     }
     long dateTime = new Date().getTime();
-    File dumpedZip = new File(dumpDir, format("batch-report_%s_%s.zip", projectKey, dateTime));
+    File dumpedZip = new File(dumpDir, format("batch-report_%s_%s.dat", projectKey, dateTime));
     FileUtils.copyFile(report, new FileOutputStream(dumpedZip));
     File dumpedMetadata = new File(dumpDir, format("batch-report_%s_%s.txt", projectKey, dateTime));
     FileUtils.write(dumpedMetadata, relativeUrl);
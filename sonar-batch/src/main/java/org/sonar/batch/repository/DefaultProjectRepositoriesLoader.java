@@ -19,9 +19,14 @@
  */
 package org.sonar.batch.repository;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.bootstrap.ProjectReactor;
+import org.sonar.api.utils.HttpDownloader;
 import org.sonar.batch.bootstrap.DefaultAnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.bootstrap.AnalysisProperties;
@@ -52,7 +57,13 @@ public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoad
       url += "&profile=" + ServerClient.encodeForUrl(taskProperties.properties().get(ModuleQProfiles.SONAR_PROFILE_PROP));
     }
     url += "&preview=" + analysisMode.isPreview();
-    return ProjectRepositories.fromJson(serverClient.request(url));
+    try (Reader reader = new InputStreamReader(serverClient.doRequest(url, "GET", null).getInput(), StandardCharsets.UTF_8)) {
+      return ProjectRepositories.fromJson(reader);
+    } catch (HttpDownloader.HttpException e) {
+      throw serverClient.handleHttpException(e);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load project repositories from server", e);
+    }
   }
 
 }
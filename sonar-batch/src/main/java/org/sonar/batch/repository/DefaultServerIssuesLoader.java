@@ -21,6 +21,7 @@ package org.sonar.batch.repository;
 
 import com.google.common.base.Function;
 import com.google.common.io.InputSupplier;
+import com.google.protobuf.CodedInputStream;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.protocol.input.BatchInput.ServerIssue;
 import org.sonar.api.utils.HttpDownloader;
@@ -46,12 +47,20 @@ public class DefaultServerIssuesLoader implements ServerIssuesLoader {
     }
   }
 
+  /**
+   * Issues are read one by one from the response stream and handed to the consumer, so that they are
+   * never all held in memory. A single {@link CodedInputStream} is shared by all the messages.
+   */
   private static void parseIssues(InputSupplier<InputStream> input, Function<ServerIssue, Void> consumer) {
     try (InputStream is = input.getInput()) {
-      ServerIssue previousIssue = ServerIssue.parseDelimitedFrom(is);
-      while (previousIssue != null) {
-        consumer.apply(previousIssue);
-        previousIssue = ServerIssue.parseDelimitedFrom(is);
+      CodedInputStream codedInput = CodedInputStream.newInstance(is);
+      while (!codedInput.isAtEnd()) {
+        int limit = codedInput.pushLimit(codedInput.readRawVarint32());
+        ServerIssue issue = ServerIssue.PARSER.parseFrom(codedInput);
+        codedInput.popLimit(limit);
+        // the size limit of CodedInputStream applies to the whole stream, not to each message
+        codedInput.resetSizeCounter();
+        consumer.apply(issue);
       }
     } catch (IOException e) {
       throw new IllegalStateException("Unable to get previous issues", e);
@@ -22,6 +22,7 @@ package org.sonar.batch.scm;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.ThreadSafeSensor;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
@@ -38,6 +39,7 @@ import org.sonar.batch.scan.filesystem.InputPathCache;
 import java.util.LinkedList;
 import java.util.List;
 
+@ThreadSafeSensor
 public final class ScmSensor implements Sensor {
 
   private static final Logger LOG = LoggerFactory.getLogger(ScmSensor.class);
@@ -68,6 +68,9 @@ import org.sonar.batch.sensor.coverage.CoverageExclusions;
 import org.sonar.batch.source.DefaultSymbol;
 import org.sonar.core.component.ComponentKeys;
 
+/**
+ * Data are stored one at a time, as sensors can be executed concurrently (see {@link org.sonar.batch.phases.SensorsExecutor}).
+ */
 public class DefaultSensorStorage implements SensorStorage {
 
   private final MetricFinder metricFinder;
@@ -101,7 +104,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(Measure newMeasure) {
+  public synchronized void store(Measure newMeasure) {
     DefaultMeasure<?> measure = (DefaultMeasure<?>) newMeasure;
     org.sonar.api.measures.Metric m = findMetricOrFail(measure.metric().key());
     org.sonar.api.measures.Measure measureToSave = new org.sonar.api.measures.Measure(m);
@@ -152,7 +155,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(Issue issue) {
+  public synchronized void store(Issue issue) {
     String componentKey;
     InputPath inputPath = issue.inputPath();
     if (inputPath != null) {
@@ -185,19 +188,19 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(Duplication duplication) {
+  public synchronized void store(Duplication duplication) {
     duplicationCache.put(duplication.originBlock().resourceKey(), (DefaultDuplication) duplication);
   }
 
   @Override
-  public void store(DefaultHighlighting highlighting) {
+  public synchronized void store(DefaultHighlighting highlighting) {
     BatchReportWriter writer = reportPublisher.getWriter();
     DefaultInputFile inputFile = (DefaultInputFile) highlighting.inputFile();
     writer.writeComponentSyntaxHighlighting(resourceCache.get(inputFile).batchId(),
       Iterables.transform(highlighting.getSyntaxHighlightingRuleSet(), new BuildSyntaxHighlighting()));
   }
 
-  public void store(DefaultInputFile inputFile, Map<Symbol, Set<TextRange>> referencesBySymbol) {
+  public synchronized void store(DefaultInputFile inputFile, Map<Symbol, Set<TextRange>> referencesBySymbol) {
     BatchReportWriter writer = reportPublisher.getWriter();
     writer.writeComponentSymbols(resourceCache.get(inputFile).batchId(),
       Iterables.transform(referencesBySymbol.entrySet(), new Function<Map.Entry<Symbol, Set<TextRange>>, BatchReport.Symbols.Symbol>() {
@@ -228,7 +231,7 @@ public class DefaultSensorStorage implements SensorStorage {
   }
 
   @Override
-  public void store(DefaultCoverage defaultCoverage) {
+  public synchronized void store(DefaultCoverage defaultCoverage) {
     File file = getFile(defaultCoverage.inputFile());
     if (coverageExclusions.hasMatchingPattern(file)) {
       return;
@@ -20,6 +20,7 @@
 package org.sonar.batch.source;
 
 import org.sonar.api.batch.Phase;
+import org.sonar.api.batch.ThreadSafeSensor;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.sensor.Sensor;
@@ -30,6 +31,7 @@ import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.report.ReportPublisher;
 
 @Phase(name = Phase.Name.POST)
+@ThreadSafeSensor
 public final class CodeColorizerSensor implements Sensor {
 
   private final ReportPublisher reportPublisher;
@@ -20,6 +20,7 @@
 package org.sonar.batch.bootstrap;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
 import org.junit.Test;
 import org.sonar.api.BatchExtension;
 import org.sonar.api.batch.BuildBreaker;
@@ -290,6 +291,26 @@ public class BatchExtensionDictionnaryTest {
     assertThat(extensions.get(2)).isEqualTo(post);
   }
 
+  @Test
+  public void transitiveDependencies() {
+    BatchExtension pre = new PreSensor();
+    BatchExtension a = new GeneratesSomething("foo");
+    BatchExtension b = new MethodDependentOf("foo");
+    BatchExtension c = new MethodDependentOf(b);
+    BatchExtension independent = new GeneratesSomething("bar");
+    BatchExtension post = new PostSensor();
+
+    BatchExtensionDictionnary selector = newSelector();
+    SetMultimap<BatchExtension, BatchExtension> dependencies = selector.dependencies(Arrays.asList(c, post, b, independent, a, pre));
+
+    assertThat(dependencies.get(pre)).isEmpty();
+    assertThat(dependencies.get(a)).containsOnly(pre);
+    assertThat(dependencies.get(b)).containsOnly(pre, a);
+    assertThat(dependencies.get(c)).containsOnly(pre, a, b);
+    assertThat(dependencies.get(independent)).containsOnly(pre);
+    assertThat(dependencies.get(post)).containsOnly(pre, a, b, c, independent);
+  }
+
   @Test
   public void dependsUponInheritedPhase() {
     BatchExtension pre = new PreSensorSubclass();
@@ -19,8 +19,10 @@
  */
 package org.sonar.batch.bootstrap;
 
+import com.google.common.io.InputSupplier;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import javax.servlet.ServletException;
@@ -37,6 +39,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.HttpDownloader;
 import org.sonar.batch.bootstrapper.EnvironmentInformation;
 import org.sonar.home.cache.PersistentCache;
 import org.sonar.home.cache.PersistentCacheBuilder;
@@ -151,6 +154,48 @@ public class ServerClientTest {
     assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).isEqualTo("this is the content");
   }
 
+  @Test
+  public void should_stream_response_without_caching_in_non_preview_mode() throws Exception {
+    server = new MockHttpServer();
+    server.start();
+    server.setMockResponseData("this is the content");
+
+    when(mode.isPreview()).thenReturn(false);
+    InputSupplier<InputStream> supplier = newServerClient().doRequest("/foo", "GET", null);
+    try (InputStream input = supplier.getInput()) {
+      assertThat(IOUtils.toString(input, StandardCharsets.UTF_8)).isEqualTo("this is the content");
+    }
+
+    // supplier is not bound to a single response
+    try (InputStream input = supplier.getInput()) {
+      assertThat(IOUtils.toString(input, StandardCharsets.UTF_8)).isEqualTo("this is the content");
+    }
+    assertThat(getNumFilesInCache()).isEqualTo(0);
+  }
+
+  @Test
+  public void should_cache_streamed_response_in_preview_mode() throws Exception {
+    server = new MockHttpServer();
+    server.start();
+    server.setMockResponseData("this is the content");
+
+    try (InputStream input = newServerClient().openStream("/foo", "GET", null)) {
+      assertThat(IOUtils.toString(input, StandardCharsets.UTF_8)).isEqualTo("this is the content");
+    }
+    assertThat(getNumFilesInCache()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_not_wrap_http_error_when_streaming() throws Exception {
+    server = new MockHttpServer();
+    server.start();
+    server.setMockResponseStatus(500);
+
+    when(mode.isPreview()).thenReturn(false);
+    thrown.expect(HttpDownloader.HttpException.class);
+    newServerClient().openStream("/foo", "GET", null);
+  }
+
   @Test
   public void should_fail_if_unauthorized_with_no_login_password() throws Exception {
     server = new MockHttpServer();
@@ -24,6 +24,7 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
+import org.sonar.api.utils.MessageException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
@@ -102,6 +103,23 @@ public class DefaultCpdEngineTest {
     assertThat(engine.getMinimumTokens("php")).isEqualTo(33);
   }
 
+  @Test
+  public void defaultThreads() {
+    assertThat(CpdEngine.threads(settings)).isEqualTo(1);
+  }
+
+  @Test
+  public void configuredThreads() {
+    settings.setProperty("sonar.cpd.threads", "4");
+    assertThat(CpdEngine.threads(settings)).isEqualTo(4);
+  }
+
+  @Test(expected = MessageException.class)
+  public void failIfThreadsNotPositive() {
+    settings.setProperty("sonar.cpd.threads", "0");
+    CpdEngine.threads(settings);
+  }
+
   private static Project newProject(String key) {
     return new Project(key).setAnalysisType(Project.AnalysisType.DYNAMIC);
   }
@@ -19,33 +19,54 @@
  */
 package org.sonar.batch.cpd.index;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
 import org.sonar.batch.bootstrap.DefaultAnalysisMode;
+import org.sonar.batch.index.BatchComponent;
+import org.sonar.batch.index.BatchComponentCache;
+import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.report.ReportPublisher;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class IndexFactoryTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   Project project;
   Settings settings;
   IndexFactory factory;
   Logger logger;
   private DefaultAnalysisMode analysisMode;
+  ReportPublisher publisher;
+  BatchComponentCache componentCache;
 
   @Before
   public void setUp() {
     project = new Project("foo");
     settings = new Settings();
     analysisMode = mock(DefaultAnalysisMode.class);
-    factory = new IndexFactory(analysisMode, settings);
+    publisher = mock(ReportPublisher.class);
+    componentCache = mock(BatchComponentCache.class);
+    factory = new IndexFactory(analysisMode, settings, publisher, componentCache);
     logger = mock(Logger.class);
   }
 
@@ -79,4 +100,36 @@ public class IndexFactoryTest {
     verify(logger).info("Cross-project analysis disabled");
   }
 
+  @Test
+  public void write_blocks_in_report_when_cross_project_enabled() throws Exception {
+    settings.setProperty(CoreProperties.CPD_CROSS_PROJECT, "true");
+    BatchReportWriter writer = new BatchReportWriter(temp.newFolder());
+    when(publisher.getWriter()).thenReturn(writer);
+    DefaultInputFile inputFile = new DefaultInputFile("foo", "src/Foo.java");
+    BatchComponent component = mock(BatchComponent.class);
+    when(component.batchId()).thenReturn(3);
+    when(componentCache.get(inputFile)).thenReturn(component);
+
+    SonarDuplicationsIndex index = factory.create(project, "java");
+    index.insert(inputFile, Arrays.asList(block("a1b2a1b2a1b2a1b2", 0, 1, 5), block("c3d4c3d4c3d4c3d4", 1, 2, 6)));
+
+    File file = writer.getCpdTextBlocksFile(3);
+    assertThat(FileUtils.readFileToString(file, StandardCharsets.UTF_8)).isEqualTo("a1b2a1b2a1b2a1b2,1,5\nc3d4c3d4c3d4c3d4,2,6\n");
+    assertThat(index.getByInputFile(inputFile, "foo:src/Foo.java")).hasSize(2);
+  }
+
+  @Test
+  public void do_not_write_blocks_when_cross_project_disabled() throws Exception {
+    DefaultInputFile inputFile = new DefaultInputFile("foo", "src/Foo.java");
+
+    SonarDuplicationsIndex index = factory.create(project, "java");
+    index.insert(inputFile, Arrays.asList(block("a1b2a1b2a1b2a1b2", 0, 1, 5)));
+
+    verifyZeroInteractions(publisher, componentCache);
+  }
+
+  private static Block block(String hash, int index, int startLine, int endLine) {
+    return Block.builder().setResourceId("foo:src/Foo.java").setBlockHash(new ByteArray(hash)).setIndexInFile(index).setLines(startLine, endLine).build();
+  }
+
 }
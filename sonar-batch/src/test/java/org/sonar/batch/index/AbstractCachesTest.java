@@ -43,10 +43,14 @@ public abstract class AbstractCachesTest {
   @Before
   public void start() {
     cachesManager = cachesManagers.get();
-    caches = new Caches(cachesManager);
+    caches = newCaches();
     caches.start();
   }
 
+  protected Caches newCaches() {
+    return new Caches(cachesManager);
+  }
+
   @After
   public void stop() {
     if (caches != null) {
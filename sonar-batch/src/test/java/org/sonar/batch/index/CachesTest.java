@@ -19,10 +19,13 @@
  */
 package org.sonar.batch.index;
 
+import com.google.common.collect.ImmutableMap;
 import java.io.Serializable;
 
 import com.persistit.exception.PersistitException;
 import org.junit.Test;
+import org.sonar.batch.bootstrap.AnalysisProperties;
+import org.sonar.core.platform.ComponentContainer;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
@@ -82,6 +85,26 @@ public class CachesTest extends AbstractCachesTest {
     }
   }
 
+  @Test
+  public void backend_is_configured_by_analysis_properties() {
+    caches.stop();
+    ComponentContainer container = new ComponentContainer();
+    container.add(cachesManager, new AnalysisProperties(ImmutableMap.of(Caches.BACKEND_PROPERTY, Caches.STRIPED_BACKEND), null), Caches.class);
+    caches = container.getComponentByType(Caches.class);
+
+    assertThat(caches.createCache("foo")).isInstanceOf(StripedCache.class);
+  }
+
+  @Test
+  public void persistit_is_the_default_backend() {
+    assertThat(caches.createCache("foo")).isInstanceOf(PersistitCache.class);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_unsupported_backend() {
+    new Caches(cachesManager, "unknown", 10);
+  }
+
   private static class Element implements Serializable {
     private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,110 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Executes the tests of {@link CacheTest} with values stored on disk, as memory budget is zero
+ */
+public class StripedCacheTest extends CacheTest {
+
+  @Override
+  protected Caches newCaches() {
+    return new Caches(cachesManager, Caches.STRIPED_BACKEND, 0);
+  }
+
+  @Test
+  public void keep_values_in_memory_until_budget_is_reached() {
+    caches.stop();
+    caches = new Caches(cachesManager, Caches.STRIPED_BACKEND, 1);
+    Cache<String> cache = caches.createCache("big");
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("0123456789");
+    }
+    String value = sb.toString();
+    for (int i = 0; i < 500; i++) {
+      cache.put(i, value + i);
+    }
+
+    for (int i = 0; i < 500; i++) {
+      assertThat(cache.get(i)).isEqualTo(value + i);
+    }
+    assertThat(cache.values()).hasSize(500);
+
+    // memory is released
+    cache.clear();
+    cache.put("foo", "bar");
+    assertThat(cache.get("foo")).isEqualTo("bar");
+  }
+
+  @Test
+  public void replace_value() {
+    Cache<String> cache = caches.createCache("capitals");
+    cache.put("france", "lyon");
+    cache.put("france", "paris");
+
+    assertThat(cache.get("france")).isEqualTo("paris");
+    assertThat(cache.values()).containsExactly("paris");
+  }
+
+  @Test
+  public void concurrent_readers_and_writers() throws Exception {
+    final Cache<String> cache = caches.createCache("concurrent");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int found = 0;
+            for (int i = 0; i < 1000; i++) {
+              cache.put(thread, i, "value" + i);
+              if (("value" + i).equals(cache.get(thread, i))) {
+                found++;
+              }
+            }
+            return found;
+          }
+        }));
+      }
+      for (Future<Integer> future : futures) {
+        assertThat(future.get()).isEqualTo(1000);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(cache.keySet()).containsExactly(0, 1, 2, 3);
+    assertThat(cache.values(2)).hasSize(1000);
+  }
+}
@@ -131,6 +131,38 @@ public class CpdMediumTest {
     assertThat(cloneGroupFile2.duplicates().get(0).resourceKey()).isEqualTo(((DefaultInputFile) inputFile1).key());
   }
 
+  @Test
+  public void parallelDetectionReportsSameDuplications() throws IOException {
+    File srcDir = new File(baseDir, "src");
+    srcDir.mkdir();
+
+    String duplicatedStuff = "Sample xoo\ncontent\nfoo\nbar\ntoto\ntiti\nfoo\nbar\ntoto\ntiti\nbar\ntoto\ntiti\nfoo\nbar\ntoto\ntiti";
+    for (int i = 0; i < 20; i++) {
+      FileUtils.write(new File(srcDir, "sample" + i + ".xoo"), i % 3 == 0 ? ("unique" + i + "\n" + duplicatedStuff) : duplicatedStuff);
+    }
+
+    TaskResult sequential = tester.newTask()
+      .properties(builder
+        .put("sonar.sources", "src")
+        .put("sonar.cpd.xoo.minimumTokens", "10")
+        .build())
+      .start();
+    TaskResult parallel = tester.newTask()
+      .properties(ImmutableMap.<String, String>builder()
+        .putAll(builder.build())
+        .put("sonar.cpd.threads", "4")
+        .build())
+      .start();
+
+    assertThat(parallel.inputFiles()).hasSize(20);
+    for (int i = 0; i < 20; i++) {
+      String path = "src/sample" + i + ".xoo";
+      List<Duplication> expected = sequential.duplicationsFor(sequential.inputFile(path));
+      assertThat(expected).isNotEmpty();
+      assertThat(parallel.duplicationsFor(parallel.inputFile(path))).isEqualTo(expected);
+    }
+  }
+
   // SONAR-6000
   @Test
   public void truncateDuplication() throws IOException {
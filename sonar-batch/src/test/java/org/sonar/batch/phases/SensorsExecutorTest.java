@@ -0,0 +1,244 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.phases;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.batch.DependedUpon;
+import org.sonar.api.batch.DependsUpon;
+import org.sonar.api.batch.Sensor;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.ThreadSafeSensor;
+import org.sonar.api.batch.postjob.PostJobContext;
+import org.sonar.api.batch.sensor.internal.SensorStorage;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.utils.MessageException;
+import org.sonar.batch.bootstrap.BatchExtensionDictionnary;
+import org.sonar.batch.events.EventBus;
+import org.sonar.batch.postjob.PostJobOptimizer;
+import org.sonar.batch.sensor.DefaultSensorContext;
+import org.sonar.batch.sensor.SensorOptimizer;
+import org.sonar.core.platform.ComponentContainer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SensorsExecutorTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  Project project = new Project("project");
+  SensorContext context = mock(SensorContext.class);
+  Settings settings = new Settings();
+  List<String> executions = new CopyOnWriteArrayList<>();
+
+  @Test
+  public void execute_sensors_sequentially_by_default() {
+    Object[] sensors = {new FakeSensor("b", "a"), new ThreadSafeFakeSensor("a", null), new FakeSensor("c", "b")};
+
+    newExecutor(sensors).execute(context);
+
+    assertThat(executions).containsExactly("start a", "end a", "start b", "end b", "start c", "end c");
+  }
+
+  @Test
+  public void execute_independent_thread_safe_sensors_concurrently() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 2);
+    // each sensor waits for the other one to be started
+    CountDownLatch latch = new CountDownLatch(2);
+
+    newExecutor(new ConcurrentFakeSensor("a", latch), new ConcurrentFakeSensor("b", latch)).execute(context);
+
+    assertThat(executions).containsOnly("start a", "end a", "start b", "end b");
+    assertThat(executions.subList(0, 2)).containsOnly("start a", "start b");
+  }
+
+  @Test
+  public void thread_safe_sensor_waits_for_its_dependencies() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 4);
+
+    newExecutor(new ThreadSafeFakeSensor("c", "b"), new ThreadSafeFakeSensor("b", "a"), new ThreadSafeFakeSensor("a", null)).execute(context);
+
+    assertThat(executions).containsExactly("start a", "end a", "start b", "end b", "start c", "end c");
+  }
+
+  @Test
+  public void sensor_which_is_not_thread_safe_is_executed_alone() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 4);
+
+    newExecutor(new ThreadSafeFakeSensor("a", null), new FakeSensor("b", null), new ThreadSafeFakeSensor("c", null)).execute(context);
+
+    assertThat(executions).hasSize(6);
+    int start = executions.indexOf("start b");
+    // no other sensor is running
+    assertThat(executions.get(start + 1)).isEqualTo("end b");
+    for (String execution : executions.subList(0, start)) {
+      if (execution.startsWith("start")) {
+        assertThat(executions.subList(0, start)).contains(execution.replace("start", "end"));
+      }
+    }
+  }
+
+  @Test
+  public void propagate_failure_of_concurrent_sensor() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 2);
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Fail to analyse");
+
+    newExecutor(new FailingSensor()).execute(context);
+  }
+
+  @Test
+  public void number_of_threads_is_configurable() {
+    assertThat(SensorsExecutor.threads(settings)).isEqualTo(1);
+
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 3);
+    assertThat(SensorsExecutor.threads(settings)).isEqualTo(3);
+  }
+
+  @Test
+  public void fail_if_number_of_threads_is_not_positive() {
+    settings.setProperty(SensorsExecutor.THREADS_PROPERTY, 0);
+    thrown.expect(MessageException.class);
+    thrown.expectMessage("Property sonar.sensors.threads must be strictly positive. Got 0");
+
+    SensorsExecutor.threads(settings);
+  }
+
+  @Test
+  public void detect_thread_safe_sensors() {
+    assertThat(SensorsExecutor.isThreadSafe(new ThreadSafeFakeSensor("a", null))).isTrue();
+    assertThat(SensorsExecutor.isThreadSafe(new FakeSensor("a", null))).isFalse();
+  }
+
+  @Test
+  public void synchronized_context_delegates_calls() {
+    SensorContext synchronizedContext = SensorsExecutor.synchronizedContext(context, new Object());
+
+    synchronizedContext.isExcluded(project);
+
+    verify(context).isExcluded(project);
+  }
+
+  private SensorsExecutor newExecutor(Object... sensors) {
+    ComponentContainer container = new ComponentContainer();
+    for (Object sensor : sensors) {
+      container.addSingleton(sensor);
+    }
+    BatchExtensionDictionnary selector = new BatchExtensionDictionnary(container, mock(DefaultSensorContext.class), mock(SensorOptimizer.class),
+      mock(PostJobContext.class), mock(PostJobOptimizer.class));
+    return new SensorsExecutor(selector, project, mock(EventBus.class), mock(SensorStorage.class), settings);
+  }
+
+  public class FakeSensor implements Sensor {
+    private final String key;
+    private final String dependency;
+
+    FakeSensor(String key, String dependency) {
+      this.key = key;
+      this.dependency = dependency;
+    }
+
+    @DependedUpon
+    public String generates() {
+      return key;
+    }
+
+    @DependsUpon
+    public String dependsUpon() {
+      return dependency;
+    }
+
+    @Override
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+
+    @Override
+    public void analyse(Project module, SensorContext context) {
+      executions.add("start " + key);
+      doAnalyse();
+      executions.add("end " + key);
+    }
+
+    void doAnalyse() {
+      // nothing to do
+    }
+
+    @Override
+    public String toString() {
+      return key;
+    }
+  }
+
+  @ThreadSafeSensor
+  public class ThreadSafeFakeSensor extends FakeSensor {
+    ThreadSafeFakeSensor(String key, String dependency) {
+      super(key, dependency);
+    }
+
+    @Override
+    void doAnalyse() {
+      // give a chance to other sensors to be wrongly executed concurrently
+      Thread.yield();
+    }
+  }
+
+  @ThreadSafeSensor
+  public class ConcurrentFakeSensor extends FakeSensor {
+    private final CountDownLatch latch;
+
+    ConcurrentFakeSensor(String key, CountDownLatch latch) {
+      super(key, null);
+      this.latch = latch;
+    }
+
+    @Override
+    void doAnalyse() {
+      latch.countDown();
+      try {
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  @ThreadSafeSensor
+  public class FailingSensor implements Sensor {
+    @Override
+    public boolean shouldExecuteOnProject(Project project) {
+      return true;
+    }
+
+    @Override
+    public void analyse(Project module, SensorContext context) {
+      throw new IllegalStateException("Fail to analyse");
+    }
+  }
+}
@@ -24,7 +24,6 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
-import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -38,6 +37,7 @@ import org.sonar.batch.protocol.output.BatchReport;
 import org.sonar.batch.protocol.output.BatchReport.Coverage;
 import org.sonar.batch.protocol.output.BatchReportReader;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.FileStructure;
 import org.sonar.batch.scan.measure.MeasureCache;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -93,7 +93,7 @@ public class CoveragePublisherTest {
 
     publisher.publish(writer);
 
-    try (InputStream inputStream = FileUtils.openInputStream(new BatchReportReader(outputDir).readComponentCoverage(2))) {
+    try (InputStream inputStream = new BatchReportReader(outputDir).openComponentData(FileStructure.Domain.COVERAGES, 2)) {
       assertThat(BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream)).isEqualTo(Coverage.newBuilder()
         .setLine(2)
         .setUtHits(true)
@@ -20,16 +20,26 @@
 package org.sonar.batch.repository;
 
 import com.google.common.collect.Maps;
+import com.google.common.io.InputSupplier;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.batch.bootstrap.ProjectReactor;
+import org.sonar.api.utils.HttpDownloader;
 import org.sonar.batch.bootstrap.AnalysisProperties;
 import org.sonar.batch.bootstrap.DefaultAnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.rule.ModuleQProfiles;
 
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -37,6 +47,9 @@ import static org.mockito.Mockito.when;
 
 public class DefaultProjectRepositoriesLoaderTest {
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   private DefaultProjectRepositoriesLoader loader;
   private ServerClient serverClient;
   private DefaultAnalysisMode analysisMode;
@@ -49,7 +62,12 @@ public class DefaultProjectRepositoriesLoaderTest {
     analysisMode = mock(DefaultAnalysisMode.class);
     loader = new DefaultProjectRepositoriesLoader(serverClient, analysisMode);
     loader = spy(loader);
-    when(serverClient.request(anyString())).thenReturn("{}");
+    when(serverClient.doRequest(anyString(), eq("GET"), (Integer) isNull())).thenReturn(new InputSupplier<InputStream>() {
+      @Override
+      public InputStream getInput() {
+        return new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8));
+      }
+    });
     taskProperties = new AnalysisProperties(Maps.<String, String>newHashMap(), "");
   }
 
@@ -58,18 +76,18 @@ public class DefaultProjectRepositoriesLoaderTest {
     reactor = new ProjectReactor(ProjectDefinition.create().setKey("foo"));
     when(analysisMode.isPreview()).thenReturn(false);
     loader.load(reactor, taskProperties);
-    verify(serverClient).request("/batch/project?key=foo&preview=false");
+    verify(serverClient).doRequest("/batch/project?key=foo&preview=false", "GET", null);
 
     when(analysisMode.isPreview()).thenReturn(true);
     loader.load(reactor, taskProperties);
-    verify(serverClient).request("/batch/project?key=foo&preview=true");
+    verify(serverClient).doRequest("/batch/project?key=foo&preview=true", "GET", null);
   }
 
   @Test
   public void passAndEncodeProjectKeyParameter() {
     reactor = new ProjectReactor(ProjectDefinition.create().setKey("foo bàr"));
     loader.load(reactor, taskProperties);
-    verify(serverClient).request("/batch/project?key=foo+b%C3%A0r&preview=false");
+    verify(serverClient).doRequest("/batch/project?key=foo+b%C3%A0r&preview=false", "GET", null);
   }
 
   @Test
@@ -77,7 +95,20 @@ public class DefaultProjectRepositoriesLoaderTest {
     reactor = new ProjectReactor(ProjectDefinition.create().setKey("foo"));
     taskProperties.properties().put(ModuleQProfiles.SONAR_PROFILE_PROP, "my-profile#2");
     loader.load(reactor, taskProperties);
-    verify(serverClient).request("/batch/project?key=foo&profile=my-profile%232&preview=false");
+    verify(serverClient).doRequest("/batch/project?key=foo&profile=my-profile%232&preview=false", "GET", null);
+  }
+
+
+  @Test
+  public void wrapHttpException() {
+    reactor = new ProjectReactor(ProjectDefinition.create().setKey("foo"));
+    HttpDownloader.HttpException httpException = new HttpDownloader.HttpException(URI.create("http://localhost/batch/project"), 500);
+    when(serverClient.doRequest(anyString(), eq("GET"), (Integer) isNull())).thenThrow(httpException);
+    when(serverClient.handleHttpException(httpException)).thenReturn(new IllegalStateException("Fail to execute request"));
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Fail to execute request");
+    loader.load(reactor, taskProperties);
   }
 
 }
@@ -35,6 +35,7 @@ import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class DefaultServerIssuesLoaderTest {
@@ -73,4 +74,30 @@ public class DefaultServerIssuesLoaderTest {
 
     assertThat(result).extracting("key").containsExactly("ab1", "ab2");
   }
+
+  @Test
+  public void loadEmptyResponse() throws Exception {
+    InputSupplier<InputStream> is = mock(InputSupplier.class);
+    when(serverClient.doRequest("/batch/issues?key=foo", "GET", null)).thenReturn(is);
+    when(is.getInput()).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+    Function<ServerIssue, Void> consumer = mock(Function.class);
+    loader.load("foo", consumer, false);
+
+    verifyZeroInteractions(consumer);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void failOnTruncatedResponse() throws Exception {
+    InputSupplier<InputStream> is = mock(InputSupplier.class);
+    when(serverClient.doRequest("/batch/issues?key=foo", "GET", null)).thenReturn(is);
+
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ServerIssue.newBuilder().setKey("ab1").build()
+      .writeDelimitedTo(bos);
+    byte[] bytes = bos.toByteArray();
+    when(is.getInput()).thenReturn(new ByteArrayInputStream(bytes, 0, bytes.length - 1));
+
+    loader.load("foo", mock(Function.class), false);
+  }
 }
@@ -21,38 +21,45 @@ package org.sonar.core.issue.tracking;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Strings;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import java.util.Collection;
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import javax.annotation.Nonnull;
-import org.apache.commons.lang.StringUtils;
-import org.sonar.api.rule.RuleKey;
+import javax.annotation.Nullable;
 
 import static com.google.common.collect.FluentIterable.from;
 
+/**
+ * Matches the raw issues of a file with its base issues.
+ * <p/>
+ * Rule keys, messages and line hashes are interned to ints once per file, so that the matching passes
+ * look up issues in primitive hash tables without allocating search keys.
+ */
 public class Tracker<RAW extends Trackable, BASE extends Trackable> {
 
   public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
     Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+    Index<RAW, BASE> index = new Index<>(tracking);
 
     relocateManualIssues(rawInput, baseInput, tracking);
 
     // 1. match issues with same rule, same line and same line hash, but not necessarily with same message
-    match(tracking, LineAndLineHashKeyFactory.INSTANCE);
+    index.match(tracking, Index.LINE, Index.LINE_HASH);
 
     // 2. detect code moves by comparing blocks of codes
     detectCodeMoves(rawInput, baseInput, tracking);
 
     // 3. match issues with same rule, same message and same line hash
-    match(tracking, LineHashAndMessageKeyFactory.INSTANCE);
+    index.match(tracking, Index.MESSAGE, Index.LINE_HASH);
 
     // 4. match issues with same rule, same line and same message
-    match(tracking, LineAndMessageKeyFactory.INSTANCE);
+    index.match(tracking, Index.LINE, Index.MESSAGE);
 
     // 5. match issues with same rule and same line hash but different line and different message.
     // See SONAR-2812
-    match(tracking, LineHashKeyFactory.INSTANCE);
+    index.match(tracking, Index.LINE_HASH, Index.NONE);
 
     return tracking;
   }
@@ -63,29 +70,6 @@ public class Tracker<RAW extends Trackable, BASE extends Trackable> {
     }
   }
 
-  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
-    if (tracking.isComplete()) {
-      return;
-    }
-
-    Multimap<SearchKey, BASE> baseSearch = ArrayListMultimap.create();
-    for (BASE base : tracking.getUnmatchedBases()) {
-      baseSearch.put(factory.create(base), base);
-    }
-
-    for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = factory.create(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      if (!bases.isEmpty()) {
-        // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
-        // Message could be checked to take the best one.
-        BASE match = bases.iterator().next();
-        tracking.match(raw, match);
-        baseSearch.remove(rawKey, match);
-      }
-    }
-  }
-
   private void relocateManualIssues(Input<RAW> rawInput, Input<BASE> baseInput, Tracking<RAW, BASE> tracking) {
     Iterable<BASE> manualIssues = from(tracking.getUnmatchedBases()).filter(IsManual.INSTANCE);
     for (BASE base : manualIssues) {
@@ -120,166 +104,179 @@ public class Tracker<RAW extends Trackable, BASE extends Trackable> {
     }
   }
 
-  private interface SearchKey {
-  }
-
-  private interface SearchKeyFactory {
-    SearchKey create(Trackable trackable);
-  }
-
-  private static class LineAndLineHashKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String lineHash;
-    private final Integer line;
-
-    LineAndLineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
-    }
-
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+  /**
+   * Attributes of raw and base issues interned to ints. Issues are identified by their position in
+   * {@link Input#getIssues()}.
+   */
+  private static class Index<RAW extends Trackable, BASE extends Trackable> {
+    static final int NONE = -1;
+    static final int LINE = 0;
+    static final int LINE_HASH = 1;
+    static final int MESSAGE = 2;
+    private static final int NO_LINE = Integer.MIN_VALUE;
+
+    private final List<RAW> raws;
+    private final List<BASE> bases;
+    // rule, line, line hash and message of each issue. See constants LINE, LINE_HASH and MESSAGE.
+    private final int[] rawRules;
+    private final int[][] rawAttributes;
+    private final int[] baseRules;
+    private final int[][] baseAttributes;
+    private final Map<Object, Integer> ids = new HashMap<>();
+    // next base issue with the same search key, or -1. See SearchTable.
+    private final int[] nextBases;
+
+    Index(Tracking<RAW, BASE> tracking) {
+      // no issues are matched yet
+      this.raws = Lists.newArrayList(tracking.getUnmatchedRaws());
+      this.bases = Lists.newArrayList(tracking.getUnmatchedBases());
+      this.rawRules = new int[raws.size()];
+      this.rawAttributes = new int[3][raws.size()];
+      this.baseRules = new int[bases.size()];
+      this.baseAttributes = new int[3][bases.size()];
+      this.nextBases = new int[bases.size()];
+      for (int i = 0; i < raws.size(); i++) {
+        intern(raws.get(i), i, rawRules, rawAttributes);
+      }
+      for (int i = 0; i < bases.size(); i++) {
+        intern(bases.get(i), i, baseRules, baseAttributes);
       }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && lineHash.equals(that.lineHash)
-        && ruleKey.equals(that.ruleKey);
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    private void intern(Trackable trackable, int position, int[] rules, int[][] attributes) {
+      rules[position] = id(trackable.getRuleKey());
+      Integer line = trackable.getLine();
+      attributes[LINE][position] = line == null ? NO_LINE : line;
+      attributes[LINE_HASH][position] = id(Strings.nullToEmpty(trackable.getLineHash()));
+      attributes[MESSAGE][position] = id(new Message(trackable.getMessage()));
     }
-  }
 
-  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndLineHashKey(t);
+    private int id(Object o) {
+      Integer id = ids.get(o);
+      if (id == null) {
+        id = ids.size();
+        ids.put(o, id);
+      }
+      return id;
     }
-  }
 
-  private static class LineHashAndMessageKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String message;
-    private final String lineHash;
-
-    LineHashAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
-    }
+    /**
+     * Matches every unmatched raw issue with the first unmatched base issue that has the same rule and the same
+     * values of the two given attributes.
+     */
+    void match(Tracking<RAW, BASE> tracking, int attribute1, int attribute2) {
+      if (tracking.isComplete()) {
+        return;
+      }
 
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+      SearchTable table = new SearchTable(bases.size());
+      for (int i = 0; i < bases.size(); i++) {
+        if (tracking.containsUnmatchedBase(bases.get(i))) {
+          table.add(baseRules[i], value(baseAttributes, attribute1, i), value(baseAttributes, attribute2, i), i, nextBases);
+        }
       }
-      LineHashAndMessageKey that = (LineHashAndMessageKey) o;
-      // start with most discriminant field
-      return lineHash.equals(that.lineHash)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
-    }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      return result;
+      for (int i = 0; i < raws.size(); i++) {
+        RAW raw = raws.get(i);
+        if (tracking.baseFor(raw) == null) {
+          int base = table.poll(rawRules[i], value(rawAttributes, attribute1, i), value(rawAttributes, attribute2, i), nextBases);
+          if (base >= 0) {
+            tracking.match(raw, bases.get(base));
+          }
+        }
+      }
     }
-  }
 
-  private enum LineHashAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashAndMessageKey(t);
+    private static int value(int[][] attributes, int attribute, int position) {
+      return attribute == NONE ? 0 : attributes[attribute][position];
     }
   }
 
-  private static class LineAndMessageKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String message;
-    private final Integer line;
+  /**
+   * Interned messages. Wraps the message to avoid collision with line hashes, and because message is not
+   * supposed to be null but can be.
+   */
+  private static class Message {
+    private final String text;
 
-    LineAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.line = trackable.getLine();
+    Message(@Nullable String text) {
+      this.text = text;
     }
 
     @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
-      }
-      LineAndMessageKey that = (LineAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
+    public boolean equals(Object o) {
+      return o instanceof Message && Objects.equals(text, ((Message) o).text);
     }
 
     @Override
     public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+      return text == null ? 0 : text.hashCode();
     }
   }
 
-  private enum LineAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndMessageKey(t);
-    }
-  }
-
-  private static class LineHashKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String lineHash;
-
-    LineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+  /**
+   * Open-addressing hash table of base issues by search key (rule and two attributes). Base issues of a same
+   * key are chained in insertion order through the array {@code nextBases}, so that {@link #poll(int, int, int, int[])}
+   * returns the first one and removes it from the chain.
+   */
+  private static class SearchTable {
+    private static final int EMPTY = -1;
+    private static final int DRAINED = -2;
+
+    private final int mask;
+    private final int[] rules;
+    private final int[] values1;
+    private final int[] values2;
+    private final int[] heads;
+    private final int[] tails;
+
+    SearchTable(int expectedSize) {
+      int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+      this.mask = capacity - 1;
+      this.rules = new int[capacity];
+      this.values1 = new int[capacity];
+      this.values2 = new int[capacity];
+      this.heads = new int[capacity];
+      this.tails = new int[capacity];
+      Arrays.fill(heads, EMPTY);
     }
 
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+    void add(int rule, int value1, int value2, int base, int[] nextBases) {
+      int slot = slot(rule, value1, value2);
+      nextBases[base] = EMPTY;
+      if (heads[slot] == EMPTY) {
+        rules[slot] = rule;
+        values1[slot] = value1;
+        values2[slot] = value2;
+        heads[slot] = base;
+      } else {
+        nextBases[tails[slot]] = base;
       }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return lineHash.equals(that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      tails[slot] = base;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      return result;
+    int poll(int rule, int value1, int value2, int[] nextBases) {
+      int slot = slot(rule, value1, value2);
+      int base = heads[slot];
+      if (base < 0) {
+        return EMPTY;
+      }
+      int next = nextBases[base];
+      // a drained slot stays reserved so that probing sequences of other keys are not broken
+      heads[slot] = next == EMPTY ? DRAINED : next;
+      return base;
     }
-  }
 
-  private enum LineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashKey(t);
+    /**
+     * Slot of the key, either already used by the key or empty
+     */
+    private int slot(int rule, int value1, int value2) {
+      int hash = (rule * 31 + value1) * 31 + value2;
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while (heads[slot] != EMPTY && (rules[slot] != rule || values1[slot] != value1 || values2[slot] != value2)) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
     }
   }
 }
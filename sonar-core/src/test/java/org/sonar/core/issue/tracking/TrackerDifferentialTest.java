@@ -0,0 +1,190 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.issue.tracking;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.sonar.api.rule.RuleKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies on a corpus of random files that {@link Tracker} returns the same results as its former
+ * implementation {@link SearchKeyTracker}
+ */
+public class TrackerDifferentialTest {
+
+  private static final RuleKey[] RULES = {
+    RuleKey.of("java", "S1"), RuleKey.of("java", "S2"), RuleKey.of("java", "S3"), RuleKey.of("squid", "S1"),
+    RuleKey.of(RuleKey.MANUAL_REPOSITORY_KEY, "CodeReview")
+  };
+  private static final String[] MESSAGES = {"msg1", "msg2", "msg3"};
+
+  private final Random random = new Random(42L);
+
+  @Test
+  public void same_results_as_former_implementation() {
+    for (int i = 0; i < 500; i++) {
+      int lines = 1 + random.nextInt(60);
+      List<String> baseHashes = randomHashes(lines);
+      List<String> rawHashes = edit(baseHashes);
+      FakeInput baseInput = new FakeInput(baseHashes, randomIssues(baseHashes, random.nextInt(80)));
+      FakeInput rawInput = new FakeInput(rawHashes, randomIssues(rawHashes, random.nextInt(80)));
+
+      Tracking<Issue, Issue> expected = new SearchKeyTracker<Issue, Issue>().track(rawInput, baseInput);
+      Tracking<Issue, Issue> tracking = new Tracker<Issue, Issue>().track(rawInput, baseInput);
+
+      for (Issue raw : rawInput.getIssues()) {
+        assertThat(tracking.baseFor(raw)).as("file #%s", i).isSameAs(expected.baseFor(raw));
+      }
+      assertThat(tracking.getUnmatchedBases()).containsExactlyElementsOf(expected.getUnmatchedBases());
+      assertThat(tracking.getOpenManualIssuesByLine()).isEqualTo(expected.getOpenManualIssuesByLine());
+    }
+  }
+
+  @Test
+  public void same_results_on_large_file() {
+    List<String> baseHashes = randomHashes(5_000);
+    List<String> rawHashes = edit(baseHashes);
+    FakeInput baseInput = new FakeInput(baseHashes, randomIssues(baseHashes, 10_000));
+    FakeInput rawInput = new FakeInput(rawHashes, randomIssues(rawHashes, 10_000));
+
+    Tracking<Issue, Issue> expected = new SearchKeyTracker<Issue, Issue>().track(rawInput, baseInput);
+    Tracking<Issue, Issue> tracking = new Tracker<Issue, Issue>().track(rawInput, baseInput);
+
+    assertThat(expected.getMatchedRaws()).isNotEmpty();
+    assertThat(tracking.getMatchedRaws()).isEqualTo(expected.getMatchedRaws());
+    assertThat(tracking.getUnmatchedBases()).containsExactlyElementsOf(expected.getUnmatchedBases());
+  }
+
+  private List<String> randomHashes(int lines) {
+    List<String> hashes = new ArrayList<>();
+    for (int i = 0; i < lines; i++) {
+      // few distinct hashes in order to have duplicated lines
+      hashes.add(random.nextInt(10) == 0 ? "" : "h" + random.nextInt(lines / 2 + 3));
+    }
+    return hashes;
+  }
+
+  /**
+   * Inserts, deletes and updates some lines
+   */
+  private List<String> edit(List<String> hashes) {
+    List<String> result = new ArrayList<>(hashes);
+    int edits = random.nextInt(hashes.size() / 4 + 2);
+    for (int i = 0; i < edits; i++) {
+      int index = random.nextInt(result.size());
+      switch (random.nextInt(3)) {
+        case 0:
+          result.add(index, "new" + random.nextInt(100));
+          break;
+        case 1:
+          if (result.size() > 1) {
+            result.remove(index);
+          }
+          break;
+        default:
+          result.set(index, "updated" + random.nextInt(100));
+      }
+    }
+    return result;
+  }
+
+  private List<Issue> randomIssues(List<String> hashes, int count) {
+    List<Issue> issues = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      RuleKey rule = RULES[random.nextInt(RULES.length)];
+      String message = MESSAGES[random.nextInt(MESSAGES.length)];
+      if (random.nextInt(20) == 0) {
+        issues.add(new Issue(null, null, rule, message));
+      } else {
+        int line = 1 + random.nextInt(hashes.size());
+        String lineHash = random.nextInt(20) == 0 ? null : hashes.get(line - 1);
+        issues.add(new Issue(line, lineHash, rule, message));
+      }
+    }
+    return issues;
+  }
+
+  private static class Issue implements Trackable {
+    private final Integer line;
+    private final String lineHash;
+    private final RuleKey ruleKey;
+    private final String message;
+
+    Issue(@Nullable Integer line, @Nullable String lineHash, RuleKey ruleKey, String message) {
+      this.line = line;
+      this.lineHash = lineHash;
+      this.ruleKey = ruleKey;
+      this.message = message;
+    }
+
+    @Override
+    public Integer getLine() {
+      return line;
+    }
+
+    @Override
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String getLineHash() {
+      return lineHash;
+    }
+
+    @Override
+    public RuleKey getRuleKey() {
+      return ruleKey;
+    }
+  }
+
+  private static class FakeInput implements Input<Issue> {
+    private final LineHashSequence lineHashSequence;
+    private final BlockHashSequence blockHashSequence;
+    private final List<Issue> issues;
+
+    FakeInput(List<String> lineHashes, List<Issue> issues) {
+      this.lineHashSequence = new LineHashSequence(lineHashes);
+      this.blockHashSequence = BlockHashSequence.create(lineHashSequence);
+      this.issues = issues;
+    }
+
+    @Override
+    public LineHashSequence getLineHashSequence() {
+      return lineHashSequence;
+    }
+
+    @Override
+    public BlockHashSequence getBlockHashSequence() {
+      return blockHashSequence;
+    }
+
+    @Override
+    public Collection<Issue> getIssues() {
+      return issues;
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sonar.db.dialect.Dialect;
+import org.sonar.db.dialect.DialectUtils;
+import org.sonar.db.profiling.SqlStatementCounter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Inserts a large number of rows into a table, without going through MyBatis. Rows are grouped
+ * in multi-row INSERT statements when supported by the dialect (see {@link Dialect#supportsMultiRowInsert()}),
+ * and the statements are sent by JDBC batches of {@link Builder#setFlushSize(int)} rows.
+ * <p/>
+ * Rows are written on the connection of the session given to {@link Builder#build(DbSession)}. The
+ * method {@link #flush()} must be called before committing the session with {@link DbSession#commit(boolean)},
+ * with {@code force} set to true as MyBatis is not aware of the inserted rows. The method {@link #close()}
+ * must be called in any case, usually in a {@code finally} block, as it releases the JDBC statement. It does not
+ * flush pending rows, so that nothing more is sent to the database when a failure occurred.
+ */
+public class BulkInserter implements Closeable {
+
+  public static final int DEFAULT_FLUSH_SIZE = 1000;
+
+  /**
+   * SQLServer does not accept more than 2100 parameters in a statement
+   */
+  @VisibleForTesting
+  static final int MAX_PARAMETERS_PER_STATEMENT = 2000;
+
+  @VisibleForTesting
+  static final int MAX_ROWS_PER_STATEMENT = 100;
+
+  private final Connection connection;
+  private final String table;
+  private final List<String> columns;
+  private final int[] sqlTypes;
+  private final int rowsPerStatement;
+  private final int flushSize;
+
+  private final Object[] pendingValues;
+  private int pendingRows = 0;
+  private PreparedStatement statement;
+  private int batchedRows = 0;
+  private long insertedRows = 0L;
+
+  private BulkInserter(Builder builder, Connection connection, boolean multiRowInsert) {
+    this.connection = connection;
+    this.table = builder.table;
+    this.columns = builder.columns;
+    this.sqlTypes = new int[builder.sqlTypes.size()];
+    for (int i = 0; i < sqlTypes.length; i++) {
+      this.sqlTypes[i] = builder.sqlTypes.get(i);
+    }
+    this.flushSize = builder.flushSize;
+    this.rowsPerStatement = multiRowInsert ? Math.max(1, Math.min(Math.min(MAX_ROWS_PER_STATEMENT, flushSize), MAX_PARAMETERS_PER_STATEMENT / columns.size())) : 1;
+    this.pendingValues = new Object[rowsPerStatement * columns.size()];
+  }
+
+  public static Builder builder(String table) {
+    return new Builder(table);
+  }
+
+  /**
+   * Adds a row. Values must be given in the order of the columns declared in the {@link Builder}.
+   */
+  public void insert(Object... values) {
+    checkArgument(values.length == columns.size(), "Expected %s values but got %s", columns.size(), values.length);
+    System.arraycopy(values, 0, pendingValues, pendingRows * columns.size(), values.length);
+    pendingRows++;
+    if (pendingRows == rowsPerStatement) {
+      try {
+        if (statement == null) {
+          statement = connection.prepareStatement(insertSql(rowsPerStatement));
+        }
+        bind(statement, rowsPerStatement);
+        statement.addBatch();
+        SqlStatementCounter.add(1);
+        batchedRows += rowsPerStatement;
+        pendingRows = 0;
+        if (batchedRows >= flushSize) {
+          executeBatch();
+        }
+      } catch (SQLException e) {
+        throw new IllegalStateException("Fail to insert rows into table " + table, e);
+      }
+    }
+  }
+
+  /**
+   * Sends the rows that are still pending to the database
+   */
+  public void flush() {
+    try {
+      executeBatch();
+      if (pendingRows > 0) {
+        PreparedStatement lastStatement = connection.prepareStatement(insertSql(pendingRows));
+        try {
+          bind(lastStatement, pendingRows);
+          lastStatement.executeUpdate();
+          SqlStatementCounter.add(1);
+          insertedRows += pendingRows;
+          pendingRows = 0;
+        } finally {
+          DbUtils.closeQuietly(lastStatement);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to insert rows into table " + table, e);
+    }
+  }
+
+  /**
+   * Releases the JDBC statement, without throwing exceptions. Rows that have not been flushed are discarded.
+   * The connection is not closed.
+   */
+  @Override
+  public void close() {
+    DbUtils.closeQuietly(statement);
+    statement = null;
+    pendingRows = 0;
+    batchedRows = 0;
+  }
+
+  /**
+   * @return the number of rows sent to the database so far
+   */
+  public long getInsertedRows() {
+    return insertedRows;
+  }
+
+  @VisibleForTesting
+  int getRowsPerStatement() {
+    return rowsPerStatement;
+  }
+
+  private void executeBatch() throws SQLException {
+    if (batchedRows > 0) {
+      statement.executeBatch();
+      statement.clearBatch();
+      insertedRows += batchedRows;
+      batchedRows = 0;
+    }
+  }
+
+  private void bind(PreparedStatement stmt, int rows) throws SQLException {
+    int columnCount = columns.size();
+    for (int i = 0; i < rows * columnCount; i++) {
+      Object value = pendingValues[i];
+      if (value == null) {
+        stmt.setNull(i + 1, sqlTypes[i % columnCount]);
+      } else {
+        stmt.setObject(i + 1, value);
+      }
+      pendingValues[i] = null;
+    }
+  }
+
+  @VisibleForTesting
+  String insertSql(int rows) {
+    String placeholders = "(" + StringUtils.repeat("?", ",", columns.size()) + ")";
+    StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (").append(StringUtils.join(columns, ",")).append(") VALUES ");
+    for (int i = 0; i < rows; i++) {
+      if (i > 0) {
+        sql.append(",");
+      }
+      sql.append(placeholders);
+    }
+    return sql.toString();
+  }
+
+  public static class Builder {
+    private final String table;
+    private final List<String> columns = new ArrayList<>();
+    private final List<Integer> sqlTypes = new ArrayList<>();
+    private int flushSize = DEFAULT_FLUSH_SIZE;
+
+    private Builder(String table) {
+      this.table = table;
+    }
+
+    /**
+     * @param sqlType see {@link java.sql.Types}, used to bind null values
+     */
+    public Builder addColumn(String name, int sqlType) {
+      columns.add(name);
+      sqlTypes.add(sqlType);
+      return this;
+    }
+
+    /**
+     * Number of rows sent to the database in a single JDBC batch. Default value is {@link #DEFAULT_FLUSH_SIZE}.
+     */
+    public Builder setFlushSize(int flushSize) {
+      checkArgument(flushSize > 0, "Flush size must be strictly positive. Got %s", flushSize);
+      this.flushSize = flushSize;
+      return this;
+    }
+
+    public BulkInserter build(DbSession session) {
+      Dialect dialect = DialectUtils.find(session.getConfiguration().getDatabaseId(), null);
+      return build(session.getConnection(), dialect);
+    }
+
+    @VisibleForTesting
+    BulkInserter build(Connection connection, Dialect dialect) {
+      checkState(!columns.isEmpty(), "At least one column must be declared");
+      return new BulkInserter(this, connection, dialect.supportsMultiRowInsert());
+    }
+  }
+}
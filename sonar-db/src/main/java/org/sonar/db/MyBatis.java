@@ -102,6 +102,7 @@ import org.sonar.db.permission.PermissionTemplateGroupDto;
 import org.sonar.db.permission.PermissionTemplateMapper;
 import org.sonar.db.permission.PermissionTemplateUserDto;
 import org.sonar.db.permission.UserWithPermissionDto;
+import org.sonar.db.profiling.SqlStatementCounter;
 import org.sonar.db.property.PropertiesMapper;
 import org.sonar.db.property.PropertyDto;
 import org.sonar.db.purge.IdUuidPair;
@@ -181,6 +182,7 @@ public class MyBatis {
     conf.getVariables().setProperty("_true", dialect.getTrueSqlValue());
     conf.getVariables().setProperty("_false", dialect.getFalseSqlValue());
     conf.getVariables().setProperty("_scrollFetchSize", String.valueOf(dialect.getScrollDefaultFetchSize()));
+    conf.addInterceptor(new SqlStatementCounter());
 
     loadAlias(conf, "ActiveDashboard", ActiveDashboardDto.class);
     loadAlias(conf, "Author", AuthorDto.class);
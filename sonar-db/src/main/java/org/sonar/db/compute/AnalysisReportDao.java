@@ -21,7 +21,9 @@
 package org.sonar.db.compute;
 
 import com.google.common.annotations.VisibleForTesting;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.CheckForNull;
 import org.sonar.api.utils.System2;
 import org.sonar.db.Dao;
@@ -58,15 +60,30 @@ public class AnalysisReportDao implements Dao {
     return mapper(session).selectById(id);
   }
 
+  /**
+   * Books the oldest pending report whose project has no report in progress. Booking relies on a
+   * conditional update, so when several workers race for the same row, only one of them gets it.
+   * The others try the next candidates, skipping the projects for which they lost the race, so that
+   * two reports of the same project are never processed at the same time.
+   */
   @CheckForNull
   public AnalysisReportDto pop(DbSession session) {
-    List<Long> reportIds = mapper(session).selectAvailables(PENDING, WORKING);
-    if (reportIds.isEmpty()) {
-      return null;
+    List<AnalysisReportDto> candidates = mapper(session).selectAvailables(PENDING, WORKING);
+    Set<String> lostProjectKeys = new HashSet<>();
+    for (AnalysisReportDto candidate : candidates) {
+      if (!lostProjectKeys.contains(candidate.getProjectKey())) {
+        AnalysisReportDto report = tryToPop(session, candidate.getId());
+        if (report != null) {
+          return report;
+        }
+        lostProjectKeys.add(candidate.getProjectKey());
+      }
     }
+    return null;
+  }
 
-    long reportId = reportIds.get(0);
-    return tryToPop(session, reportId);
+  public int countByStatus(DbSession session, AnalysisReportDto.Status status) {
+    return mapper(session).countByStatus(status);
   }
 
   @VisibleForTesting
@@ -25,10 +25,12 @@ import org.apache.ibatis.annotations.Param;
 public interface AnalysisReportMapper {
   List<AnalysisReportDto> selectByProjectKey(String projectKey);
 
-  List<Long> selectAvailables(
+  List<AnalysisReportDto> selectAvailables(
     @Param("availableStatus") AnalysisReportDto.Status availableStatus,
     @Param("busyStatus") AnalysisReportDto.Status busyStatus);
 
+  int countByStatus(@Param("status") AnalysisReportDto.Status status);
+
   void resetAllToPendingStatus(@Param("updatedAt") long updatedAt);
 
   void truncate();
@@ -89,4 +89,11 @@ public interface Dialect {
    * @return a boolean
    */
   boolean supportsMigration();
+
+  /**
+   * Indicates whether several rows can be inserted by a single statement "INSERT INTO table (columns) VALUES (...), (...)"
+   *
+   * @since 5.2
+   */
+  boolean supportsMultiRowInsert();
 }
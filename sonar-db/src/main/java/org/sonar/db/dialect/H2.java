@@ -42,4 +42,8 @@ public class H2 extends AbstractDialect {
     return false;
   }
 
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return true;
+  }
 }
@@ -39,4 +39,9 @@ public class MsSql extends AbstractDialect {
   public boolean supportsMigration() {
     return true;
   }
+
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return true;
+  }
 }
@@ -41,4 +41,10 @@ public class Oracle extends AbstractDialect {
   public boolean supportsMigration() {
     return true;
   }
+
+  @Override
+  public boolean supportsMultiRowInsert() {
+    // requires "INSERT ALL", which does not play well with the sequences generating ids. JDBC batches are used instead.
+    return false;
+  }
 }
@@ -49,4 +49,9 @@ public class PostgreSql extends AbstractDialect {
   public boolean supportsMigration() {
     return true;
   }
+
+  @Override
+  public boolean supportsMultiRowInsert() {
+    return true;
+  }
 }
@@ -19,10 +19,14 @@
  */
 package org.sonar.db.duplication;
 
+import com.google.common.base.Function;
+import java.sql.Types;
 import java.util.Collection;
 import java.util.List;
 import org.apache.ibatis.session.SqlSession;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.Dao;
+import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 
@@ -44,6 +48,40 @@ public class DuplicationDao implements Dao {
     }
   }
 
+  /**
+   * Blocks of the last analyses of the other projects that share a hash with the given ones. The hashes
+   * are looked up by partitions through the index on column HASH, so the table is never scanned.
+   */
+  public List<DuplicationUnitDto> selectCandidates(final DbSession session, Collection<String> hashes, final String language, final String excludedProjectUuid) {
+    return DatabaseUtils.executeLargeInputs(hashes, new Function<List<String>, List<DuplicationUnitDto>>() {
+      @Override
+      public List<DuplicationUnitDto> apply(List<String> partition) {
+        return session.getMapper(DuplicationMapper.class).selectCandidatesByHashes(partition, language, excludedProjectUuid);
+      }
+    });
+  }
+
+  /**
+   * Creates an inserter for {@link #insert(BulkInserter, DuplicationUnitDto)}. It must be flushed before committing the session, then closed.
+   */
+  public BulkInserter newBulkInserter(DbSession session) {
+    return BulkInserter.builder("duplications_index")
+      .addColumn("snapshot_id", Types.INTEGER)
+      .addColumn("project_snapshot_id", Types.INTEGER)
+      .addColumn("hash", Types.VARCHAR)
+      .addColumn("index_in_file", Types.INTEGER)
+      .addColumn("start_line", Types.INTEGER)
+      .addColumn("end_line", Types.INTEGER)
+      .build(session);
+  }
+
+  /**
+   * @param inserter created by {@link #newBulkInserter(DbSession)}
+   */
+  public void insert(BulkInserter inserter, DuplicationUnitDto dto) {
+    inserter.insert(dto.getSnapshotId(), dto.getProjectSnapshotId(), dto.getHash(), dto.getIndexInFile(), dto.getStartLine(), dto.getEndLine());
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
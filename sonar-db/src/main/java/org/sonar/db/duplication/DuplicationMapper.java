@@ -29,6 +29,11 @@ public interface DuplicationMapper {
     @Param("last_project_snapshot_id") Integer lastSnapshotId,
     @Param("language") String language);
 
+  List<DuplicationUnitDto> selectCandidatesByHashes(
+    @Param("hashes") List<String> hashes,
+    @Param("language") String language,
+    @Param("excluded_project_uuid") String excludedProjectUuid);
+
   void batchInsert(DuplicationUnitDto unit);
 
 }
@@ -21,6 +21,7 @@
 package org.sonar.db.issue;
 
 import com.google.common.collect.Lists;
+import java.sql.Types;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -28,6 +29,7 @@ import javax.annotation.CheckForNull;
 import org.sonar.api.server.ServerSide;
 import org.sonar.core.issue.DefaultIssueComment;
 import org.sonar.core.issue.FieldDiffs;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
@@ -107,6 +109,30 @@ public class IssueChangeDao implements Dao {
     session.getMapper(IssueChangeMapper.class).insert(change);
   }
 
+  /**
+   * Creates an inserter for {@link #insert(BulkInserter, IssueChangeDto)}. It must be flushed before committing the session, then closed.
+   */
+  public BulkInserter newBulkInserter(DbSession session) {
+    return BulkInserter.builder("issue_changes")
+      .addColumn("kee", Types.VARCHAR)
+      .addColumn("issue_key", Types.VARCHAR)
+      .addColumn("user_login", Types.VARCHAR)
+      .addColumn("change_type", Types.VARCHAR)
+      .addColumn("change_data", Types.VARCHAR)
+      .addColumn("created_at", Types.BIGINT)
+      .addColumn("updated_at", Types.BIGINT)
+      .addColumn("issue_change_creation_date", Types.BIGINT)
+      .build(session);
+  }
+
+  /**
+   * @param inserter created by {@link #newBulkInserter(DbSession)}
+   */
+  public void insert(BulkInserter inserter, IssueChangeDto change) {
+    inserter.insert(change.getKey(), change.getIssueKey(), change.getUserLogin(), change.getChangeType(), change.getChangeData(),
+      change.getCreatedAt(), change.getUpdatedAt(), change.getIssueChangeCreationDate());
+  }
+
   public boolean delete(String key) {
     DbSession session = mybatis.openSession(false);
     try {
@@ -20,11 +20,13 @@
 
 package org.sonar.db.issue;
 
+import java.sql.Types;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.CheckForNull;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
@@ -84,6 +86,48 @@ public class IssueDao implements Dao {
     }
   }
 
+  /**
+   * Creates an inserter for {@link #insert(BulkInserter, IssueDto)}. It must be flushed before committing the session, then closed.
+   */
+  public BulkInserter newBulkInserter(DbSession session) {
+    return BulkInserter.builder("issues")
+      .addColumn("kee", Types.VARCHAR)
+      .addColumn("rule_id", Types.INTEGER)
+      .addColumn("action_plan_key", Types.VARCHAR)
+      .addColumn("severity", Types.VARCHAR)
+      .addColumn("manual_severity", Types.BOOLEAN)
+      .addColumn("message", Types.VARCHAR)
+      .addColumn("line", Types.INTEGER)
+      .addColumn("effort_to_fix", Types.DOUBLE)
+      .addColumn("technical_debt", Types.INTEGER)
+      .addColumn("status", Types.VARCHAR)
+      .addColumn("tags", Types.VARCHAR)
+      .addColumn("resolution", Types.VARCHAR)
+      .addColumn("checksum", Types.VARCHAR)
+      .addColumn("reporter", Types.VARCHAR)
+      .addColumn("assignee", Types.VARCHAR)
+      .addColumn("author_login", Types.VARCHAR)
+      .addColumn("issue_attributes", Types.VARCHAR)
+      .addColumn("issue_creation_date", Types.BIGINT)
+      .addColumn("issue_update_date", Types.BIGINT)
+      .addColumn("issue_close_date", Types.BIGINT)
+      .addColumn("created_at", Types.BIGINT)
+      .addColumn("updated_at", Types.BIGINT)
+      .addColumn("component_uuid", Types.VARCHAR)
+      .addColumn("project_uuid", Types.VARCHAR)
+      .build(session);
+  }
+
+  /**
+   * @param inserter created by {@link #newBulkInserter(DbSession)}
+   */
+  public void insert(BulkInserter inserter, IssueDto dto) {
+    inserter.insert(dto.getKee(), dto.getRuleId(), dto.getActionPlanKey(), dto.getSeverity(), dto.isManualSeverity(), dto.getMessage(),
+      dto.getLine(), dto.getEffortToFix(), dto.getDebt(), dto.getStatus(), dto.getTagsString(), dto.getResolution(), dto.getChecksum(),
+      dto.getReporter(), dto.getAssignee(), dto.getAuthorLogin(), dto.getIssueAttributes(), dto.getIssueCreationTime(), dto.getIssueUpdateTime(),
+      dto.getIssueCloseTime(), dto.getCreatedAt(), dto.getUpdatedAt(), dto.getComponentUuid(), dto.getProjectUuid());
+  }
+
   public void update(DbSession session, IssueDto dto) {
     mapper(session).update(dto);
   }
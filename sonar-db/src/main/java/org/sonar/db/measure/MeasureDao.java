@@ -22,10 +22,15 @@ package org.sonar.db.measure;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
+import java.sql.Types;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.annotation.CheckForNull;
+import org.apache.ibatis.session.ResultHandler;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.Dao;
 import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbSession;
@@ -51,6 +56,14 @@ public class MeasureDao implements Dao {
     });
   }
 
+  /**
+   * Streams the measures of the last snapshots of all the components of a project, except the measures related
+   * to rules, characteristics or developers. Measures of a same component are returned together.
+   */
+  public void selectLastMeasuresByProjectUuid(DbSession session, String projectUuid, ResultHandler handler) {
+    session.select(MeasureMapper.class.getName() + ".selectLastMeasuresByProjectUuid", projectUuid, handler);
+  }
+
   public List<PastMeasureDto> selectByComponentUuidAndProjectSnapshotIdAndMetricIds(final DbSession session, final String componentUuid, final long projectSnapshotId,
     Set<Integer> metricIds) {
     return DatabaseUtils.executeLargeInputs(metricIds, new Function<List<Integer>, List<PastMeasureDto>>() {
@@ -62,10 +75,58 @@ public class MeasureDao implements Dao {
     });
   }
 
+  /**
+   * Streams the measures of the directories, modules and projects of the given project snapshots. Measures of a same
+   * component are returned together. {@link PastMeasureDto#getProjectSnapshotId()} tells which project snapshot a
+   * measure belongs to.
+   */
+  public void selectPastMeasuresByProjectSnapshotIds(DbSession session, Collection<Long> projectSnapshotIds, ResultHandler handler) {
+    Map<String, Object> params = new HashMap<>();
+    params.put("projectSnapshotIds", projectSnapshotIds);
+    params.put("status", SnapshotDto.STATUS_PROCESSED);
+    session.select(MeasureMapper.class.getName() + ".selectPastMeasuresByProjectSnapshotIds", params, handler);
+  }
+
   public void insert(DbSession session, MeasureDto measureDto) {
     mapper(session).insert(measureDto);
   }
 
+  /**
+   * Creates an inserter for {@link #insert(BulkInserter, MeasureDto)}, much faster than {@link #insert(DbSession, MeasureDto)}
+   * when persisting a large number of measures. It must be flushed before committing the session, then closed.
+   */
+  public BulkInserter newBulkInserter(DbSession session) {
+    return BulkInserter.builder("project_measures")
+      .addColumn("value", Types.DOUBLE)
+      .addColumn("metric_id", Types.INTEGER)
+      .addColumn("snapshot_id", Types.INTEGER)
+      .addColumn("rule_id", Types.INTEGER)
+      .addColumn("text_value", Types.VARCHAR)
+      .addColumn("project_id", Types.INTEGER)
+      .addColumn("alert_status", Types.VARCHAR)
+      .addColumn("alert_text", Types.VARCHAR)
+      .addColumn("description", Types.VARCHAR)
+      .addColumn("characteristic_id", Types.INTEGER)
+      .addColumn("person_id", Types.INTEGER)
+      .addColumn("variation_value_1", Types.DOUBLE)
+      .addColumn("variation_value_2", Types.DOUBLE)
+      .addColumn("variation_value_3", Types.DOUBLE)
+      .addColumn("variation_value_4", Types.DOUBLE)
+      .addColumn("variation_value_5", Types.DOUBLE)
+      .addColumn("measure_data", Types.BINARY)
+      .build(session);
+  }
+
+  /**
+   * @param inserter created by {@link #newBulkInserter(DbSession)}
+   */
+  public void insert(BulkInserter inserter, MeasureDto measureDto) {
+    inserter.insert(measureDto.getValue(), measureDto.getMetricId(), measureDto.getSnapshotId(), measureDto.getRuleId(), measureDto.getTextValue(),
+      measureDto.getComponentId(), measureDto.getAlertStatus(), measureDto.getAlertText(), measureDto.getDescription(), measureDto.getCharacteristicId(),
+      measureDto.getPersonId(), measureDto.getVariation(1), measureDto.getVariation(2), measureDto.getVariation(3), measureDto.getVariation(4),
+      measureDto.getVariation(5), measureDto.getDataValue());
+  }
+
   public void insert(DbSession session, Collection<MeasureDto> items) {
     for (MeasureDto item : items) {
       insert(session, item);
@@ -32,6 +32,8 @@ public class PastMeasureDto {
   private Integer ruleId;
   private Integer characteristicId;
   private Integer personId;
+  private String componentUuid;
+  private Long projectSnapshotId;
 
   public Long getId() {
     return id;
@@ -94,4 +96,30 @@ public class PastMeasureDto {
     this.ruleId = ruleId;
     return this;
   }
+
+  /**
+   * Only loaded by {@link MeasureDao#selectPastMeasuresByProjectSnapshotIds}
+   */
+  @CheckForNull
+  public String getComponentUuid() {
+    return componentUuid;
+  }
+
+  public PastMeasureDto setComponentUuid(@Nullable String componentUuid) {
+    this.componentUuid = componentUuid;
+    return this;
+  }
+
+  /**
+   * Only loaded by {@link MeasureDao#selectPastMeasuresByProjectSnapshotIds}
+   */
+  @CheckForNull
+  public Long getProjectSnapshotId() {
+    return projectSnapshotId;
+  }
+
+  public PastMeasureDto setProjectSnapshotId(@Nullable Long projectSnapshotId) {
+    this.projectSnapshotId = projectSnapshotId;
+    return this;
+  }
 }
@@ -22,11 +22,13 @@ package org.sonar.db.source;
 
 import com.google.common.base.Function;
 import com.google.common.base.Splitter;
+import java.io.InputStream;
 import java.io.Reader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
 import javax.annotation.CheckForNull;
 import org.apache.commons.dbutils.DbUtils;
@@ -35,6 +37,7 @@ import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 import org.sonar.db.source.FileSourceDto.Type;
+import org.sonar.server.source.db.FileSourceDb;
 
 public class FileSourceDao implements Dao {
 
@@ -65,6 +68,46 @@ public class FileSourceDao implements Dao {
     }
   }
 
+  /**
+   * Same as {@link #selectSource(String)} but binary data and line hashes are not loaded.
+   */
+  @CheckForNull
+  public FileSourceDto selectSourceHashes(DbSession session, String fileUuid) {
+    return mapper(session).selectHashes(fileUuid, Type.SOURCE);
+  }
+
+  /**
+   * Lines between "from" and "to" (both inclusive) of the source of a file. Only the requested lines are
+   * decompressed and deserialized. The data hash is read by the same statement, so that it always relates
+   * to the returned lines.
+   *
+   * @return null if the file has no source
+   */
+  @CheckForNull
+  public SourceLines selectSourceLines(DbSession dbSession, String fileUuid, int from, int to) {
+    Connection connection = dbSession.getConnection();
+    PreparedStatement pstmt = null;
+    ResultSet rs = null;
+    try {
+      pstmt = connection.prepareStatement("SELECT data_hash, binary_data FROM file_sources WHERE file_uuid=? AND data_type=?");
+      pstmt.setString(1, fileUuid);
+      pstmt.setString(2, Type.SOURCE);
+      rs = pstmt.executeQuery();
+      if (rs.next()) {
+        String dataHash = rs.getString(1);
+        InputStream binaryData = rs.getBinaryStream(2);
+        return new SourceLines(dataHash, binaryData == null ? Collections.<FileSourceDb.Line>emptyList() : FileSourceDto.decodeSourceLines(binaryData, from, to));
+      }
+      return null;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to read FILE_SOURCES.BINARY_DATA of file " + fileUuid, e);
+    } finally {
+      // the connection is released with the session
+      DbUtils.closeQuietly(rs);
+      DbUtils.closeQuietly(pstmt);
+    }
+  }
+
   @CheckForNull
   public List<String> selectLineHashes(DbSession dbSession, String fileUuid) {
     Connection connection = dbSession.getConnection();
@@ -19,6 +19,8 @@
  */
 package org.sonar.db.source;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -35,6 +37,8 @@ import org.sonar.server.source.db.FileSourceDb.Test;
 
 public class FileSourceDto {
 
+  private static final int LINES_TAG = (FileSourceDb.Data.LINES_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
   private Long id;
   private String projectUuid;
   private String fileUuid;
@@ -45,6 +49,7 @@ public class FileSourceDto {
   private byte[] binaryData;
   private String dataType;
   private String dataHash;
+  private String reportHash;
 
   public Long getId() {
     return id;
@@ -107,6 +112,45 @@ public class FileSourceDto {
     }
   }
 
+  /**
+   * Decompress and deserialize the lines between "from" and "to" (both inclusive) of column FILE_SOURCES.BINARY_DATA.
+   * Lines are stored in order, so the lines before "from" are skipped without being deserialized, and the data
+   * after line "to" are not even decompressed.
+   * The parameter "input" is always closed by this method.
+   */
+  public static List<FileSourceDb.Line> decodeSourceLines(InputStream binaryInput, int from, int to) {
+    LZ4BlockInputStream lz4Input = null;
+    List<FileSourceDb.Line> lines = new ArrayList<>();
+    try {
+      lz4Input = new LZ4BlockInputStream(binaryInput);
+      CodedInputStream input = CodedInputStream.newInstance(lz4Input);
+      int lineIndex = 0;
+      int tag;
+      while (lineIndex < to && (tag = input.readTag()) != 0) {
+        if (tag != LINES_TAG) {
+          input.skipField(tag);
+          continue;
+        }
+        lineIndex++;
+        int size = input.readRawVarint32();
+        if (lineIndex < from) {
+          input.skipRawBytes(size);
+        } else {
+          int limit = input.pushLimit(size);
+          lines.add(FileSourceDb.Line.PARSER.parseFrom(input));
+          input.popLimit(limit);
+        }
+        // the size limit of CodedInputStream applies to the whole stream, not to each line
+        input.resetSizeCounter();
+      }
+      return lines;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to decompress and deserialize source data", e);
+    } finally {
+      IOUtils.closeQuietly(lz4Input);
+    }
+  }
+
   /**
    * Serialize and compress protobuf message {@link org.sonar.server.source.db.FileSourceDb.Data}
    * in the column BINARY_DATA.
@@ -239,6 +283,20 @@ public class FileSourceDto {
     return this;
   }
 
+  @CheckForNull
+  public String getReportHash() {
+    return reportHash;
+  }
+
+  /**
+   * Hash of the raw data of analysis report that are used to compute binary data and line hashes.
+   * It allows to detect unchanged files without decoding report. Value is computed by Compute Engine.
+   */
+  public FileSourceDto setReportHash(@Nullable String reportHash) {
+    this.reportHash = reportHash;
+    return this;
+  }
+
   public long getCreatedAt() {
     return createdAt;
   }
@@ -0,0 +1,49 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.source;
+
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.server.source.db.FileSourceDb;
+
+/**
+ * Range of lines of a file source, as returned by {@link FileSourceDao#selectSourceLines(org.sonar.db.DbSession, String, int, int)},
+ * with the hash of the data they have been read from.
+ */
+public class SourceLines {
+
+  private final String dataHash;
+  private final List<FileSourceDb.Line> lines;
+
+  public SourceLines(@Nullable String dataHash, List<FileSourceDb.Line> lines) {
+    this.dataHash = dataHash;
+    this.lines = lines;
+  }
+
+  @CheckForNull
+  public String getDataHash() {
+    return dataHash;
+  }
+
+  public List<FileSourceDb.Line> getLines() {
+    return lines;
+  }
+}
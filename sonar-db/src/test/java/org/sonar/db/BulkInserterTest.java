@@ -0,0 +1,164 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db;
+
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.utils.System2;
+import org.sonar.db.dialect.Dialect;
+import org.sonar.db.profiling.SqlStatementCounter;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Category(DbTests.class)
+public class BulkInserterTest {
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  @Test
+  public void insert_rows_with_multi_row_statements() {
+    db.truncateTables();
+    DbSession session = db.getSession();
+
+    BulkInserter inserter = newBuilder().setFlushSize(7).build(session);
+    assertThat(inserter.getRowsPerStatement()).isEqualTo(7);
+
+    long sqlStatements = SqlStatementCounter.get();
+    insertChanges(inserter, 45);
+    // 6 complete statements of 7 rows have been sent, 3 rows are pending
+    assertThat(inserter.getInsertedRows()).isEqualTo(42);
+    inserter.flush();
+    inserter.close();
+    session.commit(true);
+
+    assertThat(inserter.getInsertedRows()).isEqualTo(45);
+    assertThat(SqlStatementCounter.get() - sqlStatements).isEqualTo(7);
+    verifyChanges(45);
+  }
+
+  @Test
+  public void insert_rows_one_by_one_if_multi_row_insert_is_not_supported() throws Exception {
+    db.truncateTables();
+    DbSession session = db.getSession();
+    Dialect dialect = mock(Dialect.class);
+    when(dialect.supportsMultiRowInsert()).thenReturn(false);
+
+    BulkInserter inserter = newBuilder().setFlushSize(10).build(session.getConnection(), dialect);
+    assertThat(inserter.getRowsPerStatement()).isEqualTo(1);
+
+    insertChanges(inserter, 25);
+    assertThat(inserter.getInsertedRows()).isEqualTo(20);
+    inserter.flush();
+    inserter.close();
+    session.commit(true);
+
+    assertThat(inserter.getInsertedRows()).isEqualTo(25);
+    verifyChanges(25);
+  }
+
+  @Test
+  public void close_without_rows() {
+    db.truncateTables();
+
+    BulkInserter inserter = newBuilder().build(db.getSession());
+    inserter.flush();
+    inserter.close();
+
+    assertThat(inserter.getInsertedRows()).isZero();
+    assertThat(db.countRowsOfTable("issue_changes")).isZero();
+  }
+
+  @Test
+  public void close_discards_rows_that_are_not_flushed() {
+    db.truncateTables();
+    DbSession session = db.getSession();
+
+    BulkInserter inserter = newBuilder().setFlushSize(10).build(session);
+    insertChanges(inserter, 15);
+    inserter.close();
+    session.commit(true);
+
+    assertThat(inserter.getInsertedRows()).isEqualTo(10);
+    verifyChanges(10);
+  }
+
+  @Test
+  public void number_of_parameters_per_statement_is_limited() {
+    Dialect dialect = mock(Dialect.class);
+    when(dialect.supportsMultiRowInsert()).thenReturn(true);
+    BulkInserter.Builder builder = BulkInserter.builder("foo");
+    for (int i = 0; i < 50; i++) {
+      builder.addColumn("col" + i, Types.INTEGER);
+    }
+
+    assertThat(builder.build(null, dialect).getRowsPerStatement()).isEqualTo(BulkInserter.MAX_PARAMETERS_PER_STATEMENT / 50);
+    assertThat(BulkInserter.builder("foo").addColumn("bar", Types.INTEGER).build(null, dialect).getRowsPerStatement())
+      .isEqualTo(BulkInserter.MAX_ROWS_PER_STATEMENT);
+  }
+
+  @Test
+  public void generate_insert_sql() {
+    Dialect dialect = mock(Dialect.class);
+    BulkInserter inserter = BulkInserter.builder("foo").addColumn("a", Types.INTEGER).addColumn("b", Types.VARCHAR).build(null, dialect);
+
+    assertThat(inserter.insertSql(1)).isEqualTo("INSERT INTO foo (a,b) VALUES (?,?)");
+    assertThat(inserter.insertSql(3)).isEqualTo("INSERT INTO foo (a,b) VALUES (?,?),(?,?),(?,?)");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_number_of_values_does_not_match_columns() {
+    BulkInserter inserter = BulkInserter.builder("foo").addColumn("a", Types.INTEGER).addColumn("b", Types.VARCHAR).build(null, mock(Dialect.class));
+
+    inserter.insert(1);
+  }
+
+  private static BulkInserter.Builder newBuilder() {
+    return BulkInserter.builder("issue_changes")
+      .addColumn("kee", Types.VARCHAR)
+      .addColumn("issue_key", Types.VARCHAR)
+      .addColumn("change_data", Types.VARCHAR)
+      .addColumn("created_at", Types.BIGINT);
+  }
+
+  private static void insertChanges(BulkInserter inserter, int count) {
+    for (int i = 0; i < count; i++) {
+      inserter.insert("CHANGE_" + i, "ISSUE", i % 2 == 0 ? null : "data", (long) i);
+    }
+  }
+
+  private void verifyChanges(int count) {
+    List<Map<String, Object>> rows = db.select("select kee as \"key\", change_data as \"data\", created_at as \"createdAt\" from issue_changes order by created_at");
+    assertThat(rows).hasSize(count);
+    for (int i = 0; i < count; i++) {
+      Map<String, Object> row = rows.get(i);
+      assertThat(row.get("key")).isEqualTo("CHANGE_" + i);
+      assertThat(row.get("data")).isEqualTo(i % 2 == 0 ? null : "data");
+      assertThat(row.get("createdAt")).isEqualTo((long) i);
+    }
+  }
+}
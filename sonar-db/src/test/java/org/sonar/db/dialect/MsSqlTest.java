@@ -54,4 +54,9 @@ public class MsSqlTest {
   public void msSql_does_supportMigration() {
     assertThat(msSql.supportsMigration()).isTrue();
   }
+
+  @Test
+  public void msSql_supports_multi_row_insert() {
+    assertThat(msSql.supportsMultiRowInsert()).isTrue();
+  }
 }
@@ -60,4 +60,9 @@ public class MySqlTest {
   public void mysql_does_supportMigration() {
     assertThat(mySql.supportsMigration()).isTrue();
   }
+
+  @Test
+  public void mysql_supports_multi_row_insert() {
+    assertThat(mySql.supportsMultiRowInsert()).isTrue();
+  }
 }
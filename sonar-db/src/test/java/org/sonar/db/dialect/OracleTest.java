@@ -57,4 +57,9 @@ public class OracleTest {
   public void oracle_does_supportMigration() {
     assertThat(dialect.supportsMigration()).isTrue();
   }
+
+  @Test
+  public void oracle_does_not_support_multi_row_insert() {
+    assertThat(dialect.supportsMultiRowInsert()).isFalse();
+  }
 }
@@ -61,4 +61,9 @@ public class PostgreSqlTest {
   public void postgres_does_supportMigration() {
     assertThat(dialect.supportsMigration()).isTrue();
   }
+
+  @Test
+  public void postgres_supports_multi_row_insert() {
+    assertThat(dialect.supportsMultiRowInsert()).isTrue();
+  }
 }
@@ -21,6 +21,8 @@ package org.sonar.db.duplication;
 
 import java.util.Arrays;
 import java.util.List;
+import org.sonar.db.BulkInserter;
+import org.sonar.db.DbSession;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -28,8 +30,7 @@ import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 import org.sonar.test.DbTests;
 
-import static org.hamcrest.Matchers.is;
-import static org.junit.Assert.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
 
 @Category(DbTests.class)
 public class DuplicationDaoTest {
@@ -44,18 +45,18 @@ public class DuplicationDaoTest {
     db.prepareDbUnit(getClass(), "shouldGetByHash.xml");
 
     List<DuplicationUnitDto> blocks = dao.selectCandidates(10, 7, "java");
-    assertThat(blocks.size(), is(1));
+    assertThat(blocks).hasSize(1);
 
     DuplicationUnitDto block = blocks.get(0);
-    assertThat("block resourceId", block.getResourceKey(), is("bar-last"));
-    assertThat("block hash", block.getHash(), is("aa"));
-    assertThat("block index in file", block.getIndexInFile(), is(0));
-    assertThat("block start line", block.getStartLine(), is(1));
-    assertThat("block end line", block.getEndLine(), is(2));
+    assertThat(block.getResourceKey()).isEqualTo("bar-last");
+    assertThat(block.getHash()).isEqualTo("aa");
+    assertThat(block.getIndexInFile()).isEqualTo(0);
+    assertThat(block.getStartLine()).isEqualTo(1);
+    assertThat(block.getEndLine()).isEqualTo(2);
 
     // check null for lastSnapshotId
     blocks = dao.selectCandidates(10, null, "java");
-    assertThat(blocks.size(), is(2));
+    assertThat(blocks).hasSize(2);
   }
 
   @Test
@@ -67,4 +68,36 @@ public class DuplicationDaoTest {
     db.assertDbUnit(getClass(), "shouldInsert-result.xml", "duplications_index");
   }
 
+  @Test
+  public void select_candidates_by_hashes() {
+    db.prepareDbUnit(getClass(), "select_candidates_by_hashes.xml");
+
+    DbSession session = db.getSession();
+    List<DuplicationUnitDto> blocks = dao.selectCandidates(session, Arrays.asList("aa", "cc", "zz"), "java", "P2");
+
+    assertThat(blocks).extracting("resourceKey").containsOnly("bar-last");
+    assertThat(blocks).extracting("hash").containsOnly("aa", "cc");
+    DuplicationUnitDto block = blocks.get(0).getHash().equals("aa") ? blocks.get(0) : blocks.get(1);
+    assertThat(block.getIndexInFile()).isEqualTo(0);
+    assertThat(block.getStartLine()).isEqualTo(1);
+    assertThat(block.getEndLine()).isEqualTo(2);
+
+    assertThat(dao.selectCandidates(session, Arrays.<String>asList(), "java", "P2")).isEmpty();
+    assertThat(dao.selectCandidates(session, Arrays.asList("bb"), "java", "P1")).isEmpty();
+  }
+
+  @Test
+  public void insert_with_bulk_inserter() {
+    db.prepareDbUnit(getClass(), "shouldInsert.xml");
+
+    DbSession session = db.getSession();
+    BulkInserter inserter = dao.newBulkInserter(session);
+    dao.insert(inserter, new DuplicationUnitDto(1, 2, "bb", 0, 1, 2));
+    inserter.flush();
+    inserter.close();
+    session.commit(true);
+
+    db.assertDbUnit(getClass(), "shouldInsert-result.xml", "duplications_index");
+  }
+
 }
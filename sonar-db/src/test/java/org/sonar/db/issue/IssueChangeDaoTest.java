@@ -29,6 +29,7 @@ import org.sonar.api.utils.DateUtils;
 import org.sonar.api.utils.System2;
 import org.sonar.core.issue.DefaultIssueComment;
 import org.sonar.core.issue.FieldDiffs;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 import org.sonar.test.DbTests;
@@ -155,6 +156,29 @@ public class IssueChangeDaoTest {
     dbTester.assertDbUnit(getClass(), "insert-result.xml", new String[]{"id"}, "issue_changes");
   }
 
+  @Test
+  public void bulk_insert() {
+    dbTester.truncateTables();
+
+    IssueChangeDto changeDto = new IssueChangeDto()
+      .setKey("EFGH")
+      .setUserLogin("emmerik")
+      .setChangeData("Some text")
+      .setChangeType("comment")
+      .setIssueKey("ABCDE")
+      .setCreatedAt(1_500_000_000_000L)
+      .setUpdatedAt(1_501_000_000_000L)
+      .setIssueChangeCreationDate(1_502_000_000_000L);
+
+    BulkInserter inserter = dao.newBulkInserter(dbTester.getSession());
+    dao.insert(inserter, changeDto);
+    inserter.flush();
+    inserter.close();
+    dbTester.getSession().commit(true);
+
+    dbTester.assertDbUnit(getClass(), "insert-result.xml", new String[]{"id"}, "issue_changes");
+  }
+
   @Test
   public void update() {
     dbTester.prepareDbUnit(getClass(), "update.xml");
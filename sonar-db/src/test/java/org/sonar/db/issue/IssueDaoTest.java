@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.System2;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.DbTester;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.db.rule.RuleTesting;
@@ -202,4 +203,42 @@ public class IssueDaoTest {
 
     dbTester.assertDbUnit(getClass(), "insert-result.xml", new String[] {"id"}, "issues");
   }
+
+  @Test
+  public void bulk_insert() {
+    dbTester.truncateTables();
+
+    IssueDto dto = new IssueDto();
+    dto.setComponent(new ComponentDto().setKey("struts:Action").setId(123L).setUuid("component-uuid"));
+    dto.setProject(new ComponentDto().setKey("struts").setId(100L).setUuid("project-uuid"));
+    dto.setRule(RuleTesting.newDto(RuleKey.of("squid", "S001")).setId(200));
+    dto.setKee("ABCDE");
+    dto.setLine(500);
+    dto.setEffortToFix(3.14);
+    dto.setDebt(10L);
+    dto.setResolution("FIXED");
+    dto.setStatus("RESOLVED");
+    dto.setSeverity("BLOCKER");
+    dto.setReporter("emmerik");
+    dto.setAuthorLogin("morgan");
+    dto.setAssignee("karadoc");
+    dto.setActionPlanKey("current_sprint");
+    dto.setIssueAttributes("JIRA=FOO-1234");
+    dto.setChecksum("123456789");
+    dto.setMessage("the message");
+
+    dto.setIssueCreationTime(1_500_000_000_000L);
+    dto.setIssueUpdateTime(1_500_000_000_001L);
+    dto.setIssueCloseTime(1_500_000_000_002L);
+    dto.setCreatedAt(1_400_000_000_000L);
+    dto.setUpdatedAt(1_450_000_000_000L);
+
+    BulkInserter inserter = dao.newBulkInserter(dbTester.getSession());
+    dao.insert(inserter, dto);
+    inserter.flush();
+    inserter.close();
+    dbTester.getSession().commit(true);
+
+    dbTester.assertDbUnit(getClass(), "insert-result.xml", new String[] {"id"}, "issues");
+  }
 }
@@ -26,10 +26,14 @@ import com.google.common.collect.ImmutableSet;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
+import org.apache.commons.lang.StringUtils;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.sonar.api.utils.System2;
+import org.sonar.db.BulkInserter;
 import org.sonar.db.DbTester;
 import org.sonar.test.DbTests;
 
@@ -103,6 +107,26 @@ public class MeasureDaoTest {
     assertThat(result.getVariation(5)).isEqualTo(-5d);
   }
 
+  @Test
+  public void select_last_measures_by_project_uuid() {
+    db.prepareDbUnit(getClass(), "last_measures_of_project.xml");
+
+    final List<MeasureDto> results = newArrayList();
+    sut.selectLastMeasuresByProjectUuid(db.getSession(), "ABCD", new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        results.add((MeasureDto) context.getResultObject());
+      }
+    });
+
+    assertThat(results).extracting("id").containsExactly(20L, 21L, 22L);
+    MeasureDto result = results.get(1);
+    assertThat(result.getComponentKey()).isEqualTo("FILE_KEY");
+    assertThat(result.getMetricKey()).isEqualTo("ncloc");
+    assertThat(result.getSnapshotId()).isEqualTo(6L);
+    assertThat(result.getValue()).isEqualTo(10d);
+  }
+
   @Test
   public void find_by_component_key_and_metric() {
     db.prepareDbUnit(getClass(), "shared.xml");
@@ -163,6 +187,32 @@ public class MeasureDaoTest {
     assertThat(sut.selectByComponentUuidAndProjectSnapshotIdAndMetricIds(db.getSession(), "CDEF", 1000L, ImmutableSet.of(123, 456))).isEmpty();
   }
 
+  @Test
+  public void select_past_measures_by_project_snapshot_ids() {
+    db.prepareDbUnit(getClass(), "past_measures.xml");
+
+    final List<PastMeasureDto> results = newArrayList();
+    ResultHandler handler = new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        results.add((PastMeasureDto) context.getResultObject());
+      }
+    };
+    sut.selectPastMeasuresByProjectSnapshotIds(db.getSession(), ImmutableSet.of(1000L), handler);
+
+    // measures of files are excluded
+    assertThat(results).extracting("componentUuid").containsExactly("ABCD", "ABCD", "BCDE", "BCDE");
+    assertThat(results).extracting("id").containsOnly(1L, 2L, 3L, 4L);
+    assertThat(results).extracting("projectSnapshotId").containsOnly(1000L);
+    PastMeasureDto packageMeasure = results.get(2).getId() == 3L ? results.get(2) : results.get(3);
+    assertThat(packageMeasure.getMetricId()).isEqualTo(1);
+    assertThat(packageMeasure.getValue()).isEqualTo(20d);
+
+    results.clear();
+    sut.selectPastMeasuresByProjectSnapshotIds(db.getSession(), ImmutableSet.of(987654L), handler);
+    assertThat(results).isEmpty();
+  }
+
   @Test
   public void select_past_measures_on_rule_by_component_uuid_and_root_snapshot_id_and_metric_keys() {
     db.prepareDbUnit(getClass(), "past_measures_with_rule_id.xml");
@@ -284,6 +334,52 @@ public class MeasureDaoTest {
     db.assertDbUnit(getClass(), "insert-result.xml", new String[] {"id"}, "project_measures");
   }
 
+  @Test
+  public void bulk_insert() {
+    db.prepareDbUnit(getClass(), "empty.xml");
+
+    BulkInserter inserter = sut.newBulkInserter(db.getSession());
+    sut.insert(inserter, new MeasureDto()
+        .setSnapshotId(2L)
+        .setMetricId(3)
+        .setCharacteristicId(4)
+        .setPersonId(23)
+        .setRuleId(5)
+        .setComponentId(6L)
+        .setValue(2.0d)
+        .setData("measure-value")
+        .setVariation(1, 1.0d)
+        .setVariation(2, 2.0d)
+        .setVariation(3, 3.0d)
+        .setVariation(4, 4.0d)
+        .setVariation(5, 5.0d)
+        .setAlertStatus("alert")
+        .setAlertText("alert-text")
+        .setDescription("measure-description")
+    );
+    inserter.flush();
+    inserter.close();
+    db.getSession().commit(true);
+
+    db.assertDbUnit(getClass(), "insert-result.xml", new String[] {"id"}, "project_measures");
+  }
+
+  @Test
+  public void bulk_insert_measure_with_large_data() {
+    db.prepareDbUnit(getClass(), "empty.xml");
+    String data = StringUtils.repeat("x", 5000);
+
+    BulkInserter inserter = sut.newBulkInserter(db.getSession());
+    sut.insert(inserter, new MeasureDto().setSnapshotId(2L).setMetricId(3).setComponentId(6L).setData(data));
+    inserter.flush();
+    inserter.close();
+    db.getSession().commit(true);
+
+    Map<String, Object> row = db.selectFirst("select measure_data as \"data\", text_value as \"text\" from project_measures");
+    assertThat(row.get("text")).isNull();
+    assertThat((byte[]) row.get("data")).hasSize(5000);
+  }
+
   @Test
   public void insert_measures() {
     db.prepareDbUnit(getClass(), "empty.xml");
@@ -0,0 +1,74 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.profiling;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.IsAliveMapper;
+import org.sonar.test.DbTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Category(DbTests.class)
+public class SqlStatementCounterTest {
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  @Test
+  public void count_statements_of_current_thread() throws Exception {
+    long before = SqlStatementCounter.get();
+    isAlive();
+    isAlive();
+    assertThat(SqlStatementCounter.get() - before).isEqualTo(2);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      long countOfOtherThread = executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          long before = SqlStatementCounter.get();
+          isAlive();
+          return SqlStatementCounter.get() - before;
+        }
+      }).get();
+      assertThat(countOfOtherThread).isEqualTo(1);
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(SqlStatementCounter.get() - before).isEqualTo(2);
+  }
+
+  private void isAlive() {
+    DbSession session = dbTester.myBatis().openSession(false);
+    try {
+      session.getMapper(IsAliveMapper.class).isAlive();
+    } finally {
+      session.close();
+    }
+  }
+}
@@ -30,6 +30,7 @@ import org.junit.experimental.categories.Category;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 import org.sonar.db.source.FileSourceDto.Type;
+import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.test.DbTests;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -57,6 +58,45 @@ public class FileSourceDaoTest {
     assertThat(fileSourceDto.getDataType()).isEqualTo(Type.SOURCE);
   }
 
+  @Test
+  public void select_source_hashes() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    FileSourceDto fileSourceDto = sut.selectSourceHashes(dbTester.getSession(), "FILE1_UUID");
+
+    assertThat(fileSourceDto.getBinaryData()).isNull();
+    assertThat(fileSourceDto.getLineHashes()).isNull();
+    assertThat(fileSourceDto.getDataHash()).isEqualTo("hash");
+    assertThat(fileSourceDto.getFileUuid()).isEqualTo("FILE1_UUID");
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(1500000000000L);
+
+    assertThat(sut.selectSourceHashes(dbTester.getSession(), "unknown")).isNull();
+  }
+
+  @Test
+  public void select_source_lines() {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int i = 1; i <= 5; i++) {
+      data.addLinesBuilder().setLine(i).setSource("line " + i);
+    }
+    sut.insert(new FileSourceDto()
+      .setProjectUuid("PRJ_UUID")
+      .setFileUuid("FILE2_UUID")
+      .setSourceData(data.build())
+      .setDataHash("FILE2_DATA_HASH")
+      .setLineHashes("LINE1_HASH\nLINE2_HASH")
+      .setSrcHash("FILE2_HASH")
+      .setDataType(Type.SOURCE)
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000001L));
+
+    SourceLines sourceLines = sut.selectSourceLines(dbTester.getSession(), "FILE2_UUID", 2, 3);
+
+    assertThat(sourceLines.getDataHash()).isEqualTo("FILE2_DATA_HASH");
+    assertThat(sourceLines.getLines()).extracting("source").containsExactly("line 2", "line 3");
+    assertThat(sut.selectSourceLines(dbTester.getSession(), "unknown", 1, 10)).isNull();
+  }
+
   @Test
   public void select_line_hashes() {
     dbTester.prepareDbUnit(getClass(), "shared.xml");
@@ -98,12 +138,13 @@ public class FileSourceDaoTest {
       .setDataHash("FILE2_DATA_HASH")
       .setLineHashes("LINE1_HASH\\nLINE2_HASH")
       .setSrcHash("FILE2_HASH")
+      .setReportHash("FILE2_REPORT_HASH")
       .setDataType(Type.SOURCE)
       .setCreatedAt(1500000000000L)
       .setUpdatedAt(1500000000001L));
 
     dbTester.assertDbUnitTable(getClass(), "insert-result.xml", "file_sources",
-      "project_uuid", "file_uuid", "data_hash", "line_hashes", "src_hash", "created_at", "updated_at", "data_type");
+      "project_uuid", "file_uuid", "data_hash", "line_hashes", "src_hash", "report_hash", "created_at", "updated_at", "data_type");
   }
 
   @Test
@@ -117,12 +158,13 @@ public class FileSourceDaoTest {
       .setBinaryData("updated data".getBytes())
       .setDataHash("NEW_DATA_HASH")
       .setSrcHash("NEW_FILE_HASH")
+      .setReportHash("NEW_REPORT_HASH")
       .setLineHashes("NEW_LINE_HASHES")
       .setDataType(Type.SOURCE)
       .setUpdatedAt(1500000000002L));
 
     dbTester.assertDbUnitTable(getClass(), "update-result.xml", "file_sources",
-      "project_uuid", "file_uuid", "data_hash", "line_hashes", "src_hash", "created_at", "updated_at", "data_type");
+      "project_uuid", "file_uuid", "data_hash", "line_hashes", "src_hash", "report_hash", "created_at", "updated_at", "data_type");
   }
 
   @Test
@@ -20,6 +20,7 @@
 
 package org.sonar.db.source;
 
+import java.io.ByteArrayInputStream;
 import java.util.Arrays;
 import java.util.List;
 import org.junit.Test;
@@ -46,4 +47,21 @@ public class FileSourceDtoTest {
     assertThat(sut.getTestData()).hasSize(2);
     assertThat(sut.getTestData().get(0).getName()).isEqualTo("name#1");
   }
+
+  @Test
+  public void decode_range_of_source_lines() {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int i = 1; i <= 10; i++) {
+      data.addLinesBuilder().setLine(i).setSource("line " + i);
+    }
+    byte[] binaryData = FileSourceDto.encodeSourceData(data.build());
+
+    List<FileSourceDb.Line> lines = FileSourceDto.decodeSourceLines(new ByteArrayInputStream(binaryData), 3, 5);
+    assertThat(lines).extracting("line").containsExactly(3, 4, 5);
+    assertThat(lines.get(0).getSource()).isEqualTo("line 3");
+
+    assertThat(FileSourceDto.decodeSourceLines(new ByteArrayInputStream(binaryData), 9, Integer.MAX_VALUE)).extracting("source")
+      .containsExactly("line 9", "line 10");
+    assertThat(FileSourceDto.decodeSourceLines(new ByteArrayInputStream(binaryData), 11, 20)).isEmpty();
+  }
 }
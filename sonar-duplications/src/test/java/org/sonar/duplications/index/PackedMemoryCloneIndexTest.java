@@ -24,7 +24,13 @@ import org.junit.Test;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -89,6 +95,58 @@ public class PackedMemoryCloneIndexTest {
     assertThat(index.getByResourceId("a").size(), is(2));
   }
 
+  /**
+   * Given: index filled up to its capacity.
+   * Expected: queries do not require a free slot.
+   */
+  @Test
+  public void should_query_full_index() {
+    CloneIndex index = new PackedMemoryCloneIndex(8, 2);
+    index.insert(newBlock("a", 1));
+    index.insert(newBlock("b", 1));
+    assertThat(index.getByResourceId("b").size(), is(1));
+    assertThat(index.getByResourceId("c").size(), is(0));
+    assertThat(index.getBySequenceHash(new ByteArray(1L)).size(), is(2));
+    assertThat(index.getBySequenceHash(new ByteArray(2L)).size(), is(0));
+  }
+
+  /**
+   * Given: unsorted index.
+   * Expected: concurrent queries, including the first ones which sort the index, return same results as sequential ones.
+   */
+  @Test
+  public void should_support_concurrent_queries() throws Exception {
+    final int resources = 200;
+    for (int i = 0; i < resources; i++) {
+      for (int j = 0; j < 10; j++) {
+        index.insert(newBlock("r" + i, (i + j) % 50));
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (int t = 0; t < 16; t++) {
+        futures.add(executor.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() {
+            for (int i = 0; i < resources; i++) {
+              if (index.getByResourceId("r" + i).size() != 10 || index.getBySequenceHash(new ByteArray((long) i % 50)).size() != 40) {
+                return false;
+              }
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertThat(future.get(), is(true));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   /**
    * Given: index, which accepts blocks with 4-byte hash.
    * Expected: exception during insertion of block with 8-byte hash.
@@ -19,7 +19,6 @@
  */
 package org.sonar.api.batch.fs.internal;
 
-import com.google.common.primitives.Ints;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.ByteOrderMark;
@@ -41,8 +40,7 @@ import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Computes hash of files. Ends of Lines are ignored, so files with
@@ -55,6 +53,7 @@ public class FileMetadata {
 
   private static final char LINE_FEED = '\n';
   private static final char CARRIAGE_RETURN = '\r';
+  private static final int READ_BUFFER_SIZE = 8192;
 
   public abstract static class CharHandler {
 
@@ -126,38 +125,113 @@ public class FileMetadata {
 
   }
 
+  /**
+   * Encodes chars in UTF-8 directly into a MD5 digest, without intermediate strings. Bytes are the same
+   * as {@link String#getBytes(Charset)} with UTF-8, including the replacement of unpaired surrogates by '?'.
+   */
+  private static class Utf8Digester {
+    private static final int BUFFER_SIZE = 4096;
+    private static final byte REPLACEMENT = (byte) '?';
+
+    private final MessageDigest digest = DigestUtils.getMd5Digest();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private char highSurrogate = 0;
+    private boolean empty = true;
+
+    void append(char c) {
+      empty = false;
+      if (highSurrogate != 0) {
+        char high = highSurrogate;
+        highSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          int codePoint = Character.toCodePoint(high, c);
+          ensureCapacity(4);
+          buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+          buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+          return;
+        }
+        ensureCapacity(1);
+        buffer[position++] = REPLACEMENT;
+      }
+      ensureCapacity(3);
+      if (c < 0x80) {
+        buffer[position++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[position++] = (byte) (0xC0 | (c >> 6));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c)) {
+        highSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        buffer[position++] = REPLACEMENT;
+      } else {
+        buffer[position++] = (byte) (0xE0 | (c >> 12));
+        buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+
+    /**
+     * Whether no chars have been appended since creation or last call to {@link #digest()}
+     */
+    boolean isEmpty() {
+      return empty;
+    }
+
+    /**
+     * Completes the hash computation and resets the digester
+     */
+    byte[] digest() {
+      flush();
+      empty = true;
+      return digest.digest();
+    }
+
+    /**
+     * Updates the digest with buffered bytes. Data hashed so far is the same as if the appended chars were
+     * encoded as a string.
+     */
+    void flush() {
+      if (highSurrogate != 0) {
+        highSurrogate = 0;
+        ensureCapacity(1);
+        buffer[position++] = REPLACEMENT;
+      }
+      digest.update(buffer, 0, position);
+      position = 0;
+    }
+
+    private void ensureCapacity(int length) {
+      if (position + length > BUFFER_SIZE) {
+        digest.update(buffer, 0, position);
+        position = 0;
+      }
+    }
+  }
+
   private static class FileHashComputer extends CharHandler {
-    private MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
-    private StringBuilder sb = new StringBuilder();
+    private final Utf8Digester digester = new Utf8Digester();
 
     @Override
     protected void handleIgnoreEoL(char c) {
-      sb.append(c);
+      digester.append(c);
     }
 
     @Override
     protected void newLine() {
-      sb.append(LINE_FEED);
-      globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
-      sb.setLength(0);
-    }
-
-    @Override
-    protected void eof() {
-      if (sb.length() > 0) {
-        globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
-      }
+      digester.append(LINE_FEED);
     }
 
     @CheckForNull
     public String getHash() {
-      return Hex.encodeHexString(globalMd5Digest.digest());
+      return Hex.encodeHexString(digester.digest());
     }
   }
 
   private static class LineHashComputer extends CharHandler {
-    private final MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
-    private final StringBuilder sb = new StringBuilder();
+    private final Utf8Digester digester = new Utf8Digester();
     private final LineHashConsumer consumer;
     private int line = 1;
 
@@ -168,21 +242,20 @@ public class FileMetadata {
     @Override
     protected void handleIgnoreEoL(char c) {
       if (!Character.isWhitespace(c)) {
-        sb.append(c);
+        digester.append(c);
       }
     }
 
     @Override
     protected void newLine() {
-      consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
-      sb.setLength(0);
+      consumer.consume(line, digester.isEmpty() ? null : digester.digest());
       line++;
     }
 
     @Override
     protected void eof() {
       if (this.line > 0) {
-        consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
+        consumer.consume(line, digester.isEmpty() ? null : digester.digest());
       }
     }
 
@@ -190,13 +263,10 @@ public class FileMetadata {
 
   private static class LineOffsetCounter extends CharHandler {
     private int currentOriginalOffset = 0;
-    private List<Integer> originalLineOffsets = new ArrayList<>();
+    private int[] originalLineOffsets = new int[64];
+    private int lines = 1;
     private int lastValidOffset = 0;
 
-    public LineOffsetCounter() {
-      originalLineOffsets.add(0);
-    }
-
     @Override
     protected void handleAll(char c) {
       currentOriginalOffset++;
@@ -204,7 +274,11 @@ public class FileMetadata {
 
     @Override
     protected void newLine() {
-      originalLineOffsets.add(currentOriginalOffset);
+      if (lines == originalLineOffsets.length) {
+        originalLineOffsets = Arrays.copyOf(originalLineOffsets, lines * 2);
+      }
+      originalLineOffsets[lines] = currentOriginalOffset;
+      lines++;
     }
 
     @Override
@@ -212,8 +286,8 @@ public class FileMetadata {
       lastValidOffset = currentOriginalOffset;
     }
 
-    public List<Integer> getOriginalLineOffsets() {
-      return originalLineOffsets;
+    public int[] getOriginalLineOffsets() {
+      return Arrays.copyOf(originalLineOffsets, lines);
     }
 
     public int getLastValidOffset() {
@@ -262,37 +336,39 @@ public class FileMetadata {
   }
 
   private static void read(Reader reader, CharHandler... handlers) throws IOException {
-    char c = (char) 0;
-    int i = reader.read();
+    char[] cbuf = new char[READ_BUFFER_SIZE];
     boolean afterCR = false;
-    while (i != -1) {
-      c = (char) i;
-      if (afterCR) {
-        for (CharHandler handler : handlers) {
-          if (c != CARRIAGE_RETURN && c != LINE_FEED) {
+    int length = reader.read(cbuf);
+    while (length != -1) {
+      for (int i = 0; i < length; i++) {
+        char c = cbuf[i];
+        if (afterCR) {
+          for (CharHandler handler : handlers) {
+            if (c != CARRIAGE_RETURN && c != LINE_FEED) {
+              handler.handleIgnoreEoL(c);
+            }
+            handler.handleAll(c);
+            handler.newLine();
+          }
+          afterCR = c == CARRIAGE_RETURN;
+        } else if (c == LINE_FEED) {
+          for (CharHandler handler : handlers) {
+            handler.handleAll(c);
+            handler.newLine();
+          }
+        } else if (c == CARRIAGE_RETURN) {
+          afterCR = true;
+          for (CharHandler handler : handlers) {
+            handler.handleAll(c);
+          }
+        } else {
+          for (CharHandler handler : handlers) {
             handler.handleIgnoreEoL(c);
+            handler.handleAll(c);
           }
-          handler.handleAll(c);
-          handler.newLine();
-        }
-        afterCR = c == CARRIAGE_RETURN;
-      } else if (c == LINE_FEED) {
-        for (CharHandler handler : handlers) {
-          handler.handleAll(c);
-          handler.newLine();
-        }
-      } else if (c == CARRIAGE_RETURN) {
-        afterCR = true;
-        for (CharHandler handler : handlers) {
-          handler.handleAll(c);
-        }
-      } else {
-        for (CharHandler handler : handlers) {
-          handler.handleIgnoreEoL(c);
-          handler.handleAll(c);
         }
       }
-      i = reader.read();
+      length = reader.read(cbuf);
     }
     for (CharHandler handler : handlers) {
       handler.eof();
@@ -306,11 +382,11 @@ public class FileMetadata {
     final int[] originalLineOffsets;
     final int lastValidOffset;
 
-    private Metadata(int lines, int nonBlankLines, String hash, List<Integer> originalLineOffsets, int lastValidOffset) {
+    private Metadata(int lines, int nonBlankLines, String hash, int[] originalLineOffsets, int lastValidOffset) {
       this.lines = lines;
       this.nonBlankLines = nonBlankLines;
       this.hash = hash;
-      this.originalLineOffsets = Ints.toArray(originalLineOffsets);
+      this.originalLineOffsets = originalLineOffsets;
       this.lastValidOffset = lastValidOffset;
     }
   }
@@ -32,6 +32,7 @@ import org.sonar.api.utils.log.LoggerLevel;
 import javax.annotation.Nullable;
 
 import java.io.File;
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -197,6 +198,83 @@ public class FileMetadataTest {
     assertThat(metadata.originalLineOffsets).containsOnly(0, 4, 9);
   }
 
+  @Test
+  public void supplementary_characters_and_unpaired_surrogates() throws Exception {
+    String content = "a\uD834\uDD1Eb\r\n\uD834\nc\uDD1E\n\uD834 \uDD1E\n\uD834";
+
+    FileMetadata.Metadata metadata = new FileMetadata().readMetadata(new StringReader(content));
+    // same bytes as String#getBytes(UTF_8), unpaired surrogates being replaced by '?'
+    assertThat(metadata.hash).isEqualTo(md5Hex("a\uD834\uDD1Eb\n\uD834\nc\uDD1E\n\uD834 \uDD1E\n\uD834"));
+    assertThat(metadata.hash).isEqualTo(md5Hex("a\uD834\uDD1Eb\n?\nc?\n? ?\n?"));
+  }
+
+  @Test
+  public void lines_longer_than_buffers() throws Exception {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < 5_000; i++) {
+      line.append("aé\u1D11E\uD834\uDD1E");
+    }
+    String content = line + "\n" + line;
+
+    FileMetadata.Metadata metadata = new FileMetadata().readMetadata(new StringReader(content));
+    assertThat(metadata.lines).isEqualTo(2);
+    assertThat(metadata.hash).isEqualTo(md5Hex(content));
+    assertThat(metadata.originalLineOffsets).containsExactly(0, line.length() + 1);
+    assertThat(metadata.lastValidOffset).isEqualTo(content.length());
+  }
+
+  @Test
+  public void offsets_of_many_lines() throws Exception {
+    StringBuilder content = new StringBuilder();
+    int[] expectedOffsets = new int[1_000];
+    for (int i = 0; i < 1_000; i++) {
+      expectedOffsets[i] = content.length();
+      content.append("line").append(i).append("\n");
+    }
+    content.setLength(content.length() - 1);
+
+    FileMetadata.Metadata metadata = new FileMetadata().readMetadata(new StringReader(content.toString()));
+    assertThat(metadata.lines).isEqualTo(1_000);
+    assertThat(metadata.originalLineOffsets).isEqualTo(expectedOffsets);
+  }
+
+  @Test
+  public void line_hashes_of_non_ascii_characters() throws Exception {
+    File tempFile = temp.newFile();
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 5_000; i++) {
+      longLine.append("é \u1D11E\uD834\uDD1E");
+    }
+    FileUtils.write(tempFile, "f\u00f6o\n" + longLine + "\r\n \t\nb\uD834\uDD1Ez", StandardCharsets.UTF_8, true);
+
+    DefaultInputFile f = new DefaultInputFile("foo", tempFile.getName());
+    f.setModuleBaseDir(tempFile.getParentFile().toPath());
+    f.setCharset(StandardCharsets.UTF_8);
+    final String expectedLongLine = longLine.toString().replace(" ", "");
+    FileMetadata.computeLineHashesForIssueTracking(f, new LineHashConsumer() {
+
+      @Override
+      public void consume(int lineIdx, @Nullable byte[] hash) {
+        switch (lineIdx) {
+          case 1:
+            assertThat(Hex.encodeHexString(hash)).isEqualTo(md5Hex("f\u00f6o"));
+            break;
+          case 2:
+            assertThat(Hex.encodeHexString(hash)).isEqualTo(md5Hex(expectedLongLine));
+            break;
+          case 3:
+            assertThat(hash).isNull();
+            break;
+          case 4:
+            assertThat(Hex.encodeHexString(hash)).isEqualTo(md5Hex("b\uD834\uDD1Ez"));
+            break;
+          default:
+            fail("Invalid line");
+        }
+      }
+    });
+  }
+
   @Test
   public void ignore_whitespace_when_computing_line_hashes() throws Exception {
     File tempFile = temp.newFile();